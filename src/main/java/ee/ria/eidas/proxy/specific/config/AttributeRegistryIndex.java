@@ -0,0 +1,49 @@
+package ee.ria.eidas.proxy.specific.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import eu.eidas.auth.commons.attribute.AttributeRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable lookup index over the eIDAS {@link AttributeRegistry}. Built once at startup, so that attribute definitions
+ * can be resolved by name URI or friendly name without the sorted set copies that {@link AttributeRegistry} creates
+ * on every lookup.
+ */
+public final class AttributeRegistryIndex {
+    private final ImmutableSortedSet<AttributeDefinition<?>> attributes;
+    private final ImmutableMap<String, AttributeDefinition<?>> byNameUri;
+    private final ImmutableMap<String, AttributeDefinition<?>> byFriendlyName;
+
+    public AttributeRegistryIndex(AttributeRegistry registry) {
+        this.attributes = registry.getAttributes();
+        Map<String, AttributeDefinition<?>> nameUris = new HashMap<>();
+        Map<String, AttributeDefinition<?>> friendlyNames = new HashMap<>();
+        for (AttributeDefinition<?> definition : attributes) {
+            nameUris.put(definition.getNameUri().toASCIIString(), definition);
+            // Same definition that AttributeRegistry.getByFriendlyName(...).first() resolves to
+            friendlyNames.computeIfAbsent(definition.getFriendlyName(), name -> registry.getByFriendlyName(name).first());
+        }
+        this.byNameUri = ImmutableMap.copyOf(nameUris);
+        this.byFriendlyName = ImmutableMap.copyOf(friendlyNames);
+    }
+
+    public ImmutableSortedSet<AttributeDefinition<?>> getAttributes() {
+        return attributes;
+    }
+
+    public AttributeDefinition<?> getByNameUri(String nameUri) {
+        return nameUri == null ? null : byNameUri.get(nameUri);
+    }
+
+    public AttributeDefinition<?> getByFriendlyName(String friendlyName) {
+        return friendlyName == null ? null : byFriendlyName.get(friendlyName);
+    }
+
+    public boolean contains(AttributeDefinition<?> definition) {
+        return definition != null && byNameUri.containsKey(definition.getNameUri().toASCIIString());
+    }
+}
@@ -1,19 +1,54 @@
 package ee.ria.eidas.proxy.specific.config;
 
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.AsyncExecutorProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.CacheExpiryProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.ThinClientProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.ConsentProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.HttpClientProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.IdpStateProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.MetadataProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.OidcProviderProperties;
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics;
+import ee.ria.eidas.proxy.specific.monitoring.FlowContext;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import ee.ria.eidas.proxy.specific.service.ClaimExtractionPlan;
+import ee.ria.eidas.proxy.specific.service.IssuerAddressResolver;
 import ee.ria.eidas.proxy.specific.service.OIDCProviderMetadataService;
+import ee.ria.eidas.proxy.specific.service.OidcJwksCache;
+import ee.ria.eidas.proxy.specific.service.PooledOidcHttpClient;
+import ee.ria.eidas.proxy.specific.service.SharedOidcMetadataStore;
 import ee.ria.eidas.proxy.specific.service.SpecificProxyService;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCacheGuard;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCacheMonitor;
+import ee.ria.eidas.proxy.specific.storage.IdpCacheEntryCodec;
+import ee.ria.eidas.proxy.specific.storage.IgniteCacheProvider;
 import ee.ria.eidas.proxy.specific.storage.IgniteInstanceInitializer;
+import ee.ria.eidas.proxy.specific.storage.IgniteNodeCacheProvider;
+import ee.ria.eidas.proxy.specific.storage.IgniteThinClientCacheProvider;
+import ee.ria.eidas.proxy.specific.storage.IgniteThinClientInitializer;
+import ee.ria.eidas.proxy.specific.storage.InstanceAffinity;
+import ee.ria.eidas.proxy.specific.storage.LightJAXBCodec;
+import ee.ria.eidas.proxy.specific.storage.LightMessageCodec;
+import ee.ria.eidas.proxy.specific.storage.LightStAXCodec;
+import ee.ria.eidas.proxy.specific.storage.LocalCacheTier;
+import ee.ria.eidas.proxy.specific.storage.SealedTokenCipher;
 import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
 import eu.eidas.auth.commons.attribute.AttributeRegistries;
 import eu.eidas.auth.commons.attribute.AttributeRegistry;
-import eu.eidas.auth.commons.light.ILightResponse;
 import eu.eidas.auth.commons.protocol.eidas.spec.LegalPersonSpec;
 import eu.eidas.auth.commons.protocol.eidas.spec.NaturalPersonSpec;
 import eu.eidas.auth.commons.protocol.eidas.spec.RepresentativeLegalPersonSpec;
 import eu.eidas.auth.commons.protocol.eidas.spec.RepresentativeNaturalPersonSpec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ignite.Ignite;
+import org.apache.ignite.client.IgniteClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -22,6 +57,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.io.FileUrlResource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.Assert;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
@@ -31,11 +67,17 @@ import org.springframework.web.servlet.resource.PathResourceResolver;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
-import javax.cache.Cache;
+import javax.cache.expiry.ExpiryPolicy;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.time.Duration;
+import java.util.Base64;
 import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import static ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.*;
 
@@ -88,57 +130,298 @@ public class SpecificProxyServiceConfiguration implements WebMvcConfigurer {
                 LegalPersonSpec.REGISTRY, RepresentativeLegalPersonSpec.REGISTRY);
     }
 
+    @Bean
+    public AttributeRegistryIndex eidasAttributeRegistryIndex(AttributeRegistry eidasAttributeRegistry) {
+        return new AttributeRegistryIndex(eidasAttributeRegistry);
+    }
+
+    @Bean
+    public LightMessageCodec lightMessageCodec(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        LightMessageCodecType codecType = specificProxyServiceProperties.getCommunicationCache().getLightMessageCodec();
+        return codecType == LightMessageCodecType.STAX ? new LightStAXCodec() : LightJAXBCodec.buildDefault();
+    }
+
     @Lazy
     @Bean
-    public Ignite igniteClient(SpecificProxyServiceProperties specificProxyServiceProperties, ResourceLoader resourceLoader) throws IOException {
+    @ConditionalOnProperty(name = "eidas.proxy.communication-cache.storage-mode", havingValue = "CLIENT_NODE", matchIfMissing = true)
+    public Ignite igniteClient(SpecificProxyServiceProperties specificProxyServiceProperties, ResourceLoader resourceLoader,
+                               CommunicationCacheGuard communicationCacheGuard) throws IOException {
         SpecificProxyServiceProperties.CacheProperties cacheProperties = specificProxyServiceProperties.getCommunicationCache();
         IgniteInstanceInitializer initializer = new IgniteInstanceInitializer(cacheProperties, resourceLoader);
         initializer.initializeInstance();
-        return initializer.getInstance();
+        Ignite igniteClient = initializer.getInstance();
+        if (cacheProperties.getFailFast().isEnabled()) {
+            communicationCacheGuard.listen(igniteClient);
+        }
+        return igniteClient;
+    }
+
+    @Lazy
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "eidas.proxy.communication-cache.storage-mode", havingValue = "THIN_CLIENT")
+    public IgniteClient igniteThinClient(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        ThinClientProperties thinClientProperties = specificProxyServiceProperties.getCommunicationCache().getThinClient();
+        return IgniteThinClientInitializer.startClient(thinClientProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "eidas.proxy.communication-cache.storage-mode", havingValue = "CLIENT_NODE", matchIfMissing = true)
+    public IgniteCacheProvider igniteNodeCacheProvider(@Lazy Ignite igniteClient) {
+        return new IgniteNodeCacheProvider(igniteClient);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "eidas.proxy.communication-cache.storage-mode", havingValue = "THIN_CLIENT")
+    public IgniteCacheProvider igniteThinClientCacheProvider(@Lazy IgniteClient igniteThinClient) {
+        return new IgniteThinClientCacheProvider(igniteThinClient);
+    }
+
+    @Bean
+    public CommunicationCacheMonitor communicationCacheMonitor(IgniteCacheProvider igniteCacheProvider, MeterRegistry meterRegistry, FlowTracing flowTracing) {
+        return new CommunicationCacheMonitor(igniteCacheProvider, meterRegistry, flowTracing);
+    }
+
+    @Bean
+    public InstanceAffinity instanceAffinity(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        return new InstanceAffinity(specificProxyServiceProperties.getAppInstanceId());
+    }
+
+    @Bean
+    public LocalCacheTier localCacheTier(SpecificProxyServiceProperties specificProxyServiceProperties, InstanceAffinity instanceAffinity,
+                                         ThreadPoolTaskExecutor communicationCacheExecutor) {
+        return new LocalCacheTier(specificProxyServiceProperties.getCommunicationCache().getLocalTier(), instanceAffinity, communicationCacheExecutor);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CommunicationCacheGuard communicationCacheGuard(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        return new CommunicationCacheGuard(specificProxyServiceProperties.getCommunicationCache().getFailFast());
+    }
+
+    @Lazy
+    @Bean
+    public CommunicationCache<String, String> nodeSpecificProxyserviceRequestCache(
+            IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+            CommunicationCacheGuard communicationCacheGuard, SpecificProxyServiceProperties specificProxyServiceProperties) {
+
+        return getCommunicationCache(igniteCacheProvider, communicationCacheMonitor, communicationCacheGuard, specificProxyServiceProperties, INCOMING_NODE_REQUESTS_CACHE,
+                (cache, cacheExpiry) -> cache);
+    }
+
+    @Lazy
+    @Bean
+    public CommunicationCache<String, String> nodeSpecificProxyserviceResponseCache(
+            IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+            CommunicationCacheGuard communicationCacheGuard, SpecificProxyServiceProperties specificProxyServiceProperties) {
+
+        return getCommunicationCache(igniteCacheProvider, communicationCacheMonitor, communicationCacheGuard, specificProxyServiceProperties, OUTGOING_NODE_RESPONSES_CACHE,
+                (cache, cacheExpiry) -> cache);
     }
 
     @Lazy
     @Bean
-    public Cache<String, String> nodeSpecificProxyserviceRequestCache(
-            Ignite igniteInstance,
+    public CommunicationCache<UUID, byte[]> specificMSIdpRequestCorrelationMap(
+            IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+            CommunicationCacheGuard communicationCacheGuard, LocalCacheTier localCacheTier,
             SpecificProxyServiceProperties specificProxyServiceProperties) {
 
-        String cacheName = getCacheName(specificProxyServiceProperties, INCOMING_NODE_REQUESTS_CACHE);
-        return igniteInstance.cache(cacheName);
+        return getCommunicationCache(igniteCacheProvider, communicationCacheMonitor, communicationCacheGuard, specificProxyServiceProperties, IDP_PENDING_REQUESTS_CACHE,
+                (cache, cacheExpiry) -> localCacheTier.localTier(cache, cacheExpiry, true));
     }
 
     @Lazy
     @Bean
-    public Cache<String, String> nodeSpecificProxyserviceResponseCache(
-            Ignite igniteInstance,
+    public CommunicationCache<UUID, byte[]> specificMSIdpConsentCorrelationMap(
+            IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+            CommunicationCacheGuard communicationCacheGuard, LocalCacheTier localCacheTier,
             SpecificProxyServiceProperties specificProxyServiceProperties) {
 
-        String cacheName = getCacheName(specificProxyServiceProperties, OUTGOING_NODE_RESPONSES_CACHE);
-        return igniteInstance.cache(cacheName);
+        return getCommunicationCache(igniteCacheProvider, communicationCacheMonitor, communicationCacheGuard, specificProxyServiceProperties, IDP_PENDING_CONSENT_MAP,
+                (cache, cacheExpiry) -> localCacheTier.localTier(cache, cacheExpiry, false));
     }
 
+    /**
+     * One-time-use nonces of the sealed OIDC states. Entries expire after the state time to live.
+     */
     @Lazy
     @Bean
-    public Cache<String, SpecificProxyServiceCommunication.CorrelatedRequestsHolder> specificMSIdpRequestCorrelationMap(
-            Ignite igniteInstance, SpecificProxyServiceProperties specificProxyServiceProperties) {
+    public CommunicationCache<UUID, Boolean> specificMSIdpStateNonceCache(
+            IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+            CommunicationCacheGuard communicationCacheGuard, SpecificProxyServiceProperties specificProxyServiceProperties) {
 
-        String cacheName = getCacheName(specificProxyServiceProperties, IDP_PENDING_REQUESTS_CACHE);
-        return igniteInstance.cache(cacheName);
+        IdpStateProperties stateProperties = specificProxyServiceProperties.getOidc().getState();
+        String cacheName = stateProperties.getNonceCacheName();
+        Duration timeToLive = Duration.ofSeconds(stateProperties.getTtlInSeconds());
+        return decorateCommunicationCache(communicationCacheMonitor, communicationCacheGuard, specificProxyServiceProperties, IDP_STATE_NONCE_CACHE,
+                cacheName, () -> igniteCacheProvider.getOrCreateExpiringCache(cacheName, timeToLive), UnaryOperator.identity());
     }
 
+    /**
+     * One-time-use nonces of the sealed consent tokens. Entries expire after the consent token time to live.
+     */
     @Lazy
     @Bean
-    public Cache<String, ILightResponse> specificMSIdpConsentCorrelationMap(
-            Ignite igniteInstance, SpecificProxyServiceProperties specificProxyServiceProperties) {
+    public CommunicationCache<UUID, Boolean> specificMSIdpConsentNonceCache(
+            IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+            CommunicationCacheGuard communicationCacheGuard, SpecificProxyServiceProperties specificProxyServiceProperties) {
 
-        String cacheName = getCacheName(specificProxyServiceProperties, IDP_PENDING_CONSENT_MAP);
-        return igniteInstance.cache(cacheName);
+        ConsentProperties consentProperties = specificProxyServiceProperties.getConsentBinaryLightToken();
+        String cacheName = consentProperties.getNonceCacheName();
+        Duration timeToLive = Duration.ofSeconds(consentProperties.getTtlInSeconds());
+        return decorateCommunicationCache(communicationCacheMonitor, communicationCacheGuard, specificProxyServiceProperties, IDP_CONSENT_NONCE_CACHE,
+                cacheName, () -> igniteCacheProvider.getOrCreateExpiringCache(cacheName, timeToLive), UnaryOperator.identity());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "eidas.proxy.oidc.state.mode", havingValue = "SEALED")
+    public SealedTokenCipher idpStateCipher(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        OidcProviderProperties oidcProperties = specificProxyServiceProperties.getOidc();
+        return new SealedTokenCipher(Base64.getDecoder().decode(oidcProperties.getState().getEncryptionKey()),
+                "oidc-state:" + oidcProperties.getClientId(), Duration.ofSeconds(oidcProperties.getState().getTtlInSeconds()));
+    }
+
+    /**
+     * The key is derived from the consent light token secret and the tokens are bound to the consent light token
+     * issuer, so a sealed consent token can only be opened with the same consent light token configuration.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "eidas.proxy.consent-binary-light-token.mode", havingValue = "SEALED")
+    public SealedTokenCipher consentTokenCipher(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        ConsentProperties consentProperties = specificProxyServiceProperties.getConsentBinaryLightToken();
+        return new SealedTokenCipher(SealedTokenCipher.deriveKey(consentProperties.getSecret(), "consent-token"),
+                "consent:" + consentProperties.getIssuer(), Duration.ofSeconds(consentProperties.getTtlInSeconds()));
+    }
+
+    @Bean
+    public IdpCacheEntryCodec idpCacheEntryCodec(AttributeRegistryIndex eidasAttributeRegistryIndex) {
+        return new IdpCacheEntryCodec(eidasAttributeRegistryIndex);
+    }
+
+    /**
+     * Completes the asynchronous communication cache operations and runs the request processing that follows them, so
+     * that the servlet container threads are released while a cache operation is in flight. The blocking IdP calls do
+     * not run on this pool, see {@link #oidcCallExecutor}.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor communicationCacheExecutor(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        AsyncExecutorProperties asyncExecutorProperties = specificProxyServiceProperties.getCommunicationCache().getAsyncExecutor();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(asyncExecutorProperties.getCorePoolSize());
+        executor.setMaxPoolSize(asyncExecutorProperties.getMaxPoolSize());
+        executor.setQueueCapacity(asyncExecutorProperties.getQueueCapacity());
+        executor.setThreadNamePrefix("communication-cache-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * Runs the IdP calls of the IdP callbacks, the token request and the ID-token validation, so that they hold neither
+     * the servlet container threads nor the threads that complete the communication cache operations. The pool has a
+     * thread per pooled IdP connection, as a call cannot proceed without a connection.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor oidcCallExecutor(SpecificProxyServiceProperties specificProxyServiceProperties) {
+        HttpClientProperties httpClientProperties = specificProxyServiceProperties.getOidc().getHttpClient();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(httpClientProperties.getMaxConnections());
+        executor.setMaxPoolSize(httpClientProperties.getMaxConnections());
+        executor.setQueueCapacity(httpClientProperties.getCallQueueCapacity());
+        executor.setThreadNamePrefix("oidc-call-");
+        executor.setTaskDecorator(FlowContext.taskDecorator());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    @Bean(destroyMethod = "close")
+    public PooledOidcHttpClient oidcHttpClient(SpecificProxyServiceProperties specificProxyServiceProperties, FlowTracing flowTracing) {
+        return new PooledOidcHttpClient(specificProxyServiceProperties.getOidc(), flowTracing);
+    }
+
+    /**
+     * Tracing is auto-configured only when enabled, so the spans are not created without a tracer, such as in tests.
+     */
+    @Bean
+    public FlowTracing flowTracing(ObjectProvider<Tracer> tracer, ObjectProvider<Propagator> propagator,
+                                   SpecificProxyServiceProperties specificProxyServiceProperties) {
+        return new FlowTracing(tracer.getIfAvailable(() -> Tracer.NOOP), propagator.getIfAvailable(() -> Propagator.NOOP),
+                specificProxyServiceProperties.getOidc().isTracePropagationEnabled());
+    }
+
+    @Bean
+    @ConditionalOnProperty("eidas.proxy.oidc.metadata.cluster-shared")
+    public SharedOidcMetadataStore sharedOidcMetadataStore(IgniteCacheProvider igniteCacheProvider, SpecificProxyServiceProperties specificProxyServiceProperties) {
+        MetadataProperties metadataProperties = specificProxyServiceProperties.getOidc().getMetadata();
+        return new SharedOidcMetadataStore(() -> igniteCacheProvider.getOrCreateReplicatedCache(metadataProperties.getSharedCacheName()),
+                metadataProperties, specificProxyServiceProperties.getAppInstanceId());
+    }
+
+    @Bean
+    public IssuerAddressResolver issuerAddressResolver(SpecificProxyServiceProperties specificProxyServiceProperties, MeterRegistry meterRegistry) {
+        return new IssuerAddressResolver(specificProxyServiceProperties.getOidc(), meterRegistry);
+    }
+
+    @Bean
+    public AuthenticationFlowMetrics authenticationFlowMetrics(SpecificProxyServiceProperties specificProxyServiceProperties, MeterRegistry meterRegistry) {
+        return new AuthenticationFlowMetrics(specificProxyServiceProperties.getFlowMetrics(), meterRegistry);
+    }
+
+    @Bean
+    public OidcJwksCache oidcJwksCache(SpecificProxyServiceProperties specificProxyServiceProperties, PooledOidcHttpClient oidcHttpClient,
+                                       FlowTracing flowTracing) {
+        return new OidcJwksCache(specificProxyServiceProperties.getOidc().getJwks(), oidcHttpClient, flowTracing);
     }
 
     @Bean
     public SpecificProxyService specificProxyService(SpecificProxyServiceProperties specificProxyServiceProperties,
-                                                     OIDCProviderMetadataService oidcProviderMetadataService, AttributeRegistry eidasAttributesRegistry) {
-        return new SpecificProxyService(specificProxyServiceProperties, oidcProviderMetadataService, eidasAttributesRegistry);
+                                                     OIDCProviderMetadataService oidcProviderMetadataService, AttributeRegistryIndex eidasAttributeRegistryIndex,
+                                                     PooledOidcHttpClient oidcHttpClient, SpecificProxyServiceCommunication specificProxyServiceCommunication,
+                                                     AuthenticationFlowMetrics authenticationFlowMetrics, FlowTracing flowTracing) {
+        ClaimExtractionPlan claimExtractionPlan = new ClaimExtractionPlan(
+                specificProxyServiceProperties.getOidc().getResponseClaimMapping(), eidasAttributeRegistryIndex);
+        return new SpecificProxyService(specificProxyServiceProperties, oidcProviderMetadataService, claimExtractionPlan, oidcHttpClient,
+                specificProxyServiceCommunication, authenticationFlowMetrics, flowTracing);
+    }
+
+    /**
+     * Applies the client-side expiry configured for the cache, if any, and decorates the cache. The cache beans are
+     * lazy, so the server expiry is verified and the meters are registered when the application first connects to the
+     * cache. The local tier is given the client-side expiry, so that local entries do not outlive their cluster copies.
+     */
+    private <K, V> CommunicationCache<K, V> getCommunicationCache(IgniteCacheProvider igniteCacheProvider, CommunicationCacheMonitor communicationCacheMonitor,
+                                                     CommunicationCacheGuard communicationCacheGuard, SpecificProxyServiceProperties properties,
+                                                     String cacheId, BiFunction<CommunicationCache<K, V>, CacheExpiryProperties, CommunicationCache<K, V>> localTier) {
+        String cacheName = getCacheName(properties, cacheId);
+        CacheExpiryProperties expiryProperties = properties.getCommunicationCache().getExpiry().get(cacheId);
+        Supplier<CommunicationCache<K, V>> cacheSupplier;
+        if (expiryProperties != null) {
+            ExpiryPolicy expiryPolicy = CommunicationCacheMonitor.createExpiryPolicy(expiryProperties);
+            cacheSupplier = () -> igniteCacheProvider.getCache(cacheName, expiryPolicy);
+            communicationCacheMonitor.verifyServerExpiry(cacheName, expiryProperties);
+        } else {
+            cacheSupplier = () -> igniteCacheProvider.getCache(cacheName);
+        }
+        return decorateCommunicationCache(communicationCacheMonitor, communicationCacheGuard, properties, cacheId, cacheName, cacheSupplier,
+                cache -> localTier.apply(cache, expiryProperties));
+    }
+
+    /**
+     * Guards, tiers, instruments and traces the cache operations unless disabled, and records them as flight recording
+     * events. The local tier wraps the guard, so that local hits do not depend on the cluster, and the instrumentation,
+     * recording and tracing wrap both, so that the operations are timed as the services see them.
+     */
+    private <K, V> CommunicationCache<K, V> decorateCommunicationCache(CommunicationCacheMonitor communicationCacheMonitor, CommunicationCacheGuard communicationCacheGuard,
+                                                          SpecificProxyServiceProperties properties, String cacheId, String cacheName,
+                                                          Supplier<CommunicationCache<K, V>> cacheSupplier, UnaryOperator<CommunicationCache<K, V>> localTier) {
+        CommunicationCache<K, V> cache = properties.getCommunicationCache().getFailFast().isEnabled()
+                ? communicationCacheGuard.guard(cacheSupplier) : cacheSupplier.get();
+        if (properties.getCommunicationCache().getLocalTier().isEnabled()) {
+            cache = localTier.apply(cache);
+        }
+        if (properties.getCommunicationCache().isMetricsEnabled()) {
+            communicationCacheMonitor.bindStatistics(cacheId, cacheName);
+            cache = communicationCacheMonitor.instrument(cacheId, cache);
+        }
+        cache = communicationCacheMonitor.record(cacheId, cache);
+        return properties.getCommunicationCache().isTracingEnabled() ? communicationCacheMonitor.trace(cacheId, cache) : cache;
     }
 
     private String getCacheName(SpecificProxyServiceProperties properties, String cacheName) {
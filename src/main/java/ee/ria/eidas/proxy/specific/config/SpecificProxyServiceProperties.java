@@ -3,6 +3,7 @@ package ee.ria.eidas.proxy.specific.config;
 import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
 import jakarta.annotation.PostConstruct;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -14,6 +15,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.util.Assert;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -44,6 +46,9 @@ public class SpecificProxyServiceProperties {
         }
 
         assertScopeMappingsIfPresent();
+        assertThinClientAddressesIfThinClientMode();
+        assertCacheExpiryConfiguredForKnownCaches();
+        assertIdpStateEncryptionKeyIfSealedMode();
         assertOidcClaimMappingsConfigurationPresent();
         assertOidcClaimMappingPostProcessingRules();
 
@@ -72,6 +77,23 @@ public class SpecificProxyServiceProperties {
     @Valid
     private WebappProperties webapp = new WebappProperties();
 
+    @Valid
+    private FlowMetricsProperties flowMetrics = new FlowMetricsProperties();
+
+    @Data
+    @ToString
+    public static class FlowMetricsProperties {
+
+        /**
+         * Service level objective boundaries published as histogram buckets of the authentication flow stage timers.
+         */
+        @NotNull
+        private List<Duration> sloBoundaries = asList(Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(100),
+                Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofSeconds(3));
+
+        private boolean percentileHistogramEnabled = false;
+    }
+
     @Valid
     @ToString
     @Data
@@ -116,12 +138,123 @@ public class SpecificProxyServiceProperties {
 
         private Integer connectTimeoutInMilliseconds = 5000;
 
+        /**
+         * Whether the trace context is added to the requests to the IdP. Enable only if the IdP accepts the headers.
+         */
+        private boolean tracePropagationEnabled = false;
+
+        @Min(1)
+        private long issuerAddressTtlInSeconds = 60;
+
         private Map<String, String> attributeScopeMapping = new HashMap<>();
 
         private SpecificProxyServiceProperties.IdTokenClaimMappingProperties responseClaimMapping = new SpecificProxyServiceProperties.IdTokenClaimMappingProperties();
 
         private String errorCodeUserCancel = "user_cancel";
 
+        @Valid
+        private HttpClientProperties httpClient = new HttpClientProperties();
+
+        @Valid
+        private JwksProperties jwks = new JwksProperties();
+
+        @Valid
+        private MetadataProperties metadata = new MetadataProperties();
+
+        @Valid
+        private IdpStateProperties state = new IdpStateProperties();
+    }
+
+    @Data
+    @ToString
+    public static class HttpClientProperties {
+
+        @Min(1)
+        private int maxConnections = 20;
+
+        @Min(1)
+        private long idleConnectionTimeoutInSeconds = 30;
+
+        @Min(1)
+        private long connectionTimeToLiveInSeconds = 300;
+
+        private boolean http2Enabled = false;
+
+        private boolean prewarmConnections = true;
+
+        /**
+         * Maximum period to wait for a pooled connection, when all connections are in use.
+         */
+        @Min(1)
+        private int connectionRequestTimeoutInMilliseconds = 5000;
+
+        /**
+         * Maximum number of IdP callbacks waiting for a thread to call the IdP. The IdP calls run on a pool with a
+         * thread per pooled connection.
+         */
+        @Min(0)
+        private int callQueueCapacity = 1000;
+    }
+
+    @Data
+    @ToString
+    public static class MetadataProperties {
+
+        private String snapshotFile;
+
+        /**
+         * Maximum age of the snapshot file that is used at startup instead of waiting for the provider.
+         */
+        @Min(1)
+        private long snapshotMaxAgeInSeconds = 604800;
+
+        private boolean clusterShared = false;
+
+        @NotEmpty
+        private String sharedCacheName = "specificProxyServiceOidcMetadataCache";
+
+        @Min(1)
+        private long sharedMaxAgeInSeconds = 3600;
+
+        @Min(1)
+        private long sharedRefreshLeaseInSeconds = 30;
+    }
+
+    @Data
+    @ToString
+    public static class IdpStateProperties {
+
+        @NotNull
+        private CorrelationMode mode = CorrelationMode.CACHE;
+
+        @ToString.Exclude
+        private String encryptionKey;
+
+        @Min(1)
+        private long ttlInSeconds = 300;
+
+        @NotEmpty
+        private String nonceCacheName = "specificMSIdpStateNonceCache";
+    }
+
+    /**
+     * Whether the data correlating two requests of an authentication flow is kept in a communication cache, or sealed
+     * into the token that is handed to the user agent.
+     */
+    public enum CorrelationMode {
+        CACHE,
+        SEALED
+    }
+
+    @Data
+    @ToString
+    public static class JwksProperties {
+
+        @Min(1)
+        private long refreshIntervalInSeconds = 300;
+
+        @Min(0)
+        private long minRefetchIntervalInSeconds = 30;
     }
 
     @Data
@@ -134,6 +267,15 @@ public class SpecificProxyServiceProperties {
         private String secret;
 
         private String algorithm;
+
+        @NotNull
+        private CorrelationMode mode = CorrelationMode.CACHE;
+
+        @Min(1)
+        private long ttlInSeconds = 300;
+
+        @NotEmpty
+        private String nonceCacheName = "specificMSIdpConsentNonceCache";
     }
 
     @Data
@@ -163,6 +305,8 @@ public class SpecificProxyServiceProperties {
         public static final String OUTGOING_NODE_RESPONSES_CACHE = "outgoing-node-responses-cache";
         public static final String IDP_PENDING_REQUESTS_CACHE = "pending-idp-requests-cache";
         public static final String IDP_PENDING_CONSENT_MAP = "pending-user-consents-cache";
+        public static final String IDP_STATE_NONCE_CACHE = "idp-state-nonce-cache";
+        public static final String IDP_CONSENT_NONCE_CACHE = "idp-consent-nonce-cache";
 
         private Map<String, String> cacheNameMapping = Stream.of(
                 new AbstractMap.SimpleEntry<>(INCOMING_NODE_REQUESTS_CACHE, "nodeSpecificProxyserviceRequestCache"),
@@ -175,8 +319,173 @@ public class SpecificProxyServiceProperties {
         private String igniteConfigurationFileLocation;
 
         private String igniteConfigurationBeanName = "igniteSpecificCommunication.cfg";
+
+        @NotNull
+        private LightMessageCodecType lightMessageCodec = LightMessageCodecType.JAXB;
+
+        @NotNull
+        private StorageMode storageMode = StorageMode.CLIENT_NODE;
+
+        @Valid
+        private ThinClientProperties thinClient = new ThinClientProperties();
+
+        @Valid
+        private AsyncExecutorProperties asyncExecutor = new AsyncExecutorProperties();
+
+        @Valid
+        private FailFastProperties failFast = new FailFastProperties();
+
+        @Valid
+        private LocalTierProperties localTier = new LocalTierProperties();
+
+        /**
+         * Whether the communication cache operations are timed and counted. When disabled, the services use the Ignite
+         * caches directly.
+         */
+        private boolean metricsEnabled = true;
+
+        /**
+         * Whether a span is created for each communication cache operation.
+         */
+        private boolean tracingEnabled = true;
+
+        /**
+         * Client-side expiry of the communication cache entries, keyed by the same cache identifiers as
+         * {@link #cacheNameMapping}. Caches without an entry use only the expiry configured on the server nodes.
+         */
+        @Valid
+        private Map<String, CacheExpiryProperties> expiry = new HashMap<>();
+
+        public enum LightMessageCodecType {
+            JAXB,
+            STAX
+        }
+
+        public enum StorageMode {
+            CLIENT_NODE,
+            THIN_CLIENT
+        }
+
+        @Data
+        @ToString
+        public static class ThinClientProperties {
+
+            private List<String> addresses = new ArrayList<>();
+
+            private boolean partitionAwarenessEnabled = true;
+
+            @Min(0)
+            private int timeoutInMillis = 0;
+
+            private boolean sslEnabled = false;
+
+            private String keyStore;
+
+            @ToString.Exclude
+            private String keyStorePassword;
+
+            private String keyStoreType = "JKS";
+
+            private String trustStore;
+
+            @ToString.Exclude
+            private String trustStorePassword;
+
+            private String trustStoreType = "JKS";
+        }
+
+        @Data
+        @ToString
+        public static class AsyncExecutorProperties {
+
+            @Min(1)
+            private int corePoolSize = 8;
+
+            @Min(1)
+            private int maxPoolSize = 32;
+
+            @Min(0)
+            private int queueCapacity = 1000;
+        }
+
+        @Data
+        @ToString
+        public static class FailFastProperties {
+
+            private boolean enabled = true;
+
+            @Min(1)
+            private int operationTimeoutInMillis = 3000;
+
+            @Min(1)
+            private int maxConcurrentOperations = 200;
+
+            /**
+             * How long the operations are rejected after the thin client fails to connect to the cluster.
+             */
+            @Min(0)
+            private int retryDelayInMillis = 1000;
+        }
+
+        @Data
+        @ToString
+        public static class LocalTierProperties {
+
+            private boolean enabled = false;
+
+            @Min(1)
+            private int maxEntries = 10000;
+
+            @Min(1)
+            private int ttlInSeconds = 600;
+        }
+
+        @Data
+        @ToString
+        public static class CacheExpiryProperties {
+
+            @NotNull
+            private ExpiryPolicyType policy = ExpiryPolicyType.CREATED;
+
+            @NotNull
+            @Min(1)
+            private Long ttlInSeconds;
+
+            /**
+             * Which operations restart the time to live of an entry, as in the JCache expiry policies of the same name.
+             */
+            public enum ExpiryPolicyType {
+                CREATED,
+                MODIFIED,
+                ACCESSED,
+                TOUCHED
+            }
+        }
+    }
+
+
+    private void assertThinClientAddressesIfThinClientMode() {
+        if (communicationCache.getStorageMode() == CacheProperties.StorageMode.THIN_CLIENT) {
+            Assert.isTrue(!communicationCache.getThinClient().getAddresses().isEmpty(),
+                    "Missing Ignite thin client addresses configuration! Please check your configuration");
+        }
     }
 
+    private void assertCacheExpiryConfiguredForKnownCaches() {
+        for (String cacheName : communicationCache.getExpiry().keySet()) {
+            Assert.isTrue(communicationCache.getCacheNameMapping().containsKey(cacheName),
+                    "Unknown communication cache '" + cacheName + "' in eidas.proxy.communication-cache.expiry! Please check your configuration");
+        }
+    }
+
+    private void assertIdpStateEncryptionKeyIfSealedMode() {
+        if (oidc.getState().getMode() == CorrelationMode.SEALED) {
+            Assert.notNull(oidc.getState().getEncryptionKey(), "eidas.proxy.oidc.state.encryption-key cannot be null when eidas.proxy.oidc.state.mode is 'SEALED'");
+            int keyLength = Base64.getDecoder().decode(oidc.getState().getEncryptionKey()).length;
+            Assert.isTrue(keyLength == 16 || keyLength == 24 || keyLength == 32,
+                    "eidas.proxy.oidc.state.encryption-key must be a Base64 encoded 128, 192 or 256 bit AES key");
+        }
+    }
 
     private void assertOidcClaimMappingPostProcessingRules() {
         if (!oidc.getResponseClaimMapping().getAttributesPostProcessing().isEmpty()) {
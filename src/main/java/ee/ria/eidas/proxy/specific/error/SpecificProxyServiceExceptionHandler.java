@@ -1,6 +1,7 @@
 package ee.ria.eidas.proxy.specific.error;
 
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
+import ee.ria.eidas.proxy.specific.storage.CacheUnavailableException;
 import ee.ria.eidas.proxy.specific.storage.EidasNodeCommunication;
 import eu.eidas.auth.commons.EidasParameterKeys;
 import eu.eidas.auth.commons.tx.BinaryLightToken;
@@ -19,6 +20,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.concurrent.RejectedExecutionException;
 
 import static java.lang.String.format;
 import static org.springframework.web.util.UriComponentsBuilder.fromUri;
@@ -60,6 +62,27 @@ public class SpecificProxyServiceExceptionHandler {
         return new ModelAndView();
     }
 
+    /**
+     * The error response cannot be returned to the eIDAS-Node through the communication cache while the cache is
+     * unavailable, so the request is answered with an error page instead.
+     */
+    @ExceptionHandler({CacheUnavailableException.class})
+    public ModelAndView handleCacheUnavailableException(CacheUnavailableException ex, HttpServletResponse response) throws IOException {
+        log.error("Communication cache unavailable: {}", ex.getMessage());
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return new ModelAndView();
+    }
+
+    /**
+     * A thread pool that continues the request processing is saturated, so the request is not queued further.
+     */
+    @ExceptionHandler({RejectedExecutionException.class})
+    public ModelAndView handleRejectedExecutionException(RejectedExecutionException ex, HttpServletResponse response) throws IOException {
+        log.error("Request processing capacity exhausted: {}", ex.getMessage());
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return new ModelAndView();
+    }
+
     @ExceptionHandler({Exception.class})
     public void handleAll(Exception ex) throws Exception {
         log.error("Server encountered an unexpected error: {}", ex.getMessage(), ex);
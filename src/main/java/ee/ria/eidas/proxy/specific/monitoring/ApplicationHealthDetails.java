@@ -0,0 +1,89 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.monitoring.health.TruststoreHealthIndicator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.info.GitProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.lang.Double.valueOf;
+import static java.time.Duration.ofSeconds;
+import static java.time.Instant.ofEpochMilli;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Collects the application details of the {@code heartbeat} response, both when the health indicators are run per
+ * request by {@link ApplicationHealthEndpoint} and when the response is built from the background probe results by
+ * {@link HealthProbeScheduler}.
+ */
+@Component
+public class ApplicationHealthDetails {
+
+    @Autowired
+    private GitProperties gitProperties;
+
+    @Autowired
+    private BuildProperties buildProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TruststoreHealthIndicator truststoreHealthIndicator;
+
+    /**
+     * @return the build, git and start time details, which do not change while the application runs
+     */
+    Map<String, Object> getStaticDetails() {
+        Map<String, Object> details = new HashMap<>();
+        details.put("name", buildProperties.getName());
+        details.put("version", buildProperties.getVersion());
+        details.put("buildTime", buildProperties.getTime());
+        details.put("commitId", gitProperties.getCommitId());
+        details.put("commitBranch", gitProperties.getBranch());
+        details.computeIfAbsent("startTime", v -> getServiceStartTime());
+        return details;
+    }
+
+    /**
+     * Adds the compound status and the details that change while the application runs.
+     */
+    void addCurrentDetails(Map<String, Object> details, Map<String, Status> healthIndicatorStatuses, Instant currentTime) {
+        details.put("status", getAggregatedStatus(healthIndicatorStatuses).getCode());
+        details.put("currentTime", currentTime);
+        details.computeIfAbsent("upTime", v -> getServiceUpTime());
+        details.computeIfAbsent("warnings", v -> getTrustStoreWarnings());
+    }
+
+    private List<String> getTrustStoreWarnings() {
+        List<String> certificateExpirationWarnings = truststoreHealthIndicator.getCertificateExpirationWarnings();
+        return certificateExpirationWarnings.isEmpty() ? null : certificateExpirationWarnings;
+    }
+
+    private String getServiceStartTime() {
+        TimeGauge startTime = meterRegistry.find("process.start.time").timeGauge();
+        return startTime != null ? ofEpochMilli(valueOf(startTime.value(MILLISECONDS)).longValue()).toString() : null;
+    }
+
+    private String getServiceUpTime() {
+        TimeGauge upTime = meterRegistry.find("process.uptime").timeGauge();
+        return upTime != null ? ofSeconds(valueOf(upTime.value(SECONDS)).longValue()).toString() : null;
+    }
+
+    private Status getAggregatedStatus(Map<String, Status> healthIndicatorStatuses) {
+        Optional<Status> anyNotUp = healthIndicatorStatuses.values().stream()
+                .filter(status -> !Status.UP.equals(status))
+                .findAny();
+        return anyNotUp.isPresent() ? Status.DOWN : Status.UP;
+    }
+}
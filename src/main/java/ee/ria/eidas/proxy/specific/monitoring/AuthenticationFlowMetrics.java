@@ -0,0 +1,124 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.FlowMetricsProperties;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.FlowStageEvent;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.PayloadSize;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Times the stages of the authentication flow, tagged with the stage and its outcome, either {@code success} or
+ * {@code failure}. The timers are registered up front for every stage and outcome, so the number of time series is
+ * fixed. The timers publish the configured service level objective buckets, and the percentile histogram if enabled.
+ * Each stage is also recorded as a {@link FlowStageEvent} for JDK Flight Recorder.
+ */
+public class AuthenticationFlowMetrics {
+    static final String STAGE_TIMER_NAME = "eidas.proxy.flow.stage";
+    private final Map<Stage, Timer> successTimers = new EnumMap<>(Stage.class);
+    private final Map<Stage, Timer> failureTimers = new EnumMap<>(Stage.class);
+
+    public AuthenticationFlowMetrics(FlowMetricsProperties flowMetricsProperties, MeterRegistry meterRegistry) {
+        for (Stage stage : Stage.values()) {
+            successTimers.put(stage, stageTimer(flowMetricsProperties, meterRegistry, stage, "success"));
+            failureTimers.put(stage, stageTimer(flowMetricsProperties, meterRegistry, stage, "failure"));
+        }
+    }
+
+    public <T, E extends Exception> T timed(Stage stage, Call<T, E> call) throws E {
+        return timed(stage, call, PayloadSize::of);
+    }
+
+    /**
+     * Times the stage and records the payload size given by the function, for the stages whose result is not the
+     * message itself, such as the size of the input of a stage that decodes or unmarshals a message. The function is
+     * applied to the result, which is {@code null} if the stage failed.
+     */
+    public <T, E extends Exception> T timed(Stage stage, Call<T, E> call, ToLongFunction<? super T> payloadSize) throws E {
+        FlowStageEvent event = new FlowStageEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        T result = null;
+        boolean succeeded = false;
+        try {
+            result = call.call();
+            succeeded = true;
+            return result;
+        } finally {
+            record(stage, startTime, succeeded);
+            T stageResult = result;
+            event.end(stage.getName(), succeeded, () -> payloadSize.applyAsLong(stageResult));
+        }
+    }
+
+    /**
+     * Times the stage until the returned future completes. A call that fails before returning a future is recorded as
+     * a failure.
+     */
+    public <T> CompletableFuture<T> timedAsync(Stage stage, Supplier<CompletableFuture<T>> call) {
+        FlowStageEvent event = new FlowStageEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            record(stage, startTime, false);
+            event.end(stage.getName(), false, () -> PayloadSize.of(null));
+            throw e;
+        }
+        return result.whenComplete((value, e) -> {
+            record(stage, startTime, e == null);
+            event.end(stage.getName(), e == null, () -> PayloadSize.of(value));
+        });
+    }
+
+    private void record(Stage stage, long startTime, boolean succeeded) {
+        (succeeded ? successTimers : failureTimers).get(stage).record(System.nanoTime() - startTime, NANOSECONDS);
+    }
+
+    private static Timer stageTimer(FlowMetricsProperties flowMetricsProperties, MeterRegistry meterRegistry, Stage stage, String outcome) {
+        return Timer.builder(STAGE_TIMER_NAME)
+                .description("Authentication flow stage time")
+                .tag("stage", stage.getName())
+                .tag("outcome", outcome)
+                .serviceLevelObjectives(flowMetricsProperties.getSloBoundaries().toArray(new Duration[0]))
+                .publishPercentileHistogram(flowMetricsProperties.isPercentileHistogramEnabled())
+                .register(meterRegistry);
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Stage {
+        LIGHT_TOKEN_DECODE("lightTokenDecode"),
+        NODE_CACHE_GET_AND_REMOVE("nodeCacheGetAndRemove"),
+        LIGHT_REQUEST_UNMARSHAL("lightRequestUnmarshal"),
+        AUTHORIZATION_URL_BUILD("authorizationUrlBuild"),
+        IDP_REQUEST_MARSHAL("idpRequestMarshal"),
+        IDP_CACHE_PUT("idpCachePut"),
+        TOKEN_ENDPOINT_CALL("tokenEndpointCall"),
+        ID_TOKEN_VALIDATION("idTokenValidation"),
+        CLAIM_TRANSLATION("claimTranslation"),
+        CONSENT_MARSHAL("consentMarshal"),
+        CONSENT_STORE("consentStore"),
+        RESPONSE_MARSHAL("responseMarshal"),
+        NODE_CACHE_PUT("nodeCachePut");
+
+        private final String name;
+    }
+}
@@ -0,0 +1,61 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.Map;
+
+/**
+ * The logging and tracing context of a request, captured on the thread that starts an asynchronous step of the
+ * authentication flow and restored on the thread that continues it. The MDC is copied as is. The current observation,
+ * and so the span of the request, is restored through the thread local accessors of the context propagation library,
+ * so that the spans created after an asynchronous step are children of the request span and the trace context sent
+ * to the IdP matches the {@code traceId} in the logs.
+ */
+public final class FlowContext {
+    private static final ContextSnapshotFactory SNAPSHOT_FACTORY = ContextSnapshotFactory.builder().build();
+    private final Map<String, String> mdc;
+    private final ContextSnapshot snapshot;
+
+    private FlowContext(Map<String, String> mdc, ContextSnapshot snapshot) {
+        this.mdc = mdc;
+        this.snapshot = snapshot;
+    }
+
+    public static FlowContext capture() {
+        return new FlowContext(MDC.getCopyOfContextMap(), SNAPSHOT_FACTORY.captureAll());
+    }
+
+    /**
+     * Decorates the tasks of an executor, so that each task runs in the context of the thread that submitted it.
+     */
+    public static TaskDecorator taskDecorator() {
+        return runnable -> {
+            FlowContext flowContext = capture();
+            return () -> flowContext.run(runnable);
+        };
+    }
+
+    /**
+     * Runs the given task in this context and restores the previous context of the current thread afterwards.
+     */
+    public void run(Runnable runnable) {
+        Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+        setMdc(mdc);
+        try (ContextSnapshot.Scope ignored = snapshot.setThreadLocals()) {
+            runnable.run();
+        } finally {
+            setMdc(previousMdc);
+        }
+    }
+
+    private static void setMdc(Map<String, String> mdc) {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        } else {
+            MDC.clear();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Call;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Creates the child spans of the authentication flow for the calls to the IdP and the Ignite cluster. The spans are
+ * sampled as decided for the trace, see {@code management.tracing.sampling.probability}. When tracing is disabled,
+ * the no-op {@link Tracer#NOOP} is used.
+ * <p>
+ * The trace context is added to the outbound requests to the IdP only if enabled, as not every IdP accepts unknown
+ * headers.
+ */
+@RequiredArgsConstructor
+public class FlowTracing {
+    public static final FlowTracing NOOP = new FlowTracing(Tracer.NOOP, Propagator.NOOP, false);
+    private final Tracer tracer;
+    private final Propagator propagator;
+    private final boolean propagationEnabled;
+
+    public <T, E extends Exception> T inSpan(String name, Call<T, E> call) throws E {
+        return inSpan(name, Map.of(), call);
+    }
+
+    public <T, E extends Exception> T inSpan(String name, Map<String, String> tags, Call<T, E> call) throws E {
+        Span span = startSpan(name, tags);
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            return call.call();
+        } catch (Exception e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Ends the span when the returned future completes. The span is in scope only while the call returns the future.
+     */
+    public <T> CompletableFuture<T> inSpanAsync(String name, Map<String, String> tags, Supplier<CompletableFuture<T>> call) {
+        Span span = startSpan(name, tags);
+        CompletableFuture<T> result;
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            result = call.get();
+        } catch (RuntimeException e) {
+            span.error(e).end();
+            throw e;
+        }
+        return result.whenComplete((value, e) -> {
+            if (e != null) {
+                span.error(e);
+            }
+            span.end();
+        });
+    }
+
+    /**
+     * Passes the headers of the current trace context to the given setter, if propagation is enabled.
+     */
+    public void injectTraceContext(BiConsumer<String, String> headerSetter) {
+        Span span = tracer.currentSpan();
+        if (propagationEnabled && span != null) {
+            propagator.inject(span.context(), headerSetter, BiConsumer::accept);
+        }
+    }
+
+    private Span startSpan(String name, Map<String, String> tags) {
+        Span span = tracer.nextSpan().name(name);
+        tags.forEach(span::tag);
+        return span.start();
+    }
+}
@@ -0,0 +1,115 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Runs the health indicators in parallel, each with its own deadline, within an overall latency budget. An indicator
+ * without a result by its deadline is reported as {@code UNKNOWN}, with the reason in the {@value #REASON} detail.
+ * <p>
+ * An indicator that is still running from an earlier request is not started again, its result is awaited instead. So
+ * there is at most one thread per indicator, even when a dependency hangs and the requests keep coming.
+ */
+@Slf4j
+@Component
+public class HealthIndicatorRunner {
+    public static final String REASON = "reason";
+    static final String TIMEOUT_PROPERTY_PREFIX = "eidas.proxy.health.indicator-timeouts.";
+    private final Map<String, CompletableFuture<Health>> runningIndicators = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${eidas.proxy.health.indicator-timeout:4s}")
+    private Duration defaultTimeout;
+
+    @Value("${eidas.proxy.health.latency-budget:5s}")
+    private Duration latencyBudget;
+
+    public HealthIndicatorRunner() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "health-indicator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Map<String, Health> runAll(Map<String, HealthIndicator> healthIndicators) {
+        long startTime = System.nanoTime();
+        Map<String, CompletableFuture<Health>> results = new LinkedHashMap<>();
+        healthIndicators.forEach((name, healthIndicator) -> results.put(name, start(name, healthIndicator)));
+        Map<String, Health> healths = new HashMap<>();
+        results.forEach((name, result) -> healths.put(name, await(name, result, startTime,
+                startTime + Math.min(getTimeout(name).toNanos(), latencyBudget.toNanos()))));
+        return healths;
+    }
+
+    /**
+     * Runs a single health indicator with its own deadline, which is not limited by the latency budget.
+     */
+    public Health run(String name, HealthIndicator healthIndicator) {
+        long startTime = System.nanoTime();
+        return await(name, start(name, healthIndicator), startTime, startTime + getTimeout(name).toNanos());
+    }
+
+    /**
+     * @return whether no indicator is running, including the ones left running after their deadline
+     */
+    boolean isIdle() {
+        return runningIndicators.values().stream().allMatch(CompletableFuture::isDone);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<Health> start(String name, HealthIndicator healthIndicator) {
+        return runningIndicators.compute(name, (n, running) -> running != null && !running.isDone()
+                ? running
+                : CompletableFuture.supplyAsync(healthIndicator::health, executor));
+    }
+
+    private Duration getTimeout(String name) {
+        return environment.getProperty(TIMEOUT_PROPERTY_PREFIX + name, Duration.class, defaultTimeout);
+    }
+
+    private Health await(String name, CompletableFuture<Health> result, long startTime, long deadline) {
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), NANOSECONDS);
+        } catch (TimeoutException e) {
+            String reason = format("No result within %d ms", NANOSECONDS.toMillis(deadline - startTime));
+            log.warn("Health indicator '{}' timed out: {}", name, reason);
+            return Health.unknown().withDetail(REASON, reason).build();
+        } catch (ExecutionException e) {
+            log.warn("Health indicator '{}' failed: {}", name, e.getCause().getMessage());
+            return Health.down().withDetail(REASON, String.valueOf(e.getCause().getMessage())).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Health.unknown().withDetail(REASON, "Interrupted").build();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.monitoring.HealthSnapshot.ProbeResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthContributorRegistry;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.NamedContributor;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Probes each health indicator in the background on its own interval and publishes the results as an immutable
+ * {@link HealthSnapshot}, so that the {@code heartbeat} endpoint does not call the dependencies itself. Each indicator
+ * has a thread of its own, so a dependency that does not respond delays only its own results. The probes start when
+ * the application is ready, so that the lazily created dependencies are not initialized during startup, and until its
+ * first probe completes an indicator is reported as {@code UNKNOWN}.
+ * <p>
+ * Each probe runs through the {@link HealthIndicatorRunner}, with the deadline of the indicator. A probe without a
+ * result by its deadline is published as {@code UNKNOWN}, and the indicator that is still running is awaited by the
+ * next probe instead of being started again.
+ * <p>
+ * The response body of the endpoint is built once per probe cycle: whenever a result is published, and at the shortest
+ * probe interval, so that stale results are reported even when no probe completes. The requests are served that
+ * immutable body as is.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("eidas.proxy.health.snapshot.enabled")
+public class HealthProbeScheduler {
+    static final String INTERVAL_PROPERTY_PREFIX = "eidas.proxy.health.snapshot.interval.";
+    static final String NOT_PROBED_REASON = "Not probed yet";
+
+    @Autowired
+    private HealthContributorRegistry healthContributorRegistry;
+
+    @Autowired
+    private HealthIndicatorRunner healthIndicatorRunner;
+
+    @Autowired
+    private ApplicationHealthDetails applicationHealthDetails;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${eidas.proxy.health.snapshot.default-interval:10s}")
+    private Duration defaultInterval;
+
+    private final Clock clock = Clock.systemUTC();
+    private volatile HealthSnapshot snapshot = HealthSnapshot.EMPTY;
+    private volatile Map<String, Object> responseBody;
+    private Map<String, Object> staticDetails;
+    private ScheduledExecutorService scheduler;
+
+    public HealthSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the response body built from the latest snapshot, or from an empty snapshot before the probes start
+     */
+    public Map<String, Object> getResponseBody() {
+        Map<String, Object> body = responseBody;
+        return body != null ? body : buildResponseBody();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void startProbes() {
+        Map<String, HealthIndicator> healthIndicators = healthContributorRegistry.stream()
+                .filter(hc -> hc.getContributor() instanceof HealthIndicator)
+                .collect(toMap(NamedContributor::getName, hc -> (HealthIndicator) hc.getContributor()));
+        AtomicInteger threadNumber = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(healthIndicators.size() + 1, runnable -> {
+            Thread thread = new Thread(runnable, "health-probe-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Duration> intervals = healthIndicators.keySet().stream().collect(toMap(identity(),
+                name -> environment.getProperty(INTERVAL_PROPERTY_PREFIX + name, Duration.class, defaultInterval)));
+        seed(intervals);
+        healthIndicators.forEach((name, healthIndicator) -> {
+            Duration interval = intervals.get(name);
+            log.info("Health indicator '{}' is probed every {}", name, interval);
+            scheduler.scheduleWithFixedDelay(() -> probe(name, healthIndicator, interval), 0, interval.toMillis(), MILLISECONDS);
+        });
+        intervals.values().stream().min(Duration::compareTo).ifPresent(shortestInterval -> scheduler.scheduleWithFixedDelay(
+                this::rebuildResponseBody, shortestInterval.toMillis(), shortestInterval.toMillis(), MILLISECONDS));
+    }
+
+    @PreDestroy
+    void stopProbes() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void probe(String name, HealthIndicator healthIndicator, Duration interval) {
+        Health health = healthIndicatorRunner.run(name, healthIndicator);
+        Object reason = health.getDetails().get(HealthIndicatorRunner.REASON);
+        publish(new ProbeResult(name, health.getStatus(), reason != null ? reason.toString() : null, clock.instant(), interval));
+    }
+
+    private synchronized void seed(Map<String, Duration> intervals) {
+        HealthSnapshot initialSnapshot = HealthSnapshot.EMPTY;
+        for (Map.Entry<String, Duration> interval : intervals.entrySet()) {
+            initialSnapshot = initialSnapshot.with(new ProbeResult(interval.getKey(), Status.UNKNOWN, NOT_PROBED_REASON, clock.instant(), interval.getValue()));
+        }
+        snapshot = initialSnapshot;
+        rebuildResponseBody();
+    }
+
+    private synchronized void publish(ProbeResult result) {
+        snapshot = snapshot.with(result);
+        rebuildResponseBody();
+    }
+
+    private synchronized void rebuildResponseBody() {
+        responseBody = buildResponseBody();
+    }
+
+    /**
+     * A stale result is reported as {@code UNKNOWN}, with the reason. The build, git and start time details are
+     * collected once.
+     */
+    private synchronized Map<String, Object> buildResponseBody() {
+        if (staticDetails == null) {
+            staticDetails = Collections.unmodifiableMap(applicationHealthDetails.getStaticDetails());
+        }
+        HealthSnapshot currentSnapshot = snapshot;
+        Instant now = clock.instant();
+        Map<String, Status> healthIndicatorStatuses = new HashMap<>();
+        List<Map<String, String>> dependencies = new ArrayList<>();
+        for (ProbeResult result : currentSnapshot.getResults().values()) {
+            boolean isStale = result.isStale(now);
+            Status status = isStale ? Status.UNKNOWN : result.getStatus();
+            String reason = isStale
+                    ? format("No result for more than %d intervals of %s", ProbeResult.STALE_AFTER_INTERVALS, result.getInterval())
+                    : result.getReason();
+            healthIndicatorStatuses.put(result.getName(), status);
+            Map<String, String> dependency = new HashMap<>();
+            dependency.put("name", result.getName());
+            dependency.put("status", status.getCode());
+            if (reason != null) {
+                dependency.put(HealthIndicatorRunner.REASON, reason);
+            }
+            dependency.put("checkedAt", result.getCheckedAt().toString());
+            dependency.put("age", result.getAge(now).toString());
+            dependencies.add(Collections.unmodifiableMap(dependency));
+        }
+        Map<String, Object> details = new HashMap<>(staticDetails);
+        applicationHealthDetails.addCurrentDetails(details, healthIndicatorStatuses, now);
+        if (currentSnapshot.getResults().isEmpty()) {
+            details.put("status", Status.DOWN.getCode());
+        }
+        details.put("dependencies", Collections.unmodifiableList(dependencies));
+        return Collections.unmodifiableMap(details);
+    }
+}
@@ -0,0 +1,54 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of the latest health indicator results, replaced as a whole whenever a probe completes.
+ */
+@RequiredArgsConstructor
+public class HealthSnapshot {
+    static final HealthSnapshot EMPTY = new HealthSnapshot(Collections.emptyMap());
+
+    @Getter
+    private final Map<String, ProbeResult> results;
+
+    HealthSnapshot with(ProbeResult result) {
+        Map<String, ProbeResult> updatedResults = new TreeMap<>(results);
+        updatedResults.put(result.getName(), result);
+        return new HealthSnapshot(Collections.unmodifiableMap(updatedResults));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ProbeResult {
+        static final int STALE_AFTER_INTERVALS = 3;
+        private final String name;
+        private final Status status;
+        /**
+         * Why the status is not {@code UP}, or {@code null} if the health indicator gave no reason.
+         */
+        private final String reason;
+        private final Instant checkedAt;
+        private final Duration interval;
+
+        public Duration getAge(Instant now) {
+            return Duration.between(checkedAt, now);
+        }
+
+        /**
+         * A result is stale when it is older than three intervals of its probe, that is, when the probe has missed at
+         * least two intervals, for example because its thread is blocked.
+         */
+        public boolean isStale(Instant now) {
+            return getAge(now).compareTo(interval.multipliedBy(STALE_AFTER_INTERVALS)) > 0;
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package ee.ria.eidas.proxy.specific.monitoring.health;
 
-import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication.CorrelatedRequestsHolder;
-import eu.eidas.auth.commons.light.ILightResponse;
-import org.apache.ignite.Ignite;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
+import ee.ria.eidas.proxy.specific.storage.IgniteCacheProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.health.AbstractHealthIndicator;
@@ -10,33 +9,33 @@ import org.springframework.boot.actuate.health.Health;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
-import javax.cache.Cache;
 import java.util.UUID;
 
 @Component
 public class IgniteClusterHealthIndicator extends AbstractHealthIndicator {
 
-    @Lazy
     @Autowired
-    private Ignite igniteClient;
+    private IgniteCacheProvider igniteCacheProvider;
 
     @Lazy
     @Autowired
-    private Cache<String, CorrelatedRequestsHolder> idpRequestCommunicationCache;
+    @Qualifier("specificMSIdpRequestCorrelationMap")
+    private CommunicationCache<UUID, byte[]> idpRequestCommunicationCache;
 
     @Lazy
     @Autowired
-    private Cache<String, ILightResponse> idpConsentCommunicationCache;
+    @Qualifier("specificMSIdpConsentCorrelationMap")
+    private CommunicationCache<UUID, byte[]> idpConsentCommunicationCache;
 
     @Lazy
     @Autowired
     @Qualifier("nodeSpecificProxyserviceRequestCache")
-    private Cache<String, String> eidasNodeRequestCommunicationCache;
+    private CommunicationCache<String, String> eidasNodeRequestCommunicationCache;
 
     @Lazy
     @Autowired
     @Qualifier("nodeSpecificProxyserviceResponseCache")
-    private Cache<String, String> eidasNodeResponseCommunicationCache;
+    private CommunicationCache<String, String> eidasNodeResponseCommunicationCache;
 
     public IgniteClusterHealthIndicator() {
         super("Ignite cluster health check failed");
@@ -44,7 +43,7 @@ public class IgniteClusterHealthIndicator extends AbstractHealthIndicator {
 
     @Override
     protected void doHealthCheck(Health.Builder builder) {
-        if (igniteClient.cluster().active()
+        if (igniteCacheProvider.isClusterActive()
                 && isCacheHealthy(eidasNodeRequestCommunicationCache)
                 && isCacheHealthy(eidasNodeResponseCommunicationCache)
                 && isCacheHealthy(idpRequestCommunicationCache)
@@ -56,7 +55,7 @@ public class IgniteClusterHealthIndicator extends AbstractHealthIndicator {
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private boolean isCacheHealthy(Cache cache) {
+    private boolean isCacheHealthy(CommunicationCache cache) {
         String uuid = UUID.randomUUID().toString();
         cache.put(uuid, uuid);
         return uuid.equals(cache.getAndRemove(uuid));
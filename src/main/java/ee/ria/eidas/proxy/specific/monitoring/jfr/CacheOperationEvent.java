@@ -0,0 +1,46 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An operation of a communication cache, tagged with the logical cache name. Neither the keys nor the values are
+ * recorded.
+ */
+@Name(CacheOperationEvent.NAME)
+@Label("Communication Cache Operation")
+@Category({"eIDAS Proxy", "Communication Cache"})
+@StackTrace(false)
+@Enabled(false)
+public class CacheOperationEvent extends Event {
+    public static final String NAME = "ee.ria.eidas.proxy.CacheOperation";
+
+    @Label("Cache")
+    String cache;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Payload Size")
+    @Description("Size of the value written or read, in bytes for binary values and in characters for XML messages, or -1 if no value")
+    long payloadSize = -1;
+
+    public void end(String cache, String operation, boolean succeeded, Object payload) {
+        end();
+        if (shouldCommit()) {
+            this.cache = cache;
+            this.operation = operation;
+            this.succeeded = succeeded;
+            this.payloadSize = PayloadSize.of(payload);
+            commit();
+        }
+    }
+}
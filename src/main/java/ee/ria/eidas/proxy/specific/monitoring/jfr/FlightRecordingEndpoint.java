@@ -0,0 +1,202 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.Access;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.WebServerNamespace;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.PathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts, stops and dumps a JDK Flight Recorder recording of the application, with the events of the authentication
+ * flow enabled. The recording is bounded: it stops by itself after {@code eidas.proxy.jfr.max-duration} and keeps at
+ * most {@code eidas.proxy.jfr.max-size} of data. Only one recording exists at a time, starting a new one closes the
+ * previous one. The events of the authentication flow are disabled by default, so other recordings of the JVM do not
+ * contain them unless enabled in their settings.
+ * <p>
+ * The endpoint is not accessible unless access to it is granted with
+ * {@code management.endpoint.flightrecording.access=unrestricted}, as it changes the state of the application, and it
+ * answers only on the separate management port, see {@code management.server.port}. The JVM events that record the
+ * environment variables, system properties, JVM arguments and processes of the host are disabled in the recording,
+ * as they contain the secrets of the configuration.
+ */
+@Slf4j
+@Component
+@WebEndpoint(id = "flightrecording", defaultAccess = Access.NONE)
+public class FlightRecordingEndpoint {
+    static final String RECORDING_NAME = "eidas-proxy";
+    static final String START_ACTION = "start";
+    static final String STOP_ACTION = "stop";
+    static final String DUMP_SELECTOR = "dump";
+    static final List<String> DISABLED_JVM_EVENTS = List.of("jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty",
+            "jdk.InitialSecurityProperty", "jdk.JVMInformation", "jdk.SystemProcess");
+
+    @Value("${eidas.proxy.jfr.settings:default}")
+    private String settings;
+
+    @Value("${eidas.proxy.jfr.max-duration:10m}")
+    private Duration maxDuration;
+
+    @Value("${eidas.proxy.jfr.max-size:100MB}")
+    private DataSize maxSize;
+
+    private Recording recording;
+
+    @ReadOperation
+    public WebEndpointResponse<Map<String, Object>> status(WebServerNamespace serverNamespace) {
+        if (!WebServerNamespace.MANAGEMENT.equals(serverNamespace)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        return new WebEndpointResponse<>(status());
+    }
+
+    /**
+     * Starts or stops the recording. Both are {@code POST} requests, as only {@code GET} and {@code POST} are allowed by
+     * default, see {@code eidas.proxy.webapp.allowed-http-methods}.
+     */
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> control(WebServerNamespace serverNamespace, @Selector String action) {
+        if (!WebServerNamespace.MANAGEMENT.equals(serverNamespace)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        } else if (START_ACTION.equals(action)) {
+            return new WebEndpointResponse<>(start());
+        } else if (STOP_ACTION.equals(action)) {
+            return new WebEndpointResponse<>(stop());
+        }
+        return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    /**
+     * Returns the data recorded so far. The recording continues, if running. Each dump is written to its own file,
+     * which is deleted once the response has been written.
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump(WebServerNamespace serverNamespace, @Selector String selector) {
+        if (!WebServerNamespace.MANAGEMENT.equals(serverNamespace) || !DUMP_SELECTOR.equals(selector)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Path dumpFile = dumpRecording();
+        return dumpFile != null
+                ? new WebEndpointResponse<>(new DumpFileResource(dumpFile), WebEndpointResponse.STATUS_OK)
+                : new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (recording == null) {
+            status.put("state", "NONE");
+            return status;
+        }
+        status.put("name", recording.getName());
+        status.put("state", recording.getState().name());
+        status.put("settings", settings);
+        status.put("startTime", recording.getStartTime());
+        status.put("stopTime", recording.getStopTime());
+        status.put("maxDuration", maxDuration);
+        status.put("maxSize", maxSize.toBytes());
+        status.put("size", recording.getSize());
+        return status;
+    }
+
+    synchronized Map<String, Object> start() {
+        closeRecording();
+        Recording newRecording;
+        try {
+            newRecording = new Recording(Configuration.getConfiguration(settings));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Unable to read JFR settings: " + settings, e);
+        }
+        newRecording.setName(RECORDING_NAME);
+        newRecording.enable(RequestHandlingEvent.class);
+        newRecording.enable(FlowStageEvent.class);
+        newRecording.enable(CacheOperationEvent.class);
+        DISABLED_JVM_EVENTS.forEach(newRecording::disable);
+        newRecording.setToDisk(true);
+        newRecording.setDuration(maxDuration);
+        newRecording.setMaxSize(maxSize.toBytes());
+        newRecording.start();
+        recording = newRecording;
+        log.info("JFR recording started with settings '{}', max duration {} and max size {}", settings, maxDuration, maxSize);
+        return status();
+    }
+
+    synchronized Map<String, Object> stop() {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+            log.info("JFR recording stopped, size {} bytes", recording.getSize());
+        }
+        return status();
+    }
+
+    private synchronized Path dumpRecording() {
+        if (recording == null || recording.getState() == RecordingState.NEW) {
+            return null;
+        }
+        Path dumpFile = null;
+        try {
+            dumpFile = Files.createTempFile(RECORDING_NAME + "-", ".jfr");
+            recording.dump(dumpFile);
+            return dumpFile;
+        } catch (IOException e) {
+            deleteDumpFile(dumpFile);
+            throw new IllegalStateException("Unable to dump JFR recording", e);
+        }
+    }
+
+    @PreDestroy
+    synchronized void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private static void deleteDumpFile(Path dumpFile) {
+        if (dumpFile != null) {
+            try {
+                Files.deleteIfExists(dumpFile);
+            } catch (IOException e) {
+                log.warn("Unable to delete JFR dump file {}: {}", dumpFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A dump file that is deleted when the stream that writes it to the response is closed.
+     */
+    static class DumpFileResource extends PathResource {
+        private final Path dumpFile;
+
+        DumpFileResource(Path dumpFile) {
+            super(dumpFile);
+            this.dumpFile = dumpFile;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(dumpFile, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A stage of the authentication flow, as timed by
+ * {@link ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics}.
+ */
+@Name(FlowStageEvent.NAME)
+@Label("Authentication Flow Stage")
+@Category({"eIDAS Proxy", "Authentication Flow"})
+@StackTrace(false)
+@Enabled(false)
+public class FlowStageEvent extends Event {
+    public static final String NAME = "ee.ria.eidas.proxy.FlowStage";
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Payload Size")
+    @Description("Size of the message, token or cache entry produced or read by the stage, in bytes for binary values and in characters for text, or -1 if not applicable")
+    long payloadSize = -1;
+
+    /**
+     * @param payloadSize the size of the payload, computed only if the event is recorded
+     */
+    public void end(String stage, boolean succeeded, LongSupplier payloadSize) {
+        end();
+        if (shouldCommit()) {
+            this.stage = stage;
+            this.succeeded = succeeded;
+            this.payloadSize = payloadSize.getAsLong();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+/**
+ * Size of a message or cache entry, in bytes for binary values and in characters for text, or -1 for other values.
+ */
+public final class PayloadSize {
+
+    private PayloadSize() {
+    }
+
+    public static long of(Object payload) {
+        if (payload instanceof byte[]) {
+            return ((byte[]) payload).length;
+        } else if (payload instanceof String) {
+            return ((String) payload).length();
+        }
+        return -1;
+    }
+}
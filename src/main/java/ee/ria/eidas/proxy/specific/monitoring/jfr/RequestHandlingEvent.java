@@ -0,0 +1,52 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Handling of a request to an endpoint of the authentication flow, until the asynchronous result of the controller
+ * completes. The request parameters are not recorded.
+ */
+@Name(RequestHandlingEvent.NAME)
+@Label("Request Handling")
+@Category({"eIDAS Proxy", "Authentication Flow"})
+@StackTrace(false)
+@Enabled(false)
+public class RequestHandlingEvent extends Event {
+    public static final String NAME = "ee.ria.eidas.proxy.RequestHandling";
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    public static <T> CompletableFuture<T> record(String endpoint, Supplier<CompletableFuture<T>> handler) {
+        RequestHandlingEvent event = new RequestHandlingEvent();
+        event.begin();
+        CompletableFuture<T> result;
+        try {
+            result = handler.get();
+        } catch (RuntimeException e) {
+            event.end(endpoint, false);
+            throw e;
+        }
+        return result.whenComplete((value, e) -> event.end(endpoint, e == null));
+    }
+
+    private void end(String endpoint, boolean succeeded) {
+        end();
+        if (shouldCommit()) {
+            this.endpoint = endpoint;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
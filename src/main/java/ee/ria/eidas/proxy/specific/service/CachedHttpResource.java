@@ -0,0 +1,57 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import lombok.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Body of a successful HTTP response together with the validators needed to request it again conditionally.
+ */
+@Value
+public class CachedHttpResource {
+    static final int NOT_MODIFIED = 304;
+    private static final String CONTENT = "content";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    String content;
+    String etag;
+    String lastModified;
+
+    public static CachedHttpResource from(HTTPResponse response) {
+        return new CachedHttpResource(response.getBody(), response.getHeaderValue("ETag"),
+                response.getHeaderValue("Last-Modified"));
+    }
+
+    /**
+     * Adds {@code If-None-Match} and {@code If-Modified-Since} headers, so that the server can respond with
+     * {@code 304 Not Modified} if this resource is still current.
+     */
+    public void addConditionalHeaders(HTTPRequest request) {
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.setHeader("If-Modified-Since", lastModified);
+        }
+    }
+
+    Map<String, Object> toJSONObject() {
+        Map<String, Object> jsonObject = new HashMap<>();
+        jsonObject.put(CONTENT, content);
+        jsonObject.put(ETAG, etag);
+        jsonObject.put(LAST_MODIFIED, lastModified);
+        return jsonObject;
+    }
+
+    static CachedHttpResource parse(Map<String, Object> jsonObject) {
+        if (jsonObject == null || !(jsonObject.get(CONTENT) instanceof String)) {
+            return null;
+        }
+        return new CachedHttpResource((String) jsonObject.get(CONTENT), (String) jsonObject.get(ETAG),
+                (String) jsonObject.get(LAST_MODIFIED));
+    }
+}
@@ -0,0 +1,46 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Issuer;
+import com.nimbusds.openid.connect.sdk.Nonce;
+import com.nimbusds.openid.connect.sdk.claims.IDTokenClaimsSet;
+import com.nimbusds.openid.connect.sdk.validators.IDTokenClaimsVerifier;
+import com.nimbusds.openid.connect.sdk.validators.IDTokenValidator;
+
+/**
+ * {@link IDTokenValidator} that selects keys from {@link OidcJwksCache} and verifies signed ID-tokens with the
+ * signature verifiers prepared by the cache instead of creating new ones for every token.
+ */
+public class CachingIdTokenValidator extends IDTokenValidator {
+    private final OidcJwksCache jwksCache;
+
+    public CachingIdTokenValidator(Issuer expectedIssuer, ClientID clientID, OidcJwksCache jwksCache) {
+        super(expectedIssuer, clientID, jwksCache, null);
+        this.jwksCache = jwksCache;
+    }
+
+    @Override
+    public IDTokenClaimsSet validate(JWT idToken, Nonce expectedNonce) throws BadJOSEException, JOSEException {
+        if (!(idToken instanceof SignedJWT)) {
+            return super.validate(idToken, expectedNonce);
+        }
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(jwksCache);
+        jwtProcessor.setJWSVerifierFactory(jwksCache.getVerifierFactory());
+        jwtProcessor.setJWTClaimsSetVerifier(new IDTokenClaimsVerifier(getExpectedIssuer(), getClientID(), expectedNonce, getMaxClockSkew()));
+        JWTClaimsSet claimsSet = jwtProcessor.process((SignedJWT) idToken, null);
+        try {
+            return new IDTokenClaimsSet(claimsSet);
+        } catch (ParseException e) {
+            throw new JOSEException(e.getMessage(), e);
+        }
+    }
+}
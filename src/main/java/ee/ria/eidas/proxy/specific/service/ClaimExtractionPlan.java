@@ -0,0 +1,131 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.IdTokenClaimMappingProperties;
+import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
+import eu.eidas.auth.commons.light.ILightRequest;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, pre-compiled form of {@link IdTokenClaimMappingProperties}. JsonPath expressions, attribute value
+ * post-processing patterns and eIDAS attribute definitions are resolved once at startup and reused for every ID-token.
+ */
+@Slf4j
+public final class ClaimExtractionPlan {
+    private static final Configuration JSON_PATH_CONFIGURATION = Configuration.defaultConfiguration();
+    private final ClaimPath naturalPersonSubject;
+    private final ClaimPath legalPersonSubject;
+    private final ClaimPath id;
+    private final ClaimPath issuer;
+    private final ClaimPath acr;
+    private final ImmutableMap<String, AttributeExtraction> attributes;
+
+    public ClaimExtractionPlan(IdTokenClaimMappingProperties mappingProperties, AttributeRegistryIndex attributeRegistry) {
+        this.naturalPersonSubject = new ClaimPath(mappingProperties.getNaturalPersonSubject());
+        this.legalPersonSubject = new ClaimPath(mappingProperties.getLegalPersonSubject());
+        this.id = new ClaimPath(mappingProperties.getId());
+        this.issuer = new ClaimPath(mappingProperties.getIssuer());
+        this.acr = new ClaimPath(mappingProperties.getAcr());
+        Map<String, AttributeExtraction> extractions = new HashMap<>();
+        mappingProperties.getAttributes().forEach((friendlyName, jsonPath) -> {
+            if (StringUtils.isNotEmpty(jsonPath)) {
+                String regexp = mappingProperties.getAttributesPostProcessing().get(friendlyName);
+                extractions.put(friendlyName, new AttributeExtraction(attributeRegistry.getByFriendlyName(friendlyName),
+                        new ClaimPath(jsonPath), regexp != null ? Pattern.compile(regexp) : null));
+            }
+        });
+        this.attributes = ImmutableMap.copyOf(extractions);
+    }
+
+    /**
+     * Reads the LightResponse values and the attributes requested in the LightRequest from the ID-token claims.
+     */
+    public ExtractedClaims extract(Map<String, Object> claims, ILightRequest lightRequest) {
+        boolean legalPerson = SpecificProxyService.containsLegalPersonAttributes(lightRequest);
+        String subject = (legalPerson ? legalPersonSubject : naturalPersonSubject).read(claims, "subject");
+        String responseId = id.read(claims, "responseId");
+        String loa = acr.read(claims, "loa");
+        String responseIssuer = issuer.read(claims, "issuer");
+        ImmutableAttributeMap.Builder attributeMap = ImmutableAttributeMap.builder();
+
+        for (AttributeDefinition<?> requestedAttribute : lightRequest.getRequestedAttributes().getAttributeMap().keySet()) {
+            String friendlyName = requestedAttribute.getFriendlyName();
+            AttributeExtraction extraction = attributes.get(friendlyName);
+            if (extraction == null) {
+                if (requestedAttribute.isRequired()) {
+                    throw new IllegalArgumentException("Required attribute " + friendlyName + " has no jsonpath configured to extract claim from id-token");
+                }
+                log.warn("Ignoring optional attribute {} - no mapping configured to extract it's corresponding value from id-token", friendlyName);
+                continue;
+            }
+            String claimValue = extraction.claimPath.read(claims, friendlyName);
+            if (claimValue != null) {
+                attributeMap.put(extraction.definition, extraction.postProcess(friendlyName, claimValue));
+            }
+        }
+        return new ExtractedClaims(subject, responseId, loa, responseIssuer, attributeMap.build());
+    }
+
+    @Value
+    public static class ExtractedClaims {
+        String subject;
+        String id;
+        String acr;
+        String issuer;
+        ImmutableAttributeMap attributes;
+    }
+
+    private static final class ClaimPath {
+        private final String expression;
+        private final JsonPath jsonPath;
+
+        private ClaimPath(String expression) {
+            this.expression = expression;
+            this.jsonPath = JsonPath.compile(expression);
+        }
+
+        private String read(Map<String, Object> claims, String responseAttributeName) {
+            try {
+                return jsonPath.read(claims, JSON_PATH_CONFIGURATION);
+            } catch (PathNotFoundException e) {
+                throw new IllegalStateException(String.format("Failed to read attribute (%s) value from ID-token with jsonpath (%s). Please check your configuration", responseAttributeName, expression));
+            }
+        }
+    }
+
+    private static final class AttributeExtraction {
+        private final AttributeDefinition<?> definition;
+        private final ClaimPath claimPath;
+        private final Pattern postProcessing;
+
+        private AttributeExtraction(AttributeDefinition<?> definition, ClaimPath claimPath, Pattern postProcessing) {
+            this.definition = definition;
+            this.claimPath = claimPath;
+            this.postProcessing = postProcessing;
+        }
+
+        private String postProcess(String friendlyName, String value) {
+            if (postProcessing == null) {
+                return value;
+            }
+            Matcher matcher = postProcessing.matcher(value);
+            if (matcher.find()) {
+                return matcher.group("attributeValue");
+            } else {
+                throw new IllegalStateException(String.format("Attribute '%s' with value '%s' does not match the expected format %s", friendlyName, value, postProcessing.pattern()));
+            }
+        }
+    }
+}
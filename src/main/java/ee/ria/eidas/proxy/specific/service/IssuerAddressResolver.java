@@ -0,0 +1,80 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.OidcProviderProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolves the IP address of the OpenID Connect provider issuer host outside the request path. The address is resolved
+ * when the provider metadata is updated and refreshed every {@link OidcProviderProperties#getIssuerAddressTtlInSeconds()}.
+ * If resolving fails, the last resolved address is kept.
+ */
+@Slf4j
+public class IssuerAddressResolver {
+    static final String RESOLUTION_TIMER_NAME = "eidas.proxy.oidc.issuer.address.resolution";
+    private final AtomicReference<String> issuerIpAddress = new AtomicReference<>();
+    private final String issuerHost;
+    private final Timer resolutionSuccessTimer;
+    private final Timer resolutionFailureTimer;
+
+    public IssuerAddressResolver(OidcProviderProperties oidcProperties, MeterRegistry meterRegistry) {
+        try {
+            this.issuerHost = new URL(oidcProperties.getIssuerUrl()).getHost();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Invalid OpenID Connect provider issuer URL: " + oidcProperties.getIssuerUrl(), e);
+        }
+        this.resolutionSuccessTimer = resolutionTimer(meterRegistry, "success");
+        this.resolutionFailureTimer = resolutionTimer(meterRegistry, "failure");
+    }
+
+    /**
+     * Returns the last resolved issuer IP address. Resolves it on the calling thread only if it has never been
+     * resolved successfully.
+     */
+    public String getIssuerIpAddress() {
+        String ipAddress = issuerIpAddress.get();
+        return ipAddress != null ? ipAddress : resolve();
+    }
+
+    @Scheduled(fixedDelayString = "${eidas.proxy.oidc.issuer-address-ttl-in-seconds:60}",
+            initialDelayString = "${eidas.proxy.oidc.issuer-address-ttl-in-seconds:60}", timeUnit = TimeUnit.SECONDS)
+    public void refresh() {
+        try {
+            resolve();
+        } catch (IllegalStateException e) {
+            log.warn("{}, keeping previously resolved address: {}", e.getMessage(), issuerIpAddress.get());
+        }
+    }
+
+    private String resolve() {
+        long startTime = System.nanoTime();
+        try {
+            String ipAddress = InetAddress.getByName(issuerHost).getHostAddress();
+            resolutionSuccessTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            String previousIpAddress = issuerIpAddress.getAndSet(ipAddress);
+            if (!ipAddress.equals(previousIpAddress)) {
+                log.info("Resolved OIDC issuer host {} to {}", issuerHost, ipAddress);
+            }
+            return ipAddress;
+        } catch (UnknownHostException e) {
+            resolutionFailureTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            throw new IllegalStateException("Unable to resolve OIDC issuer host: " + issuerHost, e);
+        }
+    }
+
+    private static Timer resolutionTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder(RESOLUTION_TIMER_NAME)
+                .description("OpenID Connect provider issuer host DNS resolution time")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
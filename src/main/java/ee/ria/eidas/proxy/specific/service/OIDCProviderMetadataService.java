@@ -1,5 +1,6 @@
 package ee.ria.eidas.proxy.specific.service;
 
+import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
 import com.nimbusds.oauth2.sdk.id.ClientID;
@@ -9,48 +10,208 @@ import com.nimbusds.openid.connect.sdk.op.OIDCProviderMetadata;
 import com.nimbusds.openid.connect.sdk.validators.IDTokenValidator;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.OidcProviderProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import ee.ria.eidas.proxy.specific.service.OidcMetadataSnapshotStore.StoredSnapshot;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Recover;
 import org.springframework.retry.annotation.Retryable;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.net.URL;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static com.nimbusds.jose.JWSAlgorithm.RS256;
-
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OIDCProviderMetadataService {
     private static final String HTTPS_PROTOCOL = "https";
-    private final AtomicReference<OIDCProviderMetadata> oidcProviderMetadata = new AtomicReference<>();
-    private final AtomicReference<IDTokenValidator> oidcIDTokenValidator = new AtomicReference<>();
+    private final AtomicReference<ProviderSnapshot> providerSnapshot = new AtomicReference<>();
+    private final AtomicBoolean connectionsPrewarmed = new AtomicBoolean();
     private final SpecificProxyServiceProperties specificProxyServiceProperties;
+    private final PooledOidcHttpClient oidcHttpClient;
+    private final OidcJwksCache oidcJwksCache;
+    private final IssuerAddressResolver issuerAddressResolver;
+    private final FlowTracing flowTracing;
+    private final TaskScheduler taskScheduler;
+    private final ObjectProvider<SharedOidcMetadataStore> sharedMetadataStoreProvider;
+    private final ObjectProvider<OIDCProviderMetadataService> metadataServiceProxy;
+    private OidcMetadataSnapshotStore snapshotStore;
+    private SharedOidcMetadataStore sharedMetadataStore;
+    private volatile boolean restoredFromSnapshot;
 
     public OIDCProviderMetadata getOidcProviderMetadata() {
-        return oidcProviderMetadata.get();
+        ProviderSnapshot snapshot = providerSnapshot.get();
+        return snapshot != null ? snapshot.metadata : null;
     }
 
     public IDTokenValidator getIdTokenValidator() {
-        return oidcIDTokenValidator.get();
+        ProviderSnapshot snapshot = providerSnapshot.get();
+        return snapshot != null ? snapshot.idTokenValidator : null;
+    }
+
+    public String getIssuerIpAddress() {
+        return issuerAddressResolver.getIssuerIpAddress();
     }
 
+    /**
+     * Starts from the persisted metadata snapshot when one is available and not older than
+     * {@code eidas.proxy.oidc.metadata.snapshot-max-age-in-seconds}, and refreshes it in the background once the
+     * application is ready. Without a snapshot, startup waits for the metadata to be fetched from the provider or the
+     * cluster shared cache.
+     */
     @PostConstruct
+    public void initMetadata() {
+        sharedMetadataStore = sharedMetadataStoreProvider.getIfAvailable();
+        String snapshotFile = specificProxyServiceProperties.getOidc().getMetadata().getSnapshotFile();
+        if (StringUtils.isNotBlank(snapshotFile)) {
+            snapshotStore = new OidcMetadataSnapshotStore(snapshotFile);
+            Optional<StoredSnapshot> storedSnapshot = snapshotStore.load(specificProxyServiceProperties.getOidc().getIssuerUrl());
+            if (storedSnapshot.isPresent() && isWithinMaxAge(storedSnapshot.get())
+                    && restoreSnapshot(storedSnapshot.get(), snapshotStore.getSnapshotFile().toString())) {
+                restoredFromSnapshot = true;
+                return;
+            }
+        }
+        updateMetadata();
+    }
+
+    /**
+     * The refresh goes through the proxy of this service, so that it is retried like the scheduled updates.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRestoredMetadataRefresh() {
+        if (restoredFromSnapshot) {
+            taskScheduler.schedule(this::refreshRestoredMetadata, Instant.now());
+        }
+    }
+
     @Scheduled(cron = "${eidas.proxy.oidc.metadata.update-schedule:0 0 0/24 * * ?}")
     @Retryable(value = {IllegalStateException.class}, maxAttemptsExpression = "${eidas.proxy.oidc.metadata.max-attempts:3}",
             backoff = @Backoff(delayExpression = "${eidas.proxy.oidc.metadata.backoff-delay-in-milliseconds:60000}"))
     public void updateMetadata() throws RuntimeException {
         log.info("Updating OIDC metadata for issuer: {}", specificProxyServiceProperties.getOidc().getIssuerUrl());
-        oidcProviderMetadata.set(requestOidcProviderMetadata());
-        oidcIDTokenValidator.set(createIdTokenValidator());
+        if (sharedMetadataStore == null) {
+            fetchMetadata();
+        } else if (!updateFromSharedMetadata()) {
+            try {
+                fetchMetadata();
+            } finally {
+                sharedMetadataStore.releaseRefreshLease();
+            }
+        }
+    }
+
+    /**
+     * Uses the metadata from the cluster shared cache if it is fresh or if another instance publishes it while holding
+     * the refresh lease. Returns {@code false} if this instance has to fetch the metadata from the provider.
+     */
+    private boolean updateFromSharedMetadata() {
+        String issuerUrl = specificProxyServiceProperties.getOidc().getIssuerUrl();
+        Optional<StoredSnapshot> sharedSnapshot = sharedMetadataStore.load(issuerUrl);
+        if (sharedSnapshot.isPresent() && sharedMetadataStore.isFresh(sharedSnapshot.get())
+                && installSharedSnapshot(sharedSnapshot.get())) {
+            return true;
+        }
+        if (sharedMetadataStore.tryAcquireRefreshLease()) {
+            return false;
+        }
+        Optional<StoredSnapshot> publishedSnapshot = sharedMetadataStore.awaitPublished(issuerUrl,
+                sharedSnapshot.map(StoredSnapshot::getSavedAt).orElse(null));
+        if (publishedSnapshot.isPresent() && installSharedSnapshot(publishedSnapshot.get())) {
+            return true;
+        }
+        log.warn("OIDC metadata was not published to cluster shared cache, fetching it from issuer: {}", issuerUrl);
+        return false;
+    }
+
+    /**
+     * Installs the metadata published by another instance as if this instance had fetched it, so that the issuer
+     * address is refreshed and the connections are prewarmed on every instance.
+     */
+    private boolean installSharedSnapshot(StoredSnapshot sharedSnapshot) {
+        if (!restoreSnapshot(sharedSnapshot, "cluster shared cache")) {
+            return false;
+        }
+        onMetadataUpdated(providerSnapshot.get().metadata);
+        if (snapshotStore != null) {
+            snapshotStore.save(specificProxyServiceProperties.getOidc().getIssuerUrl(), sharedSnapshot.getMetadata(), sharedSnapshot.getJwks());
+        }
+        return true;
+    }
+
+    private void fetchMetadata() {
+        ProviderSnapshot current = providerSnapshot.get();
+        CachedHttpResource metadataResource = requestOidcProviderMetadata(current != null ? current.metadataResource : null);
+        OIDCProviderMetadata metadata = current != null && current.metadataResource == metadataResource
+                ? current.metadata : parseOidcProviderMetadata(metadataResource);
+        URL jwkSetUrl = getJwkSetUrl(metadata);
+        oidcJwksCache.prefetch(jwkSetUrl);
+        providerSnapshot.set(new ProviderSnapshot(metadataResource, metadata, createIdTokenValidator(metadata)));
+        onMetadataUpdated(metadata);
+        String issuerUrl = specificProxyServiceProperties.getOidc().getIssuerUrl();
+        if (snapshotStore != null) {
+            snapshotStore.save(issuerUrl, metadataResource, oidcJwksCache.getJwks());
+        }
+        if (sharedMetadataStore != null) {
+            sharedMetadataStore.publish(issuerUrl, metadataResource, oidcJwksCache.getJwks());
+        }
+    }
+
+    private void onMetadataUpdated(OIDCProviderMetadata metadata) {
+        issuerAddressResolver.refresh();
+        if (specificProxyServiceProperties.getOidc().getHttpClient().isPrewarmConnections()
+                && connectionsPrewarmed.compareAndSet(false, true)) {
+            oidcHttpClient.prewarm(metadata.getTokenEndpointURI());
+        }
+    }
+
+    private boolean restoreSnapshot(StoredSnapshot storedSnapshot, String source) {
+        try {
+            OIDCProviderMetadata metadata = parseOidcProviderMetadata(storedSnapshot.getMetadata());
+            if (storedSnapshot.getJwks() != null) {
+                oidcJwksCache.restore(getJwkSetUrl(metadata), storedSnapshot.getJwks());
+            }
+            providerSnapshot.set(new ProviderSnapshot(storedSnapshot.getMetadata(), metadata, createIdTokenValidator(metadata)));
+            log.info("Restored OIDC metadata for issuer: {} from {}", specificProxyServiceProperties.getOidc().getIssuerUrl(), source);
+            return true;
+        } catch (IllegalStateException e) {
+            log.warn("Unable to restore OIDC metadata from {}: {}", source, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isWithinMaxAge(StoredSnapshot storedSnapshot) {
+        long maxAgeInSeconds = specificProxyServiceProperties.getOidc().getMetadata().getSnapshotMaxAgeInSeconds();
+        if (storedSnapshot.getSavedAt().plusSeconds(maxAgeInSeconds).isBefore(Instant.now())) {
+            log.warn("Ignoring OIDC metadata snapshot {}, saved at {} is older than {} seconds",
+                    snapshotStore.getSnapshotFile(), storedSnapshot.getSavedAt(), maxAgeInSeconds);
+            return false;
+        }
+        return true;
+    }
+
+    private void refreshRestoredMetadata() {
+        try {
+            metadataServiceProxy.getObject().updateMetadata();
+        } catch (IllegalStateException e) {
+            log.error("Unable to update OIDC metadata, using metadata restored from snapshot {} until the next scheduled update",
+                    snapshotStore.getSnapshotFile(), e);
+        }
     }
 
-    private OIDCProviderMetadata requestOidcProviderMetadata() {
+    private CachedHttpResource requestOidcProviderMetadata(CachedHttpResource previousMetadata) {
         OidcProviderProperties oidcProperties = specificProxyServiceProperties.getOidc();
         String issuerUrl = oidcProperties.getIssuerUrl();
         try {
@@ -62,14 +223,21 @@ public class OIDCProviderMetadataService {
             HTTPRequest httpRequest = request.toHTTPRequest();
             httpRequest.setConnectTimeout(oidcProperties.getConnectTimeoutInMilliseconds());
             httpRequest.setReadTimeout(oidcProperties.getReadTimeoutInMilliseconds());
-            HTTPResponse httpResponse = httpRequest.send();
+            if (previousMetadata != null) {
+                previousMetadata.addConditionalHeaders(httpRequest);
+            }
+            HTTPResponse httpResponse = flowTracing.inSpan("oidc-metadata-request", () -> httpRequest.send(oidcHttpClient));
+            if (previousMetadata != null && httpResponse.getStatusCode() == CachedHttpResource.NOT_MODIFIED) {
+                log.info("OIDC metadata not modified for issuer: {}", issuerUrl);
+                return previousMetadata;
+            }
             if (!httpResponse.indicatesSuccess()) {
                 throw new IllegalStateException("Failed to fetch OpenID Connect provider metadata from issuer: "
                         + issuerUrl + ", Invalid response status: " + httpResponse.getStatusCode());
             }
-            OIDCProviderMetadata oidcProviderMetadata = OIDCProviderMetadata.parse(httpResponse.getBodyAsJSONObject());
+            CachedHttpResource metadataResource = CachedHttpResource.from(httpResponse);
             log.info("Successfully updated OIDC metadata for issuer: {}", issuerUrl);
-            return oidcProviderMetadata;
+            return metadataResource;
         } catch (IllegalStateException e) {
             throw e;
         } catch (Exception e) {
@@ -77,17 +245,33 @@ public class OIDCProviderMetadataService {
         }
     }
 
-    private IDTokenValidator createIdTokenValidator() {
+    private OIDCProviderMetadata parseOidcProviderMetadata(CachedHttpResource metadataResource) {
+        try {
+            return OIDCProviderMetadata.parse(metadataResource.getContent());
+        } catch (ParseException e) {
+            throw new IllegalStateException("Failed to parse OpenID Connect provider metadata from issuer: "
+                    + specificProxyServiceProperties.getOidc().getIssuerUrl(), e);
+        }
+    }
+
+    private URL getJwkSetUrl(OIDCProviderMetadata oidcProviderMetadata) {
         try {
-            OIDCProviderMetadata oidcProviderMetadata = getOidcProviderMetadata();
-            Issuer iss = new Issuer(oidcProviderMetadata.getIssuer());
-            ClientID clientID = new ClientID(specificProxyServiceProperties.getOidc().getClientId());
             URL jwkSetURL = oidcProviderMetadata.getJWKSetURI().toURL();
             if (!HTTPS_PROTOCOL.equals(jwkSetURL.getProtocol())) {
                 log.warn("JWKS URL returned by OpenID Connect provider metadata is not using HTTPS protocol: {}",
                         jwkSetURL);
             }
-            IDTokenValidator validator = new IDTokenValidator(iss, clientID, RS256, jwkSetURL);
+            return jwkSetURL;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to setup OpenID Connect token validator for issuer: " + specificProxyServiceProperties.getOidc().getIssuerUrl(), e);
+        }
+    }
+
+    private IDTokenValidator createIdTokenValidator(OIDCProviderMetadata oidcProviderMetadata) {
+        try {
+            Issuer iss = new Issuer(oidcProviderMetadata.getIssuer());
+            ClientID clientID = new ClientID(specificProxyServiceProperties.getOidc().getClientId());
+            IDTokenValidator validator = new CachingIdTokenValidator(iss, clientID, oidcJwksCache);
             validator.setMaxClockSkew(specificProxyServiceProperties.getOidc().getMaxClockSkewInSeconds());
             log.info("Successfully updated OIDC token validator for issuer: {}", specificProxyServiceProperties.getOidc().getIssuerUrl());
             return validator;
@@ -101,4 +285,20 @@ public class OIDCProviderMetadataService {
         log.error("Unable to update OIDC metadata", e);
         throw e;
     }
+
+    /**
+     * Provider metadata and the ID-token validator built from it, published together so that readers never see a
+     * validator that does not match the metadata.
+     */
+    private static final class ProviderSnapshot {
+        private final CachedHttpResource metadataResource;
+        private final OIDCProviderMetadata metadata;
+        private final IDTokenValidator idTokenValidator;
+
+        private ProviderSnapshot(CachedHttpResource metadataResource, OIDCProviderMetadata metadata, IDTokenValidator idTokenValidator) {
+            this.metadataResource = metadataResource;
+            this.metadata = metadata;
+            this.idTokenValidator = idTokenValidator;
+        }
+    }
 }
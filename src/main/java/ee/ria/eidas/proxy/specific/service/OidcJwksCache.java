@@ -0,0 +1,278 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyType;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.JWSVerifierFactory;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPRequestSender;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.JwksProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.Key;
+import java.security.interfaces.RSAPublicKey;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.nimbusds.jose.JWSAlgorithm.RS256;
+
+/**
+ * OpenID Connect provider signing keys. The JWKS is fetched when the provider metadata is loaded and refreshed in the
+ * background, so that ID-token validation does not fetch keys on the request path. A token signed with an unknown key
+ * id triggers a single refetch, at most once per {@link JwksProperties#getMinRefetchIntervalInSeconds()}, also while no
+ * keys have been fetched, so that an unavailable JWKS endpoint is not called on every request. The requests that meet
+ * an unknown key id while a refetch is in flight wait for its result instead of fetching again. Signature verifiers are
+ * created once per key and reused for every ID-token.
+ */
+@Slf4j
+public class OidcJwksCache implements JWSKeySelector<SecurityContext> {
+    private static final JWSAlgorithm EXPECTED_ALGORITHM = RS256;
+    private final AtomicReference<JwksSnapshot> jwksSnapshot = new AtomicReference<>();
+    private final JWSVerifierFactory verifierFactory = new CachedJWSVerifierFactory();
+    private final Object fetchLock = new Object();
+    private final AtomicReference<CompletableFuture<JwksSnapshot>> refetchInFlight = new AtomicReference<>();
+    private final HTTPRequestSender httpRequestSender;
+    private final FlowTracing flowTracing;
+    private final long minRefetchIntervalInNanos;
+    private volatile long lastFetchTime;
+
+    public OidcJwksCache(JwksProperties jwksProperties, HTTPRequestSender httpRequestSender, FlowTracing flowTracing) {
+        this.httpRequestSender = httpRequestSender;
+        this.flowTracing = flowTracing;
+        this.minRefetchIntervalInNanos = TimeUnit.SECONDS.toNanos(jwksProperties.getMinRefetchIntervalInSeconds());
+        this.lastFetchTime = System.nanoTime() - minRefetchIntervalInNanos;
+    }
+
+    /**
+     * Fetches the JWKS from the given URL. If the fetch fails, previously fetched keys from the same URL are kept
+     * and the keys are fetched again on demand.
+     */
+    public void prefetch(URL jwkSetUrl) {
+        synchronized (fetchLock) {
+            JwksSnapshot current = jwksSnapshot.get();
+            if (current == null || !current.jwkSetUrl.toString().equals(jwkSetUrl.toString())) {
+                jwksSnapshot.set(new JwksSnapshot(jwkSetUrl, null, Collections.emptyList()));
+            }
+            fetch(jwkSetUrl);
+        }
+    }
+
+    /**
+     * Installs keys from a previously saved JWKS without fetching it.
+     */
+    public void restore(URL jwkSetUrl, CachedHttpResource jwks) {
+        synchronized (fetchLock) {
+            try {
+                jwksSnapshot.set(new JwksSnapshot(jwkSetUrl, jwks, parseSigningKeys(jwks.getContent())));
+                log.info("Restored OIDC JWKS from snapshot, key ids: {}", getKeyIds());
+            } catch (ParseException | JOSEException e) {
+                log.warn("Unable to restore OIDC JWKS from snapshot: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the JWKS document the current keys were parsed from, or {@code null} if no keys have been fetched.
+     */
+    public CachedHttpResource getJwks() {
+        JwksSnapshot current = jwksSnapshot.get();
+        return current != null ? current.jwks : null;
+    }
+
+    @Scheduled(fixedDelayString = "${eidas.proxy.oidc.jwks.refresh-interval-in-seconds:300}",
+            initialDelayString = "${eidas.proxy.oidc.jwks.refresh-interval-in-seconds:300}", timeUnit = TimeUnit.SECONDS)
+    public void refresh() {
+        synchronized (fetchLock) {
+            JwksSnapshot current = jwksSnapshot.get();
+            if (current != null) {
+                fetch(current.jwkSetUrl);
+            }
+        }
+    }
+
+    @Override
+    public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+        if (!EXPECTED_ALGORITHM.equals(header.getAlgorithm())) {
+            return Collections.emptyList();
+        }
+        JwksSnapshot current = jwksSnapshot.get();
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        List<RSAPublicKeyVerifier> keys = current.select(header.getKeyID());
+        if (keys.isEmpty()) {
+            keys = refetchForUnknownKey(current, header.getKeyID());
+        }
+        List<Key> publicKeys = new ArrayList<>(keys.size());
+        keys.forEach(key -> publicKeys.add(key.publicKey));
+        return publicKeys;
+    }
+
+    /**
+     * Returns a verifier factory that reuses the verifiers prepared for the keys returned by
+     * {@link #selectJWSKeys(JWSHeader, SecurityContext)}.
+     */
+    public JWSVerifierFactory getVerifierFactory() {
+        return verifierFactory;
+    }
+
+    public List<String> getKeyIds() {
+        JwksSnapshot current = jwksSnapshot.get();
+        return current != null ? new ArrayList<>(current.keysById.keySet()) : Collections.emptyList();
+    }
+
+    private List<RSAPublicKeyVerifier> refetchForUnknownKey(JwksSnapshot seen, String keyId) {
+        CompletableFuture<JwksSnapshot> refetch = refetchInFlight.get();
+        if (refetch == null) {
+            JwksSnapshot current = jwksSnapshot.get();
+            if (current != seen) {
+                return current.select(keyId);
+            }
+            if (System.nanoTime() - lastFetchTime < minRefetchIntervalInNanos) {
+                log.debug("Skipping JWKS refetch for unknown key id: {}, minimum refetch interval not passed", keyId);
+                return Collections.emptyList();
+            }
+            CompletableFuture<JwksSnapshot> newRefetch = new CompletableFuture<>();
+            refetch = refetchInFlight.compareAndExchange(null, newRefetch);
+            if (refetch == null) {
+                refetch = newRefetch;
+                refetch(newRefetch, keyId);
+            }
+        }
+        return refetch.join().select(keyId);
+    }
+
+    private void refetch(CompletableFuture<JwksSnapshot> refetch, String keyId) {
+        try {
+            synchronized (fetchLock) {
+                log.info("Refetching JWKS for unknown key id: {}", keyId);
+                fetch(jwksSnapshot.get().jwkSetUrl);
+            }
+        } finally {
+            refetchInFlight.set(null);
+            refetch.complete(jwksSnapshot.get());
+        }
+    }
+
+    private void fetch(URL jwkSetUrl) {
+        lastFetchTime = System.nanoTime();
+        try {
+            JwksSnapshot current = jwksSnapshot.get();
+            CachedHttpResource previousJwks = current != null && current.jwks != null
+                    && current.jwkSetUrl.toString().equals(jwkSetUrl.toString()) ? current.jwks : null;
+            HTTPRequest request = new HTTPRequest(HTTPRequest.Method.GET, jwkSetUrl);
+            if (previousJwks != null) {
+                previousJwks.addConditionalHeaders(request);
+            }
+            HTTPResponse response = flowTracing.inSpan("oidc-jwks-request", () -> request.send(httpRequestSender));
+            if (previousJwks != null && response.getStatusCode() == CachedHttpResource.NOT_MODIFIED) {
+                log.debug("OIDC JWKS not modified: {}", jwkSetUrl);
+                return;
+            }
+            if (!response.indicatesSuccess()) {
+                throw new IOException("HTTP " + response.getStatusCode() + ": " + response.getStatusMessage());
+            }
+            if (response.getBody() != null && response.getBody().length() > PooledOidcHttpClient.JWKS_SIZE_LIMIT_IN_BYTES) {
+                throw new IOException("Exceeded configured input limit of " + PooledOidcHttpClient.JWKS_SIZE_LIMIT_IN_BYTES + " bytes");
+            }
+            CachedHttpResource jwks = CachedHttpResource.from(response);
+            jwksSnapshot.set(new JwksSnapshot(jwkSetUrl, jwks, parseSigningKeys(jwks.getContent())));
+            log.info("Successfully updated OIDC JWKS from {}, key ids: {}", jwkSetUrl, getKeyIds());
+        } catch (IOException | ParseException | JOSEException e) {
+            log.warn("Failed to update OIDC JWKS from {}: {}", jwkSetUrl, e.getMessage());
+        }
+    }
+
+    private static List<RSAPublicKeyVerifier> parseSigningKeys(String jwksContent) throws ParseException, JOSEException {
+        List<RSAPublicKeyVerifier> keys = new ArrayList<>();
+        for (JWK jwk : JWKSet.parse(jwksContent).getKeys()) {
+            if (isSigningKey(jwk)) {
+                keys.add(new RSAPublicKeyVerifier(jwk.getKeyID(), jwk.toRSAKey()));
+            }
+        }
+        return keys;
+    }
+
+    private static boolean isSigningKey(JWK jwk) {
+        return KeyType.RSA.equals(jwk.getKeyType())
+                && (jwk.getKeyUse() == null || KeyUse.SIGNATURE.equals(jwk.getKeyUse()))
+                && (jwk.getAlgorithm() == null || EXPECTED_ALGORITHM.equals(jwk.getAlgorithm()));
+    }
+
+    private static final class JwksSnapshot {
+        private final URL jwkSetUrl;
+        private final CachedHttpResource jwks;
+        private final List<RSAPublicKeyVerifier> keys;
+        private final Map<String, RSAPublicKeyVerifier> keysById;
+
+        private JwksSnapshot(URL jwkSetUrl, CachedHttpResource jwks, List<RSAPublicKeyVerifier> keys) {
+            this.jwkSetUrl = jwkSetUrl;
+            this.jwks = jwks;
+            this.keys = List.copyOf(keys);
+            Map<String, RSAPublicKeyVerifier> byId = new HashMap<>();
+            keys.stream().filter(key -> key.keyId != null).forEach(key -> byId.put(key.keyId, key));
+            this.keysById = Map.copyOf(byId);
+        }
+
+        private List<RSAPublicKeyVerifier> select(String keyId) {
+            if (keyId == null) {
+                return keys;
+            }
+            RSAPublicKeyVerifier key = keysById.get(keyId);
+            return key != null ? List.of(key) : Collections.emptyList();
+        }
+
+        private JWSVerifier findVerifier(Key publicKey) {
+            for (RSAPublicKeyVerifier key : keys) {
+                if (key.publicKey == publicKey) {
+                    return key.verifier;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class RSAPublicKeyVerifier {
+        private final String keyId;
+        private final RSAPublicKey publicKey;
+        private final JWSVerifier verifier;
+
+        private RSAPublicKeyVerifier(String keyId, RSAKey rsaKey) throws JOSEException {
+            this.keyId = keyId;
+            this.publicKey = rsaKey.toRSAPublicKey();
+            this.verifier = new RSASSAVerifier(publicKey);
+        }
+    }
+
+    private final class CachedJWSVerifierFactory extends DefaultJWSVerifierFactory {
+
+        @Override
+        public JWSVerifier createJWSVerifier(JWSHeader header, Key key) throws JOSEException {
+            JwksSnapshot current = jwksSnapshot.get();
+            JWSVerifier verifier = current != null ? current.findVerifier(key) : null;
+            return verifier != null ? verifier : super.createJWSVerifier(header, key);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Persists the last successfully fetched OpenID Connect provider discovery document and JWKS to a local file, so that
+ * the application can start serving requests without waiting for the provider.
+ */
+@Slf4j
+public class OidcMetadataSnapshotStore {
+    private static final String ISSUER_URL = "issuerUrl";
+    private static final String SAVED_AT = "savedAt";
+    private static final String METADATA = "metadata";
+    private static final String JWKS = "jwks";
+    private final Path snapshotFile;
+
+    public OidcMetadataSnapshotStore(String snapshotFile) {
+        this.snapshotFile = Paths.get(snapshotFile);
+    }
+
+    public Optional<StoredSnapshot> load(String issuerUrl) {
+        if (!Files.isRegularFile(snapshotFile)) {
+            log.info("OIDC metadata snapshot not found: {}", snapshotFile);
+            return Optional.empty();
+        }
+        try {
+            return parse(Files.readString(snapshotFile, UTF_8), issuerUrl, snapshotFile.toString());
+        } catch (IOException e) {
+            log.warn("Unable to load OIDC metadata snapshot {}: {}", snapshotFile, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and moves it over the previous snapshot, so that a concurrent or
+     * interrupted write never leaves a partially written snapshot behind.
+     */
+    public void save(String issuerUrl, CachedHttpResource metadata, CachedHttpResource jwks) {
+        Path tempFile = null;
+        try {
+            Path directory = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+            Files.writeString(tempFile, toJson(issuerUrl, metadata, jwks), UTF_8);
+            Files.move(tempFile, snapshotFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            log.debug("Saved OIDC metadata snapshot {}", snapshotFile);
+        } catch (IOException e) {
+            log.warn("Unable to save OIDC metadata snapshot {}: {}", snapshotFile, e.getMessage());
+            deleteQuietly(tempFile);
+        }
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Serializes the snapshot in the format shared by the snapshot file and the cluster shared metadata cache.
+     */
+    static String toJson(String issuerUrl, CachedHttpResource metadata, CachedHttpResource jwks) {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put(ISSUER_URL, issuerUrl);
+        snapshot.put(SAVED_AT, Instant.now().toString());
+        snapshot.put(METADATA, metadata.toJSONObject());
+        if (jwks != null) {
+            snapshot.put(JWKS, jwks.toJSONObject());
+        }
+        return JSONObjectUtils.toJSONString(snapshot);
+    }
+
+    static Optional<StoredSnapshot> parse(String json, String issuerUrl, String source) {
+        try {
+            Map<String, Object> snapshot = JSONObjectUtils.parse(json);
+            if (!issuerUrl.equals(JSONObjectUtils.getString(snapshot, ISSUER_URL))) {
+                log.warn("Ignoring OIDC metadata snapshot {}, it was saved for another issuer: {}", source,
+                        JSONObjectUtils.getString(snapshot, ISSUER_URL));
+                return Optional.empty();
+            }
+            CachedHttpResource metadata = CachedHttpResource.parse(JSONObjectUtils.getJSONObject(snapshot, METADATA));
+            if (metadata == null) {
+                log.warn("Ignoring OIDC metadata snapshot {}, discovery document is missing", source);
+                return Optional.empty();
+            }
+            CachedHttpResource jwks = CachedHttpResource.parse(JSONObjectUtils.getJSONObject(snapshot, JWKS));
+            Instant savedAt = Instant.parse(JSONObjectUtils.getString(snapshot, SAVED_AT));
+            log.info("Loaded OIDC metadata snapshot {} saved at {}", source, savedAt);
+            return Optional.of(new StoredSnapshot(metadata, jwks, savedAt));
+        } catch (ParseException | RuntimeException e) {
+            log.warn("Unable to load OIDC metadata snapshot {}: {}", source, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.debug("Unable to delete temporary file {}", file, e);
+        }
+    }
+
+    @Value
+    public static class StoredSnapshot {
+        CachedHttpResource metadata;
+        CachedHttpResource jwks;
+        Instant savedAt;
+    }
+}
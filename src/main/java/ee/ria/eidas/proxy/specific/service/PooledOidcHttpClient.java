@@ -0,0 +1,219 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.jose.util.Resource;
+import com.nimbusds.jose.util.ResourceRetriever;
+import com.nimbusds.oauth2.sdk.http.HTTPRequestSender;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.http.ReadOnlyHTTPRequest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.HttpClientProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.OidcProviderProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * HTTP transport for OpenID Connect token, discovery and JWKS requests. Replaces the per-request
+ * {@link java.net.HttpURLConnection} used by Nimbus with a pool of keep-alive connections, so that TCP connections
+ * and TLS sessions to the IdP are reused between authentications. The trace context of the current span is added to
+ * the requests, if enabled by {@link OidcProviderProperties#isTracePropagationEnabled()}.
+ * <p>
+ * A request waits at most {@link HttpClientProperties#getConnectionRequestTimeoutInMilliseconds()} for a pooled
+ * connection, instead of the three minute default of the HTTP client, and the caller waits for the response at most
+ * the sum of the connection request, connect and read timeouts, as the read timeout limits only the inactivity between
+ * the received packets.
+ */
+@Slf4j
+public class PooledOidcHttpClient implements HTTPRequestSender, ResourceRetriever, Closeable {
+    static final int JWKS_SIZE_LIMIT_IN_BYTES = 51200;
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient httpClient;
+    private final int readTimeoutInMilliseconds;
+    private final int connectTimeoutInMilliseconds;
+    private final RequestConfig defaultRequestConfig;
+    private final FlowTracing flowTracing;
+
+    public PooledOidcHttpClient(OidcProviderProperties oidcProperties, FlowTracing flowTracing) {
+        this.flowTracing = flowTracing;
+        HttpClientProperties httpClientProperties = oidcProperties.getHttpClient();
+        this.readTimeoutInMilliseconds = oidcProperties.getReadTimeoutInMilliseconds();
+        this.connectTimeoutInMilliseconds = oidcProperties.getConnectTimeoutInMilliseconds();
+        this.defaultRequestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(httpClientProperties.getConnectionRequestTimeoutInMilliseconds()))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutInMilliseconds))
+                .build();
+        this.connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setTlsStrategy(ClientTlsStrategyBuilder.create().useSystemProperties().build())
+                .setMaxConnTotal(httpClientProperties.getMaxConnections())
+                .setMaxConnPerRoute(httpClientProperties.getMaxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(oidcProperties.getConnectTimeoutInMilliseconds()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(oidcProperties.getReadTimeoutInMilliseconds()))
+                        .setTimeToLive(TimeValue.ofSeconds(httpClientProperties.getConnectionTimeToLiveInSeconds()))
+                        .build())
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(httpClientProperties.isHttp2Enabled() ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                        .build())
+                .build();
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultRequestConfig)
+                .evictIdleConnections(TimeValue.ofSeconds(httpClientProperties.getIdleConnectionTimeoutInSeconds()))
+                .evictExpiredConnections()
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .build();
+        this.httpClient.start();
+    }
+
+    @Override
+    public HTTPResponse send(ReadOnlyHTTPRequest request) throws IOException {
+        SimpleRequestBuilder requestBuilder = SimpleRequestBuilder.create(request.getMethod().name())
+                .setUri(request.getURI());
+        String contentType = null;
+        for (Map.Entry<String, List<String>> header : request.getHeaderMap().entrySet()) {
+            if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())) {
+                contentType = header.getValue().isEmpty() ? null : header.getValue().get(0);
+            } else {
+                header.getValue().forEach(value -> requestBuilder.addHeader(header.getKey(), value));
+            }
+        }
+        if (request.getBody() != null) {
+            requestBuilder.setBody(request.getBody(), contentType != null ? ContentType.parse(contentType) : ContentType.TEXT_PLAIN);
+        }
+        SimpleHttpResponse response = execute(requestBuilder.build(), request.getReadTimeout());
+
+        HTTPResponse httpResponse = new HTTPResponse(response.getCode());
+        httpResponse.setStatusMessage(response.getReasonPhrase());
+        for (Header header : response.getHeaders()) {
+            httpResponse.setHeader(header.getName(), headerValues(response, header.getName()));
+        }
+        String body = getBodyText(response);
+        if (body != null) {
+            httpResponse.setBody(body);
+        }
+        return httpResponse;
+    }
+
+    @Override
+    public Resource retrieveResource(URL url) throws IOException {
+        SimpleHttpResponse response = execute(SimpleRequestBuilder.get(toUri(url)).build(), readTimeoutInMilliseconds);
+        if (response.getCode() > 299 || response.getCode() < 200) {
+            throw new IOException("HTTP " + response.getCode() + ": " + response.getReasonPhrase());
+        }
+        byte[] body = response.getBodyBytes();
+        if (body != null && body.length > JWKS_SIZE_LIMIT_IN_BYTES) {
+            throw new IOException("Exceeded configured input limit of " + JWKS_SIZE_LIMIT_IN_BYTES + " bytes");
+        }
+        ContentType contentType = response.getContentType();
+        return new Resource(getBodyText(response), contentType != null ? contentType.toString() : null);
+    }
+
+    /**
+     * Opens a pooled connection (including the TLS handshake) to the given endpoint ahead of the first request.
+     */
+    public void prewarm(URI uri) {
+        try {
+            SimpleHttpResponse response = execute(SimpleRequestBuilder.head(uri).build(), readTimeoutInMilliseconds);
+            log.info("Pre-warmed HTTP connection to {}, response status: {}", uri, response.getCode());
+        } catch (IOException e) {
+            log.warn("Failed to pre-warm HTTP connection to {}: {}", uri, e.getMessage());
+        }
+    }
+
+    public PoolStats getConnectionPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+
+    private SimpleHttpResponse execute(SimpleHttpRequest request, int readTimeoutInMilliseconds) throws IOException {
+        int responseTimeoutInMilliseconds = readTimeoutInMilliseconds > 0 ? readTimeoutInMilliseconds : this.readTimeoutInMilliseconds;
+        request.setConfig(RequestConfig.copy(defaultRequestConfig)
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutInMilliseconds))
+                .build());
+        flowTracing.injectTraceContext(request::setHeader);
+        long timeoutInMilliseconds = defaultRequestConfig.getConnectionRequestTimeout().toMilliseconds()
+                + connectTimeoutInMilliseconds + responseTimeoutInMilliseconds;
+        Future<SimpleHttpResponse> response = httpClient.execute(request, null);
+        try {
+            return response.get(timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            response.cancel(true);
+            throw new SocketTimeoutException("No response from " + request.getRequestUri() + " within " + timeoutInMilliseconds + " ms");
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response from " + request.getRequestUri());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static String[] headerValues(SimpleHttpResponse response, String name) {
+        Header[] headers = response.getHeaders(name);
+        String[] values = new String[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            values[i] = headers[i].getValue();
+        }
+        return values;
+    }
+
+    private static String getBodyText(SimpleHttpResponse response) {
+        byte[] body = response.getBodyBytes();
+        if (body == null) {
+            return null;
+        }
+        ContentType contentType = response.getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset() : UTF_8;
+        return new String(body, charset);
+    }
+
+    private static URI toUri(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+    }
+}
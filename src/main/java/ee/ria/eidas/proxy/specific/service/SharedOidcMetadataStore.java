@@ -0,0 +1,238 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.MetadataProperties;
+import ee.ria.eidas.proxy.specific.service.OidcMetadataSnapshotStore.StoredSnapshot;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
+import com.google.common.base.Suppliers;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * OpenID Connect provider metadata and JWKS shared between proxy instances through a replicated cache. Instances use
+ * the shared copy while it is fresh. When it is stale, the instance holding the refresh lease fetches the metadata from
+ * the provider and publishes it, while the other instances wait for the published copy.
+ * <p>
+ * The lease is a cache entry holding the owner instance id and its expiry time, acquired and released with the atomic
+ * {@link CommunicationCache#putIfAbsent}, {@link CommunicationCache#replace(Object, Object, Object)} and
+ * {@link CommunicationCache#remove(Object, Object)} operations, so that an instance that dies while holding it does not block the refresh longer than the lease.
+ */
+@Slf4j
+public class SharedOidcMetadataStore {
+    static final String SNAPSHOT_KEY = "snapshot";
+    static final String REFRESH_LEASE_KEY = "refresh-lease";
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(500);
+    private static final String LEASE_SEPARATOR = "|";
+    private final Supplier<CommunicationCache<String, String>> sharedMetadataCache;
+    private final String instanceId;
+    private final Duration maxAge;
+    private final Duration refreshLease;
+    private volatile String heldLease;
+
+    public SharedOidcMetadataStore(Supplier<CommunicationCache<String, String>> sharedMetadataCache, MetadataProperties metadataProperties, String instanceId) {
+        this.sharedMetadataCache = Suppliers.memoize(sharedMetadataCache::get);
+        this.instanceId = instanceId;
+        this.maxAge = Duration.ofSeconds(metadataProperties.getSharedMaxAgeInSeconds());
+        this.refreshLease = Duration.ofSeconds(metadataProperties.getSharedRefreshLeaseInSeconds());
+    }
+
+    public Optional<StoredSnapshot> load(String issuerUrl) {
+        try {
+            String json = sharedMetadataCache.get().get(SNAPSHOT_KEY);
+            return json != null ? OidcMetadataSnapshotStore.parse(json, issuerUrl, "from cluster shared cache") : Optional.empty();
+        } catch (RuntimeException e) {
+            log.warn("Unable to read OIDC metadata from cluster shared cache: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public boolean isFresh(StoredSnapshot snapshot) {
+        return snapshot.getSavedAt().plus(maxAge).isAfter(Instant.now());
+    }
+
+    public void publish(String issuerUrl, CachedHttpResource metadata, CachedHttpResource jwks) {
+        try {
+            sharedMetadataCache.get().put(SNAPSHOT_KEY, OidcMetadataSnapshotStore.toJson(issuerUrl, metadata, jwks));
+            log.info("Published OIDC metadata to cluster shared cache");
+        } catch (RuntimeException e) {
+            log.warn("Unable to publish OIDC metadata to cluster shared cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns {@code true} if this instance was elected to refresh the metadata from the provider, or if the
+     * shared cache is unavailable and the metadata has to be fetched locally anyway.
+     */
+    public boolean tryAcquireRefreshLease() {
+        String lease = instanceId + LEASE_SEPARATOR + Instant.now().plus(refreshLease).toEpochMilli();
+        try {
+            String currentLease = sharedMetadataCache.get().get(REFRESH_LEASE_KEY);
+            boolean acquired = currentLease == null
+                    ? sharedMetadataCache.get().putIfAbsent(REFRESH_LEASE_KEY, lease)
+                    : isExpired(currentLease) && sharedMetadataCache.get().replace(REFRESH_LEASE_KEY, currentLease, lease);
+            if (acquired) {
+                heldLease = lease;
+                log.info("Acquired OIDC metadata refresh lease for instance: {}", instanceId);
+            } else {
+                log.info("OIDC metadata refresh lease held by another instance: {}", currentLease);
+            }
+            return acquired;
+        } catch (RuntimeException e) {
+            log.warn("Unable to acquire OIDC metadata refresh lease from cluster shared cache: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    public void releaseRefreshLease() {
+        String lease = heldLease;
+        heldLease = null;
+        if (lease == null) {
+            return;
+        }
+        try {
+            sharedMetadataCache.get().remove(REFRESH_LEASE_KEY, lease);
+        } catch (RuntimeException e) {
+            log.warn("Unable to release OIDC metadata refresh lease: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for another instance to publish metadata saved after the given time. The wait ends when the metadata is
+     * published, when the refresh lease is released or expires without it, or after the refresh lease duration at the
+     * latest. The instance is woken by a listener on the shared cache, where supported, and otherwise checks the cache
+     * at a fixed interval.
+     */
+    public Optional<StoredSnapshot> awaitPublished(String issuerUrl, Instant publishedAfter) {
+        Instant deadline = Instant.now().plus(refreshLease);
+        Semaphore changed = new Semaphore(0);
+        CacheEntryListenerConfiguration<String, String> listener = registerChangeListener(changed);
+        try {
+            while (true) {
+                Optional<StoredSnapshot> snapshot = loadPublished(issuerUrl, publishedAfter);
+                if (snapshot.isPresent()) {
+                    return snapshot;
+                }
+                String lease = readRefreshLease();
+                if (lease == null || isExpired(lease)) {
+                    return loadPublished(issuerUrl, publishedAfter);
+                }
+                Instant leaseExpiry = Instant.ofEpochMilli(parseExpiry(lease));
+                Duration remaining = Duration.between(Instant.now(), leaseExpiry.isBefore(deadline) ? leaseExpiry : deadline);
+                if (remaining.isNegative() || remaining.isZero()) {
+                    return loadPublished(issuerUrl, publishedAfter);
+                }
+                Duration wait = listener != null || remaining.compareTo(POLL_INTERVAL) < 0 ? remaining : POLL_INTERVAL;
+                changed.tryAcquire(wait.toMillis(), TimeUnit.MILLISECONDS);
+                changed.drainPermits();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            deregisterChangeListener(listener);
+        }
+    }
+
+    private Optional<StoredSnapshot> loadPublished(String issuerUrl, Instant publishedAfter) {
+        Optional<StoredSnapshot> snapshot = load(issuerUrl);
+        return snapshot.filter(s -> publishedAfter == null || s.getSavedAt().isAfter(publishedAfter));
+    }
+
+    /**
+     * Returns {@code null} if no instance holds the refresh lease or if it cannot be read.
+     */
+    private String readRefreshLease() {
+        try {
+            return sharedMetadataCache.get().get(REFRESH_LEASE_KEY);
+        } catch (RuntimeException e) {
+            log.warn("Unable to read OIDC metadata refresh lease from cluster shared cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code null} if the shared cache does not support listeners, as the Ignite thin client, whose cache
+     * cannot be unwrapped to a JCache {@link Cache}.
+     */
+    private CacheEntryListenerConfiguration<String, String> registerChangeListener(Semaphore changed) {
+        CacheEntryListenerConfiguration<String, String> listener = new MutableCacheEntryListenerConfiguration<>(
+                FactoryBuilder.factoryOf(new ChangeListener(changed)), null, false, false);
+        try {
+            unwrapJCache().registerCacheEntryListener(listener);
+            return listener;
+        } catch (IllegalArgumentException | CacheException e) {
+            log.debug("Unable to listen to OIDC metadata changes in cluster shared cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void deregisterChangeListener(CacheEntryListenerConfiguration<String, String> listener) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            unwrapJCache().deregisterCacheEntryListener(listener);
+        } catch (RuntimeException e) {
+            log.warn("Unable to stop listening to OIDC metadata changes in cluster shared cache: {}", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<String, String> unwrapJCache() {
+        return sharedMetadataCache.get().unwrap(Cache.class);
+    }
+
+    private static boolean isExpired(String lease) {
+        try {
+            return Instant.ofEpochMilli(parseExpiry(lease)).isBefore(Instant.now());
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static long parseExpiry(String lease) {
+        return Long.parseLong(lease.substring(lease.lastIndexOf(LEASE_SEPARATOR) + 1));
+    }
+
+    /**
+     * Wakes the waiting instance on any change of the shared cache, which holds only the snapshot and the lease.
+     */
+    private static final class ChangeListener implements CacheEntryCreatedListener<String, String>,
+            CacheEntryUpdatedListener<String, String>, CacheEntryRemovedListener<String, String>, Serializable {
+        private final transient Semaphore changed;
+
+        private ChangeListener(Semaphore changed) {
+            this.changed = changed;
+        }
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            changed.release();
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            changed.release();
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            changed.release();
+        }
+    }
+}
@@ -15,9 +15,6 @@
 
 package ee.ria.eidas.proxy.specific.service;
 
-import com.google.common.collect.ImmutableSortedSet;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.PathNotFoundException;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.proc.BadJOSEException;
 import com.nimbusds.jwt.JWT;
@@ -26,18 +23,19 @@ import com.nimbusds.oauth2.sdk.auth.ClientAuthentication;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
 import com.nimbusds.oauth2.sdk.auth.Secret;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
 import com.nimbusds.oauth2.sdk.id.ClientID;
 import com.nimbusds.openid.connect.sdk.OIDCTokenResponse;
 import com.nimbusds.openid.connect.sdk.OIDCTokenResponseParser;
 import com.nimbusds.openid.connect.sdk.claims.ClaimsSet;
 import com.nimbusds.openid.connect.sdk.op.OIDCProviderMetadata;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
-import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.IdTokenClaimMappingProperties;
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.PayloadSize;
 import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
 import eu.eidas.auth.commons.EIDASStatusCode;
 import eu.eidas.auth.commons.attribute.AttributeDefinition;
-import eu.eidas.auth.commons.attribute.AttributeRegistry;
-import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
 import eu.eidas.auth.commons.light.ILightRequest;
 import eu.eidas.auth.commons.light.ILightResponse;
 import eu.eidas.auth.commons.light.impl.LightResponse;
@@ -46,8 +44,8 @@ import eu.eidas.auth.commons.protocol.eidas.NotifiedLevelOfAssurance;
 import eu.eidas.auth.commons.protocol.impl.SamlNameIdFormat;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import net.minidev.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.util.Assert;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -56,11 +54,10 @@ import java.io.IOException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static ee.ria.eidas.proxy.specific.config.LogFieldNames.*;
+import static ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Stage.*;
 import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 import static net.logstash.logback.argument.StructuredArguments.value;
@@ -79,11 +76,24 @@ public class SpecificProxyService {
 
     private final OIDCProviderMetadataService oidcProviderMetadataService;
 
-    private final AttributeRegistry eidasAttributeRegistry;
+    private final ClaimExtractionPlan claimExtractionPlan;
+
+    private final PooledOidcHttpClient oidcHttpClient;
+
+    private final SpecificProxyServiceCommunication specificProxyServiceCommunication;
+
+    private final AuthenticationFlowMetrics authenticationFlowMetrics;
+
+    private final FlowTracing flowTracing;
 
     @SneakyThrows
     public SpecificProxyServiceCommunication.CorrelatedRequestsHolder createOidcAuthenticationRequest(ILightRequest originalIlightRequest) {
-        final String state = UUID.randomUUID().toString();
+        return authenticationFlowMetrics.timed(AUTHORIZATION_URL_BUILD, () -> buildOidcAuthenticationRequest(originalIlightRequest),
+                requestsHolder -> requestsHolder != null ? requestsHolder.getIdpAuthenticationRequest().toExternalForm().length() : -1);
+    }
+
+    private SpecificProxyServiceCommunication.CorrelatedRequestsHolder buildOidcAuthenticationRequest(ILightRequest originalIlightRequest) throws MalformedURLException {
+        final String state = specificProxyServiceCommunication.createIdpRequestState(originalIlightRequest);
 
         URI oidAuthenticationRequest =
                 UriComponentsBuilder.fromUri(oidcProviderMetadataService.getOidcProviderMetadata().getAuthorizationEndpointURI())
@@ -102,7 +112,9 @@ public class SpecificProxyService {
     @SneakyThrows
     public ILightResponse queryIdpForRequestedAttributes(String oAuthCode, ILightRequest originalLightRequest) {
 
-        JWT idToken = getIdToken(oAuthCode, new ClientID(specificProxyServiceProperties.getOidc().getClientId()));
+        JWT idToken = authenticationFlowMetrics.timed(TOKEN_ENDPOINT_CALL,
+                () -> getIdToken(oAuthCode, new ClientID(specificProxyServiceProperties.getOidc().getClientId())),
+                tokenResponse -> tokenResponse != null ? tokenResponse.getBodyLength() : -1).getIdToken();
         log.info(append("idp.token_request.response.id_token", idToken.getParsedString()),
                 "Id-token received for code {} in response to LightRequest with id: '{}'",
                 value(IDP_TOKEN_REQUEST_CODE, oAuthCode),
@@ -110,11 +122,14 @@ public class SpecificProxyService {
 
         try {
 
-            ClaimsSet claims = oidcProviderMetadataService.getIdTokenValidator().validate(idToken, null);
-            validateAuthenticationMethodReference(claims);
+            ClaimsSet claims = authenticationFlowMetrics.timed(ID_TOKEN_VALIDATION, () -> {
+                ClaimsSet validatedClaims = oidcProviderMetadataService.getIdTokenValidator().validate(idToken, null);
+                validateAuthenticationMethodReference(validatedClaims);
+                return validatedClaims;
+            });
 
             log.debug("OIDC response successfully verified!");
-            ILightResponse lightResponse = translateToLightResponse(claims, originalLightRequest, specificProxyServiceProperties.getOidc().getResponseClaimMapping());
+            ILightResponse lightResponse = authenticationFlowMetrics.timed(CLAIM_TRANSLATION, () -> translateToLightResponse(claims, originalLightRequest));
 
             log.debug("LightResponse for eIDAS-Proxy service: " + lightResponse.toString());
 
@@ -140,7 +155,7 @@ public class SpecificProxyService {
         }
     }
 
-    private JWT getIdToken(String oAuthCode, ClientID clientID) throws URISyntaxException {
+    private TokenEndpointResponse getIdToken(String oAuthCode, ClientID clientID) throws URISyntaxException {
         ClientAuthentication clientAuth = new ClientSecretBasic(
                 clientID,
                 new Secret(specificProxyServiceProperties.getOidc().getClientSecret())
@@ -148,9 +163,7 @@ public class SpecificProxyService {
 
         OIDCProviderMetadata oidcProviderMetadata = oidcProviderMetadataService.getOidcProviderMetadata();
         TokenRequest request = new TokenRequest(oidcProviderMetadata.getTokenEndpointURI(), clientAuth, getAuthorizationGrant(oAuthCode), null, null, null);
-        OIDCTokenResponse successResponse = getOidcTokenResponse(request);
-
-        return successResponse.getOIDCTokens().getIDToken();
+        return getOidcTokenResponse(request);
     }
 
     private AuthorizationGrant getAuthorizationGrant(String oAuthCode) throws URISyntaxException {
@@ -159,7 +172,7 @@ public class SpecificProxyService {
         return new AuthorizationCodeGrant(authorizationCode, callback);
     }
 
-    private OIDCTokenResponse getOidcTokenResponse(TokenRequest request) {
+    private TokenEndpointResponse getOidcTokenResponse(TokenRequest request) {
         try {
             HTTPRequest httpRequest = request.toHTTPRequest();
             httpRequest.setConnectTimeout(specificProxyServiceProperties.getOidc().getConnectTimeoutInMilliseconds());
@@ -174,9 +187,11 @@ public class SpecificProxyService {
                     "Request id_token from '{}'",
                     value(IDP_TOKEN_REQUEST_HTTP_URL, httpRequest.getURL()));
 
-            TokenResponse tokenResponse = OIDCTokenResponseParser.parse(httpRequest.send());
+            HTTPResponse httpResponse = flowTracing.inSpan("oidc-token-request", () -> httpRequest.send(oidcHttpClient));
+            TokenResponse tokenResponse = OIDCTokenResponseParser.parse(httpResponse);
             if (tokenResponse.indicatesSuccess()) {
-                return (OIDCTokenResponse) tokenResponse.toSuccessResponse();
+                OIDCTokenResponse successResponse = (OIDCTokenResponse) tokenResponse.toSuccessResponse();
+                return new TokenEndpointResponse(successResponse.getOIDCTokens().getIDToken(), PayloadSize.of(httpResponse.getBody()));
             } else {
                 TokenErrorResponse errorResponse = tokenResponse.toErrorResponse();
                 throw new IllegalStateException("OIDC token request returned an error! " + errorResponse.getErrorObject());
@@ -201,40 +216,29 @@ public class SpecificProxyService {
         return StringUtils.join(scopes, ' ');
     }
 
-    private boolean containsLegalPersonAttributes(ILightRequest incomingLightRequest) {
+    static boolean containsLegalPersonAttributes(ILightRequest incomingLightRequest) {
         List<String> requestAttributesByFriendlyName = incomingLightRequest.getRequestedAttributes().getAttributeMap().keySet()
                 .stream().map(AttributeDefinition::getFriendlyName).collect(toList());
         return !Collections.disjoint(asList("LegalName", "LegalPersonIdentifier"), requestAttributesByFriendlyName);
     }
 
-    private ILightResponse translateToLightResponse(ClaimsSet claimSet, ILightRequest originalLightRequest, IdTokenClaimMappingProperties mappingProperties) throws MalformedURLException, UnknownHostException {
+    private ILightResponse translateToLightResponse(ClaimsSet claimSet, ILightRequest originalLightRequest) {
         log.debug("JWT (claims): " + claimSet.toJSONString());
 
-        JSONObject claims = claimSet.toJSONObject();
-
-        String subject;
-        if (containsLegalPersonAttributes(originalLightRequest)) {
-            subject = getAttributeValueFromClaims(claims, "subject", mappingProperties.getLegalPersonSubject());
-        } else {
-            subject = getAttributeValueFromClaims(claims, "subject", mappingProperties.getNaturalPersonSubject());
-        }
-
-        String responseId = getAttributeValueFromClaims(claims, "responseId", mappingProperties.getId());
-        NotifiedLevelOfAssurance loa = NotifiedLevelOfAssurance.valueOf(StringUtils.upperCase(getAttributeValueFromClaims(claims, "loa", mappingProperties.getAcr())));
-        String issuer = getAttributeValueFromClaims(claims, "issuer", mappingProperties.getIssuer());
-        ImmutableAttributeMap attributes = getAttributes(originalLightRequest, claims, mappingProperties);
+        ClaimExtractionPlan.ExtractedClaims claims = claimExtractionPlan.extract(claimSet.toJSONObject(), originalLightRequest);
+        NotifiedLevelOfAssurance loa = NotifiedLevelOfAssurance.valueOf(StringUtils.upperCase(claims.getAcr()));
 
         final LightResponse.Builder builder = LightResponse.builder()
-                .id(responseId)
-                .ipAddress(getIssuerIp(specificProxyServiceProperties.getOidc().getIssuerUrl()))
+                .id(claims.getId())
+                .ipAddress(oidcProviderMetadataService.getIssuerIpAddress())
                 .inResponseToId(originalLightRequest.getId())
-                .issuer(issuer)
+                .issuer(claims.getIssuer())
                 .levelOfAssurance(loa.stringValue())
                 .relayState(originalLightRequest.getRelayState())
                 .status(ResponseStatus.builder().statusCode(EIDASStatusCode.SUCCESS_URI.getValue()).build())
-                .subject(subject)
+                .subject(claims.getSubject())
                 .subjectNameIdFormat(getNameIdFormat(originalLightRequest).toString())
-                .attributes(attributes);
+                .attributes(claims.getAttributes());
 
         return builder.build();
     }
@@ -248,69 +252,6 @@ public class SpecificProxyService {
 
     }
 
-    private ImmutableAttributeMap getAttributes(ILightRequest lightRequest, JSONObject claims, IdTokenClaimMappingProperties mappingProperties) {
-        ImmutableAttributeMap.Builder attrBuilder = ImmutableAttributeMap.builder();
-
-        for (ImmutableAttributeMap.ImmutableAttributeEntry entry : lightRequest.getRequestedAttributes().entrySet()) {
-            String friendlyName = entry.getKey().getFriendlyName();
-            String claimValue = getClaimValueFromIdToken(claims, entry, mappingProperties);
-            if (claimValue != null) {
-                String attributeValue = getAttributeValue(mappingProperties, friendlyName, claimValue);
-                putAttribute(attrBuilder, friendlyName, attributeValue);
-            }
-        }
-
-        return attrBuilder.build();
-    }
-
-    private String getAttributeValue(IdTokenClaimMappingProperties mappingProperties, String friendlyName, String value) {
-        if (mappingProperties.getAttributesPostProcessing().containsKey(friendlyName)) {
-            String regexp = mappingProperties.getAttributesPostProcessing().get(friendlyName);
-            Pattern pattern = Pattern.compile(regexp);
-            Matcher matcher = pattern.matcher(value);
-            if (matcher.find()) {
-                return matcher.group("attributeValue");
-            } else {
-                throw new IllegalStateException(String.format("Attribute '%s' with value '%s' does not match the expected format %s", friendlyName, value, regexp));
-            }
-        } else {
-            return value;
-        }
-    }
-
-    private String getClaimValueFromIdToken(JSONObject claims, ImmutableAttributeMap.ImmutableAttributeEntry entry, IdTokenClaimMappingProperties mappingProperties) {
-
-        String attributeFriendlyName = entry.getKey().getFriendlyName();
-        String jsonPath = mappingProperties.getAttributes().get(attributeFriendlyName);
-
-        if (entry.getKey().isRequired()) {
-            Assert.notNull(jsonPath, "Required attribute " + attributeFriendlyName + " has no jsonpath configured to extract claim from id-token");
-        } else if (!entry.getKey().isRequired() && StringUtils.isEmpty(jsonPath)) {
-            log.warn("Ignoring optional attribute {} - no mapping configured to extract it's corresponding value from id-token", attributeFriendlyName);
-            return null;
-        }
-
-        return getAttributeValueFromClaims(claims, attributeFriendlyName, jsonPath);
-    }
-
-    private String getAttributeValueFromClaims(JSONObject claims, String responseAttributeName, String jsonPath) {
-        try {
-            return JsonPath.read(claims, jsonPath);
-        } catch (PathNotFoundException e) {
-            throw new IllegalStateException(String.format("Failed to read attribute (%s) value from ID-token with jsonpath (%s). Please check your configuration", responseAttributeName, jsonPath));
-        }
-    }
-
-    private void putAttribute(ImmutableAttributeMap.Builder builder, String friendlyName, String value) {
-        final ImmutableSortedSet<AttributeDefinition<?>> byFriendlyName = eidasAttributeRegistry.getByFriendlyName(friendlyName);
-        final AttributeDefinition<?> attributeDefinition = byFriendlyName.first();
-        builder.put(attributeDefinition, value);
-    }
-
-    private static String getIssuerIp(String issuerUrl) throws UnknownHostException, MalformedURLException {
-        return InetAddress.getByName(new URL(issuerUrl).getHost()).getHostAddress();
-    }
-
     private SpecificProxyServiceCommunication.CorrelatedRequestsHolder createCorrelatedRequestsHolder(ILightRequest incomingLightRequest, URL redirectUrl, String state) {
         return new SpecificProxyServiceCommunication.CorrelatedRequestsHolder(
                 incomingLightRequest,
@@ -326,4 +267,10 @@ public class SpecificProxyService {
         }
         return loa.name().toLowerCase();
     }
+
+    @Value
+    private static class TokenEndpointResponse {
+        JWT idToken;
+        long bodyLength;
+    }
 }
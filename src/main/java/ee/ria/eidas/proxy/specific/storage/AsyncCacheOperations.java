@@ -0,0 +1,99 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.monitoring.FlowContext;
+import lombok.experimental.UtilityClass;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.lang.IgniteFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous variants of the cache operations used by the communication services.
+ * <p>
+ * Client node caches use the Ignite {@code *Async} operations, which do not block the calling thread while the request
+ * is in flight. The Ignite thin client has no asynchronous API, so thin client operations are run on the given executor
+ * instead. In both cases the returned future is completed on the given executor, never on an Ignite system thread, and
+ * the caller's {@link FlowContext}, the MDC and the current observation, is restored for the completion and the stages
+ * it triggers. Operations on a {@link ForwardingCache}
+ * are passed to the decorator, which runs them on the underlying cache.
+ */
+@UtilityClass
+public class AsyncCacheOperations {
+
+    public static <K, V> CompletableFuture<V> getAndRemoveAsync(CommunicationCache<K, V> cache, K key, Executor executor) {
+        if (cache instanceof ForwardingCache) {
+            return ((ForwardingCache<K, V>) cache).getAndRemoveAsync(key, executor);
+        }
+        IgniteCache<K, V> igniteCache = unwrapIgniteCache(cache);
+        return igniteCache != null
+                ? toCompletableFuture(() -> igniteCache.getAndRemoveAsync(key), executor)
+                : supplyAsync(() -> cache.getAndRemove(key), executor);
+    }
+
+    public static <K, V> CompletableFuture<Boolean> putIfAbsentAsync(CommunicationCache<K, V> cache, K key, V value, Executor executor) {
+        if (cache instanceof ForwardingCache) {
+            return ((ForwardingCache<K, V>) cache).putIfAbsentAsync(key, value, executor);
+        }
+        IgniteCache<K, V> igniteCache = unwrapIgniteCache(cache);
+        return igniteCache != null
+                ? toCompletableFuture(() -> igniteCache.putIfAbsentAsync(key, value), executor)
+                : supplyAsync(() -> cache.putIfAbsent(key, value), executor);
+    }
+
+    public static <K, V> CompletableFuture<Boolean> removeAsync(CommunicationCache<K, V> cache, K key, V oldValue, Executor executor) {
+        if (cache instanceof ForwardingCache) {
+            return ((ForwardingCache<K, V>) cache).removeAsync(key, oldValue, executor);
+        }
+        IgniteCache<K, V> igniteCache = unwrapIgniteCache(cache);
+        return igniteCache != null
+                ? toCompletableFuture(() -> igniteCache.removeAsync(key, oldValue), executor)
+                : supplyAsync(() -> cache.remove(key, oldValue), executor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> IgniteCache<K, V> unwrapIgniteCache(CommunicationCache<K, V> cache) {
+        try {
+            return cache.unwrap(IgniteCache.class);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static <T> CompletableFuture<T> toCompletableFuture(Supplier<IgniteFuture<T>> operation, Executor executor) {
+        FlowContext flowContext = FlowContext.capture();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            operation.get().listen(future -> completeOn(executor, flowContext, result, future::get));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(Supplier<T> operation, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        completeOn(executor, FlowContext.capture(), result, operation);
+        return result;
+    }
+
+    /**
+     * A rejected completion task fails the future on the current thread, so that the request is not left waiting for
+     * a completion that never comes.
+     */
+    static <T> void completeOn(Executor executor, FlowContext flowContext, CompletableFuture<T> result, Supplier<T> value) {
+        try {
+            executor.execute(() -> flowContext.run(() -> {
+                try {
+                    result.complete(value.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
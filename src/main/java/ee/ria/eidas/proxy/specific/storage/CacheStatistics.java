@@ -0,0 +1,20 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+/**
+ * Eviction and expiration counts of a cache, read when the corresponding counters are sampled. The counts of all
+ * SpecificProxyService instances add up to the counts of the cluster.
+ */
+public interface CacheStatistics {
+
+    /**
+     * @return the number of entries evicted from the cache on the server nodes, that were counted by this instance since
+     * the monitoring was started. Counted only when statistics are enabled in the server cache configuration.
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of entries that have expired in the cache, that were counted by this instance since the
+     * monitoring was started
+     */
+    long getExpirations();
+}
@@ -0,0 +1,18 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import javax.cache.CacheException;
+
+/**
+ * Thrown instead of running a communication cache operation when the Ignite cluster is known to be unreachable, when
+ * too many operations are already in flight or when the operation does not complete before its deadline.
+ */
+public class CacheUnavailableException extends CacheException {
+
+    public CacheUnavailableException(String message) {
+        super(message);
+    }
+
+    public CacheUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,61 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.IgniteCache;
+
+/**
+ * Exposes an Ignite client node cache as a {@link CommunicationCache}. The cache can be unwrapped to the
+ * {@link IgniteCache}, for its asynchronous operations and entry listeners.
+ */
+@RequiredArgsConstructor
+class ClientNodeCacheAdapter<K, V> implements CommunicationCache<K, V> {
+    private final IgniteCache<K, V> igniteCache;
+
+    @Override
+    public String getName() {
+        return igniteCache.getName();
+    }
+
+    @Override
+    public V get(K key) {
+        return igniteCache.get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        igniteCache.put(key, value);
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        return igniteCache.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return igniteCache.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return igniteCache.remove(key);
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        return igniteCache.remove(key, oldValue);
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return igniteCache.getAndRemove(key);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isInstance(igniteCache)) {
+            return clazz.cast(igniteCache);
+        }
+        return igniteCache.unwrap(clazz);
+    }
+}
@@ -0,0 +1,32 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+/**
+ * The key-value operations of an Ignite cache used by the proxy, available both on a client node cache and on a thin
+ * client cache. Operations fail with {@link javax.cache.CacheException} in both storage modes.
+ * <p>
+ * The asynchronous variants of the operations are in {@link AsyncCacheOperations}. Features that only a client node
+ * cache has, such as entry listeners, are reached by unwrapping the underlying {@link javax.cache.Cache}.
+ */
+public interface CommunicationCache<K, V> {
+
+    String getName();
+
+    V get(K key);
+
+    void put(K key, V value);
+
+    boolean putIfAbsent(K key, V value);
+
+    boolean replace(K key, V oldValue, V newValue);
+
+    boolean remove(K key);
+
+    boolean remove(K key, V oldValue);
+
+    V getAndRemove(K key);
+
+    /**
+     * @throws IllegalArgumentException if the underlying cache is not an instance of the given class
+     */
+    <T> T unwrap(Class<T> clazz);
+}
@@ -0,0 +1,222 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.FailFastProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteClientDisconnectedException;
+import org.apache.ignite.client.ClientConnectionException;
+import org.apache.ignite.lang.IgniteFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.ignite.events.EventType.EVT_CLIENT_NODE_DISCONNECTED;
+
+/**
+ * Makes the communication cache operations fail fast with a {@link CacheUnavailableException} when the Ignite cluster
+ * is degraded, instead of holding the request threads until the Ignite client gives up.
+ * <p>
+ * The number of operations in flight is bounded, and an operation that would exceed the bound is rejected without
+ * waiting. When a client node is disconnected from the cluster, operations are rejected until its reconnect future
+ * completes. The disconnect is learned from the discovery events of the client node, see {@link #listen(Ignite)}, or
+ * from the failure of an operation. When a thin client fails to connect, operations are rejected for the retry delay.
+ * The {@code getAndRemove} and {@code putIfAbsent} operations that the requests wait for also have a deadline, after
+ * which the request fails while the operation itself is left to complete in the background. Its permit is released
+ * only when the operation completes, so that the bound also limits the operations left running on a degraded cluster.
+ */
+@Slf4j
+public class CommunicationCacheGuard implements AutoCloseable {
+    private final Semaphore permits;
+    private final long operationTimeoutInMillis;
+    private final long retryDelayInMillis;
+    private final ScheduledExecutorService deadlineScheduler;
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile IgniteFuture<?> reconnectFuture;
+    private volatile Long retryAfterNanos;
+    private volatile boolean closed;
+
+    public CommunicationCacheGuard(FailFastProperties properties) {
+        this.permits = new Semaphore(properties.getMaxConcurrentOperations());
+        this.operationTimeoutInMillis = properties.getOperationTimeoutInMillis();
+        this.retryDelayInMillis = properties.getRetryDelayInMillis();
+        this.deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "communication-cache-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param cacheSupplier opens the cache, and opens it again after the client node reconnects to the cluster
+     */
+    public <K, V> CommunicationCache<K, V> guard(Supplier<CommunicationCache<K, V>> cacheSupplier) {
+        return new GuardedCache<>(cacheSupplier, this);
+    }
+
+    /**
+     * Whether the cache operations are currently let through, that is, no client node reconnect is pending and no thin
+     * client connection failure has happened within the retry delay.
+     */
+    public boolean isClusterAvailable() {
+        IgniteFuture<?> reconnect = reconnectFuture;
+        Long retryAfter = retryAfterNanos;
+        return (reconnect == null || reconnect.isDone()) && (retryAfter == null || System.nanoTime() - retryAfter >= 0);
+    }
+
+    /**
+     * Rejects the operations as soon as the client node reports that it is disconnected from the cluster, instead of
+     * when the first operation fails. The listener is removed when the guard is closed.
+     */
+    public void listen(Ignite igniteClient) {
+        igniteClient.events().localListen(event -> {
+            if (closed) {
+                return false;
+            }
+            onDisconnected(igniteClient.cluster().clientReconnectFuture());
+            return true;
+        }, EVT_CLIENT_NODE_DISCONNECTED);
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        deadlineScheduler.shutdownNow();
+    }
+
+    <T> T call(String cacheName, Supplier<T> operation) {
+        acquire(cacheName);
+        try {
+            return operation.get();
+        } catch (RuntimeException e) {
+            throw translate(cacheName, e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * The returned future fails when the deadline passes, while the permit is held until the operation completes. The
+     * failure is completed on the given executor with the caller's {@link FlowContext}, like the completions of
+     * {@link AsyncCacheOperations}.
+     */
+    <T> CompletableFuture<T> callAsync(String cacheName, Supplier<CompletableFuture<T>> operation, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            acquire(cacheName);
+        } catch (CacheUnavailableException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        FlowContext flowContext = FlowContext.capture();
+        ScheduledFuture<?> deadline = deadlineScheduler.schedule(() -> AsyncCacheOperations.completeOn(executor, flowContext, result, () -> {
+            throw new CacheUnavailableException(format("Operation on cache '%s' did not complete in %d ms", cacheName, operationTimeoutInMillis));
+        }), operationTimeoutInMillis, MILLISECONDS);
+
+        CompletableFuture<T> inFlight;
+        try {
+            inFlight = operation.get();
+        } catch (RuntimeException e) {
+            inFlight = CompletableFuture.failedFuture(e);
+        }
+        inFlight.whenComplete((value, e) -> {
+            permits.release();
+            deadline.cancel(false);
+            if (e == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(translate(cacheName, e instanceof CompletionException ? e.getCause() : e));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for an operation started with {@link #callAsync} and rethrows its failure.
+     */
+    <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void acquire(String cacheName) {
+        IgniteFuture<?> reconnect = reconnectFuture;
+        if (reconnect != null && !reconnect.isDone()) {
+            throw new CacheUnavailableException(format("Ignite client is disconnected from the cluster, operation on cache '%s' rejected", cacheName));
+        }
+        Long retryAfter = retryAfterNanos;
+        if (retryAfter != null && System.nanoTime() - retryAfter < 0) {
+            throw new CacheUnavailableException(format("Ignite cluster is unreachable, operation on cache '%s' rejected", cacheName));
+        }
+        if (!permits.tryAcquire()) {
+            throw new CacheUnavailableException(format("Too many operations in flight, operation on cache '%s' rejected", cacheName));
+        }
+    }
+
+    private RuntimeException translate(String cacheName, Throwable e) {
+        if (e instanceof CacheUnavailableException) {
+            return (RuntimeException) e;
+        }
+        IgniteClientDisconnectedException disconnected = findCause(e, IgniteClientDisconnectedException.class);
+        if (disconnected != null) {
+            onDisconnected(disconnected.reconnectFuture());
+            return new CacheUnavailableException(format("Ignite client is disconnected from the cluster, operation on cache '%s' failed", cacheName), e);
+        }
+        if (findCause(e, ClientConnectionException.class) != null) {
+            onConnectionFailed();
+            return new CacheUnavailableException(format("Ignite cluster is unreachable, operation on cache '%s' failed", cacheName), e);
+        }
+        return e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+    }
+
+    private void onDisconnected(IgniteFuture<?> reconnect) {
+        if (reconnect == null || reconnect == reconnectFuture) {
+            return;
+        }
+        reconnectFuture = reconnect;
+        log.warn("Ignite client is disconnected from the cluster, communication cache operations are rejected until it reconnects");
+        reconnect.listen(future -> {
+            reconnects.incrementAndGet();
+            log.info("Ignite client reconnected to the cluster");
+        });
+    }
+
+    private void onConnectionFailed() {
+        if (retryDelayInMillis > 0) {
+            retryAfterNanos = System.nanoTime() + MILLISECONDS.toNanos(retryDelayInMillis);
+            log.warn("Ignite cluster is unreachable, communication cache operations are rejected for {} ms", retryDelayInMillis);
+        }
+    }
+
+    private static <T extends Throwable> T findCause(Throwable e, Class<T> causeType) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (causeType.isInstance(cause)) {
+                return causeType.cast(cause);
+            }
+        }
+        return null;
+    }
+}
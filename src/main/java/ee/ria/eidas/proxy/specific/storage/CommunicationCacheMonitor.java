@@ -0,0 +1,110 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.CacheExpiryProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.expiry.TouchedExpiryPolicy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToLongFunction;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Checks the client-side expiry of a communication cache against the expiry configured on the server nodes, publishes
+ * the eviction and expiration counts of the cache as counters and instruments, records and traces the cache operations.
+ * All are done once, when the cache is first obtained. The meters are tagged with the logical cache name, such as
+ * {@code incoming-node-requests-cache}. Failures are logged, so that monitoring never prevents the cache from being
+ * used.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CommunicationCacheMonitor {
+    static final String EVICTIONS_COUNTER_NAME = "eidas.proxy.communication.cache.evictions";
+    static final String EXPIRATIONS_COUNTER_NAME = "eidas.proxy.communication.cache.expirations";
+    private final IgniteCacheProvider igniteCacheProvider;
+    private final MeterRegistry meterRegistry;
+    private final FlowTracing flowTracing;
+    /**
+     * Function counters refer to the statistics weakly, so they are kept here for the lifetime of the application.
+     */
+    private final List<CacheStatistics> monitoredStatistics = new CopyOnWriteArrayList<>();
+
+    public static ExpiryPolicy createExpiryPolicy(CacheExpiryProperties expiryProperties) {
+        Duration timeToLive = new Duration(SECONDS, expiryProperties.getTtlInSeconds());
+        switch (expiryProperties.getPolicy()) {
+            case MODIFIED:
+                return new ModifiedExpiryPolicy(timeToLive);
+            case ACCESSED:
+                return new AccessedExpiryPolicy(timeToLive);
+            case TOUCHED:
+                return new TouchedExpiryPolicy(timeToLive);
+            default:
+                return new CreatedExpiryPolicy(timeToLive);
+        }
+    }
+
+    /**
+     * Logs a warning if the server nodes keep the entries of the cache longer than the client-side expiry. The
+     * client-side expiry applies only to the entries written by this application, so entries written by other cluster
+     * members, such as the eIDAS-Node, are kept for as long as the server configuration allows.
+     */
+    public void verifyServerExpiry(String cacheName, CacheExpiryProperties expiryProperties) {
+        try {
+            ExpiryPolicy serverExpiryPolicy = igniteCacheProvider.getServerExpiryPolicy(cacheName);
+            Duration serverTimeToLive = serverExpiryPolicy != null ? serverExpiryPolicy.getExpiryForCreation() : null;
+            if (serverTimeToLive == null || serverTimeToLive.isEternal()) {
+                log.warn("Cache '{}' entries do not expire on the server nodes, client-side expiry of {} seconds applies only to entries written by this application",
+                        cacheName, expiryProperties.getTtlInSeconds());
+            } else if (serverTimeToLive.getTimeUnit().toSeconds(serverTimeToLive.getDurationAmount()) > expiryProperties.getTtlInSeconds()) {
+                log.warn("Cache '{}' entries expire on the server nodes after {} {}, client-side expiry of {} seconds applies only to entries written by this application",
+                        cacheName, serverTimeToLive.getDurationAmount(), serverTimeToLive.getTimeUnit(), expiryProperties.getTtlInSeconds());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to verify server expiry policy of cache '{}': {}", cacheName, e.getMessage());
+        }
+    }
+
+    public <K, V> CommunicationCache<K, V> instrument(String cacheId, CommunicationCache<K, V> cache) {
+        return new InstrumentedCache<>(cache, cacheId, meterRegistry);
+    }
+
+    public <K, V> CommunicationCache<K, V> record(String cacheId, CommunicationCache<K, V> cache) {
+        return new RecordedCache<>(cache, cacheId);
+    }
+
+    public <K, V> CommunicationCache<K, V> trace(String cacheId, CommunicationCache<K, V> cache) {
+        return new TracedCache<>(cache, cacheId, flowTracing);
+    }
+
+    public void bindStatistics(String cacheId, String cacheName) {
+        try {
+            CacheStatistics statistics = igniteCacheProvider.monitorCache(cacheName);
+            if (statistics == null) {
+                log.info("Eviction and expiration statistics are not available for cache '{}' in this storage mode", cacheName);
+                return;
+            }
+            monitoredStatistics.add(statistics);
+            registerCounter(EVICTIONS_COUNTER_NAME, "Entries evicted from the communication cache", cacheId, statistics, CacheStatistics::getEvictions);
+            registerCounter(EXPIRATIONS_COUNTER_NAME, "Entries expired in the communication cache", cacheId, statistics, CacheStatistics::getExpirations);
+        } catch (RuntimeException e) {
+            log.warn("Unable to monitor cache '{}': {}", cacheName, e.getMessage());
+        }
+    }
+
+    private void registerCounter(String name, String description, String cacheId, CacheStatistics statistics, ToLongFunction<CacheStatistics> count) {
+        FunctionCounter.builder(name, statistics, s -> count.applyAsLong(s))
+                .description(description)
+                .tag("cache", cacheId)
+                .register(meterRegistry);
+    }
+}
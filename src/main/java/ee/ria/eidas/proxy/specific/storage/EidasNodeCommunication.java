@@ -1,10 +1,12 @@
 package ee.ria.eidas.proxy.specific.storage;
 
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
 import ee.ria.eidas.proxy.specific.error.BadRequestException;
 import ee.ria.eidas.proxy.specific.error.RequestDeniedException;
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.PayloadSize;
 import eu.eidas.auth.commons.EIDASStatusCode;
 import eu.eidas.auth.commons.EIDASSubStatusCode;
-import eu.eidas.auth.commons.attribute.AttributeRegistry;
 import eu.eidas.auth.commons.exceptions.SecurityEIDASException;
 import eu.eidas.auth.commons.light.ILightRequest;
 import eu.eidas.auth.commons.light.ILightResponse;
@@ -24,17 +26,21 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
-import javax.cache.Cache;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static ee.ria.eidas.proxy.specific.config.LogFieldNames.*;
+import static ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Stage.*;
 import static net.logstash.logback.argument.StructuredArguments.value;
 import static net.logstash.logback.marker.Markers.append;
 
 @Slf4j
 @Service
 public class EidasNodeCommunication {
-    private static final LightJAXBCodec codec = LightJAXBCodec.buildDefault();
+    @Autowired
+    private LightMessageCodec codec;
 
     @Value("${lightToken.proxyservice.request.issuer.name}")
     private String lightTokenRequestIssuerName;
@@ -58,15 +64,22 @@ public class EidasNodeCommunication {
     @Lazy
     @Autowired
     @Qualifier("nodeSpecificProxyserviceRequestCache")
-    private Cache<String, String> eidasRequestCommunicationCache;
+    private CommunicationCache<String, String> eidasRequestCommunicationCache;
 
     @Lazy
     @Autowired
     @Qualifier("nodeSpecificProxyserviceResponseCache")
-    private Cache<String, String> eidasResponseCommunicationCache;
+    private CommunicationCache<String, String> eidasResponseCommunicationCache;
+
+    @Autowired
+    private AttributeRegistryIndex eidasAttributeRegistry;
+
+    @Autowired
+    @Qualifier("communicationCacheExecutor")
+    private Executor communicationCacheExecutor;
 
     @Autowired
-    private AttributeRegistry eidasAttributeRegistry;
+    private AuthenticationFlowMetrics authenticationFlowMetrics;
 
     private static ILightResponse createILightResponseFailure(String inResponseTo, String statusMessage, String issuer) {
         final ResponseStatus responseStatus = ResponseStatus.builder()
@@ -97,8 +110,30 @@ public class EidasNodeCommunication {
         final BinaryLightToken binaryLightToken = BinaryLightTokenHelper.createBinaryLightToken(
                 lightTokenResponseIssuerName, lightTokenResponseSecret, lightTokenResponseAlgorithm);
         final String tokenId = binaryLightToken.getToken().getId();
-        boolean isInserted = eidasResponseCommunicationCache.putIfAbsent(tokenId, codec.marshall(lightResponse));
+        final String lightResponseXml = authenticationFlowMetrics.timed(RESPONSE_MARSHAL, () -> codec.marshall(lightResponse));
+        boolean isInserted = authenticationFlowMetrics.timed(NODE_CACHE_PUT, () -> eidasResponseCommunicationCache.putIfAbsent(tokenId, lightResponseXml));
+        logResponseSaved(lightResponse, tokenId, isInserted);
+        return binaryLightToken;
+    }
 
+    public CompletableFuture<BinaryLightToken> putResponseAsync(final ILightResponse lightResponse) {
+        try {
+            final BinaryLightToken binaryLightToken = BinaryLightTokenHelper.createBinaryLightToken(
+                    lightTokenResponseIssuerName, lightTokenResponseSecret, lightTokenResponseAlgorithm);
+            final String tokenId = binaryLightToken.getToken().getId();
+            final String lightResponseXml = authenticationFlowMetrics.timed(RESPONSE_MARSHAL, () -> codec.marshall(lightResponse));
+            return authenticationFlowMetrics.timedAsync(NODE_CACHE_PUT,
+                            () -> AsyncCacheOperations.putIfAbsentAsync(eidasResponseCommunicationCache, tokenId, lightResponseXml, communicationCacheExecutor))
+                    .thenApply(isInserted -> {
+                        logResponseSaved(lightResponse, tokenId, isInserted);
+                        return binaryLightToken;
+                    });
+        } catch (SpecificCommunicationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void logResponseSaved(ILightResponse lightResponse, String tokenId, boolean isInserted) {
         if (isInserted && log.isInfoEnabled()) {
             log.info(append(LIGHT_RESPONSE, lightResponse)
                             .and(append(IGNITE_CACHE_NAME, eidasRequestCommunicationCache.getName())), "LightResponse with tokenId: '{}' was saved",
@@ -108,7 +143,6 @@ public class EidasNodeCommunication {
                     "LightResponse was not saved. A LightResponse with tokenId: '{}' already exists",
                     value(LIGHT_RESPONSE_LIGHT_TOKEN_ID, tokenId));
         }
-        return binaryLightToken;
     }
 
     public BinaryLightToken putErrorResponse(RequestDeniedException ex) throws SpecificCommunicationException {
@@ -118,11 +152,26 @@ public class EidasNodeCommunication {
         return putResponse(lightResponse);
     }
 
-    public ILightRequest getAndRemoveRequest(final String tokenBase64) throws SpecificCommunicationException {
+    /**
+     * Validates the token in the calling thread, so that an invalid token fails before any cache request is made.
+     */
+    public CompletableFuture<ILightRequest> getAndRemoveRequestAsync(final String tokenBase64) {
         Assert.isTrue(StringUtils.isNotEmpty(tokenBase64), "Token value cannot be null or empty!");
         final String tokenId = getBinaryLightTokenId(tokenBase64);
-        String lightRequest = eidasRequestCommunicationCache.getAndRemove(tokenId);
-        ILightRequest request = codec.unmarshallRequest(lightRequest, eidasAttributeRegistry.getAttributes());
+        return authenticationFlowMetrics.timedAsync(NODE_CACHE_GET_AND_REMOVE,
+                        () -> AsyncCacheOperations.getAndRemoveAsync(eidasRequestCommunicationCache, tokenId, communicationCacheExecutor))
+                .thenApply(lightRequest -> {
+                    try {
+                        return unmarshallRequest(lightRequest, tokenId);
+                    } catch (SpecificCommunicationException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private ILightRequest unmarshallRequest(String lightRequest, String tokenId) throws SpecificCommunicationException {
+        ILightRequest request = authenticationFlowMetrics.timed(LIGHT_REQUEST_UNMARSHAL,
+                () -> codec.unmarshallRequest(lightRequest, eidasAttributeRegistry), r -> PayloadSize.of(lightRequest));
 
         if (request != null) {
             log.info(append(LIGHT_REQUEST_CITIZEN_COUNTRY_CODE, request.getCitizenCountryCode()).and(append(IGNITE_CACHE_NAME, eidasRequestCommunicationCache.getName())),
@@ -132,12 +181,13 @@ public class EidasNodeCommunication {
                     "LightRequest was not found from cache for tokenId: {}", value(LIGHT_REQUEST_LIGHT_TOKEN_ID, tokenId));
         }
         return request;
-
     }
 
     private String getBinaryLightTokenId(String tokenBase64) {
         try {
-            return BinaryLightTokenHelper.getBinaryLightTokenId(tokenBase64, lightTokenRequestSecret, lightTokenRequestAlgorithm);
+            return authenticationFlowMetrics.timed(LIGHT_TOKEN_DECODE,
+                    () -> BinaryLightTokenHelper.getBinaryLightTokenId(tokenBase64, lightTokenRequestSecret, lightTokenRequestAlgorithm),
+                    tokenId -> PayloadSize.of(tokenBase64));
         } catch (SpecificCommunicationException | SecurityEIDASException e) {
             throw new BadRequestException("Invalid token", e);
         }
@@ -0,0 +1,79 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Base class of the communication cache decorators. Passes every operation to the underlying cache, including the
+ * asynchronous operations of {@link AsyncCacheOperations}, which call {@link #getAndRemoveAsync},
+ * {@link #putIfAbsentAsync} and {@link #removeAsync} instead of unwrapping the underlying Ignite cache. The operations
+ * reach the underlying cache through {@link #getCache()}, so that a decorator can replace it.
+ */
+abstract class ForwardingCache<K, V> implements CommunicationCache<K, V> {
+    protected final CommunicationCache<K, V> cache;
+
+    ForwardingCache(CommunicationCache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    CommunicationCache<K, V> getCache() {
+        return cache;
+    }
+
+    CompletableFuture<V> getAndRemoveAsync(K key, Executor executor) {
+        return AsyncCacheOperations.getAndRemoveAsync(getCache(), key, executor);
+    }
+
+    CompletableFuture<Boolean> putIfAbsentAsync(K key, V value, Executor executor) {
+        return AsyncCacheOperations.putIfAbsentAsync(getCache(), key, value, executor);
+    }
+
+    CompletableFuture<Boolean> removeAsync(K key, V oldValue, Executor executor) {
+        return AsyncCacheOperations.removeAsync(getCache(), key, oldValue, executor);
+    }
+
+    @Override
+    public String getName() {
+        return getCache().getName();
+    }
+
+    @Override
+    public V get(K key) {
+        return getCache().get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        getCache().put(key, value);
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        return getCache().putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return getCache().replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return getCache().remove(key);
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        return getCache().remove(key, oldValue);
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return getCache().getAndRemove(key);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        return getCache().unwrap(clazz);
+    }
+}
@@ -0,0 +1,102 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs the operations of a communication cache through a {@link CommunicationCacheGuard}. The {@code getAndRemove}
+ * and {@code putIfAbsent} operations, including their asynchronous variants, and the asynchronous conditional
+ * {@code remove} have a deadline. Other operations are bounded and fail fast on a degraded cluster, but otherwise rely
+ * on the timeouts of the Ignite client.
+ * <p>
+ * The proxies of a client node cache are stopped when the client reconnects to a restarted cluster, so the cache is
+ * opened again after each reconnect that the guard has seen.
+ */
+class GuardedCache<K, V> extends ForwardingCache<K, V> {
+    private final Supplier<CommunicationCache<K, V>> cacheSupplier;
+    private final CommunicationCacheGuard guard;
+    private final String cacheName;
+    private volatile CommunicationCache<K, V> current;
+    private volatile long openedAfterReconnects;
+
+    GuardedCache(Supplier<CommunicationCache<K, V>> cacheSupplier, CommunicationCacheGuard guard) {
+        this(cacheSupplier.get(), cacheSupplier, guard);
+    }
+
+    private GuardedCache(CommunicationCache<K, V> cache, Supplier<CommunicationCache<K, V>> cacheSupplier, CommunicationCacheGuard guard) {
+        super(cache);
+        this.cacheSupplier = cacheSupplier;
+        this.guard = guard;
+        this.cacheName = cache.getName();
+        this.current = cache;
+        this.openedAfterReconnects = guard.getReconnects();
+    }
+
+    @Override
+    CommunicationCache<K, V> getCache() {
+        long reconnects = guard.getReconnects();
+        if (reconnects != openedAfterReconnects) {
+            current = cacheSupplier.get();
+            openedAfterReconnects = reconnects;
+        }
+        return current;
+    }
+
+    @Override
+    public V get(K key) {
+        return guard.call(cacheName, () -> getCache().get(key));
+    }
+
+    @Override
+    public void put(K key, V value) {
+        guard.call(cacheName, () -> {
+            getCache().put(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        return guard.await(putIfAbsentAsync(key, value, Runnable::run));
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return guard.call(cacheName, () -> getCache().remove(key));
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        return guard.call(cacheName, () -> getCache().remove(key, oldValue));
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return guard.await(getAndRemoveAsync(key, Runnable::run));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return guard.call(cacheName, () -> getCache().replace(key, oldValue, newValue));
+    }
+
+    /**
+     * With a thin client cache and a direct executor the operation runs on the calling thread, so the deadline takes
+     * effect only once the thin client operation returns.
+     */
+    @Override
+    CompletableFuture<V> getAndRemoveAsync(K key, Executor executor) {
+        return guard.callAsync(cacheName, () -> super.getAndRemoveAsync(key, executor), executor);
+    }
+
+    @Override
+    CompletableFuture<Boolean> putIfAbsentAsync(K key, V value, Executor executor) {
+        return guard.callAsync(cacheName, () -> super.putIfAbsentAsync(key, value, executor), executor);
+    }
+
+    @Override
+    CompletableFuture<Boolean> removeAsync(K key, V oldValue, Executor executor) {
+        return guard.callAsync(cacheName, () -> super.removeAsync(key, oldValue, executor), executor);
+    }
+}
@@ -0,0 +1,393 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import com.google.common.collect.ImmutableSet;
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication.CorrelatedRequestsHolder;
+import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import eu.eidas.auth.commons.attribute.AttributeValue;
+import eu.eidas.auth.commons.attribute.AttributeValueMarshaller;
+import eu.eidas.auth.commons.attribute.AttributeValueMarshallingException;
+import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
+import eu.eidas.auth.commons.light.ILevelOfAssurance;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.light.IResponseStatus;
+import eu.eidas.auth.commons.light.impl.LevelOfAssurance;
+import eu.eidas.auth.commons.light.impl.LightResponse;
+import eu.eidas.auth.commons.light.impl.ResponseStatus;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact binary format for the entries of the IdP side communication caches
+ * ({@code specificMSIdpRequestCorrelationMap} and {@code specificMSIdpConsentCorrelationMap}).
+ * <p>
+ * Keys are the state and light token id UUIDs, which Ignite stores in their 16-byte binary form. Values start with a
+ * format version byte and hold only the message fields, the attribute name URIs and the marshalled attribute values.
+ * Attribute definitions are resolved from the {@link AttributeRegistryIndex} when the entry is read. Strings are
+ * written as a varint of the UTF-8 length plus one (zero for {@code null}) followed by the UTF-8 bytes.
+ * <p>
+ * Pending IdP request entries hold the IdP authentication request URL, the LightRequest fields and the requested
+ * attributes. The sealed OIDC state (see {@link SealedTokenCipher}) holds only the LightRequest fields used when the
+ * user returns from the IdP (id, level of assurance, relay state, NameID format and provider name) and the requested
+ * attributes.
+ */
+@RequiredArgsConstructor
+public class IdpCacheEntryCodec {
+    static final int CORRELATED_REQUESTS_FORMAT_VERSION = 2;
+    static final int LIGHT_RESPONSE_FORMAT_VERSION = 1;
+    static final int IDP_STATE_FORMAT_VERSION = 1;
+    private final AttributeRegistryIndex registry;
+
+    /**
+     * @throws IllegalArgumentException if the id is not a UUID
+     */
+    public static UUID toCacheKey(String id) {
+        return UUID.fromString(id);
+    }
+
+    /**
+     * @return the cache key, or {@code null} if the id is not a UUID and therefore cannot be present in the cache
+     */
+    public static UUID toCacheKeyOrNull(String id) {
+        try {
+            return id == null ? null : toCacheKey(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public byte[] marshall(CorrelatedRequestsHolder requestsHolder) {
+        if (requestsHolder == null) {
+            return null;
+        }
+        EntryWriter writer = new EntryWriter();
+        writer.writeVarInt(CORRELATED_REQUESTS_FORMAT_VERSION);
+        writer.writeString(requestsHolder.getIdpAuthenticationRequest().toExternalForm());
+        writeLightRequest(writer, requestsHolder.getLightRequest());
+        return writer.toByteArray();
+    }
+
+    public byte[] marshall(ILightResponse lightResponse) {
+        if (lightResponse == null) {
+            return null;
+        }
+        EntryWriter writer = new EntryWriter();
+        writer.writeVarInt(LIGHT_RESPONSE_FORMAT_VERSION);
+        writer.writeString(lightResponse.getId());
+        writer.writeString(lightResponse.getInResponseToId());
+        writer.writeString(lightResponse.getConsent());
+        writer.writeString(lightResponse.getIssuer());
+        writer.writeString(lightResponse.getIPAddress());
+        writer.writeString(lightResponse.getRelayState());
+        writer.writeString(lightResponse.getSubject());
+        writer.writeString(lightResponse.getSubjectNameIdFormat());
+        writer.writeString(lightResponse.getLevelOfAssurance());
+        writeStatus(writer, lightResponse.getStatus());
+        writeAttributes(writer, lightResponse.getAttributes());
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param state the cache key of the entry, which is not repeated in the entry value
+     */
+    public CorrelatedRequestsHolder unmarshallCorrelatedRequests(String state, byte[] input) {
+        if (input == null) {
+            return null;
+        }
+        EntryReader reader = new EntryReader(input, CORRELATED_REQUESTS_FORMAT_VERSION);
+        URL idpAuthenticationRequest;
+        try {
+            idpAuthenticationRequest = new URL(reader.readString());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Failed to deserialize pending IDP request! " + e.getMessage(), e);
+        }
+        ILightRequest lightRequest = readLightRequest(reader);
+        return new CorrelatedRequestsHolder(lightRequest, Collections.singletonMap(state, idpAuthenticationRequest));
+    }
+
+    /**
+     * Reads only the original LightRequest of a pending IdP request entry, without the IdP authentication request.
+     */
+    public ILightRequest unmarshallLightRequest(byte[] input) {
+        if (input == null) {
+            return null;
+        }
+        EntryReader reader = new EntryReader(input, CORRELATED_REQUESTS_FORMAT_VERSION);
+        reader.skipString();
+        return readLightRequest(reader);
+    }
+
+    /**
+     * Writes only the LightRequest fields that are read when the user returns from the IdP.
+     */
+    public byte[] marshallIdpState(ILightRequest lightRequest) {
+        EntryWriter writer = new EntryWriter();
+        writer.writeVarInt(IDP_STATE_FORMAT_VERSION);
+        writeCallbackFields(writer, lightRequest);
+        writeAttributes(writer, lightRequest.getRequestedAttributes());
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return the LightRequest restored from the sealed OIDC state, without the fields that are not written by
+     * {@link #marshallIdpState(ILightRequest)}
+     */
+    public ILightRequest unmarshallIdpState(byte[] input) {
+        EntryReader reader = new EntryReader(input, IDP_STATE_FORMAT_VERSION);
+        return new PendingLightRequest(
+                reader.readString(),
+                reader.readString(),
+                reader.readString(),
+                reader.readString(),
+                reader.readString(),
+                null,
+                null,
+                Collections.emptyList(),
+                null,
+                null,
+                null,
+                readAttributes(reader));
+    }
+
+    public ILightResponse unmarshallResponse(byte[] input) {
+        if (input == null) {
+            return null;
+        }
+        EntryReader reader = new EntryReader(input, LIGHT_RESPONSE_FORMAT_VERSION);
+        LightResponse.Builder builder = LightResponse.builder()
+                .id(reader.readString())
+                .inResponseToId(reader.readString())
+                .consent(reader.readString())
+                .issuer(reader.readString())
+                .ipAddress(reader.readString())
+                .relayState(reader.readString())
+                .subject(reader.readString())
+                .subjectNameIdFormat(reader.readString())
+                .levelOfAssurance(reader.readString());
+        if (reader.readBoolean()) {
+            builder.status(ResponseStatus.builder()
+                    .failure(reader.readBoolean())
+                    .statusCode(reader.readString())
+                    .subStatusCode(reader.readString())
+                    .statusMessage(reader.readString())
+                    .build());
+        }
+        return builder.attributes(readAttributes(reader)).build();
+    }
+
+    private void writeCallbackFields(EntryWriter writer, ILightRequest lightRequest) {
+        writer.writeString(lightRequest.getId());
+        writer.writeString(lightRequest.getLevelOfAssurance());
+        writer.writeString(lightRequest.getRelayState());
+        writer.writeString(lightRequest.getNameIdFormat());
+        writer.writeString(lightRequest.getProviderName());
+    }
+
+    private void writeLightRequest(EntryWriter writer, ILightRequest lightRequest) {
+        writeCallbackFields(writer, lightRequest);
+        writer.writeString(lightRequest.getIssuer());
+        writer.writeString(lightRequest.getCitizenCountryCode());
+        List<ILevelOfAssurance> levelsOfAssurance = lightRequest.getLevelsOfAssurance();
+        writer.writeVarInt(levelsOfAssurance == null ? 0 : levelsOfAssurance.size());
+        if (levelsOfAssurance != null) {
+            for (ILevelOfAssurance levelOfAssurance : levelsOfAssurance) {
+                writer.writeString(levelOfAssurance.getType());
+                writer.writeString(levelOfAssurance.getValue());
+            }
+        }
+        writer.writeString(lightRequest.getSpType());
+        writer.writeString(lightRequest.getSpCountryCode());
+        writer.writeString(lightRequest.getRequesterId());
+        writeAttributes(writer, lightRequest.getRequestedAttributes());
+    }
+
+    private ILightRequest readLightRequest(EntryReader reader) {
+        String id = reader.readString();
+        String levelOfAssurance = reader.readString();
+        String relayState = reader.readString();
+        String nameIdFormat = reader.readString();
+        String providerName = reader.readString();
+        String issuer = reader.readString();
+        String citizenCountryCode = reader.readString();
+        int levelsOfAssuranceCount = reader.readVarInt();
+        List<ILevelOfAssurance> levelsOfAssurance = new ArrayList<>(levelsOfAssuranceCount);
+        for (int i = 0; i < levelsOfAssuranceCount; i++) {
+            levelsOfAssurance.add(LevelOfAssurance.builder()
+                    .type(reader.readString())
+                    .value(reader.readString())
+                    .build());
+        }
+        return new PendingLightRequest(
+                id,
+                levelOfAssurance,
+                relayState,
+                nameIdFormat,
+                providerName,
+                issuer,
+                citizenCountryCode,
+                Collections.unmodifiableList(levelsOfAssurance),
+                reader.readString(),
+                reader.readString(),
+                reader.readString(),
+                readAttributes(reader));
+    }
+
+    private void writeStatus(EntryWriter writer, IResponseStatus status) {
+        writer.writeBoolean(status != null);
+        if (status != null) {
+            writer.writeBoolean(status.isFailure());
+            writer.writeString(status.getStatusCode());
+            writer.writeString(status.getSubStatusCode());
+            writer.writeString(status.getStatusMessage());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void writeAttributes(EntryWriter writer, ImmutableAttributeMap attributes) {
+        if (attributes == null) {
+            writer.writeVarInt(0);
+            return;
+        }
+        writer.writeVarInt(attributes.size());
+        for (ImmutableAttributeMap.ImmutableAttributeEntry<?> entry : attributes.entrySet()) {
+            AttributeDefinition<?> definition = entry.getKey();
+            AttributeValueMarshaller marshaller = definition.getAttributeValueMarshaller();
+            writer.writeString(definition.getNameUri().toASCIIString());
+            writer.writeVarInt(entry.getValues().size());
+            for (AttributeValue<?> value : entry.getValues()) {
+                writer.writeBoolean(value.isNonLatinScriptAlternateVersion());
+                try {
+                    writer.writeString(marshaller.marshal((AttributeValue) value));
+                } catch (AttributeValueMarshallingException e) {
+                    throw new IllegalStateException("Failed to serialize value of attribute " + definition.getNameUri()
+                            + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ImmutableAttributeMap readAttributes(EntryReader reader) {
+        ImmutableAttributeMap.Builder attributes = ImmutableAttributeMap.builder();
+        int attributeCount = reader.readVarInt();
+        for (int i = 0; i < attributeCount; i++) {
+            String nameUri = reader.readString();
+            AttributeDefinition definition = registry.getByNameUri(nameUri);
+            if (definition == null) {
+                throw new IllegalStateException("Failed to deserialize cache entry! Attribute not found from registry: " + nameUri);
+            }
+            AttributeValueMarshaller<?> marshaller = definition.getAttributeValueMarshaller();
+            int valueCount = reader.readVarInt();
+            ImmutableSet.Builder<AttributeValue<?>> values = ImmutableSet.builder();
+            for (int j = 0; j < valueCount; j++) {
+                boolean nonLatinScriptAlternateVersion = reader.readBoolean();
+                try {
+                    values.add(marshaller.unmarshal(reader.readString(), nonLatinScriptAlternateVersion));
+                } catch (AttributeValueMarshallingException e) {
+                    throw new IllegalStateException("Failed to deserialize value of attribute " + nameUri + ": " + e.getMessage(), e);
+                }
+            }
+            attributes.put(definition, (Iterable) values.build());
+        }
+        return attributes.build();
+    }
+
+    private static final class EntryWriter {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(512);
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                output.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            output.write(value);
+        }
+
+        void writeBoolean(boolean value) {
+            output.write(value ? 1 : 0);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+            } else {
+                byte[] bytes = value.getBytes(UTF_8);
+                writeVarInt(bytes.length + 1);
+                output.write(bytes, 0, bytes.length);
+            }
+        }
+
+        byte[] toByteArray() {
+            return output.toByteArray();
+        }
+    }
+
+    private static final class EntryReader {
+        private final byte[] input;
+        private int position;
+
+        EntryReader(byte[] input, int expectedVersion) {
+            this.input = input;
+            int version = readVarInt();
+            if (version != expectedVersion) {
+                throw new IllegalStateException("Failed to deserialize cache entry! Unsupported format version: " + version);
+            }
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int next = readByte();
+                value |= (next & 0x7F) << shift;
+                if ((next & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Failed to deserialize cache entry! Malformed length at position " + position);
+        }
+
+        boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        String readString() {
+            int length = readStringLength();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(input, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skipString() {
+            int length = readStringLength();
+            position += Math.max(length, 0);
+        }
+
+        private int readStringLength() {
+            int length = readVarInt() - 1;
+            if (length > input.length - position) {
+                throw new IllegalStateException("Failed to deserialize cache entry! Unexpected end of entry");
+            }
+            return length;
+        }
+
+        private int readByte() {
+            if (position >= input.length) {
+                throw new IllegalStateException("Failed to deserialize cache entry! Unexpected end of entry");
+            }
+            return input[position++] & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import javax.cache.expiry.ExpiryPolicy;
+import java.time.Duration;
+
+/**
+ * Access to the Ignite caches independent of whether the application is connected to the cluster as a client node or
+ * through the thin client protocol.
+ */
+public interface IgniteCacheProvider {
+
+    <K, V> CommunicationCache<K, V> getCache(String cacheName);
+
+    /**
+     * Returns the cache with the given expiry policy applied to the entries created, updated or read through it.
+     */
+    <K, V> CommunicationCache<K, V> getCache(String cacheName, ExpiryPolicy expiryPolicy);
+
+    /**
+     * @return the expiry policy the server nodes apply to the entries of the cache, or {@code null} if none is configured
+     */
+    ExpiryPolicy getServerExpiryPolicy(String cacheName);
+
+    /**
+     * Starts counting the entries that expire in the cache.
+     *
+     * @return the eviction and expiration counts of the cache, or {@code null} if they are not available in this
+     * storage mode
+     */
+    CacheStatistics monitorCache(String cacheName);
+
+    <K, V> CommunicationCache<K, V> getOrCreateReplicatedCache(String cacheName);
+
+    /**
+     * Creates the partitioned cache with one backup on first use. Entries expire the given time after they are created.
+     */
+    <K, V> CommunicationCache<K, V> getOrCreateExpiringCache(String cacheName, Duration timeToLive);
+
+    boolean isClusterActive();
+}
@@ -11,6 +11,12 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.apache.ignite.events.EventType.EVT_CLIENT_NODE_DISCONNECTED;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -29,6 +35,11 @@ public class IgniteInstanceInitializer {
             IgniteConfiguration cfg = Ignition.loadSpringBean(resource.getInputStream(), properties.getIgniteConfigurationBeanName());
             cfg.setIgniteInstanceName(cfg.getIgniteInstanceName() + "Client");
             cfg.setGridLogger(new Slf4jLogger());
+            Map<String, Object> userAttributes = cfg.getUserAttributes() != null ? new HashMap<>(cfg.getUserAttributes()) : new HashMap<>();
+            userAttributes.put(IgniteNodeCacheProvider.PROXY_NODE_ATTRIBUTE, Boolean.TRUE.toString());
+            cfg.setUserAttributes(userAttributes);
+            cfg.setIncludeEventTypes(includeEventTypes(includeEventTypes(cfg.getIncludeEventTypes(), IgniteNodeCacheProvider.ELECTION_EVENTS),
+                    EVT_CLIENT_NODE_DISCONNECTED));
             instance = Ignition.start(cfg);
         }
     }
@@ -37,6 +48,11 @@ public class IgniteInstanceInitializer {
         return instance;
     }
 
+    static int[] includeEventTypes(int[] configuredEventTypes, int... eventTypes) {
+        IntStream configured = configuredEventTypes != null ? Arrays.stream(configuredEventTypes) : IntStream.empty();
+        return IntStream.concat(configured, Arrays.stream(eventTypes)).distinct().toArray();
+    }
+
     private Resource getResource(SpecificProxyServiceProperties.CacheProperties properties, ResourceLoader resourceLoader, String resourceLocation) {
         Resource resource = resourceLoader.getResource(resourceLocation);
         if (!resource.exists())
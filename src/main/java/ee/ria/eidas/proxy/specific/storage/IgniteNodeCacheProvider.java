@@ -0,0 +1,153 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.cluster.ClusterGroup;
+import org.apache.ignite.cluster.ClusterNode;
+import org.apache.ignite.configuration.CacheConfiguration;
+
+import javax.cache.configuration.Factory;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.ignite.events.EventType.EVT_CLIENT_NODE_RECONNECTED;
+import static org.apache.ignite.events.EventType.EVT_NODE_FAILED;
+import static org.apache.ignite.events.EventType.EVT_NODE_LEFT;
+
+@Slf4j
+@RequiredArgsConstructor
+public class IgniteNodeCacheProvider implements IgniteCacheProvider {
+    /**
+     * Node attribute set by {@link IgniteInstanceInitializer}, which identifies the client nodes of SpecificProxyService
+     * instances in the cluster.
+     */
+    public static final String PROXY_NODE_ATTRIBUTE = "ee.ria.eidas.proxy.specific";
+    /**
+     * Discovery events after which the instance counting the cluster-wide statistics is elected again.
+     */
+    public static final int[] ELECTION_EVENTS = {EVT_NODE_LEFT, EVT_NODE_FAILED, EVT_CLIENT_NODE_RECONNECTED};
+    private final Ignite igniteClient;
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getCache(String cacheName) {
+        return adapt(igniteClient.cache(cacheName));
+    }
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getCache(String cacheName, ExpiryPolicy expiryPolicy) {
+        return adapt(igniteClient.<K, V>cache(cacheName).withExpiryPolicy(expiryPolicy));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ExpiryPolicy getServerExpiryPolicy(String cacheName) {
+        Factory<ExpiryPolicy> expiryPolicyFactory = igniteClient.cache(cacheName).getConfiguration(CacheConfiguration.class).getExpiryPolicyFactory();
+        return expiryPolicyFactory != null ? expiryPolicyFactory.create() : null;
+    }
+
+    /**
+     * Expirations are counted by a JCache expired listener, which Ignite runs as a continuous query that notifies the
+     * registering node of the entries expiring on the server nodes. Evictions are read from the cluster-wide metrics of
+     * the cache, which are the same on every instance. So that the counts are not multiplied by the number of instances
+     * when summed, only the oldest SpecificProxyService node in the cluster registers the listener and counts the
+     * increase of the evictions. The election is repeated when a node leaves the cluster or the local node reconnects,
+     * so that the next oldest instance takes over. The discovery events must be enabled, see
+     * {@link IgniteInstanceInitializer}.
+     */
+    @Override
+    public CacheStatistics monitorCache(String cacheName) {
+        IgniteCache<Object, Object> cache = igniteClient.cache(cacheName);
+        ClusterGroup proxyNodes = igniteClient.cluster().forAttribute(PROXY_NODE_ATTRIBUTE, Boolean.TRUE.toString());
+        LongAdder expirations = new LongAdder();
+        ExpirationListenerRegistration expirationListener = new ExpirationListenerRegistration(cache, proxyNodes, expirations);
+        expirationListener.elect();
+        igniteClient.events().localListen(event -> {
+            igniteClient.scheduler().runLocal(expirationListener::elect);
+            return true;
+        }, ELECTION_EVENTS);
+        AtomicLong clusterEvictions = new AtomicLong(cache.metrics().getCacheEvictions());
+        LongAdder evictions = new LongAdder();
+        return new CacheStatistics() {
+            @Override
+            public long getEvictions() {
+                long currentClusterEvictions = cache.metrics().getCacheEvictions();
+                long increase = currentClusterEvictions - clusterEvictions.getAndSet(currentClusterEvictions);
+                if (increase > 0 && isLocal(proxyNodes.forOldest())) {
+                    evictions.add(increase);
+                }
+                return evictions.sum();
+            }
+
+            @Override
+            public long getExpirations() {
+                return expirations.sum();
+            }
+        };
+    }
+
+    private static boolean isLocal(ClusterGroup clusterGroup) {
+        ClusterNode node = clusterGroup.node();
+        return node != null && node.isLocal();
+    }
+
+    /**
+     * Keeps the expired listener of a cache registered while the local node is the oldest SpecificProxyService node.
+     */
+    @RequiredArgsConstructor
+    private static class ExpirationListenerRegistration {
+        private final IgniteCache<Object, Object> cache;
+        private final ClusterGroup proxyNodes;
+        private final LongAdder expirations;
+        private MutableCacheEntryListenerConfiguration<Object, Object> registeredListener;
+
+        synchronized void elect() {
+            boolean isOldest = isLocal(proxyNodes.forOldest());
+            if (isOldest && registeredListener == null) {
+                Factory<CacheEntryListener<Object, Object>> listenerFactory = () ->
+                        (CacheEntryExpiredListener<Object, Object>) events -> events.forEach(event -> expirations.increment());
+                registeredListener = new MutableCacheEntryListenerConfiguration<>(listenerFactory, null, false, false);
+                cache.registerCacheEntryListener(registeredListener);
+                log.info("Counting expirations of cache '{}' for the cluster", cache.getName());
+            } else if (!isOldest && registeredListener != null) {
+                cache.deregisterCacheEntryListener(registeredListener);
+                registeredListener = null;
+                log.info("Stopped counting expirations of cache '{}', another instance is the oldest in the cluster", cache.getName());
+            }
+        }
+    }
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getOrCreateReplicatedCache(String cacheName) {
+        return adapt(igniteClient.getOrCreateCache(new CacheConfiguration<K, V>(cacheName).setCacheMode(CacheMode.REPLICATED)));
+    }
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getOrCreateExpiringCache(String cacheName, Duration timeToLive) {
+        return adapt(igniteClient.getOrCreateCache(new CacheConfiguration<K, V>(cacheName)
+                .setCacheMode(CacheMode.PARTITIONED)
+                .setBackups(1)
+                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new javax.cache.expiry.Duration(MILLISECONDS, timeToLive.toMillis())))));
+    }
+
+    @Override
+    public boolean isClusterActive() {
+        return igniteClient.cluster().active();
+    }
+
+    /**
+     * @return {@code null} if the cache does not exist, as {@link Ignite#cache(String)}
+     */
+    private static <K, V> CommunicationCache<K, V> adapt(IgniteCache<K, V> igniteCache) {
+        return igniteCache != null ? new ClientNodeCacheAdapter<>(igniteCache) : null;
+    }
+}
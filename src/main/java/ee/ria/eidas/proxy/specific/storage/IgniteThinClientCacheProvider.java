@@ -0,0 +1,68 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.client.ClientCacheConfiguration;
+import org.apache.ignite.client.IgniteClient;
+
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+@RequiredArgsConstructor
+public class IgniteThinClientCacheProvider implements IgniteCacheProvider {
+    private final IgniteClient igniteThinClient;
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getCache(String cacheName) {
+        return new ThinClientCacheAdapter<>(igniteThinClient.cache(cacheName));
+    }
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getCache(String cacheName, ExpiryPolicy expiryPolicy) {
+        return new ThinClientCacheAdapter<>(igniteThinClient.<K, V>cache(cacheName).withExpirePolicy(expiryPolicy));
+    }
+
+    @Override
+    public ExpiryPolicy getServerExpiryPolicy(String cacheName) {
+        return ThinClientCacheAdapter.execute(() -> igniteThinClient.cache(cacheName).getConfiguration().getExpiryPolicy());
+    }
+
+    /**
+     * The thin client protocol exposes neither the cache metrics nor the cache entry events.
+     */
+    @Override
+    public CacheStatistics monitorCache(String cacheName) {
+        return null;
+    }
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getOrCreateReplicatedCache(String cacheName) {
+        ClientCacheConfiguration cacheConfiguration = new ClientCacheConfiguration()
+                .setName(cacheName)
+                .setCacheMode(CacheMode.REPLICATED);
+        return new ThinClientCacheAdapter<>(ThinClientCacheAdapter.execute(() -> igniteThinClient.<K, V>getOrCreateCache(cacheConfiguration)));
+    }
+
+    @Override
+    public <K, V> CommunicationCache<K, V> getOrCreateExpiringCache(String cacheName, Duration timeToLive) {
+        ClientCacheConfiguration cacheConfiguration = new ClientCacheConfiguration()
+                .setName(cacheName)
+                .setCacheMode(CacheMode.PARTITIONED)
+                .setBackups(1)
+                .setExpiryPolicy(new CreatedExpiryPolicy(new javax.cache.expiry.Duration(MILLISECONDS, timeToLive.toMillis())));
+        return new ThinClientCacheAdapter<>(ThinClientCacheAdapter.execute(() -> igniteThinClient.<K, V>getOrCreateCache(cacheConfiguration)));
+    }
+
+    /**
+     * The thin client protocol does not expose the cluster state, but requests to an inactive cluster fail, so a
+     * successful round trip to the server is used instead.
+     */
+    @Override
+    public boolean isClusterActive() {
+        ThinClientCacheAdapter.execute(igniteThinClient::cacheNames);
+        return true;
+    }
+}
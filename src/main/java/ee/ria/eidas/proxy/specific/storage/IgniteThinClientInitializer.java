@@ -0,0 +1,43 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.ThinClientProperties;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.client.IgniteClient;
+import org.apache.ignite.client.SslMode;
+import org.apache.ignite.configuration.ClientConfiguration;
+
+/**
+ * Starts an Ignite thin client. Unlike a client node, the thin client does not join the cluster topology: it keeps
+ * socket connections to the configured server nodes and, with partition awareness enabled, sends each key request
+ * directly to the primary node of the key's partition.
+ */
+@Slf4j
+@UtilityClass
+public class IgniteThinClientInitializer {
+
+    public static IgniteClient startClient(ThinClientProperties properties) {
+        ClientConfiguration cfg = createClientConfiguration(properties);
+        log.info("Starting Ignite thin client for server nodes: {}, partition awareness enabled: {}",
+                properties.getAddresses(), properties.isPartitionAwarenessEnabled());
+        return Ignition.startClient(cfg);
+    }
+
+    static ClientConfiguration createClientConfiguration(ThinClientProperties properties) {
+        ClientConfiguration cfg = new ClientConfiguration()
+                .setAddresses(properties.getAddresses().toArray(new String[0]))
+                .setPartitionAwarenessEnabled(properties.isPartitionAwarenessEnabled())
+                .setTimeout(properties.getTimeoutInMillis());
+        if (properties.isSslEnabled()) {
+            cfg.setSslMode(SslMode.REQUIRED)
+                    .setSslClientCertificateKeyStorePath(properties.getKeyStore())
+                    .setSslClientCertificateKeyStorePassword(properties.getKeyStorePassword())
+                    .setSslClientCertificateKeyStoreType(properties.getKeyStoreType())
+                    .setSslTrustCertificateKeyStorePath(properties.getTrustStore())
+                    .setSslTrustCertificateKeyStorePassword(properties.getTrustStorePassword())
+                    .setSslTrustCertificateKeyStoreType(properties.getTrustStoreType());
+        }
+        return cfg;
+    }
+}
@@ -0,0 +1,38 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Issues ids that carry the application instance that issued them, so that a callback can tell whether it landed on
+ * the same instance. The first 32 bits of an instance-affine id hold a hash of {@code eidas.proxy.app-instance-id} and
+ * the remaining bits are those of a random version 4 UUID, so the ids are valid cache keys with 90 random bits.
+ */
+public class InstanceAffinity {
+    private final long instanceTag;
+
+    public InstanceAffinity(String appInstanceId) {
+        this.instanceTag = Integer.toUnsignedLong(ByteBuffer.wrap(sha256(appInstanceId)).getInt());
+    }
+
+    public UUID newId() {
+        UUID randomId = UUID.randomUUID();
+        return new UUID(instanceTag << 32 | randomId.getMostSignificantBits() & 0xFFFFFFFFL, randomId.getLeastSignificantBits());
+    }
+
+    public boolean isIssuedByThisInstance(UUID id) {
+        return id.getMostSignificantBits() >>> 32 == instanceTag;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
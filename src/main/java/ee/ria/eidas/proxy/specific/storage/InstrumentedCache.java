@@ -0,0 +1,186 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Records the latency of the operations of a communication cache, the hit and miss counts of the lookups, the
+ * {@code putIfAbsent} conflicts and the sizes of the values written and read, tagged with the logical cache name.
+ * <p>
+ * Sizes are counted in bytes for binary values and in characters for the XML messages. The asynchronous operations of
+ * {@link AsyncCacheOperations} are recorded until their completion runs on the executor.
+ */
+class InstrumentedCache<K, V> extends ForwardingCache<K, V> {
+    static final String OPERATION_TIMER_NAME = "eidas.proxy.communication.cache.operation";
+    static final String LOOKUPS_COUNTER_NAME = "eidas.proxy.communication.cache.lookups";
+    static final String PUT_CONFLICTS_COUNTER_NAME = "eidas.proxy.communication.cache.put.conflicts";
+    static final String PAYLOAD_SIZE_SUMMARY_NAME = "eidas.proxy.communication.cache.payload.size";
+    private final String cacheId;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> operationTimers = new ConcurrentHashMap<>();
+    private final Counter getHits;
+    private final Counter getMisses;
+    private final Counter getAndRemoveHits;
+    private final Counter getAndRemoveMisses;
+    private final Counter putConflicts;
+    private final DistributionSummary writtenPayloadSize;
+    private final DistributionSummary readPayloadSize;
+
+    InstrumentedCache(CommunicationCache<K, V> cache, String cacheId, MeterRegistry meterRegistry) {
+        super(cache);
+        this.cacheId = cacheId;
+        this.meterRegistry = meterRegistry;
+        this.getHits = lookupCounter("get", "hit");
+        this.getMisses = lookupCounter("get", "miss");
+        this.getAndRemoveHits = lookupCounter("getAndRemove", "hit");
+        this.getAndRemoveMisses = lookupCounter("getAndRemove", "miss");
+        this.putConflicts = Counter.builder(PUT_CONFLICTS_COUNTER_NAME)
+                .description("putIfAbsent operations that found an existing entry")
+                .tag("cache", cacheId)
+                .register(meterRegistry);
+        this.writtenPayloadSize = payloadSizeSummary("write");
+        this.readPayloadSize = payloadSizeSummary("read");
+    }
+
+    @Override
+    public V get(K key) {
+        return recordRead(getHits, getMisses, timed("get", () -> cache.get(key)));
+    }
+
+    @Override
+    public void put(K key, V value) {
+        recordWrite(value);
+        timed("put", () -> {
+            cache.put(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        recordWrite(value);
+        return recordPutIfAbsent(timed("putIfAbsent", () -> cache.putIfAbsent(key, value)));
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return timed("remove", () -> cache.remove(key));
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        return timed("remove", () -> cache.remove(key, oldValue));
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return recordRead(getAndRemoveHits, getAndRemoveMisses, timed("getAndRemove", () -> cache.getAndRemove(key)));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        recordWrite(newValue);
+        return timed("replace", () -> cache.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    CompletableFuture<V> getAndRemoveAsync(K key, Executor executor) {
+        long startTime = System.nanoTime();
+        return super.getAndRemoveAsync(key, executor).whenComplete((value, e) -> {
+            record("getAndRemove", startTime);
+            if (e == null) {
+                recordRead(getAndRemoveHits, getAndRemoveMisses, value);
+            }
+        });
+    }
+
+    @Override
+    CompletableFuture<Boolean> putIfAbsentAsync(K key, V value, Executor executor) {
+        recordWrite(value);
+        long startTime = System.nanoTime();
+        return super.putIfAbsentAsync(key, value, executor).whenComplete((inserted, e) -> {
+            record("putIfAbsent", startTime);
+            if (e == null) {
+                recordPutIfAbsent(inserted);
+            }
+        });
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        long startTime = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            record(operation, startTime);
+        }
+    }
+
+    private void record(String operation, long startTime) {
+        operationTimers.computeIfAbsent(operation, this::operationTimer).record(System.nanoTime() - startTime, NANOSECONDS);
+    }
+
+    private V recordRead(Counter hits, Counter misses, V value) {
+        if (value != null) {
+            hits.increment();
+            recordPayloadSize(readPayloadSize, value);
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    private void recordWrite(V value) {
+        recordPayloadSize(writtenPayloadSize, value);
+    }
+
+    private boolean recordPutIfAbsent(boolean inserted) {
+        if (!inserted) {
+            putConflicts.increment();
+        }
+        return inserted;
+    }
+
+    private static void recordPayloadSize(DistributionSummary summary, Object value) {
+        if (value instanceof byte[]) {
+            summary.record(((byte[]) value).length);
+        } else if (value instanceof String) {
+            summary.record(((String) value).length());
+        }
+    }
+
+    private Timer operationTimer(String operation) {
+        return Timer.builder(OPERATION_TIMER_NAME)
+                .description("Communication cache operation time")
+                .tag("cache", cacheId)
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter lookupCounter(String operation, String result) {
+        return Counter.builder(LOOKUPS_COUNTER_NAME)
+                .description("Communication cache lookups by result")
+                .tag("cache", cacheId)
+                .tag("operation", operation)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary payloadSizeSummary(String direction) {
+        return DistributionSummary.builder(PAYLOAD_SIZE_SUMMARY_NAME)
+                .description("Size of the communication cache values, in bytes for binary values and in characters for XML messages")
+                .tag("cache", cacheId)
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+}
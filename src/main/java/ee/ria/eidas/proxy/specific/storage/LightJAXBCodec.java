@@ -1,44 +1,67 @@
 package ee.ria.eidas.proxy.specific.storage;
 
-import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
 import eu.eidas.auth.commons.light.ILightRequest;
 import eu.eidas.auth.commons.light.ILightResponse;
 import eu.eidas.specificcommunication.LightRequest;
 import eu.eidas.specificcommunication.LightResponse;
 import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
 import eu.eidas.specificcommunication.protocol.util.LightMessagesConverter;
-import eu.eidas.specificcommunication.protocol.util.SecurityUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
+import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Slf4j
-public class LightJAXBCodec {
+public class LightJAXBCodec implements LightMessageCodec {
     private static final Class<?>[] LIGHT_REQUEST_CODEC = {LightRequest.class};
     private static final Class<?>[] LIGHT_RESPONSE_CODEC = {LightResponse.class};
+    static final int DEFAULT_POOL_SIZE = 64;
+    private static final SAXParserFactory SECURE_SAX_PARSER_FACTORY = createSecureSaxParserFactory();
     private final LightMessagesConverter messagesConverter = new LightMessagesConverter();
     private final JAXBContext lightRequestJAXBCtx;
     private final JAXBContext lightResponseJAXBCtx;
+    private final Pool<Marshaller> lightRequestMarshallers;
+    private final Pool<Marshaller> lightResponseMarshallers;
+    private final Pool<Unmarshaller> lightRequestUnmarshallers;
+    private final Pool<XMLReader> secureXmlReaders;
 
-    LightJAXBCodec(JAXBContext lightRequestJAXBCtx, JAXBContext lightResponseJAXBCtx) {
+    LightJAXBCodec(JAXBContext lightRequestJAXBCtx, JAXBContext lightResponseJAXBCtx, int poolSize) {
         this.lightRequestJAXBCtx = lightRequestJAXBCtx;
         this.lightResponseJAXBCtx = lightResponseJAXBCtx;
+        this.lightRequestMarshallers = new Pool<>(poolSize);
+        this.lightResponseMarshallers = new Pool<>(poolSize);
+        this.lightRequestUnmarshallers = new Pool<>(poolSize);
+        this.secureXmlReaders = new Pool<>(poolSize);
     }
 
     public static LightJAXBCodec buildDefault() {
+        return build(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param poolSize maximum number of idle marshallers, unmarshallers and secure XML readers kept for reuse per
+     *                 message type, 0 disables reuse and creates a new instance for every call
+     */
+    public static LightJAXBCodec build(int poolSize) {
         JAXBContext lightRequestJAXBContext = getJAXBContext(LIGHT_REQUEST_CODEC);
         JAXBContext lightResponseJAXBContext = getJAXBContext(LIGHT_RESPONSE_CODEC);
-        return new LightJAXBCodec(lightRequestJAXBContext, lightResponseJAXBContext);
+        return new LightJAXBCodec(lightRequestJAXBContext, lightResponseJAXBContext, poolSize);
     }
 
     private static JAXBContext getJAXBContext(Class<?>[] contextClasses) {
@@ -49,11 +72,36 @@ public class LightJAXBCodec {
         }
     }
 
+    /**
+     * Same hardening as {@code SecurityUtils.createSecureSaxSource}: DOCTYPE declarations are rejected, so neither
+     * external nor internal entities are ever resolved. The factory is configured once and only used to create readers.
+     */
+    private static SAXParserFactory createSecureSaxParserFactory() {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setXIncludeAware(false);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            return factory;
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalArgumentException("Unable to instantiate secure SAXParserFactory", e);
+        }
+    }
+
+    static XMLReader createSecureXmlReader() throws ParserConfigurationException, SAXException {
+        return SECURE_SAX_PARSER_FACTORY.newSAXParser().getXMLReader();
+    }
+
     public String marshall(ILightRequest lightRequest) throws SpecificCommunicationException {
         LightRequest xmlLightRequest = messagesConverter.convert(lightRequest);
         return marshall(xmlLightRequest);
     }
 
+    @Override
     public String marshall(ILightResponse lightResponse) throws SpecificCommunicationException {
         LightResponse xmlLightResponse = messagesConverter.convert(lightResponse);
         return marshall(xmlLightResponse);
@@ -64,15 +112,23 @@ public class LightJAXBCodec {
             return null;
         }
         StringWriter writer = new StringWriter();
+        Pool<Marshaller> pool = LightRequest.class.isAssignableFrom(input.getClass())
+                ? lightRequestMarshallers : lightResponseMarshallers;
         try {
-            createMarshaller(input.getClass()).marshal(input, writer);
+            Marshaller marshaller = pool.borrow();
+            if (marshaller == null) {
+                marshaller = createMarshaller(input.getClass());
+            }
+            marshaller.marshal(input, writer);
+            pool.release(marshaller);
         } catch (JAXBException e) {
             throw new SpecificCommunicationException(e);
         }
         return writer.toString();
     }
 
-    public ILightRequest unmarshallRequest(String input, Collection<AttributeDefinition<?>> registry) throws SpecificCommunicationException {
+    @Override
+    public ILightRequest unmarshallRequest(String input, AttributeRegistryIndex registry) throws SpecificCommunicationException {
         if (input == null) {
             return null;
         }
@@ -80,9 +136,19 @@ public class LightJAXBCodec {
             throw new SpecificCommunicationException("Failed to unmarshal LightRequest! Missing attribute registry.");
         }
         try {
-            SAXSource secureSaxSource = SecurityUtils.createSecureSaxSource(input);
-            LightRequest rawRequest = (LightRequest) createUnmarshaller().unmarshal(secureSaxSource);
-            return messagesConverter.convert(rawRequest, registry);
+            XMLReader xmlReader = secureXmlReaders.borrow();
+            if (xmlReader == null) {
+                xmlReader = createSecureXmlReader();
+            }
+            SAXSource secureSaxSource = new SAXSource(xmlReader, new InputSource(new StringReader(input)));
+            Unmarshaller unmarshaller = lightRequestUnmarshallers.borrow();
+            if (unmarshaller == null) {
+                unmarshaller = createUnmarshaller();
+            }
+            LightRequest rawRequest = (LightRequest) unmarshaller.unmarshal(secureSaxSource);
+            lightRequestUnmarshallers.release(unmarshaller);
+            secureXmlReaders.release(xmlReader);
+            return messagesConverter.convert(rawRequest, registry.getAttributes());
         } catch (JAXBException | ParserConfigurationException | SAXException e) {
             throw new IllegalStateException("Failed to unmarshal incoming request! " + e.getMessage(), e);
         }
@@ -103,4 +169,28 @@ public class LightJAXBCodec {
     private Unmarshaller createUnmarshaller() throws JAXBException {
         return lightRequestJAXBCtx.createUnmarshaller();
     }
+
+    /**
+     * Bounded pool of idle JAXB (un)marshallers and SAX readers. These instances are not thread-safe, but can be
+     * reused sequentially. Borrowing never blocks: when the pool is empty, the caller creates a new instance, and
+     * instances released to a full pool are discarded. Instances that failed during (un)marshalling are not released.
+     * The queue is guarded by a j.u.c lock, so borrowing from virtual threads does not pin the carrier thread.
+     */
+    private static class Pool<T> {
+        private final BlockingQueue<T> idle;
+
+        Pool(int size) {
+            this.idle = size > 0 ? new ArrayBlockingQueue<>(size) : null;
+        }
+
+        T borrow() {
+            return idle != null ? idle.poll() : null;
+        }
+
+        void release(T instance) {
+            if (idle != null) {
+                idle.offer(instance);
+            }
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
+
+/**
+ * Converts messages exchanged with EidasNode webapp through the communication cache to and from their XML representation.
+ */
+public interface LightMessageCodec {
+
+    String marshall(ILightResponse lightResponse) throws SpecificCommunicationException;
+
+    ILightRequest unmarshallRequest(String input, AttributeRegistryIndex registry) throws SpecificCommunicationException;
+}
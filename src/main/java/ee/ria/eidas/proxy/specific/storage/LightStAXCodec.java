@@ -0,0 +1,263 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import com.google.common.collect.ImmutableSet;
+import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import eu.eidas.auth.commons.attribute.AttributeValue;
+import eu.eidas.auth.commons.attribute.AttributeValueMarshaller;
+import eu.eidas.auth.commons.attribute.AttributeValueMarshallingException;
+import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
+import eu.eidas.auth.commons.light.ILevelOfAssurance;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.light.IResponseStatus;
+import eu.eidas.auth.commons.light.impl.LevelOfAssurance;
+import eu.eidas.auth.commons.light.impl.LightRequest;
+import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Streaming alternative to {@link LightJAXBCodec}. Reads and writes the LightRequest and LightResponse XML formats
+ * defined by eIDAS-Node specific communication schemas directly from/to {@link ILightRequest} and
+ * {@link ILightResponse}, without the intermediate JAXB beans.
+ */
+public class LightStAXCodec implements LightMessageCodec {
+    static final String LIGHT_REQUEST_NS = "http://cef.eidas.eu/LightRequest";
+    static final String LIGHT_RESPONSE_NS = "http://cef.eidas.eu/LightResponse";
+    private static final QName LIGHT_REQUEST = new QName(LIGHT_REQUEST_NS, "lightRequest");
+    private static final String LIGHT_RESPONSE = "lightResponse";
+    private static final String NOTIFIED_LOA_TYPE = "notified";
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+
+    public LightStAXCodec() {
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        outputFactory = XMLOutputFactory.newFactory();
+    }
+
+    @Override
+    public String marshall(ILightResponse lightResponse) throws SpecificCommunicationException {
+        if (lightResponse == null) {
+            return null;
+        }
+        StringWriter output = new StringWriter(2048);
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(output);
+            try {
+                writer.writeStartDocument(UTF_8.name(), "1.0");
+                writer.setDefaultNamespace(LIGHT_RESPONSE_NS);
+                writer.writeStartElement(LIGHT_RESPONSE_NS, LIGHT_RESPONSE);
+                writer.writeDefaultNamespace(LIGHT_RESPONSE_NS);
+                writeElement(writer, "id", lightResponse.getId());
+                writeElement(writer, "inResponseToId", lightResponse.getInResponseToId());
+                writeElement(writer, "consent", lightResponse.getConsent());
+                writeElement(writer, "issuer", lightResponse.getIssuer());
+                writeElement(writer, "ipAddress", lightResponse.getIPAddress());
+                writeElement(writer, "relayState", lightResponse.getRelayState());
+                writeElement(writer, "subject", lightResponse.getSubject());
+                writeElement(writer, "subjectNameIdFormat", lightResponse.getSubjectNameIdFormat());
+                writeElement(writer, "levelOfAssurance", lightResponse.getLevelOfAssurance());
+                writeStatus(writer, lightResponse.getStatus());
+                writeAttributes(writer, lightResponse.getAttributes());
+                writer.writeEndElement();
+                writer.writeEndDocument();
+            } finally {
+                writer.close();
+            }
+        } catch (XMLStreamException | AttributeValueMarshallingException e) {
+            throw new SpecificCommunicationException(e);
+        }
+        return output.toString();
+    }
+
+    @Override
+    public ILightRequest unmarshallRequest(String input, AttributeRegistryIndex registry) throws SpecificCommunicationException {
+        if (input == null) {
+            return null;
+        }
+        if (registry == null) {
+            throw new SpecificCommunicationException("Failed to unmarshal LightRequest! Missing attribute registry.");
+        }
+        LightRequest.Builder builder = LightRequest.builder();
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(input));
+            try {
+                reader.nextTag();
+                if (!LIGHT_REQUEST.equals(reader.getName())) {
+                    throw new IllegalStateException(String.format("Failed to unmarshal incoming request! unexpected " +
+                                    "element (uri:\"%s\", local:\"%s\"). Expected elements are <%s>",
+                            reader.getName().getNamespaceURI(), reader.getLocalName(), LIGHT_REQUEST));
+                }
+                readLightRequest(reader, builder, registry);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to unmarshal incoming request! " + e.getMessage(), e);
+        }
+        return builder.build();
+    }
+
+    private void readLightRequest(XMLStreamReader reader, LightRequest.Builder builder, AttributeRegistryIndex registry)
+            throws XMLStreamException, SpecificCommunicationException {
+        List<ILevelOfAssurance> levelsOfAssurance = new ArrayList<>();
+        while (reader.nextTag() == START_ELEMENT) {
+            if (!LIGHT_REQUEST_NS.equals(reader.getNamespaceURI())) {
+                skipElement(reader);
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "citizenCountryCode" -> builder.citizenCountryCode(reader.getElementText());
+                case "id" -> builder.id(reader.getElementText());
+                case "issuer" -> builder.issuer(reader.getElementText());
+                case "levelOfAssurance" -> levelsOfAssurance.add(readLevelOfAssurance(reader));
+                case "nameIdFormat" -> builder.nameIdFormat(reader.getElementText());
+                case "providerName" -> builder.providerName(reader.getElementText());
+                case "spType" -> builder.spType(reader.getElementText());
+                case "spCountryCode" -> builder.spCountryCode(reader.getElementText());
+                case "requesterId" -> builder.requesterId(reader.getElementText());
+                case "relayState" -> builder.relayState(reader.getElementText());
+                case "requestedAttributes" -> builder.requestedAttributes(readRequestedAttributes(reader, registry));
+                default -> skipElement(reader);
+            }
+        }
+        if (!levelsOfAssurance.isEmpty()) {
+            builder.levelsOfAssurance(levelsOfAssurance);
+        }
+    }
+
+    private ILevelOfAssurance readLevelOfAssurance(XMLStreamReader reader) throws XMLStreamException {
+        String type = reader.getAttributeValue(null, "type");
+        return LevelOfAssurance.builder()
+                .type(type != null ? type : NOTIFIED_LOA_TYPE)
+                .value(reader.getElementText())
+                .build();
+    }
+
+    /**
+     * Like the eIDAS-Node converter used by {@link LightJAXBCodec}, fails on an attribute whose definition is missing or
+     * not in the registry, instead of dropping the attribute from the request.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ImmutableAttributeMap readRequestedAttributes(XMLStreamReader reader, AttributeRegistryIndex registry)
+            throws XMLStreamException, SpecificCommunicationException {
+        ImmutableAttributeMap.Builder attributes = ImmutableAttributeMap.builder();
+        while (reader.nextTag() == START_ELEMENT) {
+            if (!isLightRequestElement(reader, "attribute")) {
+                skipElement(reader);
+                continue;
+            }
+            String definitionUri = null;
+            List<String> values = new ArrayList<>();
+            while (reader.nextTag() == START_ELEMENT) {
+                if (isLightRequestElement(reader, "definition")) {
+                    definitionUri = reader.getElementText();
+                } else if (isLightRequestElement(reader, "value")) {
+                    values.add(reader.getElementText());
+                } else {
+                    skipElement(reader);
+                }
+            }
+            AttributeDefinition definition = getAttributeDefinition(registry, definitionUri);
+            attributes.put(definition, unmarshalValues(definition, values));
+        }
+        return attributes.build();
+    }
+
+    private boolean isLightRequestElement(XMLStreamReader reader, String localName) {
+        return LIGHT_REQUEST_NS.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    private AttributeDefinition<?> getAttributeDefinition(AttributeRegistryIndex registry, String definitionUri)
+            throws SpecificCommunicationException {
+        if (definitionUri == null || definitionUri.isBlank()) {
+            throw new SpecificCommunicationException("Failed to unmarshal LightRequest! Attribute definition is missing.");
+        }
+        AttributeDefinition<?> definition = registry.getByNameUri(definitionUri);
+        if (definition == null) {
+            throw new SpecificCommunicationException("Failed to unmarshal LightRequest! Unknown attribute definition: " + definitionUri);
+        }
+        return definition;
+    }
+
+    private ImmutableSet<AttributeValue<?>> unmarshalValues(AttributeDefinition<?> definition, List<String> values) {
+        AttributeValueMarshaller<?> marshaller = definition.getAttributeValueMarshaller();
+        ImmutableSet.Builder<AttributeValue<?>> attributeValues = ImmutableSet.builder();
+        for (String value : values) {
+            try {
+                attributeValues.add(marshaller.unmarshal(value, false));
+            } catch (AttributeValueMarshallingException e) {
+                throw new IllegalStateException("Failed to unmarshal incoming request! Invalid value for attribute "
+                        + definition.getNameUri() + ": " + e.getMessage(), e);
+            }
+        }
+        return attributeValues.build();
+    }
+
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeStartElement(LIGHT_RESPONSE_NS, name);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
+    private void writeStatus(XMLStreamWriter writer, IResponseStatus status) throws XMLStreamException {
+        if (status != null) {
+            writer.writeStartElement(LIGHT_RESPONSE_NS, "status");
+            writeElement(writer, "failure", String.valueOf(status.isFailure()));
+            writeElement(writer, "statusCode", status.getStatusCode());
+            writeElement(writer, "subStatusCode", status.getSubStatusCode());
+            writeElement(writer, "statusMessage", status.getStatusMessage());
+            writer.writeEndElement();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void writeAttributes(XMLStreamWriter writer, ImmutableAttributeMap attributes) throws XMLStreamException,
+            AttributeValueMarshallingException {
+        if (attributes == null) {
+            return;
+        }
+        writer.writeStartElement(LIGHT_RESPONSE_NS, "attributes");
+        for (ImmutableAttributeMap.ImmutableAttributeEntry<?> entry : attributes.entrySet()) {
+            writer.writeStartElement(LIGHT_RESPONSE_NS, "attribute");
+            writeElement(writer, "definition", entry.getKey().getNameUri().toASCIIString());
+            AttributeValueMarshaller marshaller = entry.getKey().getAttributeValueMarshaller();
+            for (AttributeValue<?> value : entry.getValues()) {
+                writeElement(writer, "value", marshaller.marshal((AttributeValue) value));
+            }
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+}
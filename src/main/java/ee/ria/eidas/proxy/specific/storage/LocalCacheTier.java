@@ -0,0 +1,37 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.CacheExpiryProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.LocalTierProperties;
+import lombok.RequiredArgsConstructor;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Puts a node-local tier in front of the IdP side communication caches, whose entries are written and, with sticky
+ * sessions, read by the same application instance. Writes through to the cluster and removals from it run on the
+ * given executor.
+ */
+@RequiredArgsConstructor
+public class LocalCacheTier {
+    private final LocalTierProperties properties;
+    private final InstanceAffinity instanceAffinity;
+    private final Executor executor;
+
+    /**
+     * @param cacheExpiry        the client-side expiry of the cluster cache, or {@code null} if not configured. The local
+     *                           entries never live longer than the cluster entries they were written through to.
+     * @param instanceAffineKeys whether the keys are issued by {@link InstanceAffinity}, in which case keys issued by
+     *                           other instances are looked up in the cluster without checking the local tier
+     */
+    public <V> CommunicationCache<UUID, V> localTier(CommunicationCache<UUID, V> cache, CacheExpiryProperties cacheExpiry, boolean instanceAffineKeys) {
+        return new LocalTierCache<>(cache, properties.getMaxEntries(), SECONDS.toNanos(getTtlInSeconds(cacheExpiry)),
+                instanceAffineKeys ? instanceAffinity::isIssuedByThisInstance : key -> true, executor);
+    }
+
+    long getTtlInSeconds(CacheExpiryProperties cacheExpiry) {
+        return cacheExpiry != null ? Math.min(properties.getTtlInSeconds(), cacheExpiry.getTtlInSeconds()) : properties.getTtlInSeconds();
+    }
+}
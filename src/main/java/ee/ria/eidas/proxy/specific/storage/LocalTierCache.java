@@ -0,0 +1,167 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+import static ee.ria.eidas.proxy.specific.config.LogFieldNames.IGNITE_CACHE_NAME;
+import static net.logstash.logback.marker.Markers.append;
+
+/**
+ * Keeps the entries written by this application instance in a bounded node-local map in front of the cluster cache.
+ * <p>
+ * Entries are written to the local map and written through to the cluster cache in the background, so that a callback
+ * landing on another instance finds them in the cluster. Lookups of keys issued by this instance are served from the
+ * local map. Other keys, and keys no longer in the local map, are looked up in the cluster.
+ * <p>
+ * Taking a local entry removes its cluster copy before the entry is returned, once the write-through has completed.
+ * The copy is removed only if it still holds the same value, and if a copy that was written through is no longer in
+ * the cluster, it has been taken by a callback replayed on another instance and the local entry is not returned
+ * either. If the write-through failed, the cluster holds no copy and the local entry is returned. If the removal
+ * fails, the operation fails, and the entry is left to the cluster.
+ * <p>
+ * When the local map is full, expired entries are purged and, if it is still full, new entries are written only to
+ * the cluster. The {@code put} and {@code replace} operations go to the cluster only, after dropping the local entry.
+ */
+@Slf4j
+class LocalTierCache<K, V> extends ForwardingCache<K, V> {
+    private final Map<K, LocalEntry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long timeToLiveInNanos;
+    private final Predicate<K> isLocalKey;
+    private final Executor executor;
+
+    LocalTierCache(CommunicationCache<K, V> cache, int maxEntries, long timeToLiveInNanos, Predicate<K> isLocalKey, Executor executor) {
+        super(cache);
+        this.maxEntries = maxEntries;
+        this.timeToLiveInNanos = timeToLiveInNanos;
+        this.isLocalKey = isLocalKey;
+        this.executor = executor;
+    }
+
+    int getLocalSize() {
+        return entries.size();
+    }
+
+    @Override
+    public V get(K key) {
+        LocalEntry<V> entry = isLocalKey.test(key) ? entries.get(key) : null;
+        return entry != null && !entry.isExpired() ? entry.value : cache.get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        entries.remove(key);
+        cache.put(key, value);
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        Boolean inserted = putIfAbsentLocally(key, value);
+        return inserted != null ? inserted : cache.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean remove(K key) {
+        boolean removedLocally = entries.remove(key) != null;
+        return cache.remove(key) || removedLocally;
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        LocalEntry<V> entry = removeLocally(key);
+        if (entry == null) {
+            return cache.getAndRemove(key);
+        }
+        Boolean writtenThrough = entry.writeThrough.join();
+        return valueUnlessTakenElsewhere(entry, writtenThrough, cache.remove(key, entry.value));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        entries.remove(key);
+        return cache.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    CompletableFuture<V> getAndRemoveAsync(K key, Executor executor) {
+        LocalEntry<V> entry = removeLocally(key);
+        if (entry == null) {
+            return super.getAndRemoveAsync(key, executor);
+        }
+        return entry.writeThrough.thenCompose(writtenThrough -> AsyncCacheOperations.removeAsync(cache, key, entry.value, executor)
+                .thenApply(removed -> valueUnlessTakenElsewhere(entry, writtenThrough, removed)));
+    }
+
+    /**
+     * A local write completes the future on the calling thread.
+     */
+    @Override
+    CompletableFuture<Boolean> putIfAbsentAsync(K key, V value, Executor executor) {
+        Boolean inserted = putIfAbsentLocally(key, value);
+        return inserted != null ? CompletableFuture.completedFuture(inserted) : super.putIfAbsentAsync(key, value, executor);
+    }
+
+    /**
+     * @return whether the entry was inserted, or {@code null} if the local map is full
+     */
+    private Boolean putIfAbsentLocally(K key, V value) {
+        if (entries.size() >= maxEntries) {
+            entries.values().removeIf(LocalEntry::isExpired);
+            if (entries.size() >= maxEntries) {
+                return null;
+            }
+        }
+        CompletableFuture<Boolean> writeThrough = new CompletableFuture<>();
+        LocalEntry<V> entry = new LocalEntry<>(value, System.nanoTime() + timeToLiveInNanos, writeThrough);
+        LocalEntry<V> existing = entries.putIfAbsent(key, entry);
+        if (existing != null && !existing.isExpired()) {
+            return false;
+        } else if (existing != null && !entries.replace(key, existing, entry)) {
+            return false;
+        }
+        AsyncCacheOperations.putIfAbsentAsync(cache, key, value, executor).whenComplete((inserted, e) -> {
+            if (e != null) {
+                log.warn(append(IGNITE_CACHE_NAME, getName()), "Unable to write entry through to the cluster: {}", e.getMessage());
+            }
+            writeThrough.complete(inserted);
+        });
+        return true;
+    }
+
+    private LocalEntry<V> removeLocally(K key) {
+        LocalEntry<V> entry = isLocalKey.test(key) ? entries.remove(key) : null;
+        return entry == null || entry.isExpired() ? null : entry;
+    }
+
+    private V valueUnlessTakenElsewhere(LocalEntry<V> entry, Boolean writtenThrough, boolean clusterCopyRemoved) {
+        if (clusterCopyRemoved || !Boolean.TRUE.equals(writtenThrough)) {
+            return entry.value;
+        }
+        log.warn(append(IGNITE_CACHE_NAME, getName()), "Local entry not returned, its cluster copy has already been taken");
+        return null;
+    }
+
+    private static final class LocalEntry<V> {
+        private final V value;
+        private final long expiresAt;
+        /**
+         * Completed when the write-through to the cluster has completed, successfully or not.
+         */
+        private final CompletableFuture<Boolean> writeThrough;
+
+        private LocalEntry(V value, long expiresAt, CompletableFuture<Boolean> writeThrough) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.writeThrough = writeThrough;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
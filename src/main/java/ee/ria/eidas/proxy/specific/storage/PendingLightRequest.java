@@ -0,0 +1,46 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
+import eu.eidas.auth.commons.light.ILevelOfAssurance;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.impl.LightRequest;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * LightRequest restored from a pending IdP request entry or from the sealed OIDC state by {@link IdpCacheEntryCodec}.
+ * <p>
+ * Unlike {@link LightRequest}, the fields that are not written to the sealed OIDC state may be {@code null}.
+ * Serialized as a regular {@link LightRequest}.
+ */
+@Getter
+@ToString(onlyExplicitlyIncluded = true)
+@RequiredArgsConstructor
+final class PendingLightRequest implements ILightRequest {
+    private static final long serialVersionUID = 1L;
+
+    @ToString.Include
+    private final String id;
+    @ToString.Include
+    private final String levelOfAssurance;
+    @ToString.Include
+    private final String relayState;
+    @ToString.Include
+    private final String nameIdFormat;
+    @ToString.Include
+    private final String providerName;
+    private final String issuer;
+    private final String citizenCountryCode;
+    private final List<ILevelOfAssurance> levelsOfAssurance;
+    private final String spType;
+    private final String spCountryCode;
+    private final String requesterId;
+    private final ImmutableAttributeMap requestedAttributes;
+
+    private Object writeReplace() {
+        return LightRequest.builder(this).build();
+    }
+}
@@ -0,0 +1,93 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.monitoring.jfr.CacheOperationEvent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Records the operations of a communication cache as {@link CacheOperationEvent}s for JDK Flight Recorder, tagged with
+ * the logical cache name. The event of an asynchronous operation of {@link AsyncCacheOperations} ends when the
+ * operation completes. The events are committed only while a recording enables them.
+ */
+class RecordedCache<K, V> extends ForwardingCache<K, V> {
+    private final String cacheId;
+
+    RecordedCache(CommunicationCache<K, V> cache, String cacheId) {
+        super(cache);
+        this.cacheId = cacheId;
+    }
+
+    @Override
+    public V get(K key) {
+        return recorded("get", null, () -> cache.get(key));
+    }
+
+    @Override
+    public void put(K key, V value) {
+        recorded("put", value, () -> {
+            cache.put(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        return recorded("putIfAbsent", value, () -> cache.putIfAbsent(key, value));
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return recorded("remove", null, () -> cache.remove(key));
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        return recorded("remove", null, () -> cache.remove(key, oldValue));
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return recorded("getAndRemove", null, () -> cache.getAndRemove(key));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return recorded("replace", newValue, () -> cache.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    CompletableFuture<V> getAndRemoveAsync(K key, Executor executor) {
+        CacheOperationEvent event = new CacheOperationEvent();
+        event.begin();
+        return super.getAndRemoveAsync(key, executor)
+                .whenComplete((value, e) -> event.end(cacheId, "getAndRemove", e == null, value));
+    }
+
+    @Override
+    CompletableFuture<Boolean> putIfAbsentAsync(K key, V value, Executor executor) {
+        CacheOperationEvent event = new CacheOperationEvent();
+        event.begin();
+        return super.putIfAbsentAsync(key, value, executor)
+                .whenComplete((inserted, e) -> event.end(cacheId, "putIfAbsent", e == null, value));
+    }
+
+    /**
+     * @param writtenValue the value written by the operation, or {@code null} if the operation reads a value, so that
+     * the event carries the size of the value written or the result read
+     */
+    private <T> T recorded(String operation, V writtenValue, Supplier<T> call) {
+        CacheOperationEvent event = new CacheOperationEvent();
+        event.begin();
+        T result = null;
+        boolean succeeded = false;
+        try {
+            result = call.get();
+            succeeded = true;
+            return result;
+        } finally {
+            event.end(cacheId, operation, succeeded, writtenValue != null ? writtenValue : result);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Seals data that is handed to the user agent instead of being stored in a communication cache.
+ * <p>
+ * The token is the URL-safe Base64 (without padding) form of a random 96-bit IV followed by the AES-GCM encryption of
+ * the deflated plaintext. The plaintext holds a random one-time-use nonce, the expiry time in epoch seconds and the
+ * payload. The associated data given on construction is authenticated with every token, so tokens sealed for one
+ * purpose cannot be opened for another even if the same key is configured.
+ */
+@Slf4j
+public class SealedTokenCipher {
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final int HEADER_LENGTH = 3 * Long.BYTES;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final SecretKeySpec key;
+    private final byte[] associatedData;
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    public SealedTokenCipher(byte[] key, String associatedData, Duration timeToLive) {
+        this(key, associatedData, timeToLive, Clock.systemUTC());
+    }
+
+    SealedTokenCipher(byte[] key, String associatedData, Duration timeToLive, Clock clock) {
+        if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+            throw new IllegalArgumentException("Sealed token key must be 128, 192 or 256 bits long");
+        }
+        this.key = new SecretKeySpec(key, "AES");
+        this.associatedData = associatedData.getBytes(UTF_8);
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    /**
+     * Derives a 256-bit key from a shared secret that is also used for other purposes, such as signing light tokens.
+     */
+    public static byte[] deriveKey(String secret, String purpose) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(UTF_8), "HmacSHA256"));
+            return mac.doFinal(purpose.getBytes(UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive sealed token key: " + e.getMessage(), e);
+        }
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    public String seal(byte[] payload) {
+        UUID nonce = UUID.randomUUID();
+        ByteBuffer plaintext = ByteBuffer.allocate(HEADER_LENGTH + payload.length)
+                .putLong(nonce.getMostSignificantBits())
+                .putLong(nonce.getLeastSignificantBits())
+                .putLong(clock.instant().plus(timeToLive).getEpochSecond())
+                .put(payload);
+        byte[] iv = new byte[IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        try {
+            byte[] ciphertext = createCipher(Cipher.ENCRYPT_MODE, iv).doFinal(deflate(plaintext.array()));
+            return ENCODER.encodeToString(ByteBuffer.allocate(IV_LENGTH + ciphertext.length).put(iv).put(ciphertext).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to seal token: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the opened token, or {@code null} if the token is malformed, was not sealed with this key and associated
+     * data, or has expired
+     */
+    public OpenedToken open(String token) {
+        byte[] plaintext;
+        try {
+            byte[] sealed = DECODER.decode(token);
+            if (sealed.length <= IV_LENGTH) {
+                log.warn("Sealed token is too short");
+                return null;
+            }
+            plaintext = inflate(createCipher(Cipher.DECRYPT_MODE, sealed).doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH));
+        } catch (IllegalArgumentException | GeneralSecurityException | DataFormatException e) {
+            log.warn("Sealed token could not be opened: {}", e.getMessage());
+            return null;
+        }
+        if (plaintext.length < HEADER_LENGTH) {
+            log.warn("Sealed token is too short");
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+        UUID nonce = new UUID(buffer.getLong(), buffer.getLong());
+        long expiresAt = buffer.getLong();
+        if (clock.instant().getEpochSecond() > expiresAt) {
+            log.warn("Sealed token with nonce '{}' has expired", nonce);
+            return null;
+        }
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return new OpenedToken(nonce, payload);
+    }
+
+    /**
+     * @param iv the IV, or the sealed token that starts with the IV
+     */
+    private Cipher createCipher(int mode, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv, 0, IV_LENGTH));
+        cipher.updateAAD(associatedData);
+        return cipher;
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length);
+            byte[] buffer = new byte[256];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 2);
+            byte[] buffer = new byte[256];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Unexpected end of sealed data");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Value
+    public static class OpenedToken {
+        UUID nonce;
+        byte[] payload;
+    }
+}
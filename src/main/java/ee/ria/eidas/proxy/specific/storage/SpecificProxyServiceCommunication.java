@@ -2,6 +2,7 @@ package ee.ria.eidas.proxy.specific.storage;
 
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
 import ee.ria.eidas.proxy.specific.error.BadRequestException;
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics;
 import eu.eidas.auth.commons.exceptions.SecurityEIDASException;
 import eu.eidas.auth.commons.light.ILightRequest;
 import eu.eidas.auth.commons.light.ILightResponse;
@@ -12,16 +13,22 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
-import javax.cache.Cache;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static ee.ria.eidas.proxy.specific.config.LogFieldNames.*;
+import static ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Stage.*;
+import static ee.ria.eidas.proxy.specific.storage.IdpCacheEntryCodec.toCacheKey;
+import static ee.ria.eidas.proxy.specific.storage.IdpCacheEntryCodec.toCacheKeyOrNull;
 import static net.logstash.logback.argument.StructuredArguments.value;
 import static net.logstash.logback.marker.Markers.append;
 
@@ -34,20 +41,82 @@ public class SpecificProxyServiceCommunication {
 
     @Lazy
     @Autowired
-    private Cache<String, CorrelatedRequestsHolder> idpRequestCommunicationCache;
+    @Qualifier("specificMSIdpRequestCorrelationMap")
+    private CommunicationCache<UUID, byte[]> idpRequestCommunicationCache;
 
     @Lazy
     @Autowired
-    private Cache<String, ILightResponse> idpConsentCommunicationCache;
+    @Qualifier("specificMSIdpConsentCorrelationMap")
+    private CommunicationCache<UUID, byte[]> idpConsentCommunicationCache;
 
-    public BinaryLightToken putPendingLightResponse(ILightResponse lightResponse) throws SpecificCommunicationException {
-        final BinaryLightToken binaryLightToken = BinaryLightTokenHelper.createBinaryLightToken(
+    @Lazy
+    @Autowired
+    @Qualifier("specificMSIdpStateNonceCache")
+    private CommunicationCache<UUID, Boolean> idpStateNonceCache;
+
+    @Lazy
+    @Autowired
+    @Qualifier("specificMSIdpConsentNonceCache")
+    private CommunicationCache<UUID, Boolean> idpConsentNonceCache;
+
+    @Autowired
+    private IdpCacheEntryCodec idpCacheEntryCodec;
+
+    @Autowired
+    private InstanceAffinity instanceAffinity;
+
+    @Autowired(required = false)
+    @Qualifier("consentTokenCipher")
+    private SealedTokenCipher consentTokenCipher;
+
+    @Autowired(required = false)
+    @Qualifier("idpStateCipher")
+    private SealedTokenCipher idpStateCipher;
+
+    @Autowired
+    @Qualifier("communicationCacheExecutor")
+    private Executor communicationCacheExecutor;
+
+    @Autowired
+    private AuthenticationFlowMetrics authenticationFlowMetrics;
+
+    /**
+     * @return the consent token: the Base64 encoded binary light token of the stored LightResponse, or the sealed
+     * LightResponse when {@code eidas.proxy.consent-binary-light-token.mode} is {@code SEALED}
+     */
+    public CompletableFuture<String> putPendingLightResponseAsync(ILightResponse lightResponse) {
+        byte[] entry = authenticationFlowMetrics.timed(CONSENT_MARSHAL, () -> idpCacheEntryCodec.marshall(lightResponse));
+        return authenticationFlowMetrics.timedAsync(CONSENT_STORE, () -> storePendingLightResponseAsync(lightResponse, entry));
+    }
+
+    private CompletableFuture<String> storePendingLightResponseAsync(ILightResponse lightResponse, byte[] entry) {
+        if (consentTokenCipher != null) {
+            String consentToken = consentTokenCipher.seal(entry);
+            if (log.isInfoEnabled())
+                log.info(append(LIGHT_RESPONSE, lightResponse), "LightResponse was sealed into the consent token");
+            return CompletableFuture.completedFuture(consentToken);
+        }
+        try {
+            final BinaryLightToken binaryLightToken = createConsentBinaryLightToken();
+            return AsyncCacheOperations.putIfAbsentAsync(idpConsentCommunicationCache, toCacheKey(binaryLightToken.getToken().getId()),
+                            entry, communicationCacheExecutor)
+                    .thenApply(isInserted -> {
+                        logPendingLightResponseSaved(lightResponse, binaryLightToken, isInserted);
+                        return BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken);
+                    });
+        } catch (SpecificCommunicationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private BinaryLightToken createConsentBinaryLightToken() throws SpecificCommunicationException {
+        return BinaryLightTokenHelper.createBinaryLightToken(
                 specificProxyServiceProperties.getConsentBinaryLightToken().getIssuer(),
                 specificProxyServiceProperties.getConsentBinaryLightToken().getSecret(),
                 specificProxyServiceProperties.getConsentBinaryLightToken().getAlgorithm());
+    }
 
-        boolean isInserted = idpConsentCommunicationCache.putIfAbsent(binaryLightToken.getToken().getId(), lightResponse);
-
+    private void logPendingLightResponseSaved(ILightResponse lightResponse, BinaryLightToken binaryLightToken, boolean isInserted) {
         if (isInserted) {
             if (log.isInfoEnabled())
                 log.info(append(LIGHT_RESPONSE, lightResponse)
@@ -61,44 +130,89 @@ public class SpecificProxyServiceCommunication {
                         "LightResponse with tokenId: '{}' already exists",
                         value(LIGHT_RESPONSE_LIGHT_TOKEN_ID, binaryLightToken.getToken().getId()));
         }
+    }
 
-        return binaryLightToken;
+    /**
+     * Validates the token in the calling thread, so that an invalid token fails before any cache request is made.
+     */
+    public CompletableFuture<ILightResponse> getAndRemovePendingLightResponseAsync(String binaryLightTokenBase64) {
+        if (consentTokenCipher != null) {
+            return openSealedTokenOnceAsync(consentTokenCipher, idpConsentNonceCache, binaryLightTokenBase64)
+                    .thenApply(this::getSealedLightResponse);
+        }
+        final UUID lightTokenId = getConsentCacheKey(binaryLightTokenBase64);
+        return AsyncCacheOperations.getAndRemoveAsync(idpConsentCommunicationCache, lightTokenId, communicationCacheExecutor)
+                .thenApply(entry -> {
+                    ILightResponse lightResponse = idpCacheEntryCodec.unmarshallResponse(entry);
+                    logPendingLightResponseRetrieved(lightTokenId, lightResponse);
+                    return lightResponse;
+                });
     }
 
-    public ILightResponse getAndRemovePendingLightResponse(String binaryLightTokenBase64) {
+    private ILightResponse getSealedLightResponse(byte[] sealedLightResponse) {
+        if (sealedLightResponse == null) {
+            log.warn("LightResponse not found from sealed consent token");
+            return null;
+        }
+        ILightResponse lightResponse = idpCacheEntryCodec.unmarshallResponse(sealedLightResponse);
+        log.info("LightResponse opened from sealed consent token in response to LightRequest with id: '{}'", lightResponse.getInResponseToId());
+        return lightResponse;
+    }
+
+    private UUID getConsentCacheKey(String binaryLightTokenBase64) {
         Assert.isTrue(StringUtils.isNotEmpty(binaryLightTokenBase64), "Token value cannot be null or empty!");
 
         try {
-            final String lightTokenId = BinaryLightTokenHelper.getBinaryLightTokenId(binaryLightTokenBase64,
+            return toCacheKey(BinaryLightTokenHelper.getBinaryLightTokenId(binaryLightTokenBase64,
                     specificProxyServiceProperties.getConsentBinaryLightToken().getSecret(),
-                    specificProxyServiceProperties.getConsentBinaryLightToken().getAlgorithm());
-
-            ILightResponse lightResponse = idpConsentCommunicationCache.getAndRemove(lightTokenId);
-
-            if (lightResponse != null) {
+                    specificProxyServiceProperties.getConsentBinaryLightToken().getAlgorithm()));
+        } catch (SpecificCommunicationException | SecurityEIDASException | IllegalArgumentException e) {
+            throw new BadRequestException("Invalid token", e);
+        }
+    }
 
-                if (log.isInfoEnabled())
-                    log.info(append(IGNITE_CACHE_NAME, idpConsentCommunicationCache.getName()),
-                            "LightResponse retrieved from cache for tokenId: '{}'",
-                            value(LIGHT_RESPONSE_LIGHT_TOKEN_ID, lightTokenId));
-            } else {
+    private void logPendingLightResponseRetrieved(UUID lightTokenId, ILightResponse lightResponse) {
+        if (lightResponse != null) {
 
-                if (log.isWarnEnabled())
-                    log.warn(append(IGNITE_CACHE_NAME, idpConsentCommunicationCache.getName()),
-                            "LightResponse not found from cache for tokenId: '{}'",
-                            value(LIGHT_RESPONSE_LIGHT_TOKEN_ID, lightTokenId));
-            }
+            if (log.isInfoEnabled())
+                log.info(append(IGNITE_CACHE_NAME, idpConsentCommunicationCache.getName()),
+                        "LightResponse retrieved from cache for tokenId: '{}'",
+                        value(LIGHT_RESPONSE_LIGHT_TOKEN_ID, lightTokenId));
+        } else {
 
-            return lightResponse;
+            if (log.isWarnEnabled())
+                log.warn(append(IGNITE_CACHE_NAME, idpConsentCommunicationCache.getName()),
+                        "LightResponse not found from cache for tokenId: '{}'",
+                        value(LIGHT_RESPONSE_LIGHT_TOKEN_ID, lightTokenId));
+        }
+    }
 
-        } catch (SpecificCommunicationException | SecurityEIDASException e) {
-            throw new BadRequestException("Invalid token", e);
+    /**
+     * @return a UUID carrying this application instance (see {@link InstanceAffinity}), or the sealed correlation data
+     * when {@code eidas.proxy.oidc.state.mode} is {@code SEALED}
+     */
+    public String createIdpRequestState(ILightRequest lightRequest) {
+        if (idpStateCipher != null) {
+            return idpStateCipher.seal(idpCacheEntryCodec.marshallIdpState(lightRequest));
         }
+        return instanceAffinity.newId().toString();
     }
 
-    public void putIdpRequest(String state, CorrelatedRequestsHolder requestsHolder) {
-        boolean isInserted = idpRequestCommunicationCache.putIfAbsent(state, requestsHolder);
+    /**
+     * Nothing is stored when the state is sealed, as the correlation data is returned by the IdP in the state itself.
+     */
+    public CompletableFuture<Void> putIdpRequestAsync(String state, CorrelatedRequestsHolder requestsHolder) {
+        if (idpStateCipher != null) {
+            logIdpRequestSealed(requestsHolder);
+            return CompletableFuture.completedFuture(null);
+        }
+        byte[] entry = authenticationFlowMetrics.timed(IDP_REQUEST_MARSHAL, () -> idpCacheEntryCodec.marshall(requestsHolder));
+        return authenticationFlowMetrics.timedAsync(IDP_CACHE_PUT,
+                        () -> AsyncCacheOperations.putIfAbsentAsync(idpRequestCommunicationCache, toCacheKey(state), entry, communicationCacheExecutor))
+                .thenAccept(isInserted -> logIdpRequestSaved(state, requestsHolder, isInserted));
+    }
 
+    private void logIdpRequestSaved(String state, CorrelatedRequestsHolder requestsHolder, boolean isInserted) {
         if (isInserted) {
 
             if (log.isInfoEnabled())
@@ -116,12 +230,64 @@ public class SpecificProxyServiceCommunication {
         }
     }
 
-    public ILightRequest getAndRemoveIdpRequest(String inResponseToId) {
-        CorrelatedRequestsHolder correlatedRequestsHolder = idpRequestCommunicationCache.getAndRemove(inResponseToId);
+    private void logIdpRequestSealed(CorrelatedRequestsHolder requestsHolder) {
+        if (log.isInfoEnabled())
+            log.info(append(IDP_REQUEST_CORRELATED_REQUESTS, requestsHolder),
+                    "Pending IDP request was sealed into the state for LightRequest with id: '{}'",
+                    requestsHolder.getLightRequest().getId());
+    }
+
+    /**
+     * A state that is not a UUID cannot be present in the cache, so it is reported as not found without a cache request.
+     */
+    public CompletableFuture<ILightRequest> getAndRemoveIdpRequestAsync(String inResponseToId) {
+        if (idpStateCipher != null) {
+            return openSealedTokenOnceAsync(idpStateCipher, idpStateNonceCache, inResponseToId).thenApply(this::getSealedLightRequest);
+        }
+        UUID cacheKey = toCacheKeyOrNull(inResponseToId);
+        if (cacheKey == null) {
+            return CompletableFuture.completedFuture(getOriginalLightRequest(inResponseToId, null));
+        }
+        return AsyncCacheOperations.getAndRemoveAsync(idpRequestCommunicationCache, cacheKey, communicationCacheExecutor)
+                .thenApply(entry -> getOriginalLightRequest(inResponseToId, idpCacheEntryCodec.unmarshallLightRequest(entry)));
+    }
+
+    private ILightRequest getSealedLightRequest(byte[] sealedState) {
+        if (sealedState == null) {
+            log.warn("Pending IDP request not found from sealed state");
+            return null;
+        }
+        ILightRequest originalLightRequest = idpCacheEntryCodec.unmarshallIdpState(sealedState);
+        log.info("Pending IDP request opened from sealed state for LightRequest with id: '{}'", originalLightRequest.getId());
+        return originalLightRequest;
+    }
+
+    /**
+     * A sealed token is accepted once: its nonce is recorded in the nonce cache, whose entries outlive the token.
+     *
+     * @return the payload of the token, or {@code null} if the token is not valid or has already been used
+     */
+    private CompletableFuture<byte[]> openSealedTokenOnceAsync(SealedTokenCipher cipher, CommunicationCache<UUID, Boolean> nonceCache, String token) {
+        SealedTokenCipher.OpenedToken openedToken = token != null ? cipher.open(token) : null;
+        if (openedToken == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return AsyncCacheOperations.putIfAbsentAsync(nonceCache, openedToken.getNonce(), Boolean.TRUE, communicationCacheExecutor)
+                .thenApply(isFirstUse -> getPayloadIfFirstUse(nonceCache, openedToken, isFirstUse));
+    }
 
-        if (correlatedRequestsHolder != null) {
-            ILightRequest originalLightRequest = correlatedRequestsHolder.getLightRequest();
+    private byte[] getPayloadIfFirstUse(CommunicationCache<UUID, Boolean> nonceCache, SealedTokenCipher.OpenedToken openedToken, boolean isFirstUse) {
+        if (!isFirstUse) {
+            if (log.isWarnEnabled())
+                log.warn(append(IGNITE_CACHE_NAME, nonceCache.getName()),
+                        "Sealed token with nonce: '{}' has already been used", openedToken.getNonce());
+            return null;
+        }
+        return openedToken.getPayload();
+    }
 
+    private ILightRequest getOriginalLightRequest(String inResponseToId, ILightRequest originalLightRequest) {
+        if (originalLightRequest != null) {
             if (log.isInfoEnabled())
                 log.info(append(IGNITE_CACHE_NAME, idpRequestCommunicationCache.getName()),
                         "Pending IDP request retrieved from cache for id: '{}'",
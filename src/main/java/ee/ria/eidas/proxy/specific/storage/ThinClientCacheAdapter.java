@@ -0,0 +1,85 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.client.ClientCache;
+import org.apache.ignite.client.ClientException;
+
+import javax.cache.CacheException;
+import java.util.function.Supplier;
+
+/**
+ * Exposes an Ignite thin client cache as a {@link CommunicationCache}, so that the communication services use the same
+ * interface regardless of the storage mode. Connection failures ({@link ClientException}) and errors returned by the
+ * server node (e.g. when the cluster is inactive) are translated to {@link CacheException} as thrown by the client node
+ * caches. The cache can be unwrapped only to the {@link ClientCache}, which has no entry listeners.
+ */
+@RequiredArgsConstructor
+class ThinClientCacheAdapter<K, V> implements CommunicationCache<K, V> {
+    private final ClientCache<K, V> clientCache;
+
+    @Override
+    public String getName() {
+        return clientCache.getName();
+    }
+
+    @Override
+    public V get(K key) {
+        return execute(() -> clientCache.get(key));
+    }
+
+    @Override
+    public void put(K key, V value) {
+        execute(() -> {
+            clientCache.put(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        return execute(() -> clientCache.putIfAbsent(key, value));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return execute(() -> clientCache.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return execute(() -> clientCache.remove(key));
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        return execute(() -> clientCache.remove(key, oldValue));
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return execute(() -> clientCache.getAndRemove(key));
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isInstance(clientCache)) {
+            return clazz.cast(clientCache);
+        }
+        throw new IllegalArgumentException("Unwrapping to " + clazz + " is not supported");
+    }
+
+    /**
+     * The Ignite 2.8 thin client reports the errors returned by the server node with an internal runtime exception that
+     * is not a {@link ClientException}. So every runtime exception of the operation is translated, except the ones for
+     * invalid arguments and unsupported operations, without depending on the internal type.
+     */
+    static <T> T execute(Supplier<T> operation) {
+        try {
+            return operation.get();
+        } catch (IllegalArgumentException | NullPointerException | UnsupportedOperationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new CacheException(e.getMessage(), e);
+        }
+    }
+}
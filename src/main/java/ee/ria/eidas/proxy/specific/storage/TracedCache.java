@@ -0,0 +1,62 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates a span for each lookup and write of a communication cache, tagged with the logical cache name. The span of
+ * an asynchronous operation of {@link AsyncCacheOperations} ends when the operation completes. Other operations are
+ * passed to the cache without a span.
+ */
+class TracedCache<K, V> extends ForwardingCache<K, V> {
+    private static final String SPAN_NAME_PREFIX = "communication-cache-";
+    private final Map<String, String> tags;
+    private final FlowTracing flowTracing;
+
+    TracedCache(CommunicationCache<K, V> cache, String cacheId, FlowTracing flowTracing) {
+        super(cache);
+        this.tags = Map.of("cache", cacheId);
+        this.flowTracing = flowTracing;
+    }
+
+    @Override
+    public V get(K key) {
+        return flowTracing.inSpan(SPAN_NAME_PREFIX + "get", tags, () -> cache.get(key));
+    }
+
+    @Override
+    public void put(K key, V value) {
+        flowTracing.inSpan(SPAN_NAME_PREFIX + "put", tags, () -> {
+            cache.put(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        return flowTracing.inSpan(SPAN_NAME_PREFIX + "putIfAbsent", tags, () -> cache.putIfAbsent(key, value));
+    }
+
+    @Override
+    public boolean remove(K key) {
+        return flowTracing.inSpan(SPAN_NAME_PREFIX + "remove", tags, () -> cache.remove(key));
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        return flowTracing.inSpan(SPAN_NAME_PREFIX + "getAndRemove", tags, () -> cache.getAndRemove(key));
+    }
+
+    @Override
+    CompletableFuture<V> getAndRemoveAsync(K key, Executor executor) {
+        return flowTracing.inSpanAsync(SPAN_NAME_PREFIX + "getAndRemove", tags, () -> super.getAndRemoveAsync(key, executor));
+    }
+
+    @Override
+    CompletableFuture<Boolean> putIfAbsentAsync(K key, V value, Executor executor) {
+        return flowTracing.inSpanAsync(SPAN_NAME_PREFIX + "putIfAbsent", tags, () -> super.putIfAbsentAsync(key, value, executor));
+    }
+}
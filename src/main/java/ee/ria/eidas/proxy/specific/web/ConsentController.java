@@ -1,17 +1,20 @@
 package ee.ria.eidas.proxy.specific.web;
 
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CorrelationMode;
 import ee.ria.eidas.proxy.specific.error.BadRequestException;
 import ee.ria.eidas.proxy.specific.error.RequestDeniedException;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.RequestHandlingEvent;
 import ee.ria.eidas.proxy.specific.storage.EidasNodeCommunication;
 import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
 import eu.eidas.auth.commons.EidasParameterKeys;
 import eu.eidas.auth.commons.light.ILightResponse;
-import eu.eidas.auth.commons.tx.BinaryLightToken;
 import eu.eidas.specificcommunication.BinaryLightTokenHelper;
-import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
+import jakarta.validation.Constraint;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+import jakarta.validation.Payload;
 import jakarta.validation.constraints.NotNull;
-import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -20,13 +23,21 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static ee.ria.eidas.proxy.specific.error.SpecificProxyServiceExceptionHandler.MULTIPLE_INSTANCES_OF_PARAMETER_IS_NOT_ALLOWED;
 import static ee.ria.eidas.proxy.specific.web.filter.HttpRequestHelper.getBooleanParameterValue;
@@ -49,26 +60,44 @@ public class ConsentController {
 	private SpecificProxyServiceCommunication specificProxyServiceCommunication;
 
 	@GetMapping(value = ENDPOINT_USER_CONSENT)
-	public ModelAndView consent(@Validated RequestParameters request) throws SpecificCommunicationException, MalformedURLException {
-
-		String tokenBase64 = getStringParameterValue(request.getToken());
-		boolean cancel = getBooleanParameterValue(request.getCancel(), false);
+	public CompletableFuture<ModelAndView> get(@Validated RequestParameters request) {
+		return consent(request);
+	}
 
-		final ILightResponse originalLightResponse = specificProxyServiceCommunication.getAndRemovePendingLightResponse(tokenBase64);
-		if (originalLightResponse == null)
-			throw new BadRequestException("Invalid token");
+	@PostMapping(value = ENDPOINT_USER_CONSENT)
+	public CompletableFuture<ModelAndView> post(@Validated RequestParameters request) {
+		return consent(request);
+	}
 
-		if (cancel) {
-			throw new RequestDeniedException("User canceled the authentication process", originalLightResponse.getInResponseToId());
-		}
+	private CompletableFuture<ModelAndView> consent(RequestParameters request) {
+		return RequestHandlingEvent.record(ENDPOINT_USER_CONSENT, () -> handleConsent(request));
+	}
 
-		BinaryLightToken binaryLightToken = eidasNodeCommunication.putResponse(originalLightResponse);
-		String token = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken);
-		URL redirectUrl = UriComponentsBuilder.fromUri(URI.create(specificProxyServiceProperties.getNodeSpecificResponseUrl()))
-					.queryParam(EidasParameterKeys.TOKEN.getValue() , token)
-					.build().toUri().toURL();
+	private CompletableFuture<ModelAndView> handleConsent(RequestParameters request) {
+		String tokenBase64 = getStringParameterValue(request.getToken());
+		boolean cancel = getBooleanParameterValue(request.getCancel(), false);
 
-		return new ModelAndView("redirect:" + redirectUrl);
+		return specificProxyServiceCommunication.getAndRemovePendingLightResponseAsync(tokenBase64).thenCompose(originalLightResponse -> {
+			if (originalLightResponse == null)
+				throw new BadRequestException("Invalid token");
+
+			if (cancel) {
+				throw new RequestDeniedException("User canceled the authentication process", originalLightResponse.getInResponseToId());
+			}
+
+			return eidasNodeCommunication.putResponseAsync(originalLightResponse);
+		}).thenApply(binaryLightToken -> {
+			String token = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken);
+			try {
+				URL redirectUrl = UriComponentsBuilder.fromUri(URI.create(specificProxyServiceProperties.getNodeSpecificResponseUrl()))
+							.queryParam(EidasParameterKeys.TOKEN.getValue() , token)
+							.build().toUri().toURL();
+
+				return new ModelAndView("redirect:" + redirectUrl);
+			} catch (MalformedURLException e) {
+				throw new CompletionException(e);
+			}
+		});
 	}
 
 	@Data
@@ -76,9 +105,42 @@ public class ConsentController {
 
 		@NotNull
 		@Size(max = 1, message = MULTIPLE_INSTANCES_OF_PARAMETER_IS_NOT_ALLOWED)
-		private List<@Pattern(regexp = "^[A-Za-z0-9+/=]{1,1000}$", message = "only base64 characters allowed") String> token;
+		private List<@ConsentToken String> token;
 
 		@Size(max = 1, message = MULTIPLE_INSTANCES_OF_PARAMETER_IS_NOT_ALLOWED)
 		private List<Boolean> cancel;
 	}
+
+	/**
+	 * A Base64 encoded binary light token, or an URL-safe Base64 sealed token when
+	 * {@code eidas.proxy.consent-binary-light-token.mode} is {@code SEALED}.
+	 */
+	@Documented
+	@Constraint(validatedBy = ConsentTokenValidator.class)
+	@Target(ElementType.TYPE_USE)
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface ConsentToken {
+		String message() default "only base64 characters allowed";
+
+		Class<?>[] groups() default {};
+
+		Class<? extends Payload>[] payload() default {};
+	}
+
+	public static class ConsentTokenValidator implements ConstraintValidator<ConsentToken, String> {
+		private static final java.util.regex.Pattern BINARY_LIGHT_TOKEN = java.util.regex.Pattern.compile("^[A-Za-z0-9+/=]{1,1000}$");
+		private static final java.util.regex.Pattern SEALED_TOKEN = java.util.regex.Pattern.compile("^[A-Za-z0-9+/=_-]{1,4000}$");
+
+		@Autowired
+		private SpecificProxyServiceProperties specificProxyServiceProperties;
+
+		@Override
+		public boolean isValid(String token, ConstraintValidatorContext context) {
+			if (token == null) {
+				return true;
+			}
+			boolean isSealed = specificProxyServiceProperties.getConsentBinaryLightToken().getMode() == CorrelationMode.SEALED;
+			return (isSealed ? SEALED_TOKEN : BINARY_LIGHT_TOKEN).matcher(token).matches();
+		}
+	}
 }
@@ -2,30 +2,30 @@ package ee.ria.eidas.proxy.specific.web;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
 import ee.ria.eidas.proxy.specific.error.BadRequestException;
 import ee.ria.eidas.proxy.specific.error.RequestDeniedException;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.RequestHandlingEvent;
 import ee.ria.eidas.proxy.specific.service.SpecificProxyService;
 import ee.ria.eidas.proxy.specific.storage.EidasNodeCommunication;
+import ee.ria.eidas.proxy.specific.storage.SealedTokenCipher;
 import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
 import eu.eidas.auth.commons.EidasParameterKeys;
 import eu.eidas.auth.commons.attribute.AttributeDefinition;
-import eu.eidas.auth.commons.attribute.AttributeRegistry;
 import eu.eidas.auth.commons.attribute.AttributeValue;
 import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
 import eu.eidas.auth.commons.light.ILightRequest;
 import eu.eidas.auth.commons.light.ILightResponse;
-import eu.eidas.auth.commons.tx.BinaryLightToken;
 import eu.eidas.specificcommunication.BinaryLightTokenHelper;
-import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.servlet.ModelAndView;
@@ -35,6 +35,9 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static ee.ria.eidas.proxy.specific.error.SpecificProxyServiceExceptionHandler.MULTIPLE_INSTANCES_OF_PARAMETER_IS_NOT_ALLOWED;
 import static ee.ria.eidas.proxy.specific.web.filter.HttpRequestHelper.getStringParameterValue;
@@ -61,13 +64,23 @@ public class IdpResponseController {
 	private SpecificProxyServiceCommunication specificProxyServiceCommunication;
 
 	@Autowired
-	private AttributeRegistry eidasAttributeRegistry;
+	private AttributeRegistryIndex eidasAttributeRegistry;
+
+	@Autowired
+	@Qualifier("oidcCallExecutor")
+	private Executor oidcCallExecutor;
+
+	@Autowired(required = false)
+	@Qualifier("consentTokenCipher")
+	private SealedTokenCipher consentTokenCipher;
 
 	@GetMapping(value = ENDPOINT_IDP_RESPONSE)
-	public ModelAndView processIdpResponse (
-				@Validated IdpCallbackRequest idpCallbackRequest,
-				Model model) throws SpecificCommunicationException, MalformedURLException {
+	public CompletableFuture<ModelAndView> processIdpResponse (
+				@Validated IdpCallbackRequest idpCallbackRequest) {
+		return RequestHandlingEvent.record(ENDPOINT_IDP_RESPONSE, () -> handleIdpResponse(idpCallbackRequest));
+	}
 
+	private CompletableFuture<ModelAndView> handleIdpResponse(IdpCallbackRequest idpCallbackRequest) {
 		String state = getStringParameterValue(idpCallbackRequest.getState());
 		String errorCode = getStringParameterValue(idpCallbackRequest.getError());
 		String errorDescription = getStringParameterValue(idpCallbackRequest.getErrorDescription());
@@ -81,55 +94,61 @@ public class IdpResponseController {
 			throw new BadRequestException("Either error or code parameter can be present in a callback request. Both code and error parameters found");
 		}
 
-		ILightRequest originalLightRequest = specificProxyServiceCommunication.getAndRemoveIdpRequest(state);
-		if (originalLightRequest == null) {
-			throw new BadRequestException("Invalid state");
-		}
-
-		if ( errorCode != null ) {
-			if (isAuthenticationCancelled(errorCode)) {
-				throw new RequestDeniedException("User canceled the authentication process", originalLightRequest.getId());
-			} else {
-				throw new IllegalStateException(String.format("OIDC authentication request has returned an error (code = '%s', description = '%s')", errorCode, errorDescription));
+		return specificProxyServiceCommunication.getAndRemoveIdpRequestAsync(state).thenCompose(originalLightRequest -> {
+			if (originalLightRequest == null) {
+				throw new BadRequestException("Invalid state");
 			}
-		}
 
-		log.info("Handling successful authentication callback from Idp: {}", idpCallbackRequest);
-		ILightResponse lightResponse = specificProxyService.queryIdpForRequestedAttributes(
-				oAuthCode,
-				originalLightRequest);
+			if ( errorCode != null ) {
+				if (isAuthenticationCancelled(errorCode)) {
+					throw new RequestDeniedException("User canceled the authentication process", originalLightRequest.getId());
+				} else {
+					throw new IllegalStateException(String.format("OIDC authentication request has returned an error (code = '%s', description = '%s')", errorCode, errorDescription));
+				}
+			}
 
-		return processIdpAuthenticationResponse(model, originalLightRequest, lightResponse);
+			log.info("Handling successful authentication callback from Idp: {}", idpCallbackRequest);
+			return CompletableFuture.supplyAsync(() -> specificProxyService.queryIdpForRequestedAttributes(
+					oAuthCode,
+					originalLightRequest), oidcCallExecutor)
+					.thenCompose(lightResponse -> processIdpAuthenticationResponse(originalLightRequest, lightResponse));
+		});
 	}
 
-	private ModelAndView processIdpAuthenticationResponse(Model model, ILightRequest originalLightRequest, ILightResponse lightResponse) throws SpecificCommunicationException, MalformedURLException {
+	private CompletableFuture<ModelAndView> processIdpAuthenticationResponse(ILightRequest originalLightRequest, ILightResponse lightResponse) {
 
 		if (specificProxyServiceProperties.isAskConsent()) {
-			return getConsentModelAndView(model, originalLightRequest, lightResponse);
+			return getConsentModelAndView(originalLightRequest, lightResponse);
 		} else {
-			BinaryLightToken binaryLightToken = eidasNodeCommunication.putResponse(lightResponse);
-			String token = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken);
-			URL redirectUrl = UriComponentsBuilder
-					.fromUri(URI.create(specificProxyServiceProperties.getNodeSpecificResponseUrl()))
-					.queryParam(EidasParameterKeys.TOKEN.getValue() , token)
-					.build().toUri().toURL();
-			return new ModelAndView("redirect:" + redirectUrl);
+			return eidasNodeCommunication.putResponseAsync(lightResponse).thenApply(binaryLightToken -> {
+				String token = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken);
+				try {
+					URL redirectUrl = UriComponentsBuilder
+							.fromUri(URI.create(specificProxyServiceProperties.getNodeSpecificResponseUrl()))
+							.queryParam(EidasParameterKeys.TOKEN.getValue() , token)
+							.build().toUri().toURL();
+					return new ModelAndView("redirect:" + redirectUrl);
+				} catch (MalformedURLException e) {
+					throw new CompletionException(e);
+				}
+			});
 		}
 	}
 
-	private ModelAndView getConsentModelAndView(Model model, ILightRequest originalLightRequest, ILightResponse lightResponse) throws SpecificCommunicationException {
+	private CompletableFuture<ModelAndView> getConsentModelAndView(ILightRequest originalLightRequest, ILightResponse lightResponse) {
 		ImmutableMap<AttributeDefinition<?>, ImmutableSet<? extends AttributeValue<?>>> attributes = prepareAttributesToAskConsent(lightResponse);
 
-		String base64Token = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(specificProxyServiceCommunication.putPendingLightResponse(lightResponse));
-
-		model.addAttribute("spId", originalLightRequest.getProviderName());
-		model.addAttribute(EidasParameterKeys.ATTRIBUTE_LIST.toString(),attributes);
-		model.addAttribute("LoA", lightResponse.getLevelOfAssurance());
-		model.addAttribute("redirectUrl", "Consent");
-		model.addAttribute(EidasParameterKeys.BINDING.toString(), "GET");
-		model.addAttribute(PARAMETER_TOKEN, base64Token);
-
-		return new ModelAndView("citizenConsentResponse");
+		return specificProxyServiceCommunication.putPendingLightResponseAsync(lightResponse).thenApply(consentToken -> {
+			ModelAndView modelAndView = new ModelAndView("citizenConsentResponse");
+			modelAndView.addObject("spId", originalLightRequest.getProviderName());
+			modelAndView.addObject(EidasParameterKeys.ATTRIBUTE_LIST.toString(),attributes);
+			modelAndView.addObject("LoA", lightResponse.getLevelOfAssurance());
+			modelAndView.addObject("redirectUrl", "Consent");
+			// A sealed consent token carries the encrypted LightResponse, keep it out of the URL and access logs
+			modelAndView.addObject(EidasParameterKeys.BINDING.toString(), consentTokenCipher != null ? "POST" : "GET");
+			modelAndView.addObject(PARAMETER_TOKEN, consentToken);
+			return modelAndView;
+		});
 	}
 
 	private ImmutableMap<AttributeDefinition<?>, ImmutableSet<? extends AttributeValue<?>>> prepareAttributesToAskConsent(ILightResponse lightResponse) {
@@ -3,6 +3,7 @@ package ee.ria.eidas.proxy.specific.web;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
 import ee.ria.eidas.proxy.specific.error.BadRequestException;
 import ee.ria.eidas.proxy.specific.error.RequestDeniedException;
+import ee.ria.eidas.proxy.specific.monitoring.jfr.RequestHandlingEvent;
 import ee.ria.eidas.proxy.specific.service.SpecificProxyService;
 import ee.ria.eidas.proxy.specific.storage.EidasNodeCommunication;
 import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
@@ -10,7 +11,6 @@ import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication.Cor
 import eu.eidas.auth.commons.attribute.AttributeDefinition;
 import eu.eidas.auth.commons.light.ILightRequest;
 import eu.eidas.auth.commons.protocol.impl.SamlNameIdFormat;
-import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
@@ -26,6 +26,7 @@ import org.springframework.web.servlet.ModelAndView;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 import static ee.ria.eidas.proxy.specific.error.SpecificProxyServiceExceptionHandler.MULTIPLE_INSTANCES_OF_PARAMETER_IS_NOT_ALLOWED;
 import static ee.ria.eidas.proxy.specific.web.filter.HttpRequestHelper.getStringParameterValue;
@@ -53,25 +54,29 @@ public class ProxyServiceRequestController {
     private SpecificProxyServiceCommunication specificProxyServiceCommunication;
 
     @GetMapping(value = ENDPOINT_PROXY_SERVICE_REQUEST)
-    public ModelAndView get(@Validated RequestParameters request) throws SpecificCommunicationException {
+    public CompletableFuture<ModelAndView> get(@Validated RequestParameters request) {
         return execute(request);
     }
 
     @PostMapping(value = ENDPOINT_PROXY_SERVICE_REQUEST)
-    public ModelAndView post(@Validated RequestParameters request) throws SpecificCommunicationException {
+    public CompletableFuture<ModelAndView> post(@Validated RequestParameters request) {
         return execute(request);
     }
 
-    private ModelAndView execute(RequestParameters request) throws SpecificCommunicationException {
-        String tokenBase64 = getStringParameterValue(request.getToken());
+    private CompletableFuture<ModelAndView> execute(RequestParameters request) {
+        return RequestHandlingEvent.record(ENDPOINT_PROXY_SERVICE_REQUEST, () -> handleRequest(request));
+    }
 
-        ILightRequest incomingLightRequest = eidasNodeCommunication.getAndRemoveRequest(tokenBase64);
-        validateLightRequest(incomingLightRequest);
+    private CompletableFuture<ModelAndView> handleRequest(RequestParameters request) {
+        String tokenBase64 = getStringParameterValue(request.getToken());
 
-        CorrelatedRequestsHolder correlatedRequestsHolder = specificProxyService.createOidcAuthenticationRequest(incomingLightRequest);
-        specificProxyServiceCommunication.putIdpRequest(correlatedRequestsHolder.getIdpAuthenticationRequestState(), correlatedRequestsHolder);
+        return eidasNodeCommunication.getAndRemoveRequestAsync(tokenBase64).thenCompose(incomingLightRequest -> {
+            validateLightRequest(incomingLightRequest);
 
-        return new ModelAndView("redirect:" + correlatedRequestsHolder.getIdpAuthenticationRequest());
+            CorrelatedRequestsHolder correlatedRequestsHolder = specificProxyService.createOidcAuthenticationRequest(incomingLightRequest);
+            return specificProxyServiceCommunication.putIdpRequestAsync(correlatedRequestsHolder.getIdpAuthenticationRequestState(), correlatedRequestsHolder)
+                    .thenApply(saved -> new ModelAndView("redirect:" + correlatedRequestsHolder.getIdpAuthenticationRequest()));
+        });
     }
 
     private void validateLightRequest(ILightRequest incomingLightRequest) {
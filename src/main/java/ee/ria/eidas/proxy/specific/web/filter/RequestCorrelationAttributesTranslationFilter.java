@@ -51,4 +51,12 @@ public class RequestCorrelationAttributesTranslationFilter extends OncePerReques
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Asynchronous controller results are rendered in a separate dispatch, which needs the same correlation attributes.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
 }
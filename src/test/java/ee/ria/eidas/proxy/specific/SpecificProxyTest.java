@@ -8,9 +8,9 @@ import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
 import ee.ria.eidas.proxy.specific.service.SpecificProxyService;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
+import ee.ria.eidas.proxy.specific.storage.IdpCacheEntryCodec;
 import ee.ria.eidas.proxy.specific.storage.LightJAXBCodec;
-import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
-import eu.eidas.auth.commons.light.ILightResponse;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.restassured.RestAssured;
 import io.restassured.builder.ResponseSpecBuilder;
@@ -19,6 +19,7 @@ import io.restassured.filter.log.ResponseLoggingFilter;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
 import org.apache.ignite.Ignition;
 import org.apache.ignite.configuration.IgniteConfiguration;
 import org.hamcrest.CoreMatchers;
@@ -36,11 +37,11 @@ import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.test.context.ActiveProfiles;
 
-import javax.cache.Cache;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import static ch.qos.logback.classic.Level.*;
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
@@ -117,18 +118,23 @@ public abstract class SpecificProxyTest {
     protected Ignite igniteClient;
 
     @SpyBean
-    protected Cache<String, SpecificProxyServiceCommunication.CorrelatedRequestsHolder> idpRequestCommunicationCache;
+    @Qualifier("specificMSIdpRequestCorrelationMap")
+    protected CommunicationCache<UUID, byte[]> idpRequestCommunicationCache;
 
     @SpyBean
-    protected Cache<String, ILightResponse> idpConsentCommunicationCache;
+    @Qualifier("specificMSIdpConsentCorrelationMap")
+    protected CommunicationCache<UUID, byte[]> idpConsentCommunicationCache;
+
+    @Autowired
+    protected IdpCacheEntryCodec idpCacheEntryCodec;
 
     @SpyBean
     @Qualifier("nodeSpecificProxyserviceRequestCache")
-    protected Cache<String, String> eidasNodeRequestCommunicationCache;
+    protected CommunicationCache<String, String> eidasNodeRequestCommunicationCache;
 
     @SpyBean
     @Qualifier("nodeSpecificProxyserviceResponseCache")
-    protected Cache<String, String> eidasNodeResponseCommunicationCache;
+    protected CommunicationCache<String, String> eidasNodeResponseCommunicationCache;
 
     private static ListAppender<ILoggingEvent> mockAppender;
 
@@ -214,8 +220,13 @@ public abstract class SpecificProxyTest {
     }
 
     protected void clearCommunicationCache() {
-        idpRequestCommunicationCache.clear();
-        eidasNodeResponseCommunicationCache.clear();
+        igniteCache(idpRequestCommunicationCache).clear();
+        igniteCache(eidasNodeResponseCommunicationCache).clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <K, V> IgniteCache<K, V> igniteCache(CommunicationCache<K, V> cache) {
+        return cache.unwrap(IgniteCache.class);
     }
 
     private void setupMockLogAppender() {
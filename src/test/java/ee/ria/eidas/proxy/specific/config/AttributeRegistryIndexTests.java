@@ -0,0 +1,42 @@
+package ee.ria.eidas.proxy.specific.config;
+
+import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import eu.eidas.auth.commons.attribute.AttributeRegistries;
+import eu.eidas.auth.commons.attribute.AttributeRegistry;
+import eu.eidas.auth.commons.protocol.eidas.spec.LegalPersonSpec;
+import eu.eidas.auth.commons.protocol.eidas.spec.NaturalPersonSpec;
+import eu.eidas.auth.commons.protocol.eidas.spec.RepresentativeLegalPersonSpec;
+import eu.eidas.auth.commons.protocol.eidas.spec.RepresentativeNaturalPersonSpec;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AttributeRegistryIndexTests {
+    private final AttributeRegistry registry = AttributeRegistries.copyOf(NaturalPersonSpec.REGISTRY,
+            RepresentativeNaturalPersonSpec.REGISTRY, LegalPersonSpec.REGISTRY, RepresentativeLegalPersonSpec.REGISTRY);
+    private final AttributeRegistryIndex index = new AttributeRegistryIndex(registry);
+
+    @Test
+    void lookupsResolveSameDefinitionsAsRegistry() {
+        assertEquals(registry.getAttributes(), index.getAttributes());
+        for (AttributeDefinition<?> definition : registry.getAttributes()) {
+            assertSame(definition, index.getByNameUri(definition.getNameUri().toASCIIString()));
+            assertSame(registry.getByFriendlyName(definition.getFriendlyName()).first(),
+                    index.getByFriendlyName(definition.getFriendlyName()));
+            assertTrue(index.contains(definition));
+        }
+    }
+
+    @Test
+    void nullReturnedWhenAttributeNotInRegistry() {
+        assertNull(index.getByNameUri("http://eidas.europa.eu/attributes/unknown"));
+        assertNull(index.getByNameUri(null));
+        assertNull(index.getByFriendlyName("Unknown"));
+        assertNull(index.getByFriendlyName(null));
+        assertFalse(index.contains(null));
+    }
+}
@@ -0,0 +1,112 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.nimbusds.openid.connect.sdk.op.OIDCProviderConfigurationRequest.OPENID_PROVIDER_WELL_KNOWN_PATH;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+        properties = {
+                "management.endpoints.jmx.exposure.exclude=*",
+                "management.endpoints.web.exposure.include=heartbeat",
+                "management.endpoints.web.base-path=/",
+                "management.info.git.mode=full",
+                "management.health.defaults.enabled=false",
+                "eidas.proxy.health.trust-store-expiration-warning=30d",
+                "eidas.proxy.health.indicator-timeout=2s",
+                "eidas.proxy.health.indicator-timeouts.authenticationService=1500ms",
+                "eidas.proxy.health.latency-budget=3s"
+        })
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = ApplicationHealthEndpointDeadlineTests.TestContextInitializer.class)
+public class ApplicationHealthEndpointDeadlineTests extends ApplicationHealthTest {
+    private static final int DEPENDENCY_DELAY = 700;
+
+    @Autowired
+    private HealthIndicatorRunner healthIndicatorRunner;
+
+    /**
+     * Restores the dependencies and waits for the indicators left running after their deadline, so that their results
+     * are not reused by the next test.
+     */
+    @AfterEach
+    public void restoreDependencies() {
+        mockOidcServer.stubFor(get(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH))
+                .willReturn(aResponse()
+                        .withStatus(HTTP_OK)));
+        mockEidasNodeServer.stubFor(get(urlEqualTo("/EidasNode/ServiceMetadata"))
+                .willReturn(aResponse()
+                        .withStatus(HTTP_OK)));
+        await().atMost(Duration.ofSeconds(15)).until(healthIndicatorRunner::isIdle);
+    }
+
+    @Test
+    public void healthStatusUnknownWithReason_WhenIndicatorDeadlinePassed() {
+        mockOidcServer.stubFor(get(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH))
+                .willReturn(aResponse()
+                        .withStatus(HTTP_OK)
+                        .withFixedDelay(5000)));
+
+        long startTime = System.currentTimeMillis();
+        Response healthResponse = getHealthResponse();
+
+        assertTrue(System.currentTimeMillis() - startTime < 4000, "Health response must not wait for the 5000 ms response of the dependency");
+        assertEquals("DOWN", healthResponse.jsonPath().get("status"));
+        assertDependenciesUp(healthResponse, Dependencies.IGNITE_CLUSTER, Dependencies.PROXY_SERVICE_METADATA, Dependencies.TRUSTSTORE);
+        Map<String, String> authenticationService = getDependency(healthResponse, Dependencies.AUTHENTICATION_SERVICE);
+        assertEquals("UNKNOWN", authenticationService.get("status"));
+        assertEquals("No result within 1500 ms", authenticationService.get("reason"));
+    }
+
+    @Test
+    public void indicatorsRunInParallel() {
+        mockOidcServer.stubFor(get(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH))
+                .willReturn(aResponse()
+                        .withStatus(HTTP_OK)
+                        .withFixedDelay(DEPENDENCY_DELAY)));
+        mockEidasNodeServer.stubFor(get(urlEqualTo("/EidasNode/ServiceMetadata"))
+                .willReturn(aResponse()
+                        .withStatus(HTTP_OK)
+                        .withFixedDelay(DEPENDENCY_DELAY)));
+        mockOidcServer.resetRequests();
+        mockEidasNodeServer.resetRequests();
+
+        Response healthResponse = getHealthResponse();
+
+        assertAllDependenciesUp(healthResponse);
+        assertNull(getDependency(healthResponse, Dependencies.PROXY_SERVICE_METADATA).get("reason"));
+        long oidcRequestTime = getLastRequestTime(mockOidcServer.findAll(getRequestedFor(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH))));
+        long eidasNodeRequestTime = getLastRequestTime(mockEidasNodeServer.findAll(getRequestedFor(urlEqualTo("/EidasNode/ServiceMetadata"))));
+        assertTrue(Math.abs(oidcRequestTime - eidasNodeRequestTime) < DEPENDENCY_DELAY,
+                "Both dependencies must be called before either of them responds");
+    }
+
+    private long getLastRequestTime(List<LoggedRequest> requests) {
+        return requests.stream()
+                .mapToLong(request -> request.getLoggedDate().getTime())
+                .max()
+                .orElseThrow();
+    }
+
+    private Map<String, String> getDependency(Response healthResponse, Dependencies dependency) {
+        List<Map<String, String>> dependencies = healthResponse.jsonPath().getList("dependencies");
+        return dependencies.stream()
+                .filter(d -> dependency.getName().equals(d.get("name")))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,105 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import io.restassured.response.Response;
+import org.awaitility.Durations;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+        properties = {
+                "management.endpoints.jmx.exposure.exclude=*",
+                "management.endpoints.web.exposure.include=heartbeat",
+                "management.endpoints.web.base-path=/",
+                "management.info.git.mode=full",
+                "management.health.defaults.enabled=false",
+                "eidas.proxy.health.trust-store-expiration-warning=30d",
+                "eidas.proxy.health.snapshot.enabled=true",
+                "eidas.proxy.health.snapshot.default-interval=1s",
+                "eidas.proxy.health.snapshot.interval.igniteCluster=1h"
+        })
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = ApplicationHealthEndpointSnapshotTests.TestContextInitializer.class)
+public class ApplicationHealthEndpointSnapshotTests extends ApplicationHealthTest {
+
+    @Autowired
+    private HealthProbeScheduler healthProbeScheduler;
+
+    @Test
+    public void snapshotServedWithResultAge() {
+        awaitAllDependenciesProbed();
+        await()
+                .atMost(Durations.FIVE_SECONDS)
+                .untilAsserted(() -> assertAllDependenciesUp(getHealthResponse()));
+
+        Response healthResponse = getHealthResponse();
+        Instant currentTime = Instant.parse(healthResponse.jsonPath().get("currentTime"));
+        List<Map<String, String>> dependencies = healthResponse.jsonPath().getList("dependencies");
+        for (Map<String, String> dependency : dependencies) {
+            Instant checkedAt = Instant.parse(dependency.get("checkedAt"));
+            assertEquals(Duration.between(checkedAt, currentTime), Duration.parse(dependency.get("age")));
+        }
+    }
+
+    @Test
+    public void dependenciesNotCalledByHeartbeat() {
+        awaitAllDependenciesProbed();
+        Mockito.reset(idpRequestCommunicationCache);
+
+        getHealthResponse();
+        getHealthResponse();
+
+        verify(idpRequestCommunicationCache, never()).put(any(), any());
+        verify(idpRequestCommunicationCache, never()).getAndRemove(any());
+    }
+
+    @Test
+    public void staticDetailsCollectedOnce() {
+        when(gitProperties.getCommitId()).thenReturn("commit-id");
+        String commitId = getHealthResponse().jsonPath().get("commitId");
+
+        when(gitProperties.getCommitId()).thenReturn("other-commit-id");
+
+        assertEquals(commitId, getHealthResponse().jsonPath().get("commitId"));
+    }
+
+    @Test
+    public void dependencyDownReportedAfterNextProbe() {
+        awaitAllDependenciesProbed();
+        mockEidasNodeServer.stubFor(get(urlEqualTo("/EidasNode/ServiceMetadata"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        await()
+                .atMost(Durations.FIVE_SECONDS)
+                .untilAsserted(() -> assertDependenciesDown(getHealthResponse(), Dependencies.PROXY_SERVICE_METADATA));
+        mockEidasNodeServer.stubFor(get(urlEqualTo("/EidasNode/ServiceMetadata"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+    }
+
+    private void awaitAllDependenciesProbed() {
+        await()
+                .atMost(Durations.TEN_SECONDS)
+                .until(() -> healthProbeScheduler.getSnapshot().getResults().size() == Dependencies.values().length
+                        && healthProbeScheduler.getSnapshot().getResults().values().stream()
+                        .noneMatch(result -> Status.UNKNOWN.equals(result.getStatus())));
+    }
+}
@@ -0,0 +1,84 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.FlowMetricsProperties;
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Stage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.STAGE_TIMER_NAME;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthenticationFlowMetricsTests {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AuthenticationFlowMetrics authenticationFlowMetrics = new AuthenticationFlowMetrics(flowMetricsProperties(), meterRegistry);
+
+    @Test
+    void timersRegisteredForEveryStageAndOutcome() {
+        assertEquals(Stage.values().length * 2, meterRegistry.get(STAGE_TIMER_NAME).timers().size());
+    }
+
+    @Test
+    void stageOutcomeRecorded() {
+        assertEquals("value", authenticationFlowMetrics.timed(Stage.LIGHT_TOKEN_DECODE, () -> "value"));
+        assertThrows(IOException.class, () -> authenticationFlowMetrics.timed(Stage.LIGHT_TOKEN_DECODE, () -> {
+            throw new IOException("Invalid token");
+        }));
+
+        assertEquals(1, stageCount(Stage.LIGHT_TOKEN_DECODE, "success"));
+        assertEquals(1, stageCount(Stage.LIGHT_TOKEN_DECODE, "failure"));
+        assertEquals(0, stageCount(Stage.NODE_CACHE_PUT, "success"));
+    }
+
+    @Test
+    void asyncStageRecordedOnCompletion() throws Exception {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<String> timedResult = authenticationFlowMetrics.timedAsync(Stage.NODE_CACHE_GET_AND_REMOVE, () -> result);
+
+        assertEquals(0, stageCount(Stage.NODE_CACHE_GET_AND_REMOVE, "success"));
+        result.complete("value");
+
+        assertEquals("value", timedResult.get(5, TimeUnit.SECONDS));
+        assertEquals(1, stageCount(Stage.NODE_CACHE_GET_AND_REMOVE, "success"));
+    }
+
+    @Test
+    void asyncStageFailureRecorded() {
+        authenticationFlowMetrics.timedAsync(Stage.IDP_CACHE_PUT, () -> CompletableFuture.failedFuture(new IllegalStateException()));
+        assertThrows(IllegalStateException.class, () -> authenticationFlowMetrics.timedAsync(Stage.IDP_CACHE_PUT, () -> {
+            throw new IllegalStateException();
+        }));
+
+        assertEquals(2, stageCount(Stage.IDP_CACHE_PUT, "failure"));
+    }
+
+    @Test
+    void sloBoundariesPublished() {
+        authenticationFlowMetrics.timed(Stage.CLAIM_TRANSLATION, () -> null);
+
+        CountAtBucket[] buckets = meterRegistry.get(STAGE_TIMER_NAME).tags("stage", "claimTranslation", "outcome", "success")
+                .timer().takeSnapshot().histogramCounts();
+
+        assertEquals(asList(10_000_000.0, 1_000_000_000.0),
+                Arrays.stream(buckets).map(CountAtBucket::bucket).collect(toList()));
+    }
+
+    private long stageCount(Stage stage, String outcome) {
+        return meterRegistry.get(STAGE_TIMER_NAME).tags("stage", stage.getName(), "outcome", outcome).timer().count();
+    }
+
+    private static FlowMetricsProperties flowMetricsProperties() {
+        FlowMetricsProperties flowMetricsProperties = new FlowMetricsProperties();
+        flowMetricsProperties.setSloBoundaries(asList(Duration.ofMillis(10), Duration.ofSeconds(1)));
+        return flowMetricsProperties;
+    }
+}
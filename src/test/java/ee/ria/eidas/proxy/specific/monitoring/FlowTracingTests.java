@@ -0,0 +1,87 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import brave.handler.MutableSpan;
+import ee.ria.eidas.proxy.specific.util.TestTracing;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlowTracingTests {
+    private final TestTracing tracing = new TestTracing();
+    private final List<MutableSpan> finishedSpans = tracing.finishedSpans();
+    private final Tracer tracer = tracing.tracer();
+
+    @AfterEach
+    void closeTracing() {
+        tracing.close();
+    }
+
+    @Test
+    void childSpanCreatedInParentTrace() {
+        FlowTracing flowTracing = tracing.flowTracing(false);
+        Span parentSpan = tracer.nextSpan().name("flow").start();
+
+        try (Tracer.SpanInScope ignored = tracer.withSpan(parentSpan)) {
+            flowTracing.inSpan("oidc-token-request", Map.of("cache", "idp-requests-cache"), () -> "response");
+        } finally {
+            parentSpan.end();
+        }
+
+        MutableSpan span = finishedSpans.get(0);
+        assertEquals("oidc-token-request", span.name());
+        assertEquals("idp-requests-cache", span.tag("cache"));
+        assertEquals(parentSpan.context().traceId(), span.traceId());
+        assertEquals(parentSpan.context().spanId(), span.parentId());
+    }
+
+    @Test
+    void spanFailed_WhenCallFails() {
+        FlowTracing flowTracing = tracing.flowTracing(false);
+
+        assertThrows(IOException.class, () -> flowTracing.inSpan("oidc-jwks-request", () -> {
+            throw new IOException("Connection refused");
+        }));
+
+        assertEquals("Connection refused", finishedSpans.get(0).error().getMessage());
+    }
+
+    @Test
+    void asyncSpanEnded_WhenResultCompletes() {
+        FlowTracing flowTracing = tracing.flowTracing(false);
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        flowTracing.inSpanAsync("communication-cache-getAndRemove", Map.of(), () -> result);
+
+        assertTrue(finishedSpans.isEmpty());
+        result.complete("value");
+        assertEquals("communication-cache-getAndRemove", finishedSpans.get(0).name());
+    }
+
+    @Test
+    void traceContextInjected_OnlyWhenPropagationEnabled() {
+        Map<String, String> headers = new HashMap<>();
+        Map<String, String> headersWithPropagation = new HashMap<>();
+
+        tracing.flowTracing(false).inSpan("oidc-token-request", () -> {
+            tracing.flowTracing(false).injectTraceContext(headers::put);
+            return null;
+        });
+        tracing.flowTracing(true).inSpan("oidc-token-request", () -> {
+            tracing.flowTracing(true).injectTraceContext(headersWithPropagation::put);
+            return null;
+        });
+
+        assertTrue(headers.isEmpty());
+        assertEquals(finishedSpans.get(1).traceId(), headersWithPropagation.get("X-B3-TraceId"));
+        assertEquals(finishedSpans.get(1).id(), headersWithPropagation.get("X-B3-SpanId"));
+    }
+}
@@ -0,0 +1,138 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.monitoring.HealthSnapshot.ProbeResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.DefaultHealthContributorRegistry;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HealthProbeSchedulerTests {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger hangingCalls = new AtomicInteger();
+    private final HealthIndicatorRunner healthIndicatorRunner = new HealthIndicatorRunner();
+    private final HealthProbeScheduler healthProbeScheduler = new HealthProbeScheduler();
+    private final ApplicationHealthDetails applicationHealthDetails = mock(ApplicationHealthDetails.class);
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty(HealthIndicatorRunner.TIMEOUT_PROPERTY_PREFIX + "hanging", "200ms");
+        environment.setConversionService(new ApplicationConversionService());
+        ReflectionTestUtils.setField(healthIndicatorRunner, "environment", environment);
+        ReflectionTestUtils.setField(healthIndicatorRunner, "defaultTimeout", Duration.ofSeconds(4));
+        ReflectionTestUtils.setField(healthIndicatorRunner, "latencyBudget", Duration.ofSeconds(5));
+
+        HealthIndicator hanging = () -> {
+            hangingCalls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Health.up().build();
+        };
+        HealthIndicator failing = () -> {
+            throw new IllegalStateException("Dependency failed");
+        };
+        HealthIndicator up = () -> Health.up().build();
+        DefaultHealthContributorRegistry registry = new DefaultHealthContributorRegistry(Map.<String, HealthContributor>of(
+                "hanging", hanging, "failing", failing, "up", up));
+        ReflectionTestUtils.setField(healthProbeScheduler, "healthContributorRegistry", registry);
+        ReflectionTestUtils.setField(healthProbeScheduler, "healthIndicatorRunner", healthIndicatorRunner);
+        ReflectionTestUtils.setField(healthProbeScheduler, "applicationHealthDetails", applicationHealthDetails);
+        ReflectionTestUtils.setField(healthProbeScheduler, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(healthProbeScheduler, "defaultInterval", Duration.ofMillis(100));
+        when(applicationHealthDetails.getStaticDetails()).thenReturn(new HashMap<>(Map.of("name", "ee-specific-proxy")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        healthProbeScheduler.stopProbes();
+        healthIndicatorRunner.shutdown();
+    }
+
+    @Test
+    void snapshotSeededWithUnknownResults_WhenProbesStart() {
+        healthProbeScheduler.startProbes();
+
+        Map<String, ProbeResult> results = healthProbeScheduler.getSnapshot().getResults();
+        assertEquals(3, results.size());
+        assertEquals(Status.UNKNOWN, results.get("hanging").getStatus());
+        assertEquals(Duration.ofMillis(100), results.get("hanging").getInterval());
+    }
+
+    @Test
+    void unknownPublishedAtDeadline_WhenIndicatorHangs() {
+        healthProbeScheduler.startProbes();
+        Instant seededAt = healthProbeScheduler.getSnapshot().getResults().get("hanging").getCheckedAt();
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> {
+            Map<String, ProbeResult> results = healthProbeScheduler.getSnapshot().getResults();
+            return Status.UP.equals(results.get("up").getStatus())
+                    && Status.DOWN.equals(results.get("failing").getStatus())
+                    && results.get("hanging").getCheckedAt().isAfter(seededAt);
+        });
+        assertEquals(Status.UNKNOWN, healthProbeScheduler.getSnapshot().getResults().get("hanging").getStatus());
+
+        await().atMost(Duration.ofSeconds(10)).until(() ->
+                healthProbeScheduler.getSnapshot().getResults().get("hanging").getCheckedAt().isAfter(seededAt.plusMillis(500)));
+        assertEquals(1, hangingCalls.get());
+
+        release.countDown();
+        await().atMost(Duration.ofSeconds(10)).until(() ->
+                Status.UP.equals(healthProbeScheduler.getSnapshot().getResults().get("hanging").getStatus()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void responseBodyBuiltOncePerProbeCycle_WithReasons() {
+        healthProbeScheduler.startProbes();
+        assertEquals(HealthProbeScheduler.NOT_PROBED_REASON, getDependency(healthProbeScheduler.getResponseBody(), "hanging").get(HealthIndicatorRunner.REASON));
+
+        await().atMost(Duration.ofSeconds(10)).until(() ->
+                "DOWN".equals(getDependency(healthProbeScheduler.getResponseBody(), "failing").get("status")));
+        healthProbeScheduler.stopProbes();
+        Map<String, Object> body = healthProbeScheduler.getResponseBody();
+        assertSame(body, healthProbeScheduler.getResponseBody());
+        assertEquals("Dependency failed", getDependency(body, "failing").get(HealthIndicatorRunner.REASON));
+        assertNull(getDependency(body, "up").get(HealthIndicatorRunner.REASON));
+        assertEquals("ee-specific-proxy", body.get("name"));
+        assertThrows(UnsupportedOperationException.class, () -> body.put("status", "UP"));
+        assertThrows(UnsupportedOperationException.class, () -> ((List<Map<String, String>>) body.get("dependencies")).clear());
+        verify(applicationHealthDetails, times(1)).getStaticDetails();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getDependency(Map<String, Object> body, String name) {
+        return ((List<Map<String, String>>) body.get("dependencies")).stream()
+                .filter(dependency -> name.equals(dependency.get("name")))
+                .findFirst()
+                .orElseThrow();
+    }
+}
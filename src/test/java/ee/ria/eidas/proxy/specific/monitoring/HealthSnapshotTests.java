@@ -0,0 +1,38 @@
+package ee.ria.eidas.proxy.specific.monitoring;
+
+import ee.ria.eidas.proxy.specific.monitoring.HealthSnapshot.ProbeResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HealthSnapshotTests {
+    private static final Instant CHECKED_AT = Instant.parse("2020-07-01T09:42:46Z");
+
+    @Test
+    void resultReplacedInNewSnapshot() {
+        HealthSnapshot snapshot = HealthSnapshot.EMPTY
+                .with(new ProbeResult("igniteCluster", Status.UP, null, CHECKED_AT, Duration.ofSeconds(10)))
+                .with(new ProbeResult("truststore", Status.UP, null, CHECKED_AT, Duration.ofSeconds(10)));
+
+        HealthSnapshot updatedSnapshot = snapshot.with(new ProbeResult("igniteCluster", Status.DOWN, "Connection refused", CHECKED_AT.plusSeconds(10), Duration.ofSeconds(10)));
+
+        assertEquals(Status.UP, snapshot.getResults().get("igniteCluster").getStatus());
+        assertEquals(Status.DOWN, updatedSnapshot.getResults().get("igniteCluster").getStatus());
+        assertEquals(2, updatedSnapshot.getResults().size());
+        assertTrue(HealthSnapshot.EMPTY.getResults().isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> updatedSnapshot.getResults().remove("truststore"));
+    }
+
+    @Test
+    void resultStale_WhenOlderThanThreeIntervals() {
+        ProbeResult result = new ProbeResult("authenticationService", Status.UP, null, CHECKED_AT, Duration.ofSeconds(10));
+
+        assertEquals(Duration.ofSeconds(30), result.getAge(CHECKED_AT.plusSeconds(30)));
+        assertFalse(result.isStale(CHECKED_AT.plusSeconds(30)));
+        assertTrue(result.isStale(CHECKED_AT.plusSeconds(31)));
+    }
+}
@@ -3,6 +3,7 @@ package ee.ria.eidas.proxy.specific.monitoring.health;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
 import ee.ria.eidas.proxy.specific.monitoring.ApplicationHealthEndpointTests;
 import ee.ria.eidas.proxy.specific.monitoring.ApplicationHealthTest;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
 import io.restassured.response.Response;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -15,7 +16,6 @@ import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ContextConfiguration;
 
-import javax.cache.Cache;
 import javax.cache.CacheException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -127,7 +127,7 @@ public class IgniteClusterHealthIndicatorTests extends ApplicationHealthTest {
 
     @SneakyThrows
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private void assertHealthDownOnCachePutException(Cache cache) {
+    private void assertHealthDownOnCachePutException(CommunicationCache cache) {
         cachePuts.set(0);
         cacheRemoves.set(0);
         cleanMocks();
@@ -138,7 +138,7 @@ public class IgniteClusterHealthIndicatorTests extends ApplicationHealthTest {
 
     @SneakyThrows
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private void assertHealthDownOnCacheGetAndRemoveException(Cache cache) {
+    private void assertHealthDownOnCacheGetAndRemoveException(CommunicationCache cache) {
         cachePuts.set(0);
         cacheRemoves.set(0);
         cleanMocks();
@@ -0,0 +1,106 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.FlowMetricsProperties;
+import ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Stage.LIGHT_REQUEST_UNMARSHAL;
+import static ee.ria.eidas.proxy.specific.monitoring.AuthenticationFlowMetrics.Stage.RESPONSE_MARSHAL;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecorderEventsTests {
+    private final Recording recording = new Recording();
+    private final AuthenticationFlowMetrics authenticationFlowMetrics = new AuthenticationFlowMetrics(new FlowMetricsProperties(), new SimpleMeterRegistry());
+
+    @AfterEach
+    void closeRecording() {
+        recording.close();
+    }
+
+    @Test
+    void flowStageRecordedWithPayloadSize() throws Exception {
+        recording.enable(FlowStageEvent.class);
+        recording.start();
+
+        authenticationFlowMetrics.timed(RESPONSE_MARSHAL, () -> "<lightResponse/>");
+
+        RecordedEvent event = recordedEvents(FlowStageEvent.NAME).get(0);
+        assertEquals("responseMarshal", event.getString("stage"));
+        assertTrue(event.getBoolean("succeeded"));
+        assertEquals(16, event.getLong("payloadSize"));
+        assertFalse(event.getDuration().isNegative());
+    }
+
+    @Test
+    void flowStageRecordedWithInputSize_WhenPayloadSizeGiven() throws Exception {
+        recording.enable(FlowStageEvent.class);
+        recording.start();
+        String lightRequest = "<lightRequest/>";
+
+        authenticationFlowMetrics.timed(LIGHT_REQUEST_UNMARSHAL, () -> new Object(), request -> PayloadSize.of(lightRequest));
+        assertThrows(IllegalStateException.class, () -> authenticationFlowMetrics.timed(LIGHT_REQUEST_UNMARSHAL, () -> {
+            throw new IllegalStateException();
+        }, request -> PayloadSize.of(lightRequest)));
+
+        List<RecordedEvent> events = recordedEvents(FlowStageEvent.NAME);
+        assertEquals(2, events.size());
+        assertEquals("lightRequestUnmarshal", events.get(0).getString("stage"));
+        assertTrue(events.get(0).getBoolean("succeeded"));
+        assertEquals(15, events.get(0).getLong("payloadSize"));
+        assertFalse(events.get(1).getBoolean("succeeded"));
+        assertEquals(15, events.get(1).getLong("payloadSize"));
+    }
+
+    @Test
+    void requestHandlingRecordedOnCompletion() throws Exception {
+        recording.enable(RequestHandlingEvent.class);
+        recording.start();
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        RequestHandlingEvent.record("/Consent", () -> result);
+        assertThrows(IllegalStateException.class, () -> RequestHandlingEvent.record("/IdpResponse", () -> {
+            throw new IllegalStateException();
+        }));
+        result.complete("redirect");
+
+        List<RecordedEvent> events = recordedEvents(RequestHandlingEvent.NAME);
+        assertEquals(2, events.size());
+        assertEquals("/IdpResponse", events.get(0).getString("endpoint"));
+        assertFalse(events.get(0).getBoolean("succeeded"));
+        assertEquals("/Consent", events.get(1).getString("endpoint"));
+        assertTrue(events.get(1).getBoolean("succeeded"));
+    }
+
+    @Test
+    void eventsNotRecorded_WhenNotEnabled() throws Exception {
+        recording.start();
+
+        authenticationFlowMetrics.timed(RESPONSE_MARSHAL, () -> "<lightResponse/>");
+
+        assertTrue(recordedEvents(FlowStageEvent.NAME).isEmpty());
+    }
+
+    private List<RecordedEvent> recordedEvents(String eventName) throws Exception {
+        recording.stop();
+        Path dumpFile = Files.createTempFile("flight-recorder-events-", ".jfr");
+        try {
+            recording.dump(dumpFile);
+            return RecordingFile.readAllEvents(dumpFile).stream()
+                    .filter(event -> eventName.equals(event.getEventType().getName()))
+                    .collect(toList());
+        } finally {
+            Files.delete(dumpFile);
+        }
+    }
+}
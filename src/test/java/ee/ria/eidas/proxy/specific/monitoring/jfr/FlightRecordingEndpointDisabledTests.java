@@ -0,0 +1,30 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import ee.ria.eidas.proxy.specific.SpecificProxyTest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import static io.restassured.RestAssured.given;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+        properties = {
+                "management.endpoints.jmx.exposure.exclude=*",
+                "management.endpoints.web.exposure.include=flightrecording",
+                "management.endpoints.web.base-path=/"
+        })
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = FlightRecordingEndpointDisabledTests.TestContextInitializer.class)
+class FlightRecordingEndpointDisabledTests extends SpecificProxyTest {
+
+    @Test
+    public void flightRecordingEndpointNotAccessible_WhenAccessNotGranted() {
+        given()
+                .when()
+                .post("/flightrecording/start")
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+}
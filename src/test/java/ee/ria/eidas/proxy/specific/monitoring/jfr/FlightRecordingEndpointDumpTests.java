@@ -0,0 +1,101 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.WebServerNamespace;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecordingEndpointDumpTests {
+    private final FlightRecordingEndpoint flightRecordingEndpoint = new FlightRecordingEndpoint();
+    private Path downloadedDump;
+
+    @BeforeEach
+    void configureEndpoint() throws Exception {
+        ReflectionTestUtils.setField(flightRecordingEndpoint, "settings", "default");
+        ReflectionTestUtils.setField(flightRecordingEndpoint, "maxDuration", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(flightRecordingEndpoint, "maxSize", DataSize.ofMegabytes(10));
+        downloadedDump = Files.createTempFile("flight-recording-endpoint-", ".jfr");
+    }
+
+    @AfterEach
+    void closeRecording() throws Exception {
+        flightRecordingEndpoint.closeRecording();
+        Files.deleteIfExists(downloadedDump);
+    }
+
+    @Test
+    void dumpContainsFlowEventsWithoutConfigurationSecrets() throws Exception {
+        flightRecordingEndpoint.control(WebServerNamespace.MANAGEMENT, FlightRecordingEndpoint.START_ACTION);
+        FlowStageEvent event = new FlowStageEvent();
+        event.begin();
+        event.end("responseMarshal", true, () -> PayloadSize.of("<lightResponse/>"));
+
+        Set<String> eventNames = RecordingFile.readAllEvents(download()).stream()
+                .map(recordedEvent -> recordedEvent.getEventType().getName())
+                .collect(toSet());
+
+        assertTrue(eventNames.contains(FlowStageEvent.NAME));
+        assertTrue(eventNames.contains("jdk.OSInformation"), "JVM events recorded");
+        for (String disabledEvent : FlightRecordingEndpoint.DISABLED_JVM_EVENTS) {
+            assertFalse(eventNames.contains(disabledEvent), "Event not recorded: " + disabledEvent);
+        }
+    }
+
+    @Test
+    void eachDumpWrittenToOwnFileAndDeletedAfterDownload() throws Exception {
+        flightRecordingEndpoint.control(WebServerNamespace.MANAGEMENT, FlightRecordingEndpoint.START_ACTION);
+
+        Resource firstDump = flightRecordingEndpoint.dump(WebServerNamespace.MANAGEMENT, FlightRecordingEndpoint.DUMP_SELECTOR).getBody();
+        Resource secondDump = flightRecordingEndpoint.dump(WebServerNamespace.MANAGEMENT, FlightRecordingEndpoint.DUMP_SELECTOR).getBody();
+        Path firstDumpFile = firstDump.getFile().toPath();
+
+        assertNotEquals(firstDumpFile, secondDump.getFile().toPath());
+        try (InputStream inputStream = firstDump.getInputStream()) {
+            Files.copy(inputStream, downloadedDump, REPLACE_EXISTING);
+            assertTrue(Files.exists(secondDump.getFile().toPath()));
+        }
+        assertFalse(Files.exists(firstDumpFile));
+        List<RecordedEvent> events = RecordingFile.readAllEvents(downloadedDump);
+        assertFalse(events.isEmpty());
+        secondDump.getInputStream().close();
+        assertFalse(Files.exists(secondDump.getFile().toPath()));
+    }
+
+    @Test
+    void notFound_WhenNotOnManagementServer() {
+        assertEquals(WebEndpointResponse.STATUS_NOT_FOUND,
+                flightRecordingEndpoint.control(WebServerNamespace.SERVER, FlightRecordingEndpoint.START_ACTION).getStatus());
+        assertEquals(WebEndpointResponse.STATUS_NOT_FOUND, flightRecordingEndpoint.status(WebServerNamespace.SERVER).getStatus());
+        assertEquals("NONE", flightRecordingEndpoint.status(WebServerNamespace.MANAGEMENT).getBody().get("state"));
+
+        flightRecordingEndpoint.control(WebServerNamespace.MANAGEMENT, FlightRecordingEndpoint.START_ACTION);
+
+        assertEquals(WebEndpointResponse.STATUS_NOT_FOUND,
+                flightRecordingEndpoint.dump(WebServerNamespace.SERVER, FlightRecordingEndpoint.DUMP_SELECTOR).getStatus());
+    }
+
+    private Path download() throws Exception {
+        Resource dump = flightRecordingEndpoint.dump(WebServerNamespace.MANAGEMENT, FlightRecordingEndpoint.DUMP_SELECTOR).getBody();
+        try (InputStream inputStream = dump.getInputStream()) {
+            Files.copy(inputStream, downloadedDump, REPLACE_EXISTING);
+        }
+        return downloadedDump;
+    }
+}
@@ -0,0 +1,120 @@
+package ee.ria.eidas.proxy.specific.monitoring.jfr;
+
+import ee.ria.eidas.proxy.specific.SpecificProxyTest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.test.context.ContextConfiguration;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT,
+        properties = {
+                "management.endpoints.jmx.exposure.exclude=*",
+                "management.endpoints.web.exposure.include=flightrecording",
+                "management.endpoints.web.base-path=/",
+                "management.server.port=0",
+                "management.endpoint.flightrecording.access=unrestricted",
+                "eidas.proxy.jfr.max-duration=1m",
+                "eidas.proxy.jfr.max-size=10MB"
+        })
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = FlightRecordingEndpointTests.TestContextInitializer.class)
+public class FlightRecordingEndpointTests extends SpecificProxyTest {
+
+    @Autowired
+    private FlightRecordingEndpoint flightRecordingEndpoint;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @AfterEach
+    void closeRecording() {
+        flightRecordingEndpoint.closeRecording();
+    }
+
+    @Test
+    void noRecording_WhenNotStarted() {
+        given()
+                .port(managementPort)
+                .when()
+                .get("/flightrecording")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("state", equalTo("NONE"));
+
+        given()
+                .port(managementPort)
+                .when()
+                .get("/flightrecording/dump")
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+
+    @Test
+    void recordingStartedDumpedAndStopped() {
+        given()
+                .port(managementPort)
+                .when()
+                .post("/flightrecording/start")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("name", equalTo("eidas-proxy"))
+                .body("state", equalTo("RUNNING"))
+                .body("settings", equalTo("default"))
+                .body("maxSize", equalTo(10485760));
+
+        byte[] dump = given()
+                .port(managementPort)
+                .when()
+                .get("/flightrecording/dump")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .contentType("application/octet-stream")
+                .extract().asByteArray();
+        assertThat(dump.length, greaterThan(0));
+
+        given()
+                .port(managementPort)
+                .when()
+                .post("/flightrecording/stop")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("state", equalTo("STOPPED"));
+    }
+
+    @Test
+    void recordingNotStarted_WhenRequestedOnApplicationPort() {
+        given()
+                .when()
+                .post("/flightrecording/start")
+                .then()
+                .assertThat()
+                .statusCode(404);
+
+        assertEquals("NONE", flightRecordingEndpoint.status().get("state"));
+    }
+
+    @Test
+    void unknownActionNotFound() {
+        given()
+                .port(managementPort)
+                .when()
+                .post("/flightrecording/pause")
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+}
@@ -0,0 +1,99 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.jayway.jsonpath.JsonPath;
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.IdTokenClaimMappingProperties;
+import eu.eidas.auth.commons.attribute.AttributeDefinition;
+import eu.eidas.auth.commons.attribute.AttributeRegistry;
+import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.NATURAL_PERSON_MANDATORY_ATTRIBUTES;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createLightRequest;
+
+/**
+ * Compares ID-token claim extraction with string JsonPath expressions and per-call regex compilation (as done before
+ * {@link ClaimExtractionPlan}) against the pre-compiled plan.
+ * <p>
+ * Run with: {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ee.ria.eidas.proxy.specific.service.ClaimExtractionPlanBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClaimExtractionPlanBenchmark {
+    private final AttributeRegistry registry = EidasSpec.REGISTRY;
+    private IdTokenClaimMappingProperties mappingProperties;
+    private ClaimExtractionPlan claimExtractionPlan;
+    private ILightRequest lightRequest;
+    private JSONObject claims;
+
+    @Setup
+    public void setup() {
+        mappingProperties = new IdTokenClaimMappingProperties();
+        mappingProperties.getAttributes().put("FirstName", "$.profile_attributes.given_name");
+        mappingProperties.getAttributes().put("FamilyName", "$.profile_attributes.family_name");
+        mappingProperties.getAttributes().put("DateOfBirth", "$.profile_attributes.date_of_birth");
+        mappingProperties.getAttributes().put("PersonIdentifier", "$.sub");
+        mappingProperties.getAttributesPostProcessing().put("PersonIdentifier", "^EE(?<attributeValue>[\\d]{11,11})$");
+        claimExtractionPlan = new ClaimExtractionPlan(mappingProperties, new AttributeRegistryIndex(registry));
+        lightRequest = createLightRequest(NATURAL_PERSON_MANDATORY_ATTRIBUTES);
+
+        JSONObject profileAttributes = new JSONObject();
+        profileAttributes.put("given_name", "MARY ÄNN");
+        profileAttributes.put("family_name", "O’CONNEŽ-ŠUSLIK TESTNUMBER");
+        profileAttributes.put("date_of_birth", "2000-01-01");
+        claims = new JSONObject();
+        claims.put("jti", "0c597356-3771-4315-a129-c7bc1f02a1b2");
+        claims.put("iss", "https://localhost:9877");
+        claims.put("sub", "EE60001019906");
+        claims.put("acr", "high");
+        claims.put("profile_attributes", profileAttributes);
+    }
+
+    @Benchmark
+    public Object stringPaths() {
+        String subject = JsonPath.read(claims, mappingProperties.getNaturalPersonSubject());
+        String id = JsonPath.read(claims, mappingProperties.getId());
+        String acr = JsonPath.read(claims, mappingProperties.getAcr());
+        String issuer = JsonPath.read(claims, mappingProperties.getIssuer());
+        ImmutableAttributeMap.Builder attributes = ImmutableAttributeMap.builder();
+        for (AttributeDefinition<?> definition : lightRequest.getRequestedAttributes().getAttributeMap().keySet()) {
+            String friendlyName = definition.getFriendlyName();
+            String value = JsonPath.read(claims, mappingProperties.getAttributes().get(friendlyName));
+            String regexp = mappingProperties.getAttributesPostProcessing().get(friendlyName);
+            if (regexp != null) {
+                Matcher matcher = Pattern.compile(regexp).matcher(value);
+                value = matcher.find() ? matcher.group("attributeValue") : null;
+            }
+            attributes.put(registry.getByFriendlyName(friendlyName).first(), value);
+        }
+        return new ClaimExtractionPlan.ExtractedClaims(subject, id, acr, issuer, attributes.build());
+    }
+
+    @Benchmark
+    public Object compiledPlan() {
+        return claimExtractionPlan.extract(claims, lightRequest);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ClaimExtractionPlanBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.IdTokenClaimMappingProperties;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import net.minidev.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.NATURAL_PERSON_MANDATORY_ATTRIBUTES;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createLightRequest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClaimExtractionPlanTests {
+    private final AttributeRegistryIndex registry = new AttributeRegistryIndex(EidasSpec.REGISTRY);
+    private IdTokenClaimMappingProperties mappingProperties;
+    private JSONObject claims;
+
+    @BeforeEach
+    void setUp() {
+        mappingProperties = new IdTokenClaimMappingProperties();
+        mappingProperties.getAttributes().put("FirstName", "$.profile_attributes.given_name");
+        mappingProperties.getAttributes().put("FamilyName", "$.profile_attributes.family_name");
+        mappingProperties.getAttributes().put("DateOfBirth", "$.profile_attributes.date_of_birth");
+        mappingProperties.getAttributes().put("PersonIdentifier", "$.sub");
+        mappingProperties.getAttributesPostProcessing().put("PersonIdentifier", "^EE(?<attributeValue>[\\d]{11,11})$");
+
+        JSONObject profileAttributes = new JSONObject();
+        profileAttributes.put("given_name", "MARY ÄNN");
+        profileAttributes.put("family_name", "O’CONNEŽ-ŠUSLIK TESTNUMBER");
+        profileAttributes.put("date_of_birth", "2000-01-01");
+        claims = new JSONObject();
+        claims.put("jti", "0c597356-3771-4315-a129-c7bc1f02a1b2");
+        claims.put("iss", "https://localhost:9877");
+        claims.put("sub", "EE60001019906");
+        claims.put("acr", "high");
+        claims.put("profile_attributes", profileAttributes);
+    }
+
+    @Test
+    void requestedAttributesExtractedAndPostProcessed() {
+        ClaimExtractionPlan.ExtractedClaims extractedClaims = new ClaimExtractionPlan(mappingProperties, registry)
+                .extract(claims, createLightRequest(NATURAL_PERSON_MANDATORY_ATTRIBUTES));
+
+        assertEquals("EE60001019906", extractedClaims.getSubject());
+        assertEquals("0c597356-3771-4315-a129-c7bc1f02a1b2", extractedClaims.getId());
+        assertEquals("high", extractedClaims.getAcr());
+        assertEquals("https://localhost:9877", extractedClaims.getIssuer());
+        assertEquals(NATURAL_PERSON_MANDATORY_ATTRIBUTES, extractedClaims.getAttributes());
+    }
+
+    @Test
+    void exceptionWhenPostProcessingRuleDoesNotMatch() {
+        claims.put("sub", "LV60001019906");
+        ClaimExtractionPlan claimExtractionPlan = new ClaimExtractionPlan(mappingProperties, registry);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> claimExtractionPlan.extract(claims, createLightRequest(NATURAL_PERSON_MANDATORY_ATTRIBUTES)));
+
+        assertEquals("Attribute 'PersonIdentifier' with value 'LV60001019906' does not match the expected format " +
+                "^EE(?<attributeValue>[\\d]{11,11})$", exception.getMessage());
+    }
+
+    @Test
+    void exceptionWhenClaimNotFound() {
+        claims.remove("jti");
+        ClaimExtractionPlan claimExtractionPlan = new ClaimExtractionPlan(mappingProperties, registry);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> claimExtractionPlan.extract(claims, createLightRequest(NATURAL_PERSON_MANDATORY_ATTRIBUTES)));
+
+        assertEquals("Failed to read attribute (responseId) value from ID-token with jsonpath ($.jti). " +
+                "Please check your configuration", exception.getMessage());
+    }
+
+    @Test
+    void exceptionWhenRequiredAttributeHasNoMapping() {
+        mappingProperties.getAttributes().remove("FamilyName");
+        ClaimExtractionPlan claimExtractionPlan = new ClaimExtractionPlan(mappingProperties, registry);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> claimExtractionPlan.extract(claims, createLightRequest(NATURAL_PERSON_MANDATORY_ATTRIBUTES)));
+
+        assertEquals("Required attribute FamilyName has no jsonpath configured to extract claim from id-token", exception.getMessage());
+    }
+}
@@ -0,0 +1,62 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.OidcProviderProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static ee.ria.eidas.proxy.specific.service.IssuerAddressResolver.RESOLUTION_TIMER_NAME;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IssuerAddressResolverTests {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void issuerAddressResolvedOnceAndReused() {
+        IssuerAddressResolver resolver = new IssuerAddressResolver(oidcProperties("https://127.0.0.1:9877"), meterRegistry);
+
+        resolver.refresh();
+
+        assertEquals("127.0.0.1", resolver.getIssuerIpAddress());
+        assertEquals("127.0.0.1", resolver.getIssuerIpAddress());
+        assertEquals(1, resolutionTimer("success").count());
+        assertEquals(0, resolutionTimer("failure").count());
+    }
+
+    @Test
+    void issuerAddressResolvedOnDemand_WhenNotResolvedBefore() {
+        IssuerAddressResolver resolver = new IssuerAddressResolver(oidcProperties("https://127.0.0.1:9877"), meterRegistry);
+
+        assertEquals("127.0.0.1", resolver.getIssuerIpAddress());
+        assertEquals(1, resolutionTimer("success").count());
+    }
+
+    @Test
+    void exceptionWhenIssuerHostNeverResolved() {
+        IssuerAddressResolver resolver = new IssuerAddressResolver(oidcProperties("https://unknown-host.invalid"), meterRegistry);
+
+        resolver.refresh();
+        IllegalStateException exception = assertThrows(IllegalStateException.class, resolver::getIssuerIpAddress);
+
+        assertEquals("Unable to resolve OIDC issuer host: unknown-host.invalid", exception.getMessage());
+        assertEquals(2, resolutionTimer("failure").count());
+    }
+
+    @Test
+    void exceptionWhenInvalidIssuerUrl() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> new IssuerAddressResolver(oidcProperties("invalid-url"), meterRegistry));
+
+        assertEquals("Invalid OpenID Connect provider issuer URL: invalid-url", exception.getMessage());
+    }
+
+    private Timer resolutionTimer(String outcome) {
+        return meterRegistry.get(RESOLUTION_TIMER_NAME).tag("outcome", outcome).timer();
+    }
+
+    private static OidcProviderProperties oidcProperties(String issuerUrl) {
+        OidcProviderProperties oidcProperties = new OidcProviderProperties();
+        oidcProperties.setIssuerUrl(issuerUrl);
+        return oidcProperties;
+    }
+}
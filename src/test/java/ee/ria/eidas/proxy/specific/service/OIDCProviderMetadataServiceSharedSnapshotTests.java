@@ -0,0 +1,54 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import ee.ria.eidas.proxy.specific.service.OidcMetadataSnapshotStore.StoredSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OIDCProviderMetadataServiceSharedSnapshotTests {
+    private static final String ISSUER_URL = "https://localhost:9877";
+
+    private final SpecificProxyServiceProperties properties = new SpecificProxyServiceProperties();
+    private final PooledOidcHttpClient oidcHttpClient = mock(PooledOidcHttpClient.class);
+    private final IssuerAddressResolver issuerAddressResolver = mock(IssuerAddressResolver.class);
+    private final SharedOidcMetadataStore sharedMetadataStore = mock(SharedOidcMetadataStore.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issuerAddressRefreshedAndConnectionsPrewarmed_WhenSharedSnapshotInstalled() throws Exception {
+        properties.getOidc().setIssuerUrl(ISSUER_URL);
+        properties.getOidc().setClientId("openIdDemo");
+        String metadata = Files.readString(Paths.get("src/test/resources/__files/mock_responses/idp/openid-configuration.json"));
+        StoredSnapshot sharedSnapshot = new StoredSnapshot(new CachedHttpResource(metadata, null, null), null, Instant.now());
+        when(sharedMetadataStore.load(ISSUER_URL)).thenReturn(Optional.of(sharedSnapshot));
+        when(sharedMetadataStore.isFresh(sharedSnapshot)).thenReturn(true);
+        ObjectProvider<SharedOidcMetadataStore> sharedMetadataStoreProvider = mock(ObjectProvider.class);
+        when(sharedMetadataStoreProvider.getIfAvailable()).thenReturn(sharedMetadataStore);
+        OIDCProviderMetadataService metadataService = new OIDCProviderMetadataService(properties, oidcHttpClient,
+                mock(OidcJwksCache.class), issuerAddressResolver, mock(FlowTracing.class), mock(TaskScheduler.class),
+                sharedMetadataStoreProvider, mock(ObjectProvider.class));
+
+        metadataService.initMetadata();
+
+        URI tokenEndpoint = metadataService.getOidcProviderMetadata().getTokenEndpointURI();
+        assertEquals(ISSUER_URL, metadataService.getOidcProviderMetadata().getIssuer().getValue());
+        verify(issuerAddressResolver).refresh();
+        verify(oidcHttpClient).prewarm(tokenEndpoint);
+        verify(sharedMetadataStore, never()).publish(any(), any(), any());
+    }
+}
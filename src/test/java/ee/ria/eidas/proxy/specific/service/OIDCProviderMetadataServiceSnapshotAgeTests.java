@@ -0,0 +1,86 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OIDCProviderMetadataServiceSnapshotAgeTests {
+    private static final String ISSUER_URL = "https://localhost:9877";
+
+    private final SpecificProxyServiceProperties properties = new SpecificProxyServiceProperties();
+    private final PooledOidcHttpClient oidcHttpClient = mock(PooledOidcHttpClient.class);
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private OIDCProviderMetadataService metadataService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        Path snapshotFile = tempDir.resolve("snapshot.json");
+        properties.getOidc().setIssuerUrl(ISSUER_URL);
+        properties.getOidc().setClientId("openIdDemo");
+        properties.getOidc().getMetadata().setSnapshotFile(snapshotFile.toString());
+        properties.getOidc().getMetadata().setSnapshotMaxAgeInSeconds(Duration.ofDays(1).toSeconds());
+        properties.getOidc().getHttpClient().setPrewarmConnections(false);
+        new OidcMetadataSnapshotStore(snapshotFile.toString()).save(ISSUER_URL,
+                new CachedHttpResource(readMetadata("openid-configuration-updated.json"), null, null), null);
+
+        HTTPResponse metadataResponse = new HTTPResponse(200);
+        metadataResponse.setHeader("Content-Type", "application/json; charset=UTF-8");
+        metadataResponse.setBody(readMetadata("openid-configuration.json"));
+        when(oidcHttpClient.send(any())).thenReturn(metadataResponse);
+        metadataService = new OIDCProviderMetadataService(properties, oidcHttpClient, mock(OidcJwksCache.class),
+                mock(IssuerAddressResolver.class), FlowTracing.NOOP, taskScheduler, mock(ObjectProvider.class),
+                mock(ObjectProvider.class));
+    }
+
+    @Test
+    void snapshotRestoredAndRefreshScheduled_WhenWithinMaxAge() throws Exception {
+        metadataService.initMetadata();
+
+        assertEquals("https://localhost:9999/oidc/jwks", metadataService.getOidcProviderMetadata().getJWKSetURI().toString());
+        verify(oidcHttpClient, never()).send(any());
+
+        metadataService.scheduleRestoredMetadataRefresh();
+        verify(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void metadataFetched_WhenSnapshotOlderThanMaxAge() throws Exception {
+        Path snapshotFile = tempDir.resolve("snapshot.json");
+        String savedAt = Instant.now().minus(Duration.ofDays(2)).toString();
+        Files.writeString(snapshotFile, Files.readString(snapshotFile).replaceFirst("\"savedAt\":\"[^\"]+\"", "\"savedAt\":\"" + savedAt + "\""));
+
+        metadataService.initMetadata();
+
+        assertEquals("https://localhost:9877/oidc/jwks", metadataService.getOidcProviderMetadata().getJWKSetURI().toString());
+        verify(oidcHttpClient).send(any());
+
+        metadataService.scheduleRestoredMetadataRefresh();
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    private static String readMetadata(String fileName) throws Exception {
+        return Files.readString(Paths.get("src/test/resources/__files/mock_responses/idp/" + fileName));
+    }
+}
@@ -0,0 +1,93 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import ee.ria.eidas.proxy.specific.SpecificProxyTest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import ee.ria.eidas.proxy.specific.service.OidcMetadataSnapshotStore.StoredSnapshot;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.awaitility.Durations;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static com.nimbusds.openid.connect.sdk.op.OIDCProviderConfigurationRequest.OPENID_PROVIDER_WELL_KNOWN_PATH;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@Slf4j
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"eidas.proxy.oidc.metadata.update-schedule=-",
+        "eidas.proxy.oidc.metadata.snapshot-file=" + OIDCProviderMetadataServiceSnapshotTests.SNAPSHOT_FILE,
+        "eidas.proxy.oidc.metadata.max-attempts=3", "eidas.proxy.oidc.metadata.backoff-delay-in-milliseconds=500"})
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = OIDCProviderMetadataServiceSnapshotTests.TestContextInitializer.class)
+class OIDCProviderMetadataServiceSnapshotTests extends SpecificProxyTest {
+    static final String SNAPSHOT_FILE = "target/oidc-metadata-snapshot-test.json";
+    private static final String ISSUER_URL = "https://localhost:9877";
+
+    static {
+        saveSnapshot("src/test/resources/__files/mock_responses/idp/openid-configuration-updated.json");
+    }
+
+    private static final List<StubMapping> FIRST_REQUEST_FAILS = new ArrayList<>();
+
+    @Autowired
+    private OIDCProviderMetadataService oidcProviderMetadataService;
+
+    /**
+     * Runs before the application context is started, so that the background refresh of the restored metadata fails
+     * on its first attempt.
+     */
+    @BeforeAll
+    static void setupFirstMetadataRequestFails() {
+        mockOidcServer.resetRequests();
+        FIRST_REQUEST_FAILS.add(mockOidcServer.stubFor(get(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH))
+                .inScenario("First request fails")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(500))
+                .willSetStateTo("First request made")));
+        FIRST_REQUEST_FAILS.add(mockOidcServer.stubFor(get(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH))
+                .inScenario("First request fails")
+                .whenScenarioStateIs("First request made")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBodyFile("mock_responses/idp/openid-configuration.json"))));
+    }
+
+    @AfterAll
+    static void removeFirstMetadataRequestFails() {
+        FIRST_REQUEST_FAILS.forEach(mockOidcServer::removeStub);
+        mockOidcServer.resetScenarios();
+    }
+
+    @Test
+    void metadataRestoredFromSnapshotAndRefreshedInBackground() {
+        await()
+                .atMost(Durations.FIVE_SECONDS)
+                .untilAsserted(() -> assertEquals("https://localhost:9877/oidc/jwks",
+                        oidcProviderMetadataService.getOidcProviderMetadata().getJWKSetURI().toString()));
+        mockOidcServer.verify(2, getRequestedFor(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH)));
+
+        StoredSnapshot storedSnapshot = new OidcMetadataSnapshotStore(SNAPSHOT_FILE).load(ISSUER_URL).orElseThrow();
+        assertTrue(storedSnapshot.getMetadata().getContent().contains("https://localhost:9877/oidc/jwks"));
+        assertEquals(oidcProviderMetadataService.getOidcProviderMetadata().getIssuer().getValue(), ISSUER_URL);
+    }
+
+    @SneakyThrows
+    private static void saveSnapshot(String metadataFile) {
+        String metadata = Files.readString(Paths.get(metadataFile));
+        new OidcMetadataSnapshotStore(SNAPSHOT_FILE).save(ISSUER_URL, new CachedHttpResource(metadata, null, null), null);
+    }
+}
@@ -0,0 +1,179 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import ee.ria.eidas.proxy.specific.SpecificProxyTest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.JwksProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import lombok.extern.slf4j.Slf4j;
+import org.awaitility.Durations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@Slf4j
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"eidas.proxy.oidc.metadata.update-schedule=-"})
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = OidcJwksCacheTests.TestContextInitializer.class)
+class OidcJwksCacheTests extends SpecificProxyTest {
+    private static final String JWKS_PATH = "/oidc/jwks";
+    private static final String ROTATED_JWKS = "{\"keys\":[{\"kty\":\"RSA\",\"e\":\"AQAB\",\"kid\":\"rotated\"," +
+            "\"n\":\"hBF_vCQC3LRgrKcyZfWLA24_v_dIGYwwd6rmBLWRnGshByfiOI-QfOsFlIzUnrgZoKXRUh_djz-fY2jHtUJ2pK-8cAI-uoMN5o12OVNjWsMWoiWY2TwbpcYk3jCxEPCx3s-uiIfc5W591qCDOOeRpTpvADk3UNf0P21aDFLppB7Ifi38pYTlwBagDo7Cnk-YUdzbw9cff1lm-grk8VJCx0rTBMNkjJbcHDY2vjIsr9Q7mfd0E6qcgFNUMD3_CgCZOQmJy-Jl1rivRkZ3VdfQWGO4q7u5d9dGBzl2tuT_beqbpT5ROAy0VR91xfEqRq57AlvH7YEreUKrnCMjlaKkTw\"}]}";
+
+    @Autowired
+    private PooledOidcHttpClient oidcHttpClient;
+
+    @BeforeEach
+    void beforeEach() {
+        clearMockOidcServerMappings();
+    }
+
+    @Test
+    void keysFetchedOnPrefetch() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(30);
+
+        jwksCache.prefetch(jwksUrl());
+
+        assertEquals(List.of("s81pe3"), jwksCache.getKeyIds());
+        assertEquals(1, jwksCache.selectJWSKeys(header("s81pe3"), null).size());
+        mockOidcServer.verify(1, getRequestedFor(urlEqualTo(JWKS_PATH)));
+    }
+
+    @Test
+    void keysNotSelected_WhenUnexpectedAlgorithm() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(30);
+        jwksCache.prefetch(jwksUrl());
+
+        assertTrue(jwksCache.selectJWSKeys(new JWSHeader.Builder(JWSAlgorithm.RS512).keyID("s81pe3").build(), null).isEmpty());
+    }
+
+    @Test
+    void signatureVerifierReusedForSameKey() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(30);
+        jwksCache.prefetch(jwksUrl());
+        JWSHeader header = header("s81pe3");
+
+        Key key = jwksCache.selectJWSKeys(header, null).get(0);
+        JWSVerifier verifier = jwksCache.getVerifierFactory().createJWSVerifier(header, key);
+
+        assertSame(key, jwksCache.selectJWSKeys(header, null).get(0));
+        assertSame(verifier, jwksCache.getVerifierFactory().createJWSVerifier(header, key));
+    }
+
+    @Test
+    void unknownKeyIdRefetchesRotatedKeys() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(0);
+        jwksCache.prefetch(jwksUrl());
+        mockOidcServer.stubFor(get(urlEqualTo(JWKS_PATH))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBody(ROTATED_JWKS)));
+
+        assertEquals(1, jwksCache.selectJWSKeys(header("rotated"), null).size());
+        assertEquals(List.of("rotated"), jwksCache.getKeyIds());
+        mockOidcServer.verify(2, getRequestedFor(urlEqualTo(JWKS_PATH)));
+    }
+
+    @Test
+    void unknownKeyIdRefetchIsRateLimited() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(1);
+        jwksCache.prefetch(jwksUrl());
+
+        assertTrue(jwksCache.selectJWSKeys(header("unknown"), null).isEmpty());
+        mockOidcServer.verify(1, getRequestedFor(urlEqualTo(JWKS_PATH)));
+
+        await().pollDelay(Durations.ONE_SECOND).atMost(Durations.FIVE_SECONDS).until(() -> true);
+        assertTrue(jwksCache.selectJWSKeys(header("unknown"), null).isEmpty());
+        assertTrue(jwksCache.selectJWSKeys(header("unknown"), null).isEmpty());
+        mockOidcServer.verify(2, getRequestedFor(urlEqualTo(JWKS_PATH)));
+    }
+
+    @Test
+    void keysFetchedOnDemandAfterMinRefetchInterval_WhenPrefetchFailed() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(1);
+        mockOidcServer.stubFor(get(urlEqualTo(JWKS_PATH))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+        jwksCache.prefetch(jwksUrl());
+        assertTrue(jwksCache.getKeyIds().isEmpty());
+        assertWarningIsLogged(OidcJwksCache.class, "Failed to update OIDC JWKS from https://localhost:9877/oidc/jwks: HTTP 500: Server Error");
+
+        clearMockOidcServerMappings();
+        assertTrue(jwksCache.selectJWSKeys(header("s81pe3"), null).isEmpty());
+        mockOidcServer.verify(1, getRequestedFor(urlEqualTo(JWKS_PATH)));
+
+        await().atMost(Durations.FIVE_SECONDS).until(() -> jwksCache.selectJWSKeys(header("s81pe3"), null).size() == 1);
+        mockOidcServer.verify(2, getRequestedFor(urlEqualTo(JWKS_PATH)));
+    }
+
+    @Test
+    void concurrentUnknownKeyIdsWaitForSingleRefetch() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(0);
+        jwksCache.prefetch(jwksUrl());
+        mockOidcServer.stubFor(get(urlEqualTo(JWKS_PATH))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBody(ROTATED_JWKS)));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<? extends Key>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> jwksCache.selectJWSKeys(header("rotated"), null)));
+            }
+            for (Future<List<? extends Key>> result : results) {
+                assertEquals(1, result.get(10, TimeUnit.SECONDS).size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        mockOidcServer.verify(2, getRequestedFor(urlEqualTo(JWKS_PATH)));
+    }
+
+    @Test
+    void previousKeysKept_WhenRefreshFails() throws Exception {
+        OidcJwksCache jwksCache = createJwksCache(30);
+        jwksCache.prefetch(jwksUrl());
+        mockOidcServer.stubFor(get(urlEqualTo(JWKS_PATH))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+
+        jwksCache.refresh();
+
+        assertEquals(List.of("s81pe3"), jwksCache.getKeyIds());
+    }
+
+    private OidcJwksCache createJwksCache(long minRefetchIntervalInSeconds) {
+        JwksProperties jwksProperties = new JwksProperties();
+        jwksProperties.setMinRefetchIntervalInSeconds(minRefetchIntervalInSeconds);
+        return new OidcJwksCache(jwksProperties, oidcHttpClient, FlowTracing.NOOP);
+    }
+
+    private static URL jwksUrl() throws MalformedURLException {
+        return new URL("https://localhost:9877" + JWKS_PATH);
+    }
+
+    private static JWSHeader header(String keyId) {
+        return new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build();
+    }
+}
@@ -0,0 +1,74 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.service.OidcMetadataSnapshotStore.StoredSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OidcMetadataSnapshotStoreTests {
+    private static final String ISSUER_URL = "https://localhost:9877";
+    private static final CachedHttpResource METADATA = new CachedHttpResource("{\"issuer\":\"https://localhost:9877\"}", "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT");
+    private static final CachedHttpResource JWKS = new CachedHttpResource("{\"keys\":[]}", null, null);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void savedSnapshotLoaded() {
+        OidcMetadataSnapshotStore store = new OidcMetadataSnapshotStore(tempDir.resolve("snapshot.json").toString());
+
+        store.save(ISSUER_URL, METADATA, JWKS);
+        Optional<StoredSnapshot> snapshot = store.load(ISSUER_URL);
+
+        assertTrue(snapshot.isPresent());
+        assertEquals(METADATA, snapshot.get().getMetadata());
+        assertEquals(JWKS, snapshot.get().getJwks());
+    }
+
+    @Test
+    void savedSnapshotReplacesPrevious() throws IOException {
+        OidcMetadataSnapshotStore store = new OidcMetadataSnapshotStore(tempDir.resolve("snapshot.json").toString());
+        CachedHttpResource updatedMetadata = new CachedHttpResource("{\"issuer\":\"https://localhost:9877\",\"updated\":true}", "\"v2\"", null);
+
+        store.save(ISSUER_URL, METADATA, JWKS);
+        store.save(ISSUER_URL, updatedMetadata, null);
+
+        Optional<StoredSnapshot> snapshot = store.load(ISSUER_URL);
+        assertEquals(updatedMetadata, snapshot.orElseThrow().getMetadata());
+        assertNull(snapshot.get().getJwks());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void snapshotNotLoaded_WhenFileMissing() {
+        OidcMetadataSnapshotStore store = new OidcMetadataSnapshotStore(tempDir.resolve("missing.json").toString());
+
+        assertTrue(store.load(ISSUER_URL).isEmpty());
+    }
+
+    @Test
+    void snapshotNotLoaded_WhenSavedForAnotherIssuer() {
+        OidcMetadataSnapshotStore store = new OidcMetadataSnapshotStore(tempDir.resolve("snapshot.json").toString());
+
+        store.save("https://another-issuer", METADATA, JWKS);
+
+        assertTrue(store.load(ISSUER_URL).isEmpty());
+    }
+
+    @Test
+    void snapshotNotLoaded_WhenFileCorrupt() throws IOException {
+        Path snapshotFile = tempDir.resolve("snapshot.json");
+        Files.writeString(snapshotFile, "{\"issuerUrl\":\"https://localhost:9877\",\"metadata\":");
+        OidcMetadataSnapshotStore store = new OidcMetadataSnapshotStore(snapshotFile.toString());
+
+        assertTrue(store.load(ISSUER_URL).isEmpty());
+    }
+}
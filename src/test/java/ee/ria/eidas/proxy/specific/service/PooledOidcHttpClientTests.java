@@ -0,0 +1,133 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import com.nimbusds.jose.util.Resource;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.id.Issuer;
+import com.nimbusds.openid.connect.sdk.op.OIDCProviderConfigurationRequest;
+import ee.ria.eidas.proxy.specific.SpecificProxyTest;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.OidcProviderProperties;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import lombok.extern.slf4j.Slf4j;
+import org.awaitility.Durations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.nimbusds.openid.connect.sdk.op.OIDCProviderConfigurationRequest.OPENID_PROVIDER_WELL_KNOWN_PATH;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@Slf4j
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"eidas.proxy.oidc.metadata.update-schedule=-"})
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = PooledOidcHttpClientTests.TestContextInitializer.class)
+class PooledOidcHttpClientTests extends SpecificProxyTest {
+
+    @Autowired
+    private PooledOidcHttpClient oidcHttpClient;
+
+    @BeforeEach
+    void beforeEach() {
+        mockOidcServer.resetRequests();
+    }
+
+    @Test
+    void sequentialRequestsReusePooledConnections() throws Exception {
+        awaitConnectionsReleased();
+        int availableConnections = Math.max(1, oidcHttpClient.getConnectionPoolStats().getAvailable());
+        for (int i = 0; i < 5; i++) {
+            HTTPResponse response = new OIDCProviderConfigurationRequest(new Issuer("https://localhost:9877"))
+                    .toHTTPRequest()
+                    .send(oidcHttpClient);
+            assertEquals(200, response.getStatusCode());
+            assertEquals("https://localhost:9877", response.getBodyAsJSONObject().get("issuer"));
+            awaitConnectionsReleased();
+        }
+
+        mockOidcServer.verify(5, getRequestedFor(urlEqualTo(OPENID_PROVIDER_WELL_KNOWN_PATH)));
+        assertEquals(availableConnections, oidcHttpClient.getConnectionPoolStats().getAvailable());
+    }
+
+    @Test
+    void jwksRetrieved() throws Exception {
+        mockOidcServer.stubFor(get(urlEqualTo("/oidc/jwks"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBodyFile("mock_responses/idp/jwks.json")));
+
+        Resource resource = oidcHttpClient.retrieveResource(new URL("https://localhost:9877/oidc/jwks"));
+
+        assertTrue(resource.getContent().contains("\"keys\""));
+        assertEquals("application/json; charset=UTF-8", resource.getContentType());
+    }
+
+    @Test
+    void exceptionWhenJwksResponseStatusInvalid() {
+        mockOidcServer.stubFor(get(urlEqualTo("/oidc/jwks"))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+
+        IOException exception = assertThrows(IOException.class,
+                () -> oidcHttpClient.retrieveResource(new URL("https://localhost:9877/oidc/jwks")));
+
+        assertEquals("HTTP 500: Server Error", exception.getMessage());
+    }
+
+    @Test
+    void prewarmOpensConnectionToTokenEndpoint() {
+        oidcHttpClient.prewarm(URI.create("https://localhost:9877/oidc/token"));
+
+        mockOidcServer.verify(1, headRequestedFor(urlEqualTo("/oidc/token")));
+        awaitConnectionsReleased();
+        assertTrue(oidcHttpClient.getConnectionPoolStats().getAvailable() > 0);
+    }
+
+    @Test
+    void requestFailsAfterConnectionRequestTimeout_WhenAllConnectionsInUse() throws Exception {
+        mockOidcServer.stubFor(get(urlEqualTo("/oidc/slow"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(3000)));
+        OidcProviderProperties oidcProperties = new OidcProviderProperties();
+        oidcProperties.getHttpClient().setMaxConnections(1);
+        oidcProperties.getHttpClient().setConnectionRequestTimeoutInMilliseconds(200);
+        oidcProperties.getHttpClient().setPrewarmConnections(false);
+
+        try (PooledOidcHttpClient httpClient = new PooledOidcHttpClient(oidcProperties, FlowTracing.NOOP)) {
+            CompletableFuture<Resource> slowRequest = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return httpClient.retrieveResource(new URL("https://localhost:9877/oidc/slow"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            await().atMost(Durations.FIVE_SECONDS).until(() -> httpClient.getConnectionPoolStats().getLeased() == 1);
+
+            long startTime = System.nanoTime();
+            assertThrows(IOException.class, () -> httpClient.retrieveResource(new URL("https://localhost:9877/oidc/jwks")));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < 2500);
+
+            assertNotNull(slowRequest.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * The async client completes the response future before the connection is returned to the pool.
+     */
+    private void awaitConnectionsReleased() {
+        await().atMost(Durations.ONE_SECOND)
+                .until(() -> oidcHttpClient.getConnectionPoolStats().getLeased() == 0);
+    }
+}
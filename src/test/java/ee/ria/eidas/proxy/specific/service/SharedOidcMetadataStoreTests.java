@@ -0,0 +1,150 @@
+package ee.ria.eidas.proxy.specific.service;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.MetadataProperties;
+import ee.ria.eidas.proxy.specific.service.OidcMetadataSnapshotStore.StoredSnapshot;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ee.ria.eidas.proxy.specific.service.SharedOidcMetadataStore.REFRESH_LEASE_KEY;
+import static ee.ria.eidas.proxy.specific.service.SharedOidcMetadataStore.SNAPSHOT_KEY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SharedOidcMetadataStoreTests {
+    private static final String ISSUER_URL = "https://localhost:9877";
+    private static final CachedHttpResource METADATA = new CachedHttpResource("{\"issuer\":\"https://localhost:9877\"}", "\"v1\"", null);
+
+    @SuppressWarnings("unchecked")
+    private final CommunicationCache<String, String> sharedMetadataCache = mock(CommunicationCache.class);
+    @SuppressWarnings("unchecked")
+    private final Cache<String, String> sharedMetadataJCache = mock(Cache.class);
+    private SharedOidcMetadataStore store;
+
+    @BeforeEach
+    void beforeEach() {
+        MetadataProperties metadataProperties = new MetadataProperties();
+        metadataProperties.setSharedMaxAgeInSeconds(60);
+        metadataProperties.setSharedRefreshLeaseInSeconds(1);
+        when(sharedMetadataCache.unwrap(Cache.class)).thenReturn(sharedMetadataJCache);
+        store = new SharedOidcMetadataStore(() -> sharedMetadataCache, metadataProperties, "instance-1");
+    }
+
+    @Test
+    void publishedSnapshotLoaded() {
+        ArgumentCaptor<String> publishedSnapshot = ArgumentCaptor.forClass(String.class);
+        store.publish(ISSUER_URL, METADATA, null);
+        verify(sharedMetadataCache).put(eq(SNAPSHOT_KEY), publishedSnapshot.capture());
+        when(sharedMetadataCache.get(SNAPSHOT_KEY)).thenReturn(publishedSnapshot.getValue());
+
+        Optional<StoredSnapshot> snapshot = store.load(ISSUER_URL);
+
+        assertEquals(METADATA, snapshot.orElseThrow().getMetadata());
+        assertTrue(store.isFresh(snapshot.get()));
+    }
+
+    @Test
+    void snapshotNotFresh_WhenOlderThanMaxAge() {
+        assertFalse(store.isFresh(new StoredSnapshot(METADATA, null, Instant.now().minusSeconds(61))));
+    }
+
+    @Test
+    void refreshLeaseAcquiredAndReleased_WhenNotHeld() {
+        when(sharedMetadataCache.putIfAbsent(eq(REFRESH_LEASE_KEY), startsWith("instance-1|"))).thenReturn(true);
+
+        assertTrue(store.tryAcquireRefreshLease());
+        store.releaseRefreshLease();
+
+        verify(sharedMetadataCache).remove(eq(REFRESH_LEASE_KEY), startsWith("instance-1|"));
+    }
+
+    @Test
+    void refreshLeaseNotAcquired_WhenHeldByAnotherInstance() {
+        when(sharedMetadataCache.get(REFRESH_LEASE_KEY)).thenReturn("instance-2|" + Instant.now().plusSeconds(30).toEpochMilli());
+
+        assertFalse(store.tryAcquireRefreshLease());
+        store.releaseRefreshLease();
+
+        verify(sharedMetadataCache, never()).replace(any(), any(), any());
+        verify(sharedMetadataCache, never()).remove(any(), any());
+    }
+
+    @Test
+    void refreshLeaseTakenOver_WhenExpired() {
+        String expiredLease = "instance-2|" + Instant.now().minusSeconds(1).toEpochMilli();
+        when(sharedMetadataCache.get(REFRESH_LEASE_KEY)).thenReturn(expiredLease);
+        when(sharedMetadataCache.replace(eq(REFRESH_LEASE_KEY), eq(expiredLease), startsWith("instance-1|"))).thenReturn(true);
+
+        assertTrue(store.tryAcquireRefreshLease());
+    }
+
+    @Test
+    void refreshLeaseAcquired_WhenCacheUnavailable() {
+        when(sharedMetadataCache.get(REFRESH_LEASE_KEY)).thenThrow(new CacheException("Cache unavailable"));
+
+        assertTrue(store.tryAcquireRefreshLease());
+        assertTrue(store.load(ISSUER_URL).isEmpty());
+    }
+
+    @Test
+    void awaitPublishedReturnsEmpty_WhenNothingPublishedWithinLease() {
+        assertTrue(store.awaitPublished(ISSUER_URL, null).isEmpty());
+    }
+
+    @Test
+    void awaitPublishedReturnsEmpty_WhenLeaseReleasedWithoutPublishing() {
+        AtomicReference<String> lease = new AtomicReference<>("instance-2|" + Instant.now().plusSeconds(30).toEpochMilli());
+        when(sharedMetadataCache.get(REFRESH_LEASE_KEY)).thenAnswer(invocation -> lease.get());
+        when(sharedMetadataCache.unwrap(Cache.class)).thenThrow(new IllegalArgumentException("Unwrapping is not supported"));
+        store = storeWithRefreshLease(30);
+        CompletableFuture.runAsync(() -> lease.set(null), CompletableFuture.delayedExecutor(200, MILLISECONDS));
+
+        long startTime = System.nanoTime();
+        assertTrue(store.awaitPublished(ISSUER_URL, null).isEmpty());
+
+        assertTrue(NANOSECONDS.toSeconds(System.nanoTime() - startTime) < 10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void awaitPublishedWokenByListener_WhenMetadataPublished() {
+        AtomicReference<String> snapshot = new AtomicReference<>();
+        when(sharedMetadataCache.get(SNAPSHOT_KEY)).thenAnswer(invocation -> snapshot.get());
+        when(sharedMetadataCache.get(REFRESH_LEASE_KEY)).thenReturn("instance-2|" + Instant.now().plusSeconds(30).toEpochMilli());
+        ArgumentCaptor<CacheEntryListenerConfiguration<String, String>> listener = ArgumentCaptor.forClass(CacheEntryListenerConfiguration.class);
+        store = storeWithRefreshLease(30);
+        CompletableFuture.runAsync(() -> {
+            snapshot.set(OidcMetadataSnapshotStore.toJson(ISSUER_URL, METADATA, null));
+            verify(sharedMetadataJCache).registerCacheEntryListener(listener.capture());
+            ((CacheEntryCreatedListener<String, String>) listener.getValue().getCacheEntryListenerFactory().create())
+                    .onCreated(List.of());
+        }, CompletableFuture.delayedExecutor(200, MILLISECONDS));
+
+        long startTime = System.nanoTime();
+        Optional<StoredSnapshot> publishedSnapshot = store.awaitPublished(ISSUER_URL, null);
+
+        assertTrue(NANOSECONDS.toSeconds(System.nanoTime() - startTime) < 10);
+        assertEquals(METADATA, publishedSnapshot.orElseThrow().getMetadata());
+        verify(sharedMetadataJCache).deregisterCacheEntryListener(listener.getValue());
+    }
+
+    private SharedOidcMetadataStore storeWithRefreshLease(int refreshLeaseInSeconds) {
+        MetadataProperties metadataProperties = new MetadataProperties();
+        metadataProperties.setSharedRefreshLeaseInSeconds(refreshLeaseInSeconds);
+        return new SharedOidcMetadataStore(() -> sharedMetadataCache, metadataProperties, "instance-1");
+    }
+}
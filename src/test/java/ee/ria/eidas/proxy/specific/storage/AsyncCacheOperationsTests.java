@@ -0,0 +1,177 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import brave.handler.MutableSpan;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import ee.ria.eidas.proxy.specific.util.TestTracing;
+import io.micrometer.observation.Observation;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.spi.communication.tcp.TcpCommunicationSpi;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import javax.cache.CacheException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncCacheOperationsTests {
+    private static final String EXECUTOR_THREAD_NAME = "communication-cache-test";
+    private static Ignite serverNode;
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void startServerNodeAndExecutor() {
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder().setAddresses(List.of("127.0.0.1:48501"));
+        serverNode = Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("asyncCacheOperationsTestServer")
+                .setDiscoverySpi(new TcpDiscoverySpi().setLocalPort(48501).setLocalPortRange(0).setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(48101)));
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, EXECUTOR_THREAD_NAME));
+    }
+
+    @AfterAll
+    static void stopServerNodeAndExecutor() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (serverNode != null) {
+            serverNode.close();
+        }
+    }
+
+    @AfterEach
+    void clearMdc() {
+        MDC.clear();
+    }
+
+    @Test
+    void igniteCacheOperationsCompletedOnExecutor_WithCallerMdc() throws Exception {
+        IgniteCache<String, String> igniteCache = serverNode.getOrCreateCache("asyncCacheOperationsTestCache");
+        CommunicationCache<String, String> cache = new ClientNodeCacheAdapter<>(igniteCache);
+        MDC.put("traceId", "test-trace-id");
+
+        assertTrue(AsyncCacheOperations.putIfAbsentAsync(cache, "key", "value", executor).get(5, TimeUnit.SECONDS));
+        assertFalse(AsyncCacheOperations.putIfAbsentAsync(cache, "key", "another-value", executor).get(5, TimeUnit.SECONDS));
+
+        CountDownLatch executorReleased = new CountDownLatch(1);
+        executor.execute(() -> awaitUninterruptibly(executorReleased));
+        CompletableFuture<String[]> completion = AsyncCacheOperations.getAndRemoveAsync(cache, "key", executor)
+                .thenApply(value -> new String[]{value, Thread.currentThread().getName(), MDC.get("traceId")});
+        MDC.clear();
+        executorReleased.countDown();
+
+        assertArrayEquals(new String[]{"value", EXECUTOR_THREAD_NAME, "test-trace-id"}, completion.get(5, TimeUnit.SECONDS));
+        assertNull(igniteCache.get("key"));
+    }
+
+    @Test
+    void spansAfterCompletionInRequestTrace() throws Exception {
+        try (TestTracing tracing = new TestTracing()) {
+            FlowTracing flowTracing = tracing.flowTracing(true);
+            IgniteCache<String, String> igniteCache = serverNode.getOrCreateCache("asyncCacheOperationsTestCache");
+            igniteCache.put("state", "pending-request");
+            TracedCache<String, String> cache = new TracedCache<>(new ClientNodeCacheAdapter<>(igniteCache), "pending-idp-requests-cache", flowTracing);
+            Map<String, String> tokenRequestHeaders = new ConcurrentHashMap<>();
+            Observation request = Observation.start("http.server.requests", tracing.observationRegistry());
+
+            CountDownLatch executorReleased = new CountDownLatch(1);
+            executor.execute(() -> awaitUninterruptibly(executorReleased));
+            CompletableFuture<String> tokenResponse;
+            try (Observation.Scope ignored = request.openScope()) {
+                tokenResponse = AsyncCacheOperations.getAndRemoveAsync(cache, "state", executor)
+                        .thenApply(value -> flowTracing.inSpan("oidc-token-request", () -> {
+                            assertEquals(EXECUTOR_THREAD_NAME, Thread.currentThread().getName());
+                            flowTracing.injectTraceContext(tokenRequestHeaders::put);
+                            return value;
+                        }));
+            }
+            executorReleased.countDown();
+            assertEquals("pending-request", tokenResponse.get(5, TimeUnit.SECONDS));
+            request.stop();
+
+            MutableSpan requestSpan = finishedSpan(tracing, "http.server.requests");
+            MutableSpan tokenRequestSpan = finishedSpan(tracing, "oidc-token-request");
+            assertEquals(requestSpan.traceId(), tokenRequestSpan.traceId());
+            assertEquals(requestSpan.id(), tokenRequestSpan.parentId());
+            assertEquals(requestSpan.traceId(), finishedSpan(tracing, "communication-cache-getAndRemove").traceId());
+            assertEquals(requestSpan.traceId(), tokenRequestHeaders.get("X-B3-TraceId"));
+            assertEquals(tokenRequestSpan.id(), tokenRequestHeaders.get("X-B3-SpanId"));
+        }
+    }
+
+    @Test
+    void nonIgniteCacheOperationsRunOnExecutor() throws Exception {
+        CommunicationCache<String, String> cache = thinClientCache();
+        when(cache.getAndRemove("key")).thenAnswer(invocation -> Thread.currentThread().getName());
+
+        assertEquals(EXECUTOR_THREAD_NAME, AsyncCacheOperations.getAndRemoveAsync(cache, "key", executor).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void futureCompletedExceptionally_WhenCacheOperationFails() {
+        CommunicationCache<String, String> cache = thinClientCache();
+        when(cache.putIfAbsent(any(), any())).thenThrow(new CacheException("Cluster is inactive"));
+
+        CompletableFuture<Boolean> result = AsyncCacheOperations.putIfAbsentAsync(cache, "key", "value", executor);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(CacheException.class, exception.getCause().getClass());
+        assertEquals("Cluster is inactive", exception.getCause().getMessage());
+    }
+
+    @Test
+    void futureCompletedExceptionally_WhenExecutorRejectsCompletion() {
+        CommunicationCache<String, String> cache = new ClientNodeCacheAdapter<>(serverNode.getOrCreateCache("asyncCacheOperationsTestCache"));
+        Executor rejectingExecutor = task -> {
+            throw new RejectedExecutionException("Executor is saturated");
+        };
+
+        CompletableFuture<String> result = AsyncCacheOperations.getAndRemoveAsync(cache, "key", rejectingExecutor);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(RejectedExecutionException.class, exception.getCause().getClass());
+    }
+
+    private static MutableSpan finishedSpan(TestTracing tracing, String name) {
+        return tracing.finishedSpans().stream()
+                .filter(span -> name.equals(span.name()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Span not finished: " + name));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CommunicationCache<String, String> thinClientCache() {
+        CommunicationCache<String, String> cache = mock(CommunicationCache.class);
+        when(cache.unwrap(IgniteCache.class)).thenThrow(new IllegalArgumentException("Unwrapping is not supported"));
+        return cache;
+    }
+}
@@ -0,0 +1,115 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.FailFastProperties;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.spi.communication.tcp.TcpCommunicationSpi;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Simulates the loss of the Ignite cluster by stopping the only server node while a client node is connected to it.
+ */
+public class CommunicationCacheGuardTests {
+    private static final String CACHE_NAME = "nodeSpecificProxyserviceRequestCache";
+    private final TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder().setAddresses(List.of("127.0.0.1:48504"));
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private CommunicationCacheGuard guard;
+    private Ignite serverNode;
+    private Ignite clientNode;
+
+    @AfterEach
+    void stopNodes() {
+        executor.shutdownNow();
+        if (guard != null) {
+            guard.close();
+        }
+        if (clientNode != null) {
+            clientNode.close();
+        }
+        if (serverNode != null) {
+            serverNode.close();
+        }
+    }
+
+    @Test
+    void operationsFailFast_WhenClusterLostAndSucceed_WhenClientReconnected() throws Exception {
+        serverNode = startServerNode();
+        clientNode = startClientNode();
+        guard = new CommunicationCacheGuard(new FailFastProperties());
+        CommunicationCache<String, String> cache = guard.guard(() -> new IgniteNodeCacheProvider(clientNode).getCache(CACHE_NAME));
+        assertTrue(AsyncCacheOperations.putIfAbsentAsync(cache, "key", "value", executor).get(5, SECONDS));
+
+        serverNode.close();
+        serverNode = null;
+        ExecutionException disconnected = assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.getAndRemoveAsync(cache, "key", executor).get(10, SECONDS));
+        assertInstanceOf(CacheUnavailableException.class, disconnected.getCause());
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertThrows(CacheUnavailableException.class, () -> cache.getAndRemove("key"));
+        }
+        assertTrue(System.nanoTime() - startTime < SECONDS.toNanos(1));
+        assertFalse(guard.isClusterAvailable());
+        assertEquals(200, guard.getAvailablePermits());
+
+        serverNode = startServerNode();
+        long deadline = System.nanoTime() + SECONDS.toNanos(30);
+        while (!guard.isClusterAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(guard.isClusterAvailable());
+        assertTrue(AsyncCacheOperations.putIfAbsentAsync(cache, "key", "value", executor).get(5, SECONDS));
+        assertEquals("value", cache.getAndRemove("key"));
+    }
+
+    @Test
+    void operationsRejected_WhenClientDisconnected_BeforeAnyOperationFails() throws Exception {
+        serverNode = startServerNode();
+        clientNode = startClientNode();
+        guard = new CommunicationCacheGuard(new FailFastProperties());
+        guard.listen(clientNode);
+        CommunicationCache<String, String> cache = guard.guard(() -> new IgniteNodeCacheProvider(clientNode).getCache(CACHE_NAME));
+        assertTrue(guard.isClusterAvailable());
+
+        serverNode.close();
+        serverNode = null;
+        long deadline = System.nanoTime() + SECONDS.toNanos(30);
+        while (guard.isClusterAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertFalse(guard.isClusterAvailable());
+        CacheUnavailableException rejected = assertThrows(CacheUnavailableException.class, () -> cache.getAndRemove("key"));
+        assertEquals("Ignite client is disconnected from the cluster, operation on cache '" + CACHE_NAME + "' rejected", rejected.getMessage());
+    }
+
+    private Ignite startClientNode() {
+        return Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("communicationCacheGuardTestClient")
+                .setClientMode(true)
+                .setDiscoverySpi(new TcpDiscoverySpi().setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(48106)));
+    }
+
+    private Ignite startServerNode() {
+        return Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("communicationCacheGuardTestServer")
+                .setDiscoverySpi(new TcpDiscoverySpi().setLocalPort(48504).setLocalPortRange(0).setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(48105))
+                .setCacheConfiguration(new CacheConfiguration<String, String>(CACHE_NAME)));
+    }
+}
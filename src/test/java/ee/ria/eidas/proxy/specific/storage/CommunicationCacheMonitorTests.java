@@ -0,0 +1,148 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.CacheExpiryProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.CacheExpiryProperties.ExpiryPolicyType;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.cache.CacheException;
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.expiry.TouchedExpiryPolicy;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static ee.ria.eidas.proxy.specific.storage.CommunicationCacheMonitor.EVICTIONS_COUNTER_NAME;
+import static ee.ria.eidas.proxy.specific.storage.CommunicationCacheMonitor.EXPIRATIONS_COUNTER_NAME;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommunicationCacheMonitorTests {
+    private static final String CACHE_ID = "pending-idp-requests-cache";
+    private static final String CACHE_NAME = "specificMSIdpRequestCorrelationMap";
+    private final IgniteCacheProvider igniteCacheProvider = mock(IgniteCacheProvider.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CommunicationCacheMonitor monitor = new CommunicationCacheMonitor(igniteCacheProvider, meterRegistry, FlowTracing.NOOP);
+    private final Logger monitorLogger = (Logger) LoggerFactory.getLogger(CommunicationCacheMonitor.class);
+    private final ListAppender<ILoggingEvent> logAppender = new ListAppender<>();
+
+    @BeforeEach
+    void addLogAppender() {
+        logAppender.start();
+        monitorLogger.addAppender(logAppender);
+    }
+
+    @AfterEach
+    void removeLogAppender() {
+        monitorLogger.detachAppender(logAppender);
+    }
+
+    @Test
+    void expiryPolicyCreatedFromProperties() {
+        assertInstanceOf(CreatedExpiryPolicy.class, createExpiryPolicy(ExpiryPolicyType.CREATED));
+        assertInstanceOf(ModifiedExpiryPolicy.class, createExpiryPolicy(ExpiryPolicyType.MODIFIED));
+        assertInstanceOf(AccessedExpiryPolicy.class, createExpiryPolicy(ExpiryPolicyType.ACCESSED));
+        assertInstanceOf(TouchedExpiryPolicy.class, createExpiryPolicy(ExpiryPolicyType.TOUCHED));
+        javax.cache.expiry.Duration timeToLive = createExpiryPolicy(ExpiryPolicyType.CREATED).getExpiryForCreation();
+        assertEquals(SECONDS, timeToLive.getTimeUnit());
+        assertEquals(120, timeToLive.getDurationAmount());
+    }
+
+    @Test
+    void countersRegistered_WhenStatisticsAvailable() {
+        when(igniteCacheProvider.monitorCache(CACHE_NAME)).thenReturn(new CacheStatistics() {
+            @Override
+            public long getEvictions() {
+                return 3;
+            }
+
+            @Override
+            public long getExpirations() {
+                return 5;
+            }
+        });
+
+        monitor.bindStatistics(CACHE_ID, CACHE_NAME);
+
+        assertEquals(3, meterRegistry.get(EVICTIONS_COUNTER_NAME).tag("cache", CACHE_ID).functionCounter().count());
+        assertEquals(5, meterRegistry.get(EXPIRATIONS_COUNTER_NAME).tag("cache", CACHE_ID).functionCounter().count());
+    }
+
+    @Test
+    void countersNotRegistered_WhenStatisticsNotAvailable() {
+        monitor.bindStatistics(CACHE_ID, CACHE_NAME);
+
+        assertNull(meterRegistry.find(EVICTIONS_COUNTER_NAME).meter());
+        assertNull(meterRegistry.find(EXPIRATIONS_COUNTER_NAME).meter());
+    }
+
+    @Test
+    void noExceptionThrown_WhenMonitoringFails() {
+        when(igniteCacheProvider.monitorCache(CACHE_NAME)).thenThrow(new CacheException("Cluster is inactive"));
+        when(igniteCacheProvider.getServerExpiryPolicy(CACHE_NAME)).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertDoesNotThrow(() -> monitor.bindStatistics(CACHE_ID, CACHE_NAME));
+        assertDoesNotThrow(() -> monitor.verifyServerExpiry(CACHE_NAME, createExpiryProperties(ExpiryPolicyType.CREATED)));
+    }
+
+    @Test
+    void warningLogged_WhenServerEntriesDoNotExpire() {
+        when(igniteCacheProvider.getServerExpiryPolicy(CACHE_NAME)).thenReturn(new CreatedExpiryPolicy(javax.cache.expiry.Duration.ETERNAL));
+
+        monitor.verifyServerExpiry(CACHE_NAME, createExpiryProperties(ExpiryPolicyType.CREATED));
+
+        assertEquals(List.of("Cache 'specificMSIdpRequestCorrelationMap' entries do not expire on the server nodes, client-side expiry of 120 seconds applies only to entries written by this application"),
+                loggedWarnings());
+    }
+
+    @Test
+    void warningLogged_WhenServerEntriesExpireAfterClientSideExpiry() {
+        when(igniteCacheProvider.getServerExpiryPolicy(CACHE_NAME)).thenReturn(new CreatedExpiryPolicy(new javax.cache.expiry.Duration(MINUTES, 5)));
+
+        monitor.verifyServerExpiry(CACHE_NAME, createExpiryProperties(ExpiryPolicyType.CREATED));
+
+        assertEquals(List.of("Cache 'specificMSIdpRequestCorrelationMap' entries expire on the server nodes after 5 MINUTES, client-side expiry of 120 seconds applies only to entries written by this application"),
+                loggedWarnings());
+    }
+
+    @Test
+    void noWarningLogged_WhenServerEntriesExpireBeforeClientSideExpiry() {
+        when(igniteCacheProvider.getServerExpiryPolicy(CACHE_NAME)).thenReturn(new CreatedExpiryPolicy(new javax.cache.expiry.Duration(SECONDS, 120)));
+
+        monitor.verifyServerExpiry(CACHE_NAME, createExpiryProperties(ExpiryPolicyType.CREATED));
+
+        assertEquals(List.of(), loggedWarnings());
+    }
+
+    private List<String> loggedWarnings() {
+        return logAppender.list.stream()
+                .filter(event -> event.getLevel() == Level.WARN)
+                .map(ILoggingEvent::getFormattedMessage)
+                .collect(Collectors.toList());
+    }
+
+    private static ExpiryPolicy createExpiryPolicy(ExpiryPolicyType policyType) {
+        return CommunicationCacheMonitor.createExpiryPolicy(createExpiryProperties(policyType));
+    }
+
+    private static CacheExpiryProperties createExpiryProperties(ExpiryPolicyType policyType) {
+        CacheExpiryProperties expiryProperties = new CacheExpiryProperties();
+        expiryProperties.setPolicy(policyType);
+        expiryProperties.setTtlInSeconds(120L);
+        return expiryProperties;
+    }
+}
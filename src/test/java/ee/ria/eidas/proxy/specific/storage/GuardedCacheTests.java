@@ -0,0 +1,155 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.FailFastProperties;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.IgniteClientDisconnectedException;
+import org.apache.ignite.client.ClientConnectionException;
+import org.apache.ignite.lang.IgniteFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.CacheException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GuardedCacheTests {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CommunicationCache<String, String> cache = thinClientCache();
+    private CommunicationCacheGuard guard;
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+        if (guard != null) {
+            guard.close();
+        }
+    }
+
+    @Test
+    void operationRejected_WhenMaxConcurrentOperationsInFlight() throws Exception {
+        CommunicationCache<String, String> guardedCache = guardedCache(2, 5000, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cache.getAndRemove("key")).then(invocation -> {
+            release.await();
+            return "value";
+        });
+
+        CompletableFuture<String> first = AsyncCacheOperations.getAndRemoveAsync(guardedCache, "key", executor);
+        CompletableFuture<String> second = AsyncCacheOperations.getAndRemoveAsync(guardedCache, "key", executor);
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.getAndRemoveAsync(guardedCache, "key", executor).get(5, SECONDS));
+        assertThrows(CacheUnavailableException.class, () -> guardedCache.get("key"));
+
+        assertInstanceOf(CacheUnavailableException.class, rejected.getCause());
+        assertEquals("Too many operations in flight, operation on cache 'nodeSpecificProxyserviceRequestCache' rejected", rejected.getCause().getMessage());
+        release.countDown();
+        assertEquals("value", first.get(5, SECONDS));
+        assertEquals("value", second.get(5, SECONDS));
+        assertEquals(2, guard.getAvailablePermits());
+    }
+
+    @Test
+    void operationFails_WhenDeadlinePassed_AndHoldsPermitUntilCompleted() throws Exception {
+        CommunicationCache<String, String> guardedCache = guardedCache(1, 200, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cache.putIfAbsent("key", "value")).then(invocation -> {
+            release.await();
+            return true;
+        });
+
+        long startTime = System.nanoTime();
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.putIfAbsentAsync(guardedCache, "key", "value", executor).get(5, SECONDS));
+
+        assertTrue(System.nanoTime() - startTime < SECONDS.toNanos(2));
+        assertInstanceOf(CacheUnavailableException.class, exception.getCause());
+        assertEquals("Operation on cache 'nodeSpecificProxyserviceRequestCache' did not complete in 200 ms", exception.getCause().getMessage());
+        assertEquals(0, guard.getAvailablePermits());
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.getAndRemoveAsync(guardedCache, "key", executor).get(5, SECONDS));
+        assertEquals("Too many operations in flight, operation on cache 'nodeSpecificProxyserviceRequestCache' rejected", rejected.getCause().getMessage());
+        release.countDown();
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (guard.getAvailablePermits() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, guard.getAvailablePermits());
+    }
+
+    @Test
+    void operationsRejected_UntilClientReconnects() {
+        CommunicationCache<String, String> guardedCache = guardedCache(10, 5000, 0);
+        IgniteFuture<?> reconnectFuture = mock(IgniteFuture.class);
+        when(reconnectFuture.isDone()).thenReturn(false);
+        when(cache.getAndRemove("key")).thenThrow(new CacheException(new IgniteClientDisconnectedException(reconnectFuture, "Client node disconnected")));
+
+        CacheUnavailableException disconnected = assertThrows(CacheUnavailableException.class, () -> guardedCache.getAndRemove("key"));
+        CacheUnavailableException rejected = assertThrows(CacheUnavailableException.class, () -> guardedCache.getAndRemove("key"));
+
+        assertEquals("Ignite client is disconnected from the cluster, operation on cache 'nodeSpecificProxyserviceRequestCache' failed", disconnected.getMessage());
+        assertEquals("Ignite client is disconnected from the cluster, operation on cache 'nodeSpecificProxyserviceRequestCache' rejected", rejected.getMessage());
+        assertFalse(guard.isClusterAvailable());
+        verify(cache, times(1)).getAndRemove("key");
+
+        when(reconnectFuture.isDone()).thenReturn(true);
+        when(cache.get("key")).thenReturn("value");
+        assertTrue(guard.isClusterAvailable());
+        assertEquals("value", guardedCache.get("key"));
+        assertEquals(10, guard.getAvailablePermits());
+    }
+
+    @Test
+    void operationsRejected_ForRetryDelay_WhenThinClientConnectionFails() throws InterruptedException {
+        CommunicationCache<String, String> guardedCache = guardedCache(10, 5000, 300);
+        when(cache.get("key")).thenThrow(new CacheException("Connection refused", new ClientConnectionException("Connection refused")));
+
+        assertThrows(CacheUnavailableException.class, () -> guardedCache.get("key"));
+        CacheUnavailableException rejected = assertThrows(CacheUnavailableException.class, () -> guardedCache.put("key", "value"));
+
+        assertEquals("Ignite cluster is unreachable, operation on cache 'nodeSpecificProxyserviceRequestCache' rejected", rejected.getMessage());
+        assertFalse(guard.isClusterAvailable());
+        verify(cache, times(0)).put("key", "value");
+        Thread.sleep(400);
+        assertTrue(guard.isClusterAvailable());
+        guardedCache.put("key", "value");
+        verify(cache).put("key", "value");
+    }
+
+    @Test
+    void otherFailuresPassedThrough() {
+        CommunicationCache<String, String> guardedCache = guardedCache(10, 5000, 300);
+        CacheException clusterInactive = new CacheException("Cluster is inactive");
+        when(cache.putIfAbsent("key", "value")).thenThrow(clusterInactive);
+
+        assertSame(clusterInactive, assertThrows(CacheException.class, () -> guardedCache.putIfAbsent("key", "value")));
+        assertTrue(guard.isClusterAvailable());
+        assertEquals(10, guard.getAvailablePermits());
+    }
+
+    private CommunicationCache<String, String> guardedCache(int maxConcurrentOperations, int operationTimeoutInMillis, int retryDelayInMillis) {
+        FailFastProperties properties = new FailFastProperties();
+        properties.setMaxConcurrentOperations(maxConcurrentOperations);
+        properties.setOperationTimeoutInMillis(operationTimeoutInMillis);
+        properties.setRetryDelayInMillis(retryDelayInMillis);
+        guard = new CommunicationCacheGuard(properties);
+        return guard.guard(() -> cache);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CommunicationCache<String, String> thinClientCache() {
+        CommunicationCache<String, String> cache = mock(CommunicationCache.class);
+        when(cache.getName()).thenReturn("nodeSpecificProxyserviceRequestCache");
+        when(cache.unwrap(IgniteCache.class)).thenThrow(new IllegalArgumentException("Unwrapping is not supported"));
+        return cache;
+    }
+}
@@ -0,0 +1,235 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication.CorrelatedRequestsHolder;
+import eu.eidas.auth.commons.attribute.AttributeRegistries;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.light.impl.LightRequest;
+import eu.eidas.auth.commons.light.impl.LightResponse;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.LEGAL_PERSON_OPTIONAL_ATTRIBUTES;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightResponse;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdpCacheEntryCodecTests {
+    private static final AttributeRegistryIndex REGISTRY = new AttributeRegistryIndex(EidasSpec.REGISTRY);
+    private final IdpCacheEntryCodec codec = new IdpCacheEntryCodec(REGISTRY);
+
+    @Test
+    void correlatedRequestsRestoredFromEntry() throws Exception {
+        String state = UUID.randomUUID().toString();
+        ILightRequest lightRequest = createDefaultLightRequest();
+        URL idpAuthenticationRequest = new URL("https://localhost:9877/oidc/authorize?scope=openid&state=" + state);
+
+        CorrelatedRequestsHolder restored = codec.unmarshallCorrelatedRequests(state,
+                codec.marshall(new CorrelatedRequestsHolder(lightRequest, Collections.singletonMap(state, idpAuthenticationRequest))));
+
+        assertEquals(state, restored.getIdpAuthenticationRequestState());
+        assertEquals(idpAuthenticationRequest, restored.getIdpAuthenticationRequest());
+        ILightRequest restoredLightRequest = restored.getLightRequest();
+        assertEquals(lightRequest.getId(), restoredLightRequest.getId());
+        assertEquals(lightRequest.getIssuer(), restoredLightRequest.getIssuer());
+        assertEquals(lightRequest.getCitizenCountryCode(), restoredLightRequest.getCitizenCountryCode());
+        assertEquals(lightRequest.getLevelOfAssurance(), restoredLightRequest.getLevelOfAssurance());
+        assertEquals(levelOfAssuranceValues(lightRequest), levelOfAssuranceValues(restoredLightRequest));
+        assertEquals(lightRequest.getNameIdFormat(), restoredLightRequest.getNameIdFormat());
+        assertEquals(lightRequest.getProviderName(), restoredLightRequest.getProviderName());
+        assertEquals(lightRequest.getSpType(), restoredLightRequest.getSpType());
+        assertEquals(lightRequest.getSpCountryCode(), restoredLightRequest.getSpCountryCode());
+        assertEquals(lightRequest.getRequesterId(), restoredLightRequest.getRequesterId());
+        assertEquals(lightRequest.getRelayState(), restoredLightRequest.getRelayState());
+        assertEquals(lightRequest.getRequestedAttributes(), restoredLightRequest.getRequestedAttributes());
+    }
+
+    @Test
+    void lightRequestHeaderRestoredWithoutDecodingRequestedAttributes() {
+        ILightRequest lightRequest = createDefaultLightRequest();
+        IdpCacheEntryCodec codecWithoutNaturalPersonAttributes = new IdpCacheEntryCodec(
+                new AttributeRegistryIndex(AttributeRegistries.of(EidasSpec.Definitions.LEGAL_NAME)));
+        byte[] entry = codec.marshall(new CorrelatedRequestsHolder(lightRequest,
+                Collections.singletonMap(UUID.randomUUID().toString(), createIdpAuthenticationRequest())));
+
+        ILightRequest restoredLightRequest = codecWithoutNaturalPersonAttributes.unmarshallLightRequest(entry);
+
+        assertEquals(lightRequest.getId(), restoredLightRequest.getId());
+        assertEquals(lightRequest.getLevelOfAssurance(), restoredLightRequest.getLevelOfAssurance());
+        assertEquals(lightRequest.getRelayState(), restoredLightRequest.getRelayState());
+        assertEquals(lightRequest.getNameIdFormat(), restoredLightRequest.getNameIdFormat());
+        assertEquals(lightRequest.getProviderName(), restoredLightRequest.getProviderName());
+        IllegalStateException exception = assertThrows(IllegalStateException.class, restoredLightRequest::getRequestedAttributes);
+        assertTrue(exception.getMessage().startsWith("Failed to deserialize cache entry! Attribute not found from registry: "));
+    }
+
+    @Test
+    void idpStateRestoredWithCallbackFields() {
+        ILightRequest lightRequest = createDefaultLightRequest();
+
+        ILightRequest restoredLightRequest = codec.unmarshallIdpState(codec.marshallIdpState(lightRequest));
+
+        assertEquals(lightRequest.getId(), restoredLightRequest.getId());
+        assertEquals(lightRequest.getLevelOfAssurance(), restoredLightRequest.getLevelOfAssurance());
+        assertEquals(lightRequest.getRelayState(), restoredLightRequest.getRelayState());
+        assertEquals(lightRequest.getNameIdFormat(), restoredLightRequest.getNameIdFormat());
+        assertEquals(lightRequest.getProviderName(), restoredLightRequest.getProviderName());
+        assertEquals(lightRequest.getRequestedAttributes(), restoredLightRequest.getRequestedAttributes());
+        assertNull(restoredLightRequest.getIssuer());
+    }
+
+    @Test
+    void restoredLightRequestSerializedAsLightRequest() throws Exception {
+        ILightRequest lightRequest = createDefaultLightRequest();
+        byte[] entry = codec.marshall(new CorrelatedRequestsHolder(lightRequest,
+                Collections.singletonMap(UUID.randomUUID().toString(), createIdpAuthenticationRequest())));
+
+        Object deserialized = javaDeserialize(javaSerialize(codec.unmarshallLightRequest(entry)));
+
+        assertEquals(LightRequest.class, deserialized.getClass());
+        assertEquals(lightRequest.getId(), ((ILightRequest) deserialized).getId());
+        assertEquals(lightRequest.getRequestedAttributes(), ((ILightRequest) deserialized).getRequestedAttributes());
+    }
+
+    @Test
+    void lightResponseRestoredFromEntry() {
+        ILightResponse lightResponse = createDefaultLightResponse();
+
+        assertLightResponseRestored(lightResponse, codec.unmarshallResponse(codec.marshall(lightResponse)));
+    }
+
+    @Test
+    void lightResponseWithComplexAttributeValuesRestoredFromEntry() {
+        ILightResponse lightResponse = LightResponse.builder(createDefaultLightResponse())
+                .attributes(LEGAL_PERSON_OPTIONAL_ATTRIBUTES)
+                .build();
+
+        assertLightResponseRestored(lightResponse, codec.unmarshallResponse(codec.marshall(lightResponse)));
+    }
+
+    @Test
+    void entryIsSmallerThanJavaSerializedValue() throws IOException {
+        String state = UUID.randomUUID().toString();
+        CorrelatedRequestsHolder requestsHolder = new CorrelatedRequestsHolder(createDefaultLightRequest(),
+                Collections.singletonMap(state, new URL("https://localhost:9877/oidc/authorize?state=" + state)));
+        ILightResponse lightResponse = createDefaultLightResponse();
+
+        assertTrue(codec.marshall(requestsHolder).length < javaSerializedLength(requestsHolder));
+        assertTrue(codec.marshall(lightResponse).length < javaSerializedLength(lightResponse));
+    }
+
+    @Test
+    void nullReturnedWhenNullInput() {
+        assertNull(codec.marshall((CorrelatedRequestsHolder) null));
+        assertNull(codec.marshall((ILightResponse) null));
+        assertNull(codec.unmarshallCorrelatedRequests("state", null));
+        assertNull(codec.unmarshallLightRequest(null));
+        assertNull(codec.unmarshallResponse(null));
+    }
+
+    @Test
+    void exceptionWhenUnsupportedFormatVersion() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> codec.unmarshallResponse(new byte[]{2}));
+        assertEquals("Failed to deserialize cache entry! Unsupported format version: 2", exception.getMessage());
+    }
+
+    @Test
+    void exceptionWhenPendingRequestEntryInPreviousFormat() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> codec.unmarshallLightRequest(new byte[]{1}));
+        assertEquals("Failed to deserialize cache entry! Unsupported format version: 1", exception.getMessage());
+    }
+
+    @Test
+    void exceptionWhenEntryTruncated() {
+        byte[] entry = codec.marshall(createDefaultLightResponse());
+        byte[] truncatedEntry = new byte[entry.length / 2];
+        System.arraycopy(entry, 0, truncatedEntry, 0, truncatedEntry.length);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> codec.unmarshallResponse(truncatedEntry));
+        assertEquals("Failed to deserialize cache entry! Unexpected end of entry", exception.getMessage());
+    }
+
+    @Test
+    void exceptionWhenAttributeNotInRegistry() {
+        IdpCacheEntryCodec codecWithoutNaturalPersonAttributes = new IdpCacheEntryCodec(
+                new AttributeRegistryIndex(AttributeRegistries.of(EidasSpec.Definitions.LEGAL_NAME)));
+        byte[] entry = codec.marshall(createDefaultLightResponse());
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> codecWithoutNaturalPersonAttributes.unmarshallResponse(entry));
+        assertTrue(exception.getMessage().startsWith("Failed to deserialize cache entry! Attribute not found from registry: "));
+    }
+
+    @Test
+    void cacheKeyCreatedFromUuid() {
+        UUID id = UUID.randomUUID();
+
+        assertEquals(id, IdpCacheEntryCodec.toCacheKey(id.toString()));
+        assertEquals(id, IdpCacheEntryCodec.toCacheKeyOrNull(id.toString()));
+        assertNull(IdpCacheEntryCodec.toCacheKeyOrNull("not-a-uuid"));
+        assertNull(IdpCacheEntryCodec.toCacheKeyOrNull(null));
+        assertThrows(IllegalArgumentException.class, () -> IdpCacheEntryCodec.toCacheKey("not-a-uuid"));
+    }
+
+    private void assertLightResponseRestored(ILightResponse expected, ILightResponse actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getInResponseToId(), actual.getInResponseToId());
+        assertEquals(expected.getConsent(), actual.getConsent());
+        assertEquals(expected.getIssuer(), actual.getIssuer());
+        assertEquals(expected.getIPAddress(), actual.getIPAddress());
+        assertEquals(expected.getRelayState(), actual.getRelayState());
+        assertEquals(expected.getSubject(), actual.getSubject());
+        assertEquals(expected.getSubjectNameIdFormat(), actual.getSubjectNameIdFormat());
+        assertEquals(expected.getLevelOfAssurance(), actual.getLevelOfAssurance());
+        assertEquals(expected.getStatus().isFailure(), actual.getStatus().isFailure());
+        assertEquals(expected.getStatus().getStatusCode(), actual.getStatus().getStatusCode());
+        assertEquals(expected.getStatus().getSubStatusCode(), actual.getStatus().getSubStatusCode());
+        assertEquals(expected.getStatus().getStatusMessage(), actual.getStatus().getStatusMessage());
+        assertEquals(expected.getAttributes(), actual.getAttributes());
+    }
+
+    private static List<String> levelOfAssuranceValues(ILightRequest lightRequest) {
+        return lightRequest.getLevelsOfAssurance().stream().map(loa -> loa.getType() + ":" + loa.getValue()).collect(toList());
+    }
+
+    private static URL createIdpAuthenticationRequest() {
+        try {
+            return new URL("https://localhost:9877/oidc/authorize?scope=openid");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int javaSerializedLength(Object value) throws IOException {
+        return javaSerialize(value).length;
+    }
+
+    private static byte[] javaSerialize(Object value) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutput = new ObjectOutputStream(output)) {
+            objectOutput.writeObject(value);
+        }
+        return output.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] value) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(value))) {
+            return objectInput.readObject();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication.CorrelatedRequestsHolder;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCheckedException;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.marshaller.Marshaller;
+import org.apache.ignite.spi.communication.tcp.TcpCommunicationSpi;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.TestSocketUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightResponse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the size of the IdP side communication cache entries as marshalled by Ignite: the previous object values
+ * under string UUID keys and the {@link IdpCacheEntryCodec} entries under UUID keys.
+ */
+@Slf4j
+public class IdpCacheEntryFootprintTests {
+    private static final IdpCacheEntryCodec CODEC = new IdpCacheEntryCodec(new AttributeRegistryIndex(EidasSpec.REGISTRY));
+    private static Ignite ignite;
+
+    @BeforeAll
+    static void startNode() {
+        int discoveryPort = TestSocketUtils.findAvailableTcpPort();
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder().setAddresses(List.of("127.0.0.1:" + discoveryPort));
+        ignite = Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("idpCacheEntryFootprintTests")
+                .setDiscoverySpi(new TcpDiscoverySpi().setLocalPort(discoveryPort).setLocalPortRange(0).setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(TestSocketUtils.findAvailableTcpPort())));
+    }
+
+    @AfterAll
+    static void stopNode() {
+        ignite.close();
+    }
+
+    @Test
+    void requestCorrelationEntrySmaller_WhenMarshalledWithCodec() throws Exception {
+        String state = UUID.randomUUID().toString();
+        CorrelatedRequestsHolder requestsHolder = new CorrelatedRequestsHolder(createDefaultLightRequest(),
+                Collections.singletonMap(state, authenticationRequest(state)));
+
+        int objectEntryBytes = entryBytes(state, requestsHolder);
+        int codecEntryBytes = entryBytes(UUID.fromString(state), CODEC.marshall(requestsHolder));
+
+        log.info("specificMSIdpRequestCorrelationMap entry: {} bytes as object, {} bytes with codec", objectEntryBytes, codecEntryBytes);
+        assertTrue(codecEntryBytes < objectEntryBytes);
+    }
+
+    @Test
+    void consentCorrelationEntrySmaller_WhenMarshalledWithCodec() throws Exception {
+        String lightTokenId = UUID.randomUUID().toString();
+        ILightResponse lightResponse = createDefaultLightResponse();
+
+        int objectEntryBytes = entryBytes(lightTokenId, lightResponse);
+        int codecEntryBytes = entryBytes(UUID.fromString(lightTokenId), CODEC.marshall(lightResponse));
+
+        log.info("specificMSIdpConsentCorrelationMap entry: {} bytes as object, {} bytes with codec", objectEntryBytes, codecEntryBytes);
+        assertTrue(codecEntryBytes < objectEntryBytes);
+    }
+
+    private static int entryBytes(Object key, Object value) throws IgniteCheckedException {
+        Marshaller marshaller = ignite.configuration().getMarshaller();
+        return marshaller.marshal(key).length + marshaller.marshal(value).length;
+    }
+
+    private static URL authenticationRequest(String state) throws MalformedURLException {
+        return new URL("https://localhost:9877/oidc/authorize?scope=openid&response_type=code&client_id=openIdDemo"
+                + "&redirect_uri=https%3A%2F%2Flocalhost%3A9877%2Fredirect&acr_values=high&ui_locales=et&state=" + state);
+    }
+}
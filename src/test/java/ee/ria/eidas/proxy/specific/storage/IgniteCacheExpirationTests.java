@@ -11,7 +11,6 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ContextConfiguration;
 
-import javax.cache.Cache;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -52,7 +51,7 @@ public class IgniteCacheExpirationTests extends SpecificProxyTest {
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    void cacheEventExpires(Cache cache) {
+    void cacheEventExpires(CommunicationCache cache) {
         CountDownLatch objectExpiredLatch = new CountDownLatch(1);
         AtomicReference<CacheEvent> expiredEvent = new AtomicReference<>();
         IgnitePredicate<CacheEvent> localListener = evt -> {
@@ -0,0 +1,120 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.spi.communication.tcp.TcpCommunicationSpi;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.test.util.TestSocketUtils;
+
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class IgniteNodeCacheProviderTests {
+    private static final String EXPIRING_CACHE_NAME = "clientNodeTestExpiringCache";
+    private static final String CACHE_NAME = "clientNodeTestCache";
+    private static Ignite serverNode;
+    private static Ignite clientNode;
+    private static Ignite secondClientNode;
+    private static IgniteNodeCacheProvider cacheProvider;
+
+    @BeforeAll
+    static void startServerAndClientNodes() {
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder().setAddresses(List.of("127.0.0.1:48503"));
+        serverNode = Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("igniteNodeCacheProviderTestServer")
+                .setDiscoverySpi(new TcpDiscoverySpi().setLocalPort(48503).setLocalPortRange(0).setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(48103))
+                .setCacheConfiguration(
+                        new CacheConfiguration<String, String>(EXPIRING_CACHE_NAME)
+                                .setStatisticsEnabled(true)
+                                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(SECONDS, 5))),
+                        new CacheConfiguration<String, String>(CACHE_NAME)));
+        clientNode = Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("igniteNodeCacheProviderTestClient")
+                .setClientMode(true)
+                .setUserAttributes(Map.of(IgniteNodeCacheProvider.PROXY_NODE_ATTRIBUTE, "true"))
+                .setIncludeEventTypes(IgniteNodeCacheProvider.ELECTION_EVENTS)
+                .setDiscoverySpi(new TcpDiscoverySpi().setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(48104)));
+        secondClientNode = Ignition.start(new IgniteConfiguration()
+                .setIgniteInstanceName("igniteNodeCacheProviderTestSecondClient")
+                .setClientMode(true)
+                .setUserAttributes(Map.of(IgniteNodeCacheProvider.PROXY_NODE_ATTRIBUTE, "true"))
+                .setIncludeEventTypes(IgniteNodeCacheProvider.ELECTION_EVENTS)
+                .setDiscoverySpi(new TcpDiscoverySpi().setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(TestSocketUtils.findAvailableTcpPort())));
+        cacheProvider = new IgniteNodeCacheProvider(clientNode);
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (secondClientNode != null) {
+            secondClientNode.close();
+        }
+        if (clientNode != null) {
+            clientNode.close();
+        }
+        if (serverNode != null) {
+            serverNode.close();
+        }
+    }
+
+    @Test
+    @Order(1)
+    void serverExpiryPolicyReturned() {
+        ExpiryPolicy expiryPolicy = cacheProvider.getServerExpiryPolicy(EXPIRING_CACHE_NAME);
+        assertEquals(5, expiryPolicy.getExpiryForCreation().getDurationAmount());
+        assertTrue(cacheProvider.getServerExpiryPolicy(CACHE_NAME).getExpiryForCreation().isEternal());
+    }
+
+    @Test
+    @Order(2)
+    void expirationsCountedOnceInCluster_WhenEntriesExpireBeforeServerExpiry() throws InterruptedException {
+        CacheStatistics statistics = cacheProvider.monitorCache(EXPIRING_CACHE_NAME);
+        CacheStatistics secondInstanceStatistics = new IgniteNodeCacheProvider(secondClientNode).monitorCache(EXPIRING_CACHE_NAME);
+        CommunicationCache<String, String> cache = cacheProvider.getCache(EXPIRING_CACHE_NAME, new CreatedExpiryPolicy(new Duration(MILLISECONDS, 500)));
+        cache.put("key-1", "value");
+        cache.put("key-2", "value");
+
+        Thread.sleep(1500);
+        assertNull(serverNode.cache(EXPIRING_CACHE_NAME).get("key-1"));
+        assertNull(serverNode.cache(EXPIRING_CACHE_NAME).get("key-2"));
+        Thread.sleep(500);
+        assertEquals(2, statistics.getExpirations());
+        assertEquals(0, secondInstanceStatistics.getExpirations(), "Expirations must be counted only by the oldest proxy node");
+    }
+
+    @Test
+    @Order(3)
+    void expirationsCountedByNextOldestInstance_WhenOldestInstanceLeaves() throws InterruptedException {
+        CacheStatistics secondInstanceStatistics = new IgniteNodeCacheProvider(secondClientNode).monitorCache(EXPIRING_CACHE_NAME);
+        clientNode.close();
+        clientNode = null;
+        Thread.sleep(1000);
+        CommunicationCache<String, String> cache = new IgniteNodeCacheProvider(secondClientNode)
+                .getCache(EXPIRING_CACHE_NAME, new CreatedExpiryPolicy(new Duration(MILLISECONDS, 500)));
+        cache.put("key-3", "value");
+
+        Thread.sleep(1500);
+        assertNull(serverNode.cache(EXPIRING_CACHE_NAME).get("key-3"));
+        Thread.sleep(500);
+        assertEquals(1, secondInstanceStatistics.getExpirations());
+    }
+}
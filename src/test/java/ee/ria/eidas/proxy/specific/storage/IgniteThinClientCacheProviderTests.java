@@ -0,0 +1,174 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.ThinClientProperties;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.client.ClientCache;
+import org.apache.ignite.client.IgniteClient;
+import org.apache.ignite.client.SslMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.ClientConfiguration;
+import org.apache.ignite.configuration.ClientConnectorConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.spi.communication.tcp.TcpCommunicationSpi;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.CacheException;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import java.time.Duration;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IgniteThinClientCacheProviderTests {
+    private static final String CACHE_NAME = "thinClientTestCache";
+    private static final String REPLICATED_CACHE_NAME = "thinClientTestReplicatedCache";
+    private static final String EXPIRING_CACHE_NAME = "thinClientTestExpiringCache";
+    private static final String SERVER_EXPIRY_CACHE_NAME = "thinClientTestServerExpiryCache";
+    private static final int THIN_CLIENT_PORT = 10850;
+    private static Ignite serverNode;
+    private static IgniteClient igniteThinClient;
+    private static IgniteThinClientCacheProvider cacheProvider;
+
+    @BeforeAll
+    static void startServerNodeAndThinClient() {
+        serverNode = Ignition.start(createServerNodeConfiguration());
+        ThinClientProperties thinClientProperties = new ThinClientProperties();
+        thinClientProperties.setAddresses(List.of("127.0.0.1:" + THIN_CLIENT_PORT));
+        igniteThinClient = IgniteThinClientInitializer.startClient(thinClientProperties);
+        cacheProvider = new IgniteThinClientCacheProvider(igniteThinClient);
+    }
+
+    @AfterAll
+    static void stopServerNodeAndThinClient() throws Exception {
+        if (igniteThinClient != null) {
+            igniteThinClient.close();
+        }
+        if (serverNode != null) {
+            serverNode.close();
+        }
+    }
+
+    @Test
+    void cacheOperationsSentToServerNode() {
+        CommunicationCache<String, String> cache = cacheProvider.getCache(CACHE_NAME);
+
+        assertTrue(cache.putIfAbsent("key", "value"));
+        assertFalse(cache.putIfAbsent("key", "another-value"));
+        assertEquals("value", serverNode.<String, String>cache(CACHE_NAME).get("key"));
+        assertTrue(cache.replace("key", "value", "replaced-value"));
+        assertEquals("replaced-value", cache.getAndRemove("key"));
+        assertNull(cache.get("key"));
+        assertEquals(CACHE_NAME, cache.getName());
+    }
+
+    @Test
+    void replicatedCacheCreated() {
+        CommunicationCache<String, String> cache = cacheProvider.getOrCreateReplicatedCache(REPLICATED_CACHE_NAME);
+        cache.put("key", "value");
+
+        CacheConfiguration<?, ?> cacheConfiguration = serverNode.cache(REPLICATED_CACHE_NAME).getConfiguration(CacheConfiguration.class);
+        assertEquals(CacheMode.REPLICATED, cacheConfiguration.getCacheMode());
+        assertEquals("value", serverNode.<String, String>cache(REPLICATED_CACHE_NAME).get("key"));
+    }
+
+    @Test
+    void expiringCacheCreated() throws InterruptedException {
+        CommunicationCache<String, Boolean> cache = cacheProvider.getOrCreateExpiringCache(EXPIRING_CACHE_NAME, Duration.ofMillis(500));
+        assertTrue(cache.putIfAbsent("key", Boolean.TRUE));
+        assertFalse(cache.putIfAbsent("key", Boolean.TRUE));
+
+        CacheConfiguration<?, ?> cacheConfiguration = serverNode.cache(EXPIRING_CACHE_NAME).getConfiguration(CacheConfiguration.class);
+        assertEquals(CacheMode.PARTITIONED, cacheConfiguration.getCacheMode());
+        assertEquals(1, cacheConfiguration.getBackups());
+        Thread.sleep(1000);
+        assertNull(serverNode.cache(EXPIRING_CACHE_NAME).get("key"));
+    }
+
+    @Test
+    void cacheEntriesExpire_WhenExpiryPolicyGiven() throws InterruptedException {
+        CommunicationCache<String, String> cache = cacheProvider.getCache(CACHE_NAME, new CreatedExpiryPolicy(new javax.cache.expiry.Duration(MILLISECONDS, 500)));
+        cache.put("expiringKey", "value");
+        cacheProvider.getCache(CACHE_NAME).put("key", "value");
+
+        Thread.sleep(1000);
+        assertNull(serverNode.cache(CACHE_NAME).get("expiringKey"));
+        assertEquals("value", serverNode.cache(CACHE_NAME).getAndRemove("key"));
+    }
+
+    @Test
+    void serverExpiryPolicyReturned() {
+        cacheProvider.getOrCreateExpiringCache(SERVER_EXPIRY_CACHE_NAME, Duration.ofSeconds(5));
+
+        ExpiryPolicy expiryPolicy = cacheProvider.getServerExpiryPolicy(SERVER_EXPIRY_CACHE_NAME);
+        assertEquals(5000, expiryPolicy.getExpiryForCreation().getDurationAmount());
+        assertEquals(MILLISECONDS, expiryPolicy.getExpiryForCreation().getTimeUnit());
+        assertNull(cacheProvider.getServerExpiryPolicy(CACHE_NAME));
+    }
+
+    @Test
+    void cacheStatisticsNotAvailable() {
+        assertNull(cacheProvider.monitorCache(CACHE_NAME));
+    }
+
+    @Test
+    void cacheExceptionThrown_WhenClusterInactive() {
+        CommunicationCache<String, String> cache = cacheProvider.getCache(CACHE_NAME);
+        assertTrue(cacheProvider.isClusterActive());
+
+        serverNode.cluster().active(false);
+        try {
+            assertThrows(CacheException.class, () -> cache.put("key", "value"));
+        } finally {
+            serverNode.cluster().active(true);
+        }
+    }
+
+    @Test
+    void cacheUnwrappedOnlyToThinClientCache() {
+        CommunicationCache<String, String> cache = cacheProvider.getCache(CACHE_NAME);
+
+        assertEquals(CACHE_NAME, cache.unwrap(ClientCache.class).getName());
+        assertThrows(IllegalArgumentException.class, () -> cache.unwrap(javax.cache.Cache.class));
+    }
+
+    @Test
+    void clientConfigurationCreatedFromProperties() {
+        ThinClientProperties thinClientProperties = new ThinClientProperties();
+        thinClientProperties.setAddresses(List.of("ignite-1:10800", "ignite-2:10800"));
+        thinClientProperties.setTimeoutInMillis(1000);
+        thinClientProperties.setSslEnabled(true);
+        thinClientProperties.setKeyStore("ignite-keys.jks");
+        thinClientProperties.setTrustStore("ignite-trust.jks");
+
+        ClientConfiguration cfg = IgniteThinClientInitializer.createClientConfiguration(thinClientProperties);
+
+        assertArrayEquals(new String[]{"ignite-1:10800", "ignite-2:10800"}, cfg.getAddresses());
+        assertTrue(cfg.isPartitionAwarenessEnabled());
+        assertEquals(1000, cfg.getTimeout());
+        assertEquals(SslMode.REQUIRED, cfg.getSslMode());
+        assertEquals("ignite-keys.jks", cfg.getSslClientCertificateKeyStorePath());
+        assertEquals("ignite-trust.jks", cfg.getSslTrustCertificateKeyStorePath());
+        assertEquals("JKS", cfg.getSslTrustCertificateKeyStoreType());
+    }
+
+    private static IgniteConfiguration createServerNodeConfiguration() {
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder().setAddresses(List.of("127.0.0.1:48500"));
+        return new IgniteConfiguration()
+                .setIgniteInstanceName("igniteThinClientTestServer")
+                .setDiscoverySpi(new TcpDiscoverySpi().setLocalPort(48500).setLocalPortRange(0).setIpFinder(ipFinder))
+                .setCommunicationSpi(new TcpCommunicationSpi().setLocalPort(48100))
+                .setClientConnectorConfiguration(new ClientConnectorConfiguration().setPort(THIN_CLIENT_PORT).setPortRange(0))
+                .setCacheConfiguration(new CacheConfiguration<String, String>(CACHE_NAME)
+                        .setAtomicityMode(CacheAtomicityMode.ATOMIC)
+                        .setBackups(1));
+    }
+}
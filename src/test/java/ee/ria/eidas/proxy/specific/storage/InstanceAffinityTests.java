@@ -0,0 +1,31 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstanceAffinityTests {
+    private final InstanceAffinity instanceAffinity = new InstanceAffinity("proxy-1");
+
+    @Test
+    void idsIssuedByThisInstanceRecognized() {
+        UUID id = instanceAffinity.newId();
+
+        assertTrue(instanceAffinity.isIssuedByThisInstance(id));
+        assertTrue(new InstanceAffinity("proxy-1").isIssuedByThisInstance(id));
+        assertFalse(new InstanceAffinity("proxy-2").isIssuedByThisInstance(id));
+        assertFalse(instanceAffinity.isIssuedByThisInstance(UUID.fromString("00000000-0000-4000-8000-000000000000")));
+    }
+
+    @Test
+    void idsAreRandomVersion4Uuids() {
+        UUID id = instanceAffinity.newId();
+
+        assertEquals(4, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(id, UUID.fromString(id.toString()));
+        assertNotEquals(id, instanceAffinity.newId());
+    }
+}
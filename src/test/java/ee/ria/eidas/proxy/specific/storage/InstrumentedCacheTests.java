@@ -0,0 +1,100 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ignite.IgniteCache;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.CacheException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.eidas.proxy.specific.storage.InstrumentedCache.LOOKUPS_COUNTER_NAME;
+import static ee.ria.eidas.proxy.specific.storage.InstrumentedCache.OPERATION_TIMER_NAME;
+import static ee.ria.eidas.proxy.specific.storage.InstrumentedCache.PAYLOAD_SIZE_SUMMARY_NAME;
+import static ee.ria.eidas.proxy.specific.storage.InstrumentedCache.PUT_CONFLICTS_COUNTER_NAME;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedCacheTests {
+    private static final String CACHE_ID = "incoming-node-requests-cache";
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CommunicationCache<String, String> cache = thinClientCache();
+    private final InstrumentedCache<String, String> instrumentedCache = new InstrumentedCache<>(cache, CACHE_ID, meterRegistry);
+
+    @Test
+    void getAndRemoveHitsAndMissesCounted() {
+        when(cache.getAndRemove("key")).thenReturn("<lightRequest/>");
+
+        assertEquals("<lightRequest/>", instrumentedCache.getAndRemove("key"));
+        assertNull(instrumentedCache.getAndRemove("missing-key"));
+
+        assertEquals(1, lookups("getAndRemove", "hit"));
+        assertEquals(1, lookups("getAndRemove", "miss"));
+        assertEquals(2, meterRegistry.get(OPERATION_TIMER_NAME).tags("cache", CACHE_ID, "operation", "getAndRemove").timer().count());
+        assertEquals(15, meterRegistry.get(PAYLOAD_SIZE_SUMMARY_NAME).tags("cache", CACHE_ID, "direction", "read").summary().totalAmount());
+    }
+
+    @Test
+    void putIfAbsentConflictsCounted() {
+        when(cache.putIfAbsent("key", "value")).thenReturn(true, false);
+
+        assertTrue(instrumentedCache.putIfAbsent("key", "value"));
+        assertFalse(instrumentedCache.putIfAbsent("key", "value"));
+
+        assertEquals(1, meterRegistry.get(PUT_CONFLICTS_COUNTER_NAME).tag("cache", CACHE_ID).counter().count());
+        assertEquals(2, meterRegistry.get(OPERATION_TIMER_NAME).tags("cache", CACHE_ID, "operation", "putIfAbsent").timer().count());
+        assertEquals(10, meterRegistry.get(PAYLOAD_SIZE_SUMMARY_NAME).tags("cache", CACHE_ID, "direction", "write").summary().totalAmount());
+    }
+
+    @Test
+    void asyncOperationsRecorded() throws Exception {
+        when(cache.getAndRemove("key")).thenReturn("value");
+        when(cache.putIfAbsent("key", "value")).thenReturn(false);
+
+        assertEquals("value", AsyncCacheOperations.getAndRemoveAsync(instrumentedCache, "key", Runnable::run).get(5, TimeUnit.SECONDS));
+        assertFalse(AsyncCacheOperations.putIfAbsentAsync(instrumentedCache, "key", "value", Runnable::run).get(5, TimeUnit.SECONDS));
+
+        assertEquals(1, lookups("getAndRemove", "hit"));
+        assertEquals(1, meterRegistry.get(PUT_CONFLICTS_COUNTER_NAME).tag("cache", CACHE_ID).counter().count());
+        assertEquals(1, meterRegistry.get(OPERATION_TIMER_NAME).tags("cache", CACHE_ID, "operation", "getAndRemove").timer().count());
+        assertEquals(1, meterRegistry.get(OPERATION_TIMER_NAME).tags("cache", CACHE_ID, "operation", "putIfAbsent").timer().count());
+    }
+
+    @Test
+    void operationTimeRecorded_WhenOperationFails() {
+        when(cache.get("key")).thenThrow(new CacheException("Cluster is inactive"));
+        when(cache.getAndRemove("key")).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertThrows(CacheException.class, () -> instrumentedCache.get("key"));
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.getAndRemoveAsync(instrumentedCache, "key", Runnable::run).get(5, TimeUnit.SECONDS));
+
+        assertEquals(CacheException.class, exception.getCause().getClass());
+        assertEquals(1, meterRegistry.get(OPERATION_TIMER_NAME).tags("cache", CACHE_ID, "operation", "get").timer().count());
+        assertEquals(1, meterRegistry.get(OPERATION_TIMER_NAME).tags("cache", CACHE_ID, "operation", "getAndRemove").timer().count());
+        assertEquals(0, lookups("get", "miss"));
+        assertEquals(0, lookups("getAndRemove", "miss"));
+    }
+
+    @Test
+    void otherOperationsPassedToCache() {
+        when(cache.getName()).thenReturn("nodeSpecificProxyserviceRequestCache");
+
+        assertEquals("nodeSpecificProxyserviceRequestCache", instrumentedCache.getName());
+        assertThrows(IllegalArgumentException.class, () -> instrumentedCache.unwrap(IgniteCache.class));
+    }
+
+    private double lookups(String operation, String result) {
+        return meterRegistry.get(LOOKUPS_COUNTER_NAME).tags("cache", CACHE_ID, "operation", operation, "result", result).counter().count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CommunicationCache<String, String> thinClientCache() {
+        CommunicationCache<String, String> cache = mock(CommunicationCache.class);
+        when(cache.unwrap(IgniteCache.class)).thenThrow(new IllegalArgumentException("Unwrapping is not supported"));
+        return cache;
+    }
+}
@@ -0,0 +1,82 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LightJAXBCodecTests {
+    private static final AttributeRegistryIndex REGISTRY = new AttributeRegistryIndex(EidasSpec.REGISTRY);
+    static final String XXE_LIGHT_REQUEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<!DOCTYPE lightRequest [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]>" +
+            "<lightRequest xmlns=\"http://cef.eidas.eu/LightRequest\">" +
+            "<citizenCountryCode>CA</citizenCountryCode><id>&xxe;</id><issuer>issuer</issuer>" +
+            "<levelOfAssurance>http://eidas.europa.eu/LoA/high</levelOfAssurance></lightRequest>";
+
+    @Test
+    void exceptionWhenLightRequestContainsDoctypeAndPooledReaderStaysUsable() throws Exception {
+        LightJAXBCodec codec = LightJAXBCodec.build(1);
+        ILightRequest lightRequest = createDefaultLightRequest();
+        String lightRequestXml = codec.marshall(lightRequest);
+        codec.unmarshallRequest(lightRequestXml, REGISTRY);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> codec.unmarshallRequest(XXE_LIGHT_REQUEST, REGISTRY));
+
+        assertTrue(exception.getMessage().startsWith("Failed to unmarshal incoming request! "));
+        assertTrue(causedBy(exception, "DOCTYPE is disallowed"));
+        assertEquals(lightRequest.getId(), codec.unmarshallRequest(lightRequestXml, REGISTRY).getId());
+    }
+
+    @Test
+    void marshallAndUnmarshallWhenPooledInstancesReusedConcurrently() throws Exception {
+        LightJAXBCodec codec = LightJAXBCodec.build(2);
+        ILightRequest lightRequest = createDefaultLightRequest();
+        ILightResponse lightResponse = createDefaultLightResponse();
+        String expectedRequestXml = LightJAXBCodec.build(0).marshall(lightRequest);
+        String expectedResponseXml = LightJAXBCodec.build(0).marshall(lightResponse);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                tasks.add(() -> {
+                    assertEquals(expectedRequestXml, codec.marshall(lightRequest));
+                    assertEquals(expectedResponseXml, codec.marshall(lightResponse));
+                    ILightRequest unmarshalled = codec.unmarshallRequest(expectedRequestXml, REGISTRY);
+                    assertEquals(lightRequest.getId(), unmarshalled.getId());
+                    assertEquals(lightRequest.getRequestedAttributes().size(), unmarshalled.getRequestedAttributes().size());
+                    return null;
+                });
+            }
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean causedBy(Throwable exception, String message) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightResponse;
+
+/**
+ * Compares {@link LightJAXBCodec} against {@link LightStAXCodec}.
+ * <p>
+ * Run with: {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ee.ria.eidas.proxy.specific.storage.LightMessageCodecBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LightMessageCodecBenchmark {
+
+    @Param({"JAXB", "STAX"})
+    private String codecType;
+
+    private LightMessageCodec codec;
+    private ILightResponse lightResponse;
+    private String lightRequestXml;
+    private AttributeRegistryIndex registry;
+
+    @Setup
+    public void setup() throws SpecificCommunicationException {
+        codec = "STAX".equals(codecType) ? new LightStAXCodec() : LightJAXBCodec.buildDefault();
+        lightResponse = createDefaultLightResponse();
+        ILightRequest lightRequest = createDefaultLightRequest();
+        lightRequestXml = LightJAXBCodec.buildDefault().marshall(lightRequest);
+        registry = new AttributeRegistryIndex(EidasSpec.REGISTRY);
+    }
+
+    @Benchmark
+    public String marshallResponse() throws SpecificCommunicationException {
+        return codec.marshall(lightResponse);
+    }
+
+    @Benchmark
+    public ILightRequest unmarshallRequest() throws SpecificCommunicationException {
+        return codec.unmarshallRequest(lightRequestXml, registry);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LightMessageCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.AttributeRegistryIndex;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.light.ILightResponse;
+import eu.eidas.auth.commons.protocol.eidas.spec.EidasSpec;
+import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.Stream;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightResponse;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LightStAXCodecTests {
+    private static final AttributeRegistryIndex REGISTRY = new AttributeRegistryIndex(EidasSpec.REGISTRY);
+    private final LightJAXBCodec jaxbCodec = LightJAXBCodec.buildDefault();
+    private final LightStAXCodec staxCodec = new LightStAXCodec();
+
+    @Test
+    void unmarshallRequestProducesSameLightRequestAsJaxb() throws Exception {
+        String lightRequestXml = jaxbCodec.marshall(createDefaultLightRequest());
+
+        ILightRequest expected = jaxbCodec.unmarshallRequest(lightRequestXml, REGISTRY);
+        ILightRequest actual = staxCodec.unmarshallRequest(lightRequestXml, REGISTRY);
+
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getIssuer(), actual.getIssuer());
+        assertEquals(expected.getCitizenCountryCode(), actual.getCitizenCountryCode());
+        assertEquals(expected.getLevelOfAssurance(), actual.getLevelOfAssurance());
+        assertEquals(expected.getNameIdFormat(), actual.getNameIdFormat());
+        assertEquals(expected.getProviderName(), actual.getProviderName());
+        assertEquals(expected.getSpType(), actual.getSpType());
+        assertEquals(expected.getRelayState(), actual.getRelayState());
+        assertEquals(expected.getRequestedAttributes(), actual.getRequestedAttributes());
+    }
+
+    @Test
+    void marshallResponseProducesSameXmlAsJaxb() throws Exception {
+        ILightResponse lightResponse = createDefaultLightResponse();
+
+        Diff diff = DiffBuilder.compare(jaxbCodec.marshall(lightResponse))
+                .withTest(staxCodec.marshall(lightResponse))
+                .ignoreWhitespace()
+                .checkForSimilar()
+                .build();
+
+        assertFalse(diff.hasDifferences(), diff.toString());
+    }
+
+    @Test
+    void nullReturnedWhenNullInput() throws Exception {
+        assertNull(staxCodec.unmarshallRequest(null, REGISTRY));
+        assertNull(staxCodec.marshall((ILightResponse) null));
+    }
+
+    @ParameterizedTest
+    @MethodSource("invalidMockRequests")
+    void sameExceptionAsJaxbWhenInvalidMockRequest(String fileName, Class<? extends Exception> expectedType, String expectedMessage) throws Exception {
+        String lightRequestXml = readMockRequest(fileName);
+
+        Exception jaxbException = assertThrows(expectedType, () -> jaxbCodec.unmarshallRequest(lightRequestXml, REGISTRY));
+        Exception staxException = assertThrows(expectedType, () -> staxCodec.unmarshallRequest(lightRequestXml, REGISTRY));
+
+        assertEquals(expectedMessage, jaxbException.getMessage());
+        assertEquals(expectedMessage, staxException.getMessage());
+    }
+
+    static Stream<Arguments> invalidMockRequests() {
+        return Stream.of(
+                Arguments.of("light-request-missing-id.xml", IllegalArgumentException.class,
+                        "id cannot be null, empty or blank"),
+                Arguments.of("light-request-missing-issuer.xml", IllegalArgumentException.class,
+                        "issuer cannot be null, empty or blank"),
+                Arguments.of("light-request-missing-citizen-country.xml", IllegalArgumentException.class,
+                        "citizenCountryCode cannot be null, empty or blank"),
+                Arguments.of("light-request-invalid-xml.xml", IllegalStateException.class,
+                        "Failed to unmarshal incoming request! unexpected element (uri:\"\", local:\"lightRequest1\"). " +
+                                "Expected elements are <{http://cef.eidas.eu/LightRequest}lightRequest>"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"light-request-unknown-attribute.xml", "light-request-missing-attribute-definition.xml",
+            "light-request-foreign-namespace-attribute-definition.xml"})
+    void sameExceptionTypeAsJaxbWhenRequestedAttributeDefinitionNotResolved(String fileName) throws Exception {
+        String lightRequestXml = readMockRequest(fileName);
+
+        Exception jaxbException = assertThrows(Exception.class, () -> jaxbCodec.unmarshallRequest(lightRequestXml, REGISTRY));
+        SpecificCommunicationException staxException = assertThrows(SpecificCommunicationException.class,
+                () -> staxCodec.unmarshallRequest(lightRequestXml, REGISTRY));
+
+        assertEquals(jaxbException.getClass(), staxException.getClass(), jaxbException.getMessage());
+        assertTrue(staxException.getMessage().startsWith("Failed to unmarshal LightRequest! "), staxException.getMessage());
+    }
+
+    @Test
+    void exceptionWhenLightRequestContainsDoctype() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> staxCodec.unmarshallRequest(LightJAXBCodecTests.XXE_LIGHT_REQUEST, REGISTRY));
+
+        assertTrue(exception.getMessage().startsWith("Failed to unmarshal incoming request! "), exception.getMessage());
+    }
+
+    private String readMockRequest(String fileName) throws IOException {
+        try (InputStream input = getClass().getResourceAsStream("/__files/mock_requests/" + fileName)) {
+            return new String(input.readAllBytes(), UTF_8);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.CacheExpiryProperties;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CacheProperties.LocalTierProperties;
+import org.apache.ignite.IgniteCache;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import javax.cache.CacheException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LocalTierCacheTests {
+    private static final byte[] ENTRY = {1, 2, 3};
+    private final InstanceAffinity instanceAffinity = new InstanceAffinity("proxy-1");
+    private final CommunicationCache<UUID, byte[]> cache = thinClientCache();
+
+    @Test
+    void entryServedLocallyAndWrittenThrough_WhenKeyIssuedByThisInstance() throws Exception {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(10, SECONDS.toNanos(60));
+        UUID key = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenReturn(true);
+        when(cache.remove(key, ENTRY)).thenReturn(true);
+
+        assertTrue(AsyncCacheOperations.putIfAbsentAsync(localTierCache, key, ENTRY, Runnable::run).get(5, SECONDS));
+        assertFalse(localTierCache.putIfAbsent(key, ENTRY));
+        verify(cache).putIfAbsent(key, ENTRY);
+
+        assertSame(ENTRY, AsyncCacheOperations.getAndRemoveAsync(localTierCache, key, Runnable::run).get(5, SECONDS));
+        verify(cache).remove(key, ENTRY);
+        verify(cache, never()).getAndRemove(key);
+        assertEquals(0, localTierCache.getLocalSize());
+    }
+
+    @Test
+    void entryLookedUpInCluster_WhenKeyIssuedByOtherInstance() {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(10, SECONDS.toNanos(60));
+        UUID key = new InstanceAffinity("proxy-2").newId();
+        byte[] clusterEntry = {4, 5, 6};
+        when(cache.getAndRemove(key)).thenReturn(clusterEntry);
+
+        assertSame(clusterEntry, localTierCache.getAndRemove(key));
+        assertNull(localTierCache.getAndRemove(instanceAffinity.newId()));
+    }
+
+    @Test
+    void entryWrittenToClusterOnly_WhenLocalTierFull() {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(1, SECONDS.toNanos(60));
+        UUID key = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenReturn(true);
+        when(cache.getAndRemove(key)).thenReturn(ENTRY);
+
+        assertTrue(localTierCache.putIfAbsent(instanceAffinity.newId(), ENTRY));
+        assertTrue(localTierCache.putIfAbsent(key, ENTRY));
+
+        assertEquals(1, localTierCache.getLocalSize());
+        assertSame(ENTRY, localTierCache.getAndRemove(key));
+    }
+
+    @Test
+    void expiredEntriesPurged_WhenLocalTierFull() throws InterruptedException {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(1, MILLISECONDS.toNanos(50));
+        UUID expiredKey = instanceAffinity.newId();
+        localTierCache.putIfAbsent(expiredKey, ENTRY);
+
+        Thread.sleep(100);
+        assertNull(localTierCache.get(expiredKey));
+        assertTrue(localTierCache.putIfAbsent(instanceAffinity.newId(), ENTRY));
+
+        assertEquals(1, localTierCache.getLocalSize());
+        assertNull(localTierCache.getAndRemove(expiredKey));
+        verify(cache).getAndRemove(expiredKey);
+    }
+
+    @Test
+    void localEntryKept_WhenWriteThroughFails() {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(10, SECONDS.toNanos(60));
+        UUID key = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertTrue(localTierCache.putIfAbsent(key, ENTRY));
+        assertSame(ENTRY, localTierCache.get(key));
+        verify(cache, never()).get(key);
+    }
+
+    @Test
+    void clusterCopyRemovedAfterWriteThrough_WhenLocalHitBeforeWriteThroughRuns() throws Exception {
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        LocalTierCache<UUID, byte[]> localTierCache = new LocalTierCache<>(cache, 10, SECONDS.toNanos(60),
+                instanceAffinity::isIssuedByThisInstance, tasks::add);
+        UUID key = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenReturn(true);
+        when(cache.remove(key, ENTRY)).thenReturn(true);
+
+        assertTrue(localTierCache.putIfAbsent(key, ENTRY));
+        CompletableFuture<byte[]> value = AsyncCacheOperations.getAndRemoveAsync(localTierCache, key, tasks::add);
+        assertFalse(value.isDone());
+        verify(cache, never()).remove(key, ENTRY);
+
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertSame(ENTRY, value.get(5, SECONDS));
+        InOrder inOrder = inOrder(cache);
+        inOrder.verify(cache).putIfAbsent(key, ENTRY);
+        inOrder.verify(cache).remove(key, ENTRY);
+    }
+
+    @Test
+    void localEntryNotReturned_WhenClusterCopyTakenOnOtherInstance() throws Exception {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(10, SECONDS.toNanos(60));
+        UUID key = instanceAffinity.newId();
+        UUID otherKey = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenReturn(true);
+        when(cache.putIfAbsent(otherKey, ENTRY)).thenReturn(true);
+        when(cache.remove(key, ENTRY)).thenReturn(false);
+        when(cache.remove(otherKey, ENTRY)).thenReturn(false);
+
+        assertTrue(localTierCache.putIfAbsent(key, ENTRY));
+        assertTrue(localTierCache.putIfAbsent(otherKey, ENTRY));
+
+        assertNull(localTierCache.getAndRemove(key));
+        assertNull(AsyncCacheOperations.getAndRemoveAsync(localTierCache, otherKey, Runnable::run).get(5, SECONDS));
+        assertEquals(0, localTierCache.getLocalSize());
+    }
+
+    @Test
+    void operationFailsAndLocalEntryDropped_WhenClusterCopyRemovalFails() {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(10, SECONDS.toNanos(60));
+        UUID key = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenReturn(true);
+        when(cache.remove(key, ENTRY)).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertTrue(localTierCache.putIfAbsent(key, ENTRY));
+        assertThrows(CacheException.class, () -> localTierCache.getAndRemove(key));
+
+        assertEquals(0, localTierCache.getLocalSize());
+        when(cache.getAndRemove(key)).thenReturn(ENTRY);
+        assertSame(ENTRY, localTierCache.getAndRemove(key));
+    }
+
+    @Test
+    void clusterCopyRemoved_WhenWriteThroughFails() {
+        LocalTierCache<UUID, byte[]> localTierCache = localTierCache(10, SECONDS.toNanos(60));
+        UUID key = instanceAffinity.newId();
+        when(cache.putIfAbsent(key, ENTRY)).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertTrue(localTierCache.putIfAbsent(key, ENTRY));
+        assertSame(ENTRY, localTierCache.getAndRemove(key));
+        verify(cache).remove(key, ENTRY);
+    }
+
+    @Test
+    void localTimeToLiveLimitedByCacheExpiry() {
+        LocalTierProperties localTierProperties = new LocalTierProperties();
+        LocalCacheTier localCacheTier = new LocalCacheTier(localTierProperties, instanceAffinity, Runnable::run);
+        CacheExpiryProperties cacheExpiry = new CacheExpiryProperties();
+        cacheExpiry.setTtlInSeconds(300L);
+
+        assertEquals(300, localCacheTier.getTtlInSeconds(cacheExpiry));
+        assertEquals(600, localCacheTier.getTtlInSeconds(null));
+        cacheExpiry.setTtlInSeconds(900L);
+        assertEquals(600, localCacheTier.getTtlInSeconds(cacheExpiry));
+    }
+
+    private LocalTierCache<UUID, byte[]> localTierCache(int maxEntries, long timeToLiveInNanos) {
+        return new LocalTierCache<>(cache, maxEntries, timeToLiveInNanos, instanceAffinity::isIssuedByThisInstance, Runnable::run);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CommunicationCache<UUID, byte[]> thinClientCache() {
+        CommunicationCache<UUID, byte[]> cache = mock(CommunicationCache.class);
+        when(cache.getName()).thenReturn("specificMSIdpRequestCorrelationMap");
+        when(cache.unwrap(IgniteCache.class)).thenThrow(new IllegalArgumentException("Unwrapping is not supported"));
+        return cache;
+    }
+}
@@ -0,0 +1,92 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import ee.ria.eidas.proxy.specific.monitoring.jfr.CacheOperationEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.CacheException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RecordedCacheTests {
+    private static final String CACHE_ID = "incoming-node-requests-cache";
+    private final Recording recording = new Recording();
+    @SuppressWarnings("unchecked")
+    private final CommunicationCache<String, String> cache = mock(CommunicationCache.class);
+    private final RecordedCache<String, String> recordedCache = new RecordedCache<>(cache, CACHE_ID);
+
+    @AfterEach
+    void closeRecording() {
+        recording.close();
+    }
+
+    @Test
+    void operationsRecordedWithPayloadSize() throws Exception {
+        recording.enable(CacheOperationEvent.class);
+        recording.start();
+        when(cache.getAndRemove("key")).thenReturn("<lightRequest/>");
+        when(cache.putIfAbsent("key", "value")).thenReturn(true);
+
+        assertEquals("<lightRequest/>", recordedCache.getAndRemove("key"));
+        assertTrue(recordedCache.putIfAbsent("key", "value"));
+
+        List<RecordedEvent> events = recordedEvents();
+        assertEquals(2, events.size());
+        assertEquals(CACHE_ID, events.get(0).getString("cache"));
+        assertEquals("getAndRemove", events.get(0).getString("operation"));
+        assertTrue(events.get(0).getBoolean("succeeded"));
+        assertEquals(15, events.get(0).getLong("payloadSize"));
+        assertEquals("putIfAbsent", events.get(1).getString("operation"));
+        assertEquals(5, events.get(1).getLong("payloadSize"));
+    }
+
+    @Test
+    void asyncOperationRecordedOnCompletion_WhenOperationFails() throws Exception {
+        recording.enable(CacheOperationEvent.class);
+        recording.start();
+        when(cache.getAndRemove("key")).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.getAndRemoveAsync(recordedCache, "key", Runnable::run).get(5, TimeUnit.SECONDS));
+
+        List<RecordedEvent> events = recordedEvents();
+        assertEquals(1, events.size());
+        assertEquals("getAndRemove", events.get(0).getString("operation"));
+        assertFalse(events.get(0).getBoolean("succeeded"));
+        assertEquals(-1, events.get(0).getLong("payloadSize"));
+    }
+
+    @Test
+    void eventsNotRecorded_WhenNotEnabled() throws Exception {
+        recording.start();
+        when(cache.get("key")).thenReturn("value");
+
+        assertEquals("value", recordedCache.get("key"));
+
+        assertTrue(recordedEvents().isEmpty());
+    }
+
+    private List<RecordedEvent> recordedEvents() throws Exception {
+        recording.stop();
+        Path dumpFile = Files.createTempFile("recorded-cache-", ".jfr");
+        try {
+            recording.dump(dumpFile);
+            return RecordingFile.readAllEvents(dumpFile).stream()
+                    .filter(event -> CacheOperationEvent.NAME.equals(event.getEventType().getName()))
+                    .collect(toList());
+        } finally {
+            Files.delete(dumpFile);
+        }
+    }
+}
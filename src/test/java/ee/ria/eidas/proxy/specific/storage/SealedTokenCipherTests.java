@@ -0,0 +1,106 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SealedTokenCipherTests {
+    private static final byte[] KEY = Base64.getDecoder().decode("q0Ms1K2TS4UPjZ1KD0rPSr9TbAgnX7eKJvoDVjxDAUk=");
+    private static final Duration TIME_TO_LIVE = Duration.ofSeconds(300);
+    private static final Instant NOW = Instant.parse("2026-01-01T10:00:00Z");
+    private static final byte[] PAYLOAD = "http://eidas.europa.eu/attributes/naturalperson/PersonIdentifier".getBytes(UTF_8);
+    private final SealedTokenCipher cipher = new SealedTokenCipher(KEY, "oidc-state:client", TIME_TO_LIVE, fixedClock(NOW));
+
+    @Test
+    void payloadRestoredFromToken() {
+        String token = cipher.seal(PAYLOAD);
+
+        SealedTokenCipher.OpenedToken openedToken = cipher.open(token);
+
+        assertNotNull(openedToken);
+        assertArrayEquals(PAYLOAD, openedToken.getPayload());
+        assertTrue(token.matches("^[A-Za-z0-9_-]+$"));
+    }
+
+    @Test
+    void tokensHaveDifferentNonces() {
+        assertNotEquals(cipher.open(cipher.seal(PAYLOAD)).getNonce(), cipher.open(cipher.seal(PAYLOAD)).getNonce());
+    }
+
+    @Test
+    void tokenNotOpened_WhenExpired() {
+        String token = cipher.seal(PAYLOAD);
+        SealedTokenCipher laterCipher = new SealedTokenCipher(KEY, "oidc-state:client", TIME_TO_LIVE,
+                fixedClock(NOW.plus(TIME_TO_LIVE).plusSeconds(1)));
+
+        assertNull(laterCipher.open(token));
+    }
+
+    @Test
+    void tokenOpened_WhenExpiresNow() {
+        String token = cipher.seal(PAYLOAD);
+        SealedTokenCipher laterCipher = new SealedTokenCipher(KEY, "oidc-state:client", TIME_TO_LIVE, fixedClock(NOW.plus(TIME_TO_LIVE)));
+
+        assertNotNull(laterCipher.open(token));
+    }
+
+    @Test
+    void tokenNotOpened_WhenAssociatedDataDiffers() {
+        SealedTokenCipher otherPurposeCipher = new SealedTokenCipher(KEY, "consent:issuer", TIME_TO_LIVE, fixedClock(NOW));
+
+        assertNull(otherPurposeCipher.open(cipher.seal(PAYLOAD)));
+    }
+
+    @Test
+    void tokenNotOpened_WhenKeyDiffers() {
+        byte[] otherKey = KEY.clone();
+        otherKey[0] ^= 1;
+        SealedTokenCipher otherKeyCipher = new SealedTokenCipher(otherKey, "oidc-state:client", TIME_TO_LIVE, fixedClock(NOW));
+
+        assertNull(otherKeyCipher.open(cipher.seal(PAYLOAD)));
+    }
+
+    @Test
+    void tokenNotOpened_WhenTampered() {
+        byte[] sealed = Base64.getUrlDecoder().decode(cipher.seal(PAYLOAD));
+        sealed[sealed.length / 2] ^= 1;
+
+        assertNull(cipher.open(Base64.getUrlEncoder().withoutPadding().encodeToString(sealed)));
+    }
+
+    @Test
+    void tokenNotOpened_WhenMalformed() {
+        assertNull(cipher.open("not a token"));
+        assertNull(cipher.open("AAAA"));
+        assertNull(cipher.open(""));
+    }
+
+    @Test
+    void exceptionWhenInvalidKeyLength() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> new SealedTokenCipher(new byte[10], "oidc-state:client", TIME_TO_LIVE));
+        assertEquals("Sealed token key must be 128, 192 or 256 bits long", exception.getMessage());
+    }
+
+    @Test
+    void keyDerivedPerPurpose() {
+        byte[] consentKey = SealedTokenCipher.deriveKey("secret", "consent-token");
+
+        assertEquals(32, consentKey.length);
+        assertArrayEquals(consentKey, SealedTokenCipher.deriveKey("secret", "consent-token"));
+        assertFalse(Arrays.equals(consentKey, SealedTokenCipher.deriveKey("secret", "other")));
+        assertFalse(Arrays.equals(consentKey, SealedTokenCipher.deriveKey("other", "consent-token")));
+    }
+
+    private static Clock fixedClock(Instant instant) {
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,74 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import eu.eidas.specificcommunication.exception.SpecificCommunicationException;
+import eu.eidas.specificcommunication.protocol.util.SecurityUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+
+/**
+ * Per-request cost of parsing a LightRequest with a freshly built secure SAX stack ({@link SecurityUtils}), a new
+ * reader from the cached hardened factory and a reused reader, as done by {@link LightJAXBCodec}.
+ * <p>
+ * Run with: {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ee.ria.eidas.proxy.specific.storage.SecureXmlReaderBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecureXmlReaderBenchmark {
+    private final DefaultHandler handler = new DefaultHandler();
+    private String lightRequestXml;
+    private XMLReader pooledReader;
+
+    @Setup
+    public void setup() throws SpecificCommunicationException, ParserConfigurationException, SAXException {
+        lightRequestXml = LightJAXBCodec.buildDefault().marshall(createDefaultLightRequest());
+        pooledReader = LightJAXBCodec.createSecureXmlReader();
+    }
+
+    @Benchmark
+    public void perCallSecureSaxSource() throws ParserConfigurationException, SAXException, IOException {
+        SAXSource source = SecurityUtils.createSecureSaxSource(lightRequestXml);
+        source.getXMLReader().setContentHandler(handler);
+        source.getXMLReader().parse(source.getInputSource());
+    }
+
+    @Benchmark
+    public void cachedFactoryReader() throws ParserConfigurationException, SAXException, IOException {
+        parse(LightJAXBCodec.createSecureXmlReader());
+    }
+
+    @Benchmark
+    public void pooledReader() throws SAXException, IOException {
+        parse(pooledReader);
+    }
+
+    private void parse(XMLReader reader) throws SAXException, IOException {
+        reader.setContentHandler(handler);
+        reader.parse(new InputSource(new StringReader(lightRequestXml)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SecureXmlReaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
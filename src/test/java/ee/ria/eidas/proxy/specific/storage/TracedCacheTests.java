@@ -0,0 +1,53 @@
+package ee.ria.eidas.proxy.specific.storage;
+
+import brave.handler.MutableSpan;
+import ee.ria.eidas.proxy.specific.util.TestTracing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.CacheException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TracedCacheTests {
+    private final TestTracing tracing = new TestTracing();
+    private final List<MutableSpan> finishedSpans = tracing.finishedSpans();
+    @SuppressWarnings("unchecked")
+    private final CommunicationCache<String, String> cache = mock(CommunicationCache.class);
+    private final TracedCache<String, String> tracedCache = new TracedCache<>(cache, "incoming-node-requests-cache", tracing.flowTracing(false));
+
+    @AfterEach
+    void closeTracing() {
+        tracing.close();
+    }
+
+    @Test
+    void spanCreatedForEachOperation() throws Exception {
+        when(cache.getAndRemove("key")).thenReturn("value");
+        when(cache.putIfAbsent("key", "value")).thenReturn(true);
+
+        assertEquals("value", tracedCache.getAndRemove("key"));
+        assertTrue(AsyncCacheOperations.putIfAbsentAsync(tracedCache, "key", "value", Runnable::run).get(5, TimeUnit.SECONDS));
+
+        assertEquals(2, finishedSpans.size());
+        assertEquals("communication-cache-getAndRemove", finishedSpans.get(0).name());
+        assertEquals("communication-cache-putIfAbsent", finishedSpans.get(1).name());
+        assertEquals("incoming-node-requests-cache", finishedSpans.get(1).tag("cache"));
+    }
+
+    @Test
+    void spanFailed_WhenAsyncOperationFails() {
+        when(cache.getAndRemove("key")).thenThrow(new CacheException("Cluster is inactive"));
+
+        assertThrows(ExecutionException.class,
+                () -> AsyncCacheOperations.getAndRemoveAsync(tracedCache, "key", Runnable::run).get(5, TimeUnit.SECONDS));
+
+        assertEquals(1, finishedSpans.size());
+        assertNotNull(finishedSpans.get(0).error());
+    }
+}
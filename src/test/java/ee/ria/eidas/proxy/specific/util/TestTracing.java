@@ -0,0 +1,62 @@
+package ee.ria.eidas.proxy.specific.util;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import ee.ria.eidas.proxy.specific.monitoring.FlowTracing;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.brave.bridge.BraveCurrentTraceContext;
+import io.micrometer.tracing.brave.bridge.BravePropagator;
+import io.micrometer.tracing.brave.bridge.BraveTracer;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Brave tracing that keeps the finished spans in memory, for the tests of the spans created by {@link FlowTracing}.
+ */
+public class TestTracing implements AutoCloseable {
+    private final List<MutableSpan> finishedSpans = new CopyOnWriteArrayList<>();
+    private final Tracing tracing = Tracing.newBuilder()
+            .addSpanHandler(new SpanHandler() {
+                @Override
+                public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+                    finishedSpans.add(span);
+                    return true;
+                }
+            })
+            .build();
+    private final Tracer tracer = new BraveTracer(tracing.tracer(), new BraveCurrentTraceContext(tracing.currentTraceContext()));
+    private final ObservationRegistry observationRegistry = ObservationRegistry.create();
+
+    public TestTracing() {
+        observationRegistry.observationConfig().observationHandler(new DefaultTracingObservationHandler(tracer));
+    }
+
+    public List<MutableSpan> finishedSpans() {
+        return finishedSpans;
+    }
+
+    public Tracer tracer() {
+        return tracer;
+    }
+
+    /**
+     * Observations of this registry are traced, like the HTTP server observations of the application.
+     */
+    public ObservationRegistry observationRegistry() {
+        return observationRegistry;
+    }
+
+    public FlowTracing flowTracing(boolean propagationEnabled) {
+        return new FlowTracing(tracer, new BravePropagator(tracing), propagationEnabled);
+    }
+
+    @Override
+    public void close() {
+        tracing.close();
+    }
+}
@@ -0,0 +1,102 @@
+package ee.ria.eidas.proxy.specific.web;
+
+import com.nimbusds.oauth2.sdk.util.URLUtils;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import eu.eidas.auth.commons.EidasParameterKeys;
+import eu.eidas.auth.commons.tx.BinaryLightToken;
+import eu.eidas.specificcommunication.BinaryLightTokenHelper;
+import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.web.IdpResponseController.ENDPOINT_IDP_RESPONSE;
+import static ee.ria.eidas.proxy.specific.web.ProxyServiceRequestController.ENDPOINT_PROXY_SERVICE_REQUEST;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(
+		webEnvironment = RANDOM_PORT,
+		properties = {
+				"eidas.proxy.ask-consent=false",
+				"management.endpoints.web.exposure.include=heartbeat,prometheus"} )
+@AutoConfigureObservability(tracing = false)
+@ContextConfiguration( classes = SpecificProxyServiceConfiguration.class, initializers = AuthenticationFlowStageMetricsTests.TestContextInitializer.class )
+class AuthenticationFlowStageMetricsTests extends ControllerTest {
+	private static final String STAGE_TIMER_NAME = "eidas.proxy.flow.stage";
+	private static final String STAGE_TIMER_PROMETHEUS_COUNT = "eidas_proxy_flow_stage_seconds_count";
+	private static final List<String> FLOW_STAGES = List.of("lightTokenDecode", "nodeCacheGetAndRemove", "lightRequestUnmarshal",
+			"authorizationUrlBuild", "idpRequestMarshal", "idpCachePut", "tokenEndpointCall", "idTokenValidation", "claimTranslation",
+			"responseMarshal", "nodeCachePut");
+
+	@Test
+	void stageTimersRecordedAndScraped_WhenAuthenticationFlowCompleted() throws Exception {
+		Map<String, Long> countsBefore = successCounts();
+
+		BinaryLightToken binaryLightToken = putRequest(createDefaultLightRequest());
+		String location = given()
+			.param(EidasParameterKeys.TOKEN.toString(), BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken))
+		.when()
+			.get(ENDPOINT_PROXY_SERVICE_REQUEST)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.extract().header(HttpHeaders.LOCATION);
+		String state = URLUtils.parseParameters(new URL(location).getQuery()).get("state").get(0);
+		String code = UUID.randomUUID().toString();
+		createMockOidcServerResponse_successfulAuthentication(code, "mock_responses/idp/token-response-ok.json");
+
+		given()
+			.param("code", code)
+			.param("state", state)
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
+
+		Map<String, Long> countsAfter = successCounts();
+		String prometheusResponse = given()
+		.when()
+			.get("/prometheus")
+		.then()
+			.assertThat()
+			.statusCode(200)
+			.extract().asString();
+		for (String stage : FLOW_STAGES) {
+			assertEquals(countsBefore.get(stage) + 1, countsAfter.get(stage), "Stage " + stage + " must be timed once");
+			assertEquals(countsAfter.get(stage), scrapedSuccessCount(prometheusResponse, stage), "Scraped count of stage " + stage);
+		}
+	}
+
+	private Map<String, Long> successCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		FLOW_STAGES.forEach(stage -> counts.put(stage, meterRegistry.get(STAGE_TIMER_NAME)
+				.tag("stage", stage)
+				.tag("outcome", "success")
+				.timer()
+				.count()));
+		return counts;
+	}
+
+	private long scrapedSuccessCount(String prometheusResponse, String stage) {
+		return Arrays.stream(prometheusResponse.split("\n"))
+				.filter(line -> line.startsWith(STAGE_TIMER_PROMETHEUS_COUNT + "{"))
+				.filter(line -> line.contains("stage=\"" + stage + "\"") && line.contains("outcome=\"success\""))
+				.mapToLong(line -> (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1)))
+				.findFirst()
+				.orElseThrow(() -> new AssertionError("Stage " + stage + " not found from prometheus response"));
+	}
+}
@@ -1,7 +1,6 @@
 package ee.ria.eidas.proxy.specific.web;
 
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
-import eu.eidas.specificcommunication.BinaryLightTokenHelper;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ContextConfiguration;
@@ -19,7 +18,7 @@ class ConsentControllerDisabledTests extends ControllerTest {
 
 	@Test
 	void consentEndpointNotAccessible() throws Exception {
-		String mockBinaryLightToken = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(getSpecificProxyServiceCommunication().putPendingLightResponse(createDefaultLightResponse()));
+		String mockBinaryLightToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(createDefaultLightResponse()).get();
 
 		given()
 			.param("binaryLightToken", mockBinaryLightToken)
@@ -3,7 +3,6 @@ package ee.ria.eidas.proxy.specific.web;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
 import eu.eidas.auth.commons.EidasParameterKeys;
 import eu.eidas.auth.commons.light.ILightResponse;
-import eu.eidas.specificcommunication.BinaryLightTokenHelper;
 import io.restassured.RestAssured;
 import io.restassured.builder.ResponseSpecBuilder;
 import org.apache.http.HttpHeaders;
@@ -88,6 +87,40 @@ class ConsentControllerEnabledTests extends ControllerTest {
 		assertResponseCommunicationCacheIsEmpty();
 	}
 
+	@Test
+	void badRequestWhenInvalidParameterValue_urlSafeCharacters() {
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), "YXNk-ZmZz_ZGZz")
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("errors", equalTo("Parameter 'token[0]': only base64 characters allowed"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Validation failed for object='requestParameters'. Error count: 1"));
+
+		assertResponseCommunicationCacheIsEmpty();
+	}
+
+	@Test
+	void badRequestWhenInvalidParameterValue_tokenTooLong() {
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), "a".repeat(1001))
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("errors", equalTo("Parameter 'token[0]': only base64 characters allowed"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Validation failed for object='requestParameters'. Error count: 1"));
+
+		assertResponseCommunicationCacheIsEmpty();
+	}
+
 	@Test
 	void badRequestWhenInvalidParameterValue_invalidLightTokenSignature() {
 		given()
@@ -109,8 +142,7 @@ class ConsentControllerEnabledTests extends ControllerTest {
 	@Test
 	void redirectToEidasNodeWhenValidUserCancel() throws Exception {
 		ILightResponse defaultLightResponse = createDefaultLightResponse();
-		String mockBinaryLightToken = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(
-				getSpecificProxyServiceCommunication().putPendingLightResponse(defaultLightResponse));
+		String mockBinaryLightToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(defaultLightResponse).get();
 
 		given()
 			.param("token", mockBinaryLightToken)
@@ -130,9 +162,7 @@ class ConsentControllerEnabledTests extends ControllerTest {
 	@Test
 	void redirectToEidasNodeWhenValidUserAccept() throws Exception {
 		ILightResponse defaultLightResponse = createDefaultLightResponse();
-		String mockBinaryLightToken = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(
-				getSpecificProxyServiceCommunication().putPendingLightResponse(
-						defaultLightResponse));
+		String mockBinaryLightToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(defaultLightResponse).get();
 
 		given()
 			.param("token", mockBinaryLightToken)
@@ -144,7 +174,7 @@ class ConsentControllerEnabledTests extends ControllerTest {
 			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
 
 
-		List<Cache.Entry<String, String>> list = getListFromIterator(getEidasNodeResponseCommunicationCache().iterator());
+		List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
 		assertEquals(1, list.size());
 		assertThat(list.get(0).getKey(), matchesPattern(UUID_REGEX));
 
@@ -0,0 +1,138 @@
+package ee.ria.eidas.proxy.specific.web;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import eu.eidas.auth.commons.EidasParameterKeys;
+import eu.eidas.auth.commons.light.ILightResponse;
+import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.cache.Cache;
+import java.util.List;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.*;
+import static ee.ria.eidas.proxy.specific.web.ConsentController.ENDPOINT_USER_CONSENT;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(
+		webEnvironment = RANDOM_PORT,
+		properties = {"eidas.proxy.consent-binary-light-token.mode=SEALED"} )
+@ContextConfiguration( classes = SpecificProxyServiceConfiguration.class, initializers = ConsentControllerSealedTokenTests.TestContextInitializer.class )
+class ConsentControllerSealedTokenTests extends ControllerTest {
+
+	@Test
+	void redirectToEidasNodeWhenValidUserAccept() throws Exception {
+		ILightResponse defaultLightResponse = createDefaultLightResponse();
+		String consentToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(defaultLightResponse).get();
+		assertEquals(0, getListFromIterator(igniteCache(getIdpConsentCommunicationCache()).iterator()).size());
+
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), consentToken)
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
+
+		List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
+		assertEquals(1, list.size());
+	}
+
+	@Test
+	void redirectToEidasNodeWhenValidUserAcceptWithPost() throws Exception {
+		ILightResponse defaultLightResponse = createDefaultLightResponse();
+		String consentToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(defaultLightResponse).get();
+
+		given()
+			.formParam(EidasParameterKeys.TOKEN.toString(), consentToken)
+		.when()
+			.post(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
+
+		List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
+		assertEquals(1, list.size());
+	}
+
+	@Test
+	void redirectToEidasNodeWhenValidUserCancel() throws Exception {
+		ILightResponse defaultLightResponse = createDefaultLightResponse();
+		String consentToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(defaultLightResponse).get();
+
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), consentToken)
+			.param("cancel", "true")
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(302);
+
+		assertResponseCommunicationCacheContainsUserCancelResponse("User canceled the authentication process", defaultLightResponse.getInResponseToId());
+	}
+
+	@Test
+	void badRequestWhenSealedTokenAlreadyUsed() throws Exception {
+		String consentToken = getSpecificProxyServiceCommunication().putPendingLightResponseAsync(createDefaultLightResponse()).get();
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), consentToken)
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(302);
+
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), consentToken)
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Invalid token"));
+	}
+
+	@Test
+	void badRequestWhenInvalidSealedToken() {
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), "YXNkZmZzZGZzZGZkc2ZzZmQ")
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Invalid token"));
+
+		assertResponseCommunicationCacheIsEmpty();
+	}
+
+	@Test
+	void badRequestWhenInvalidParameterValue_tokenTooLong() {
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), "a".repeat(4001))
+		.when()
+			.get(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("errors", equalTo("Parameter 'token[0]': only base64 characters allowed"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Validation failed for object='requestParameters'. Error count: 1"));
+
+		assertResponseCommunicationCacheIsEmpty();
+	}
+}
@@ -22,8 +22,13 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URLEncoder;
 import java.util.List;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.*;
 import static io.restassured.RestAssured.given;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -80,17 +85,31 @@ public abstract class ControllerTest extends SpecificProxyTest {
         }
     }
 
+    void createMockOidcServerResponse_successfulAuthentication(String code, String responseFile) {
+        mockOidcServer.stubFor(post(urlEqualTo("/oidc/token"))
+                .withBasicAuth(
+                        getSpecificProxyServiceProperties().getOidc().getClientId(),
+                        getSpecificProxyServiceProperties().getOidc().getClientSecret())
+                .withHeader("Content-Type", containing("application/x-www-form-urlencoded"))
+                .withRequestBody(containing("grant_type=authorization_code&code=" + code
+                        + "&redirect_uri=" + URLEncoder.encode(getSpecificProxyServiceProperties().getOidc().getRedirectUri(), UTF_8)))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBodyFile(responseFile)));
+    }
+
     void assertRequestCommunicationCacheIsEmpty() {
-        List<Cache.Entry<String, String>> list = getListFromIterator(getEidasNodeRequestCommunicationCache().iterator());
+        List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeRequestCommunicationCache()).iterator());
         assertEquals(0, list.size());
     }
 
     void assertPendingIdpRequestCommunicationCacheIsEmpty() {
-        assertEquals(0, getListFromIterator(getIdpRequestCommunicationCache().iterator()).size());
+        assertEquals(0, getListFromIterator(igniteCache(getIdpRequestCommunicationCache()).iterator()).size());
     }
 
     void assertResponseCommunicationCacheIsEmpty() {
-        assertEquals(0, getListFromIterator(getEidasNodeResponseCommunicationCache().iterator()).size());
+        assertEquals(0, getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator()).size());
     }
 
     void assertHttpMethodsNotAllowed(String path, String... restrictedMethods) {
@@ -105,7 +124,7 @@ public abstract class ControllerTest extends SpecificProxyTest {
     }
 
     void assertResponseCommunicationCacheContainsUserCancelResponse(String expectedErrorMessage, String expectedInResponseTo) throws SAXException, IOException, ParserConfigurationException {
-        List<Cache.Entry<String, String>> list = getListFromIterator(getEidasNodeResponseCommunicationCache().iterator());
+        List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
         assertEquals(1, list.size());
         assertThat(list.get(0).getKey(), matchesPattern(UUID_REGEX));
 
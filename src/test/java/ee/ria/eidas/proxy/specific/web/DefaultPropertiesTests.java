@@ -2,6 +2,7 @@ package ee.ria.eidas.proxy.specific.web;
 
 import ee.ria.eidas.proxy.specific.SpecificProxyTest;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.CorrelationMode;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceProperties.IdTokenClaimMappingProperties;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -90,6 +91,30 @@ public class DefaultPropertiesTests extends SpecificProxyTest {
         assertEquals("$.acr", responseClaimMapping.getAcr());
     }
 
+    @Test
+    void defaultCorrelationModes() {
+        assertEquals(CorrelationMode.CACHE, specificProxyServiceProperties.getOidc().getState().getMode());
+        assertEquals(CorrelationMode.CACHE, specificProxyServiceProperties.getConsentBinaryLightToken().getMode());
+    }
+
+    @Test
+    void defaultCommunicationCacheTiers() {
+        assertTrue(specificProxyServiceProperties.getCommunicationCache().getFailFast().isEnabled());
+        assertFalse(specificProxyServiceProperties.getCommunicationCache().getLocalTier().isEnabled());
+    }
+
+    @Test
+    void defaultFlowMetrics() {
+        assertEquals(7, specificProxyServiceProperties.getFlowMetrics().getSloBoundaries().size());
+        assertFalse(specificProxyServiceProperties.getFlowMetrics().isPercentileHistogramEnabled());
+    }
+
+    @Test
+    void defaultTracing() {
+        assertTrue(specificProxyServiceProperties.getCommunicationCache().isTracingEnabled());
+        assertFalse(specificProxyServiceProperties.getOidc().isTracePropagationEnabled());
+    }
+
     @Test
     void defaultMonitoringDisabled() {
         assertEquals("*", env.getProperty("management.endpoints.jmx.exposure.exclude"));
@@ -11,8 +11,14 @@ import io.restassured.RestAssured;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHeaders;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
@@ -32,16 +38,54 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.StringStartsWith.startsWith;
 import static org.hamcrest.text.MatchesPattern.matchesPattern;
 import static org.hamcrest.xml.HasXPath.hasXPath;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(
 		webEnvironment = RANDOM_PORT,
 		properties = {"eidas.proxy.ask-consent=false"}
 )
 @ContextConfiguration( classes = SpecificProxyServiceConfiguration.class, initializers = IdpResponseControllerConsentNotRequiredTests.TestContextInitializer.class )
+@AutoConfigureMockMvc
 class IdpResponseControllerConsentNotRequiredTests extends IdpResponseControllerTests {
 
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	@Qualifier("oidcCallExecutor")
+	private ThreadPoolTaskExecutor oidcCallExecutor;
+
+	@Test
+	void idpCalledOnOidcCallExecutor_WhenRequestDispatchedAsynchronously() throws Exception {
+
+		String code = UUID.randomUUID().toString();
+		createMockOidcServerResponse_successfulAuthentication(code, "mock_responses/idp/token-response-ok.json");
+		Map.Entry<String, CorrelatedRequestsHolder> mapEntry = addMockRequestToPendingIdpRequestCommunicationCache();
+		long completedIdpCalls = oidcCallExecutor.getThreadPoolExecutor().getCompletedTaskCount();
+
+		MvcResult mvcResult = mockMvc.perform(get(ENDPOINT_IDP_RESPONSE)
+					.param("code", code)
+					.param("state", mapEntry.getKey()))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(mvcResult))
+				.andExpect(status().isFound())
+				.andExpect(header().string(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse" +
+						"?token=c3BlY2lmaWNDb21t")));
+
+		await().until(() -> oidcCallExecutor.getThreadPoolExecutor().getCompletedTaskCount() == completedIdpCalls + 1);
+		assertPendingIdpRequestCommunicationCacheIsEmpty();
+		assertResponse(mapEntry);
+	}
+
 	@Test
 	void redirectToEidasnodeWhenValidResponseAndConsentNotRequired() throws Exception {
 
@@ -134,7 +178,7 @@ class IdpResponseControllerConsentNotRequiredTests extends IdpResponseController
 	}
 
 	private void assertResponse(Map.Entry<String, CorrelatedRequestsHolder> mapEntry) throws SAXException, IOException, ParserConfigurationException {
-		List<Cache.Entry<String, String>> list = getListFromIterator(getEidasNodeResponseCommunicationCache().iterator());
+		List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
 		assertEquals(1, list.size());
 		assertThat(list.get(0).getKey(), matchesPattern(UUID_REGEX));
 
@@ -164,7 +208,7 @@ class IdpResponseControllerConsentNotRequiredTests extends IdpResponseController
 	}
 
 	private void assertLegalPersonResponse(Map.Entry<String, CorrelatedRequestsHolder> mapEntry) throws SAXException, IOException, ParserConfigurationException {
-		List<Cache.Entry<String, String>> list = getListFromIterator(getEidasNodeResponseCommunicationCache().iterator());
+		List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
 		assertEquals(1, list.size());
 		assertThat(list.get(0).getKey(), matchesPattern(UUID_REGEX));
 
@@ -0,0 +1,64 @@
+package ee.ria.eidas.proxy.specific.web;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication.CorrelatedRequestsHolder;
+import eu.eidas.auth.commons.EidasParameterKeys;
+import io.restassured.http.ContentType;
+import io.restassured.path.xml.XmlPath;
+import io.restassured.response.Response;
+import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static ee.ria.eidas.proxy.specific.web.ConsentController.ENDPOINT_USER_CONSENT;
+import static ee.ria.eidas.proxy.specific.web.IdpResponseController.ENDPOINT_IDP_RESPONSE;
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(
+		webEnvironment = RANDOM_PORT,
+		properties = {"eidas.proxy.consent-binary-light-token.mode=SEALED"} )
+@ContextConfiguration( classes = SpecificProxyServiceConfiguration.class, initializers = IdpResponseControllerSealedConsentTests.TestContextInitializer.class )
+class IdpResponseControllerSealedConsentTests extends IdpResponseControllerTests {
+
+	@Test
+	void consentFormSubmittedWithPost_WhenConsentTokenSealed() throws Exception {
+		String code = UUID.randomUUID().toString();
+		createMockOidcServerResponse_successfulAuthentication(code, "mock_responses/idp/token-response-ok.json");
+		Map.Entry<String, CorrelatedRequestsHolder> mapEntry = addMockRequestToPendingIdpRequestCommunicationCache();
+
+		Response response = given()
+			.param("code", code)
+			.param("state", mapEntry.getKey())
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(200)
+			.contentType(ContentType.HTML)
+			.extract().response();
+
+		XmlPath html = response.body().htmlPath();
+		assertThat(html.getString("**.find { it.@id == 'consentSelector' }.@method")).isEqualToIgnoringCase("POST");
+		assertThat(html.getString("**.find { it.@id == 'cancelForm' }.@method")).isEqualToIgnoringCase("POST");
+		String consentToken = html.getString("**.find { it.@id == 'token' }.@value");
+		assertThat(consentToken).isNotEmpty();
+
+		given()
+			.formParam(EidasParameterKeys.TOKEN.toString(), consentToken)
+		.when()
+			.post(ENDPOINT_USER_CONSENT)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
+
+		assertPendingIdpRequestCommunicationCacheIsEmpty();
+	}
+}
@@ -0,0 +1,155 @@
+package ee.ria.eidas.proxy.specific.web;
+
+import com.nimbusds.oauth2.sdk.util.URLUtils;
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import eu.eidas.auth.commons.EidasParameterKeys;
+import eu.eidas.auth.commons.light.ILightRequest;
+import eu.eidas.auth.commons.tx.BinaryLightToken;
+import eu.eidas.specificcommunication.BinaryLightTokenHelper;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.cache.Cache;
+import java.net.URL;
+import java.util.List;
+import java.util.UUID;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.*;
+import static ee.ria.eidas.proxy.specific.web.IdpResponseController.ENDPOINT_IDP_RESPONSE;
+import static ee.ria.eidas.proxy.specific.web.ProxyServiceRequestController.ENDPOINT_PROXY_SERVICE_REQUEST;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.hamcrest.text.MatchesPattern.matchesPattern;
+import static org.hamcrest.xml.HasXPath.hasXPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(
+		webEnvironment = RANDOM_PORT,
+		properties = {
+				"eidas.proxy.ask-consent=false",
+				"eidas.proxy.oidc.state.mode=SEALED",
+				"eidas.proxy.oidc.state.encryption-key=MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY="} )
+@ContextConfiguration( classes = SpecificProxyServiceConfiguration.class, initializers = IdpResponseControllerSealedStateTests.TestContextInitializer.class )
+class IdpResponseControllerSealedStateTests extends ControllerTest {
+
+	@Test
+	void redirectToEidasNodeWhenValidSealedState() throws Exception {
+		ILightRequest lightRequest = createDefaultLightRequest();
+		String state = sendProxyServiceRequest(lightRequest);
+		assertThat(state, not(matchesPattern(UUID_REGEX)));
+		assertPendingIdpRequestCommunicationCacheIsEmpty();
+
+		String code = UUID.randomUUID().toString();
+		createMockOidcServerResponse_successfulAuthentication(code, "mock_responses/idp/token-response-ok.json");
+
+		given()
+			.param("code", code)
+			.param("state", state)
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
+
+		List<Cache.Entry<String, String>> list = getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator());
+		assertEquals(1, list.size());
+		assertThat(getXmlDocument(list.get(0).getValue()), hasXPath("/lightResponse/inResponseToId", equalTo(lightRequest.getId())));
+	}
+
+	@Test
+	void badRequestWhenSealedStateAlreadyUsed() throws Exception {
+		String state = sendProxyServiceRequest(createDefaultLightRequest());
+		String code = UUID.randomUUID().toString();
+		createMockOidcServerResponse_successfulAuthentication(code, "mock_responses/idp/token-response-ok.json");
+
+		given()
+			.param("code", code)
+			.param("state", state)
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(302);
+
+		given()
+			.param("code", code)
+			.param("state", state)
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Invalid state"));
+
+		assertWarningIsLogged("Sealed token with nonce: '", "Pending IDP request not found from sealed state");
+		assertEquals(1, getListFromIterator(igniteCache(getEidasNodeResponseCommunicationCache()).iterator()).size());
+	}
+
+	@Test
+	void badRequestWhenInvalidSealedState() {
+		given()
+			.param("code", UUID.randomUUID().toString())
+			.param("state", "YXNkZmZzZGZzZGZkc2ZzZmQ")
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(400)
+			.body("error", equalTo("Bad Request"))
+			.body("incidentNumber", notNullValue())
+			.body("message", equalTo("Invalid state"));
+
+		assertResponseCommunicationCacheIsEmpty();
+	}
+
+	/**
+	 * The IdP returns the sealed state in the callback, where {@code state} is limited to 1000 characters. A request for
+	 * all natural person attributes with the longest relay state allowed by eIDAS must still fit.
+	 */
+	@Test
+	void sealedStateAcceptedOnCallback_WhenAllAttributesRequestedWithLongestRelayState() throws Exception {
+		ILightRequest lightRequest = createLightRequest(MOCK_CITIZEN_COUNTRY, MOCK_ISSUER_NAME, RandomStringUtils.randomAlphanumeric(80),
+				MOCK_LOA_HIGH, MOCK_SP_TYPE, MOCK_PROVIDER_NAME, NATURAL_PERSON_ALL_ATTRIBUTES, null);
+		String state = sendProxyServiceRequest(lightRequest);
+		assertThat(state.length(), lessThanOrEqualTo(1000));
+
+		String code = UUID.randomUUID().toString();
+		createMockOidcServerResponse_successfulAuthentication(code, "mock_responses/idp/token-response-ok.json");
+
+		given()
+			.param("code", code)
+			.param("state", state)
+		.when()
+			.get(ENDPOINT_IDP_RESPONSE)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://ee-eidas-proxy:8083/EidasNode/SpecificProxyServiceResponse?token=c3BlY2lmaWNDb"));
+	}
+
+	private String sendProxyServiceRequest(ILightRequest lightRequest) throws Exception {
+		BinaryLightToken binaryLightToken = putRequest(lightRequest);
+		String location = given()
+			.param(EidasParameterKeys.TOKEN.toString(), BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken))
+		.when()
+			.get(ENDPOINT_PROXY_SERVICE_REQUEST)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://localhost:9877/oidc/authorize"))
+			.extract().header(HttpHeaders.LOCATION);
+		return URLUtils.parseParameters(new URL(location).getQuery()).get("state").get(0);
+	}
+}
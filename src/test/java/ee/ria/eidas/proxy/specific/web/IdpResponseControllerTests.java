@@ -11,11 +11,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Map;
@@ -638,23 +635,7 @@ abstract class IdpResponseControllerTests extends ControllerTest {
 		String stateParameterValue = UUID.randomUUID().toString();
 		CorrelatedRequestsHolder requestsHolder = new CorrelatedRequestsHolder(lightRequest, Collections.singletonMap(stateParameterValue, new URL("http://oidAuthenticationRequest")));
 		Map.Entry<String, CorrelatedRequestsHolder> mapEntry = new AbstractMap.SimpleEntry<String, CorrelatedRequestsHolder>(stateParameterValue, requestsHolder);
-		getIdpRequestCommunicationCache().put(stateParameterValue, requestsHolder);
+		getIdpRequestCommunicationCache().put(UUID.fromString(stateParameterValue), getIdpCacheEntryCodec().marshall(requestsHolder));
 		return mapEntry;
 	}
-
-	void createMockOidcServerResponse_successfulAuthentication(String code, String responseFile) throws UnsupportedEncodingException {
-		mockOidcServer.stubFor(post(urlEqualTo("/oidc/token"))
-				.withBasicAuth(
-						getSpecificProxyServiceProperties().getOidc().getClientId(),
-						getSpecificProxyServiceProperties().getOidc().getClientSecret())
-				.withHeader("Content-Type", containing("application/x-www-form-urlencoded"))
-				.withRequestBody(containing("grant_type=authorization_code&code=" + code
-						+ "&redirect_uri=" + URLEncoder.encode(getSpecificProxyServiceProperties().getOidc().getRedirectUri(), StandardCharsets.UTF_8)))
-				.willReturn(aResponse()
-						.withStatus(200)
-						.withHeader("Content-Type", "application/json; charset=UTF-8")
-						.withBodyFile(responseFile)));
-	}
 }
-
-
@@ -0,0 +1,100 @@
+package ee.ria.eidas.proxy.specific.web;
+
+import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
+import ee.ria.eidas.proxy.specific.storage.AsyncCacheOperations;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCache;
+import ee.ria.eidas.proxy.specific.storage.CommunicationCacheGuard;
+import eu.eidas.auth.commons.EidasParameterKeys;
+import eu.eidas.auth.commons.tx.BinaryLightToken;
+import eu.eidas.specificcommunication.BinaryLightTokenHelper;
+import io.restassured.RestAssured;
+import io.restassured.builder.ResponseSpecBuilder;
+import org.apache.http.HttpHeaders;
+import org.apache.ignite.IgniteCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static ee.ria.eidas.proxy.specific.util.LightRequestTestHelper.createDefaultLightRequest;
+import static ee.ria.eidas.proxy.specific.web.ProxyServiceRequestController.ENDPOINT_PROXY_SERVICE_REQUEST;
+import static io.restassured.RestAssured.given;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(
+		webEnvironment = RANDOM_PORT,
+		properties = {
+				"eidas.proxy.communication-cache.fail-fast.max-concurrent-operations=2",
+				"eidas.proxy.communication-cache.fail-fast.operation-timeout-in-millis=60000"})
+@ContextConfiguration(classes = SpecificProxyServiceConfiguration.class, initializers = ProxyServiceRequestControllerCacheUnavailableTests.TestContextInitializer.class)
+class ProxyServiceRequestControllerCacheUnavailableTests extends ControllerTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Autowired
+	private CommunicationCacheGuard communicationCacheGuard;
+
+	@AfterEach
+	void releaseOperations() {
+		release.countDown();
+		await().until(() -> communicationCacheGuard.getAvailablePermits() == 2);
+		executor.shutdownNow();
+	}
+
+	@Test
+	void serviceUnavailable_WhenTooManyCacheOperationsInFlight() throws Exception {
+		BinaryLightToken binaryLightToken = putRequest(createDefaultLightRequest());
+		String tokenBase64 = BinaryLightTokenHelper.encodeBinaryLightTokenBase64(binaryLightToken);
+		holdAllPermits();
+		RestAssured.responseSpecification = new ResponseSpecBuilder().build();
+
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), tokenBase64)
+		.when()
+			.get(ENDPOINT_PROXY_SERVICE_REQUEST)
+		.then()
+			.assertThat()
+			.statusCode(503);
+
+		assertErrorIsLogged("Communication cache unavailable: Too many operations in flight, operation on cache 'nodeSpecificProxyserviceRequestCache' rejected");
+		release.countDown();
+		await().until(() -> communicationCacheGuard.getAvailablePermits() == 2);
+
+		given()
+			.param(EidasParameterKeys.TOKEN.toString(), tokenBase64)
+		.when()
+			.get(ENDPOINT_PROXY_SERVICE_REQUEST)
+		.then()
+			.assertThat()
+			.statusCode(302)
+			.header(HttpHeaders.LOCATION, startsWith("https://localhost:9877/oidc/authorize"));
+	}
+
+	/**
+	 * Starts operations that block until released on a cache guarded by the application's guard, so that the operations
+	 * of the request are rejected.
+	 */
+	@SuppressWarnings("unchecked")
+	private void holdAllPermits() {
+		CommunicationCache<String, String> blockingCache = mock(CommunicationCache.class);
+		when(blockingCache.getName()).thenReturn("blockingCache");
+		when(blockingCache.unwrap(IgniteCache.class)).thenThrow(new IllegalArgumentException("Unwrapping is not supported"));
+		when(blockingCache.getAndRemove("key")).then(invocation -> {
+			release.await();
+			return null;
+		});
+		CommunicationCache<String, String> guardedCache = communicationCacheGuard.guard(() -> blockingCache);
+		AsyncCacheOperations.getAndRemoveAsync(guardedCache, "key", executor);
+		AsyncCacheOperations.getAndRemoveAsync(guardedCache, "key", executor);
+		await().until(() -> communicationCacheGuard.getAvailablePermits() == 0);
+	}
+}
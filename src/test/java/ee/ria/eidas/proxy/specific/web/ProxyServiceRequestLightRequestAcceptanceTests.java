@@ -2,7 +2,6 @@ package ee.ria.eidas.proxy.specific.web;
 
 import com.nimbusds.oauth2.sdk.util.URLUtils;
 import ee.ria.eidas.proxy.specific.config.SpecificProxyServiceConfiguration;
-import ee.ria.eidas.proxy.specific.storage.SpecificProxyServiceCommunication;
 import eu.eidas.auth.commons.EidasParameterKeys;
 import eu.eidas.auth.commons.attribute.AttributeDefinition;
 import eu.eidas.auth.commons.attribute.ImmutableAttributeMap;
@@ -165,11 +164,12 @@ public class ProxyServiceRequestLightRequestAcceptanceTests extends ControllerTe
     }
 
     private void assertRequestInIdpCommunicationCache(ILightRequest mockLightRequest) {
-        List<Cache.Entry<String, SpecificProxyServiceCommunication.CorrelatedRequestsHolder>> list = getListFromIterator(getIdpRequestCommunicationCache().iterator());
+        List<Cache.Entry<UUID, byte[]>> list = getListFromIterator(igniteCache(getIdpRequestCommunicationCache()).iterator());
         assertEquals(1, list.size());
-        assertThat(list.get(0).getKey(), matchesPattern(UUID_REGEX));
+        String state = list.get(0).getKey().toString();
+        assertThat(state, matchesPattern(UUID_REGEX));
 
-        ILightRequest cachedLightRequest = list.get(0).getValue().getLightRequest();
+        ILightRequest cachedLightRequest = getIdpCacheEntryCodec().unmarshallCorrelatedRequests(state, list.get(0).getValue()).getLightRequest();
         assertEquals(mockLightRequest.getCitizenCountryCode(), cachedLightRequest.getCitizenCountryCode());
         assertEquals(mockLightRequest.getId(), cachedLightRequest.getId());
         assertEquals(mockLightRequest.getLevelOfAssurance(), cachedLightRequest.getLevelOfAssurance());
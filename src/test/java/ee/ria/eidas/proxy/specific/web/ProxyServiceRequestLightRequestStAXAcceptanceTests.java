@@ -0,0 +1,13 @@
+package ee.ria.eidas.proxy.specific.web;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+/**
+ * Runs the LightRequest acceptance tests with the StAX codec, which must accept and reject the same requests as the
+ * default JAXB codec and log the same errors.
+ */
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = "eidas.proxy.communication-cache.light-message-codec=STAX")
+public class ProxyServiceRequestLightRequestStAXAcceptanceTests extends ProxyServiceRequestLightRequestAcceptanceTests {
+}